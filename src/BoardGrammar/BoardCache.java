@@ -0,0 +1,157 @@
+package BoardGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import client.Board;
+
+/**
+ * BoardCache
+ *
+ * a directory of compiled boards, named by the SHA-256 hash of the board file
+ * they were compiled from. loading a board whose file has been compiled before
+ * only reads and hashes the file, then builds the board from the compiled form
+ * through a memory mapping, skipping the lexer and parser. otherwise the file
+ * is parsed as usual and, if it makes a valid board, its compiled form is
+ * stored for next time.
+ *
+ * entries are keyed by content, so an edited file simply misses, and entries
+ * never need to be invalidated. entries that are damaged, or from another
+ * version of the format, are treated as misses and overwritten.
+ *
+ * Thread safety argument:
+ *      entries are written to a temporary file and then renamed into place, so
+ *      a reader never sees a partly written entry. two threads loading the same
+ *      new file may both compile it, but they write the same entry. the counters
+ *      are atomic
+ */
+public class BoardCache {
+
+    private static final String SUFFIX = ".pbc";
+    //file name extension of the entries
+
+    private final File directory;
+    //where the entries are kept. made when the first entry is stored
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    //loads that did and didn't find a usable entry
+
+    /**
+     * make a cache that keeps its entries in a directory
+     *
+     * @param directory the directory, which is made if it doesn't exist yet
+     */
+    public BoardCache(File directory){
+        this.directory = directory;
+    }
+
+    /**
+     * load a board file through the cache
+     *
+     * @param boardFile the board file
+     * @return the board it describes, the same as OutputProcessor.parse(boardFile)
+     * @throws IOException if the board file can't be read. failing to store an
+     *          entry is not an error -- the board is still returned
+     */
+    public Board load(File boardFile) throws IOException {
+        Board[] built = new Board[1];
+        CompiledBoard compiled = compile(Files.readAllBytes(boardFile.toPath()), built);
+        //a miss already built the board to check it, and it hasn't run yet
+        return built[0] != null ? built[0] : compiled.build();
+    }
+
+    /**
+     * compile a board file through the cache
+     *
+     * @param boardFile the board file
+     * @return its compiled form, which is known to build
+     * @throws IOException if the board file can't be read. failing to store an
+     *          entry is not an error -- the compiled form is still returned
+     */
+    public CompiledBoard compile(File boardFile) throws IOException {
+        return compile(Files.readAllBytes(boardFile.toPath()));
+    }
+
+    /**
+     * compile the contents of a board file through the cache
+     *
+     * @param contents the bytes of the board file
+     * @return its compiled form, which is known to build
+     * @throws IOException if the contents can't be decoded. failing to store
+     *          an entry is not an error -- the compiled form is still returned
+     */
+    public CompiledBoard compile(byte[] contents) throws IOException {
+        return compile(contents, new Board[1]);
+    }
+
+    //helper method -- compile the contents of a board file through the cache.
+    //on a miss, the board built to check the compiled form is put in built[0]
+    private CompiledBoard compile(byte[] contents, Board[] built) throws IOException {
+        File entry = new File(directory, key(contents) + SUFFIX);
+        if(entry.isFile()){
+            try{
+                CompiledBoard compiled = CompiledBoard.read(entry);
+                hits.incrementAndGet();
+                return compiled;
+            }catch(IOException e){
+                //damaged or out of date -- recompile it below
+            }
+        }
+        misses.incrementAndGet();
+        CompiledBoard compiled = OutputProcessor.compile(contents);
+        //only boards that build are stored, so a hit never fails where a parse
+        //would have succeeded
+        built[0] = compiled.build();
+        try{
+            store(compiled, entry);
+        }catch(IOException e){
+            System.err.println("unable to cache compiled board " + entry + ": " + e.getMessage());
+        }
+        return compiled;
+    }
+
+    //helper method -- write an entry so that it appears all at once
+    private void store(CompiledBoard compiled, File entry) throws IOException {
+        if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()){
+            throw new IOException("unable to make directory " + directory);
+        }
+        File temporary = File.createTempFile("board", ".tmp", directory);
+        try{
+            compiled.write(temporary);
+            Files.move(temporary.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }finally{
+            temporary.delete();
+        }
+    }
+
+    //helper method -- the hex SHA-256 hash of a board file's contents, which
+    //is also the hash clients announce to the server
+    private static String key(byte[] contents){
+        return BoardIndex.contentHash(contents);
+    }
+
+    /**
+     * @return the directory the entries are kept in
+     */
+    public File directory(){
+        return directory;
+    }
+
+    /**
+     * @return the number of loads that built their board from an entry
+     */
+    public long hits(){
+        return hits.get();
+    }
+
+    /**
+     * @return the number of loads that had to parse their board file
+     */
+    public long misses(){
+        return misses.get();
+    }
+}
@@ -0,0 +1,131 @@
+package BoardGrammar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import client.Board;
+
+/**
+ * Tests compiled boards and the board cache.
+ *
+ *  1. compiled boards build the same board as parsing, before and after being
+ *      written to a file and read back
+ *  2. the cache misses on a new file, then hits, and misses again when the
+ *      file changes
+ *  3. damaged entries are recompiled, and boards that don't parse aren't cached
+ */
+public class BoardCacheTests {
+
+    private static final String[] BOARDS = {"sampleBoard1.pb", "sampleBoard2-1.pb",
+        "sampleBoard3.pb", "sampleBoard4.pb", "portalBoard.pb", "keybindTest.pb",
+        "GoodFormattingFloats.pb"};
+
+    //helper method -- a summary of a board that doesn't depend on hash ordering
+    private static String describe(Board board){
+        return board.name() + " " + board.gravity() + " " + board.size() + "\n"
+                + board.getBallList() + "\n" + board.getGadgetList() + "\n"
+                + board.numberOfTriggerLinks() + " " + board.getPortalNames();
+    }
+
+    //compiled boards match parsed ones, in memory and through a file
+    @Test
+    public void testRoundTrip() throws IOException {
+        File directory = ParserTests.temporaryDirectory();
+        try{
+            for(String name : BOARDS){
+                File boardFile = new File(ParserTests.getResourcePath("client/resources/" + name));
+                String expected = describe(OutputProcessor.parse(boardFile));
+                CompiledBoard compiled = OutputProcessor.compile(boardFile);
+                assertEquals(expected, describe(compiled.build()));
+                File entry = new File(directory, name + ".pbc");
+                compiled.write(entry);
+                CompiledBoard read = CompiledBoard.read(entry);
+                assertEquals(compiled.length(), read.length());
+                assertEquals(expected, describe(read.build()));
+            }
+        }finally{
+            ParserTests.delete(directory);
+        }
+    }
+
+    //a file misses once, then hits, and an edited file misses again
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        File directory = ParserTests.temporaryDirectory();
+        try{
+            File boardFile = new File(directory, "board.pb");
+            Files.copy(new File(ParserTests.getResourcePath("client/resources/sampleBoard1.pb")).toPath(),
+                    boardFile.toPath());
+            BoardCache cache = new BoardCache(new File(directory, "cache"));
+            String expected = describe(OutputProcessor.parse(boardFile));
+            assertEquals(expected, describe(cache.load(boardFile)));
+            assertEquals(expected, describe(cache.load(boardFile)));
+            assertEquals(1, cache.misses());
+            assertEquals(1, cache.hits());
+            FileOutputStream out = new FileOutputStream(boardFile, true);
+            out.write("\nball name=Extra x=10.0 y=10.0 xVelocity=1.0 yVelocity=1.0\n".getBytes());
+            out.close();
+            Board edited = cache.load(boardFile);
+            assertEquals(2, cache.misses());
+            assertEquals(2, edited.numberOfBalls());
+            ParserTests.delete(new File(directory, "cache"));
+        }finally{
+            ParserTests.delete(directory);
+        }
+    }
+
+    //a damaged entry is recompiled and replaced
+    @Test
+    public void testDamagedEntry() throws IOException {
+        File directory = ParserTests.temporaryDirectory();
+        try{
+            File boardFile = new File(ParserTests.getResourcePath("client/resources/sampleBoard4.pb"));
+            BoardCache cache = new BoardCache(directory);
+            String expected = describe(cache.load(boardFile));
+            File[] entries = directory.listFiles();
+            assertEquals(1, entries.length);
+            byte[] bytes = Files.readAllBytes(entries[0].toPath());
+            bytes[bytes.length - 1] ^= 0x55;
+            Files.write(entries[0].toPath(), bytes);
+            try{
+                CompiledBoard.read(entries[0]);
+                fail("expected the damage to be detected");
+            }catch(IOException e){
+                //expected
+            }
+            assertEquals(expected, describe(cache.load(boardFile)));
+            assertEquals(2, cache.misses());
+            assertEquals(expected, describe(cache.load(boardFile)));
+            assertEquals(1, cache.hits());
+        }finally{
+            ParserTests.delete(directory);
+        }
+    }
+
+    //a board that doesn't parse isn't cached
+    @Test
+    public void testInvalidBoardNotCached() throws IOException {
+        File directory = ParserTests.temporaryDirectory();
+        try{
+            File boardFile = new File(ParserTests.getResourcePath("client/resources/BadFormattingDuplicateNames.pb"));
+            BoardCache cache = new BoardCache(directory);
+            try{
+                cache.load(boardFile);
+                fail("expected the board to be rejected");
+            }catch(RuntimeException e){
+                //expected
+            }
+            assertTrue(directory.listFiles().length == 0);
+        }finally{
+            ParserTests.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package BoardGrammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import BoardGrammar.OutputProcessor.GadgetType;
+import client.Board;
+import physics.Geometry.VectPair;
+import sim.Ball;
+import sim.Triggerable;
+
+/**
+ * BoardEdit
+ *
+ * the changes between two versions of a board file, which turn a live board
+ * built from the first version into the board the second describes, without
+ * rebuilding it. the live board keeps its balls, wall connections and open
+ * portals, so a board can be edited while it runs.
+ *
+ * gadgets are matched by name. a gadget whose line is the same in both
+ * versions is left alone, along with its state -- a raised flipper stays
+ * raised, and an absorber keeps its balls. a gadget whose line changed is
+ * replaced with a new one, and gadgets only in one version are removed or
+ * added. trigger links and key bindings are then made to match the second
+ * version. balls are left where they are, but restarting the board brings
+ * back the second version's balls.
+ *
+ * edits can only be made in place if the board line is unchanged. the board's
+ * name ties it to its server connection, and its physics and walls are fixed
+ * when it's made, so other edits need the board rebuilt.
+ *
+ * Thread safety argument:
+ *      a BoardEdit must be confined to one thread, and apply() must not run
+ *      while the board is being simulated
+ */
+public class BoardEdit {
+
+    //the parts of one version of a board file that edits care about
+    private static class Version implements CompiledBoard.Calls {
+        private String boardLine = "";
+        //the board line's fields
+        private final Map<String, String> gadgetLines = new LinkedHashMap<String, String>();
+        //each gadget's fields, keyed by name, in file order
+        private final Map<String, String[]> portals = new LinkedHashMap<String, String[]>();
+        //{exit board, exit portal} of each portal, keyed by name
+        private final Set<List<String>> keys = new LinkedHashSet<List<String>>();
+        //each [key, gadget] binding, in file order
+
+        @Override public void board(String name, double gravity, double friction1, double friction2, int size){
+            boardLine = name + " " + gravity + " " + friction1 + " " + friction2 + " " + size;
+        }
+
+        @Override public void ball(double x, double y, double xVel, double yVel){
+        }
+
+        @Override public void gadget(GadgetType type, String name, Integer x, Integer y, Integer w, Integer h,
+                Integer angle, String otherBoard, String otherPortal){
+            gadgetLines.put(name, type + " " + x + " " + y + " " + w + " " + h + " " + angle + " "
+                    + otherBoard + " " + otherPortal);
+            if(type == GadgetType.PORTAL){
+                portals.put(name, new String[]{otherBoard, otherPortal});
+            }
+        }
+
+        @Override public void fire(String trigger, String action){
+        }
+
+        @Override public void key(String keyName, String action){
+            keys.add(Arrays.asList(keyName, action));
+        }
+    }
+
+    private final boolean inPlace;
+    //true if the board line is unchanged
+    private final Board edited;
+    //a board built from the second version, for its gadgets and links. null
+    //if the edit can't be made in place
+    private final Version version = new Version();
+    //the second version
+    private final List<String> removed = new ArrayList<String>();
+    private final List<String> changed = new ArrayList<String>();
+    private final List<String> added = new ArrayList<String>();
+    //names of the gadgets only in the first version, in both but different,
+    //and only in the second version
+    private final List<List<String>> unbound = new ArrayList<List<String>>();
+    private final List<List<String>> bound = new ArrayList<List<String>>();
+    //[key, gadget] bindings only in the first version, and only in the second
+    private final List<VectPair> balls = new ArrayList<VectPair>();
+    //the second version's balls
+    private boolean changesPortals = false;
+    //true if a portal is among the gadgets removed, changed or added
+    private int linksRemoved = 0;
+    private int linksAdded = 0;
+    //trigger links changed by apply()
+
+    private BoardEdit(CompiledBoard from, CompiledBoard to){
+        Version original = new Version();
+        from.replay(original);
+        to.replay(version);
+        inPlace = original.boardLine.equals(version.boardLine);
+        if(!inPlace){
+            edited = null;
+            return;
+        }
+        edited = to.build();
+        for(Ball ball : edited.getBallList()){
+            balls.add(new VectPair(ball.getCenter(), ball.vel()));
+        }
+        for(Map.Entry<String, String> gadget : original.gadgetLines.entrySet()){
+            String line = version.gadgetLines.get(gadget.getKey());
+            if(line == null){
+                removed.add(gadget.getKey());
+            }else if(!line.equals(gadget.getValue())){
+                changed.add(gadget.getKey());
+            }
+        }
+        for(String name : version.gadgetLines.keySet()){
+            if(!original.gadgetLines.containsKey(name)){
+                added.add(name);
+            }
+        }
+        for(List<String> names : Arrays.asList(removed, changed, added)){
+            for(String name : names){
+                if(original.portals.containsKey(name) || version.portals.containsKey(name)){
+                    changesPortals = true;
+                }
+            }
+        }
+        for(List<String> binding : original.keys){
+            if(!version.keys.contains(binding)){
+                unbound.add(binding);
+            }
+        }
+        for(List<String> binding : version.keys){
+            if(!original.keys.contains(binding)){
+                bound.add(binding);
+            }
+        }
+    }
+
+    /**
+     * find the changes between two versions of a board file
+     *
+     * @param from the version the live board was built from
+     * @param to the edited version
+     * @return the changes
+     * @throws RuntimeException if the edited version can't be built, as for
+     *          CompiledBoard.build()
+     */
+    public static BoardEdit diff(CompiledBoard from, CompiledBoard to){
+        return new BoardEdit(from, to);
+    }
+
+    /**
+     * @return true if the edit can be applied to the live board, false if the
+     *          board line changed and the board has to be rebuilt
+     */
+    public boolean isInPlace(){
+        return inPlace;
+    }
+
+    /**
+     * @return true if a portal is added, removed or changed, so that other
+     *          boards may need to be told
+     */
+    public boolean changesPortals(){
+        return changesPortals;
+    }
+
+    /**
+     * change a board built from the first version to match the second
+     *
+     * @param board the live board, which must have been built from the first
+     *          version, and not be simulating
+     * @throws IllegalStateException if the edit can't be made in place
+     */
+    public void apply(Board board){
+        if(!inPlace){
+            throw new IllegalStateException("the board line changed, so the board has to be rebuilt");
+        }
+        for(String name : removed){
+            board.remove(name);
+        }
+        for(String name : changed){
+            board.remove(name);
+        }
+        for(String name : version.gadgetLines.keySet()){
+            if(board.getGadget(name) != null){
+                continue;
+            }
+            Triggerable gadget = edited.getGadget(name);
+            String[] portal = version.portals.get(name);
+            if(portal != null){
+                board.addPortal(gadget.x, gadget.y, name, portal[0], portal[1]);
+            }else{
+                board.add(gadget.copy());
+            }
+        }
+        for(Triggerable gadget : edited.getGadgetList()){
+            Set<String> wanted = new LinkedHashSet<String>(gadget.triggerNames());
+            Set<String> existing = new HashSet<String>(board.getGadget(gadget.name()).triggerNames());
+            for(String target : existing){
+                if(!wanted.contains(target)){
+                    board.removeTriggerLink(gadget.name(), target);
+                    linksRemoved ++;
+                }
+            }
+            for(String target : wanted){
+                if(!existing.contains(target)){
+                    board.createTriggerLink(gadget.name(), target);
+                    linksAdded ++;
+                }
+            }
+        }
+        for(List<String> binding : unbound){
+            board.unbindKey(binding.get(0), binding.get(1));
+        }
+        for(List<String> binding : bound){
+            board.bindKey(binding.get(0), binding.get(1));
+        }
+        board.saveConfiguration(balls);
+    }
+
+    /**
+     * @return a summary of the changes, including the trigger links changed
+     *          once the edit has been applied
+     */
+    @Override public String toString(){
+        if(!inPlace){
+            return "board line changed";
+        }
+        return added.size() + " gadgets added, " + removed.size() + " removed, " + changed.size()
+                + " changed, " + linksAdded + " trigger links added, " + linksRemoved + " removed, "
+                + bound.size() + " key bindings added, " + unbound.size() + " removed";
+    }
+}
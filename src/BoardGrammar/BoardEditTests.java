@@ -0,0 +1,145 @@
+package BoardGrammar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import client.Board;
+import sim.Absorber;
+import sim.Ball;
+import sim.Flipper;
+import sim.Portal;
+
+/**
+ * Tests applying the changes between two versions of a board file to a live
+ * board.
+ *
+ *  1. gadgets that are moved, removed and added are replaced, removed and
+ *      added, and the rest keep their state
+ *  2. trigger links and key bindings end up as the second version has them
+ *  3. balls stay where they are, but a restart brings back the second
+ *      version's balls
+ *  4. portal changes are noticed, and local portals open and close
+ *  5. a changed board line can't be applied in place
+ */
+public class BoardEditTests {
+
+    //moved gadgets are replaced, and unchanged ones keep their state
+    @Test public void testGadgets() throws IOException {
+        CompiledBoard from = ParserTests.compile("board name=Edit",
+                "squareBumper name=Kept x=1 y=1",
+                "circleBumper name=Moved x=2 y=2",
+                "triangleBumper name=Removed x=3 y=3 orientation=0",
+                "absorber name=Abs x=0 y=18 width=20 height=2");
+        CompiledBoard to = ParserTests.compile("board name=Edit",
+                "squareBumper name=Kept x=1 y=1",
+                "circleBumper name=Moved x=5 y=5",
+                "absorber name=Abs x=0 y=18 width=20 height=2",
+                "leftFlipper name=Added x=10 y=10 orientation=0");
+        Board board = from.build();
+        Absorber absorber = (Absorber)board.getGadget("Abs");
+        absorber.collideWith(new Ball(10, 17.5, 0, 5));
+        board.getTriggerGraph().dispatch();
+        BoardEdit edit = BoardEdit.diff(from, to);
+        assertTrue(edit.isInPlace());
+        assertFalse(edit.changesPortals());
+        edit.apply(board);
+        assertEquals(4, board.numberOfGadgets());
+        assertNull(board.getGadget("Removed"));
+        assertEquals(5, board.getGadget("Moved").x);
+        assertEquals(10, board.getGadget("Added").x);
+        assertSame(absorber, board.getGadget("Abs"));
+        assertEquals(1, absorber.capturedBalls());
+        assertTrue(edit.toString().startsWith("1 gadgets added, 1 removed, 1 changed"));
+    }
+
+    //trigger links and key bindings follow the second version
+    @Test public void testLinksAndKeys() throws IOException {
+        CompiledBoard from = ParserTests.compile("board name=Edit",
+                "squareBumper name=A x=1 y=1",
+                "squareBumper name=B x=2 y=2",
+                "leftFlipper name=F x=10 y=10 orientation=0",
+                "fire trigger=A action=B",
+                "fire trigger=A action=F",
+                "keydown key=space action=F");
+        CompiledBoard to = ParserTests.compile("board name=Edit",
+                "squareBumper name=A x=1 y=1",
+                "squareBumper name=B x=2 y=3",
+                "leftFlipper name=F x=10 y=10 orientation=0",
+                "fire trigger=A action=F",
+                "fire trigger=B action=A",
+                "keyup key=space action=F");
+        Board board = from.build();
+        Flipper flipper = (Flipper)board.getGadget("F");
+        BoardEdit edit = BoardEdit.diff(from, to);
+        edit.apply(board);
+        assertSame(flipper, board.getGadget("F"));
+        assertEquals(Arrays.asList("F"), board.getGadget("A").triggerNames());
+        assertEquals(Arrays.asList("A"), board.getGadget("B").triggerNames());
+        assertEquals(2, board.numberOfTriggerLinks());
+        assertTrue(edit.toString().endsWith("1 key bindings added, 1 removed"));
+        //the old binding does nothing, and the new one flips the flipper
+        board.postInput("keydown:space");
+        board.advanceSimulation(0.01);
+        assertFalse(flipper.isMoving());
+        board.postInput("keyup:space");
+        board.advanceSimulation(0.01);
+        assertTrue(flipper.isMoving());
+    }
+
+    //balls are kept, and a restart uses the second version's
+    @Test public void testBalls() throws IOException {
+        CompiledBoard from = ParserTests.compile("board name=Edit",
+                "ball name=One x=5 y=5 xVelocity=0 yVelocity=0",
+                "squareBumper name=A x=1 y=1");
+        CompiledBoard to = ParserTests.compile("board name=Edit",
+                "ball name=One x=5 y=5 xVelocity=0 yVelocity=0",
+                "ball name=Two x=15 y=5 xVelocity=0 yVelocity=0",
+                "squareBumper name=A x=1 y=1");
+        Board board = from.build();
+        board.saveConfiguration();
+        Ball ball = board.getBallList().get(0);
+        BoardEdit.diff(from, to).apply(board);
+        assertEquals(1, board.numberOfBalls());
+        assertSame(ball, board.getBallList().get(0));
+        board.restartSimulation();
+        assertEquals(2, board.numberOfBalls());
+    }
+
+    //portal changes are noticed, and local portals follow their exits
+    @Test public void testPortals() throws IOException {
+        CompiledBoard from = ParserTests.compile("board name=Edit",
+                "portal name=In x=1 y=1 otherPortal=Out",
+                "portal name=Out x=5 y=5 otherPortal=In");
+        CompiledBoard to = ParserTests.compile("board name=Edit",
+                "portal name=In x=1 y=1 otherPortal=Out",
+                "portal name=Remote x=9 y=9 otherBoard=Other otherPortal=There");
+        Board board = from.build();
+        Portal in = (Portal)board.getGadget("In");
+        assertTrue(in.isOpen());
+        BoardEdit edit = BoardEdit.diff(from, to);
+        assertTrue(edit.changesPortals());
+        edit.apply(board);
+        assertFalse(in.isOpen());
+        assertEquals(Arrays.asList("In", "Remote"), board.getPortalNames());
+        BoardEdit.diff(to, from).apply(board);
+        assertTrue(in.isOpen());
+        assertNull(board.getGadget("Remote"));
+    }
+
+    //a changed board line needs the board rebuilt
+    @Test(expected=IllegalStateException.class) public void testBoardLineChanged() throws IOException {
+        CompiledBoard from = ParserTests.compile("board name=Edit gravity=25");
+        CompiledBoard to = ParserTests.compile("board name=Edit gravity=10");
+        BoardEdit edit = BoardEdit.diff(from, to);
+        assertFalse(edit.isInPlace());
+        edit.apply(from.build());
+    }
+}
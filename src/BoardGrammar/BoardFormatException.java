@@ -0,0 +1,34 @@
+package BoardGrammar;
+
+/**
+ * BoardFormatException
+ *
+ * a syntax error, or a bad value, in a board file, giving the line (from 1)
+ * and column (from 0) where it was found. thrown by StreamingBoardParser, and
+ * by OutputProcessor for values the grammar accepts but a board can't use.
+ */
+public class BoardFormatException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final int line;
+    private final int column;
+
+    BoardFormatException(int line, int column, String message){
+        super("line " + line + ":" + column + " " + message);
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * @return the line of the file the error is on, counting from 1
+     */
+    public int line(){
+        return line;
+    }
+
+    /**
+     * @return the position of the error in its line, counting from 0
+     */
+    public int column(){
+        return column;
+    }
+}
@@ -0,0 +1,309 @@
+package BoardGrammar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * BoardIndex
+ *
+ * a summary of a set of boards, keyed by board name, that can be saved to a
+ * file and loaded without parsing any of the boards. the server loads one to
+ * answer portal queries about indexed boards itself.
+ *
+ * the file is UTF-8 text. lines starting with '#' are comments, and every other
+ * line is one board, as tab separated columns
+ *      name, file, size, balls, gadget counts, portals, content hash
+ * where the gadget counts are space separated "type=count" pairs, the portals
+ * are the space separated names of the board's portals, in the order
+ * Board.getPortalNames() gives them, and the content hash is contentHash() of
+ * the board file. the names are all WORDs of the board grammar, so never
+ * contain spaces or tabs. indexes written before the content hash was added
+ * have no last column, and their entries match no client's board file.
+ *
+ * Thread safety argument:
+ *      entries are immutable. an index must not be modified while it's shared
+ *      between threads, which is how the server uses it -- loaded once, then
+ *      only read
+ */
+public class BoardIndex {
+
+    private static final String HEADER =
+            "# board index: name, file, size, balls, gadget counts, portals, content hash";
+
+    /**
+     * the summary of one board
+     */
+    public static class Entry {
+        public final String name;
+        //the board's name
+        public final String file;
+        //the path of the board file it was read from
+        public final int size;
+        //the board's side length
+        public final int balls;
+        //number of balls at the start
+        public final Map<String, Integer> gadgetCounts;
+        //number of gadgets of each type, keyed by type as written in board files
+        public final List<String> portals;
+        //names of the board's portals
+        public final String contentHash;
+        //contentHash() of the board file, or "" if it isn't known
+
+        /**
+         * @param name the board's name, must not be empty
+         * @param file the path of the board file
+         * @param size the board's side length, must be > 0
+         * @param balls the number of balls at the start
+         * @param gadgetCounts the number of gadgets of each type
+         * @param portals the names of the board's portals
+         */
+        public Entry(String name, String file, int size, int balls, Map<String, Integer> gadgetCounts,
+                List<String> portals){
+            this(name, file, size, balls, gadgetCounts, portals, "");
+        }
+
+        /**
+         * @param name the board's name, must not be empty
+         * @param file the path of the board file
+         * @param size the board's side length, must be > 0
+         * @param balls the number of balls at the start
+         * @param gadgetCounts the number of gadgets of each type
+         * @param portals the names of the board's portals
+         * @param contentHash contentHash() of the board file, or "" if it isn't known
+         */
+        public Entry(String name, String file, int size, int balls, Map<String, Integer> gadgetCounts,
+                List<String> portals, String contentHash){
+            if(name.isEmpty()){
+                throw new IllegalArgumentException("requires nonempty name: received \"" + name + "\"");
+            }
+            if(size <= 0){
+                throw new IllegalArgumentException("requires positive size: received \"" + size + "\"");
+            }
+            this.name = name;
+            this.file = file;
+            this.size = size;
+            this.balls = balls;
+            this.gadgetCounts = Collections.unmodifiableMap(new TreeMap<String, Integer>(gadgetCounts));
+            this.portals = Collections.unmodifiableList(new ArrayList<String>(portals));
+            this.contentHash = contentHash;
+        }
+
+        /**
+         * @return the total number of gadgets, portals included
+         */
+        public int numberOfGadgets(){
+            int total = 0;
+            for(int count : gadgetCounts.values()){
+                total += count;
+            }
+            return total;
+        }
+
+        @Override public String toString(){
+            StringBuilder counts = new StringBuilder();
+            for(Map.Entry<String, Integer> count : gadgetCounts.entrySet()){
+                if(counts.length() > 0){
+                    counts.append(' ');
+                }
+                counts.append(count.getKey()).append('=').append(count.getValue());
+            }
+            StringBuilder portalNames = new StringBuilder();
+            for(String portal : portals){
+                if(portalNames.length() > 0){
+                    portalNames.append(' ');
+                }
+                portalNames.append(portal);
+            }
+            return name + "\t" + file + "\t" + size + "\t" + balls + "\t" + counts + "\t" + portalNames
+                    + "\t" + contentHash;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    //board name to entry, in the order they were added
+
+    /**
+     * add a board to the index
+     *
+     * @param entry the board's summary
+     * @throws IllegalArgumentException if a board with that name is already indexed
+     */
+    public void add(Entry entry){
+        if(entries.containsKey(entry.name)){
+            throw new IllegalArgumentException("a board named " + entry.name + " is already indexed");
+        }
+        entries.put(entry.name, entry);
+    }
+
+    /**
+     * @param boardName the name of a board
+     * @return its summary, or null if it isn't indexed
+     */
+    public Entry get(String boardName){
+        return entries.get(boardName);
+    }
+
+    /**
+     * @param boardName the name of a board
+     * @return the names of its portals, or null if it isn't indexed
+     */
+    public List<String> portalNames(String boardName){
+        Entry entry = entries.get(boardName);
+        return entry == null ? null : entry.portals;
+    }
+
+    /**
+     * check whether a board is indexed from the same board file a client runs
+     *
+     * @param boardName the name of a board
+     * @param contentHash contentHash() of the board file the client runs, or
+     *          null if it isn't known
+     * @return true iff the board is indexed with that content hash
+     */
+    public boolean describes(String boardName, String contentHash){
+        Entry entry = entries.get(boardName);
+        return entry != null && contentHash != null && !entry.contentHash.isEmpty()
+                && entry.contentHash.equals(contentHash);
+    }
+
+    /**
+     * @return the summaries, in the order they were added
+     */
+    public Collection<Entry> entries(){
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * @return the number of boards indexed
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * write the index to a file, replacing its contents
+     *
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8));
+        try{
+            out.print(HEADER + "\n");
+            for(Entry entry : entries.values()){
+                out.print(entry + "\n");
+            }
+            if(out.checkError()){
+                throw new IOException("unable to write " + file);
+            }
+        }finally{
+            out.close();
+        }
+    }
+
+    /**
+     * read an index written by write()
+     *
+     * @param file the file to read
+     * @return the index
+     * @throws IOException if the file can't be read or isn't an index
+     */
+    public static BoardIndex read(File file) throws IOException {
+        BoardIndex index = new BoardIndex();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8));
+        try{
+            int lineNumber = 0;
+            for(String line = in.readLine(); line != null; line = in.readLine()){
+                lineNumber ++;
+                if(line.isEmpty() || line.startsWith("#")){
+                    continue;
+                }
+                try{
+                    index.add(parseEntry(line));
+                }catch(IllegalArgumentException e){
+                    throw new IOException(file + " line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }finally{
+            in.close();
+        }
+        return index;
+    }
+
+    //helper method -- the entry a line of an index file describes
+    private static Entry parseEntry(String line){
+        String[] columns = line.split("\t", -1);
+        if(columns.length != 6 && columns.length != 7){
+            throw new IllegalArgumentException("expected 7 columns, found " + columns.length);
+        }
+        Map<String, Integer> gadgetCounts = new TreeMap<String, Integer>();
+        for(String count : words(columns[4])){
+            int equals = count.indexOf('=');
+            if(equals < 0){
+                throw new IllegalArgumentException("bad gadget count: " + count);
+            }
+            gadgetCounts.put(count.substring(0, equals), Integer.parseInt(count.substring(equals + 1)));
+        }
+        return new Entry(columns[0], columns[1], Integer.parseInt(columns[2]), Integer.parseInt(columns[3]),
+                gadgetCounts, words(columns[5]), columns.length == 7 ? columns[6] : "");
+    }
+
+    /**
+     * the hash clients announce of the board files they run, to tell whether
+     * an index entry describes the same file
+     *
+     * @param contents the contents of a board file
+     * @return the SHA-256 of the contents, in lowercase hex
+     */
+    public static String contentHash(byte[] contents){
+        MessageDigest digest;
+        try{
+            digest = MessageDigest.getInstance("SHA-256");
+        }catch(NoSuchAlgorithmException e){
+            //every Java platform has SHA-256
+            throw new AssertionError(e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for(byte b : digest.digest(contents)){
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param file a board file
+     * @return contentHash() of its contents
+     * @throws IOException if the file can't be read
+     */
+    public static String contentHash(File file) throws IOException {
+        return contentHash(Files.readAllBytes(file.toPath()));
+    }
+
+    //helper method -- the space separated words of a column
+    private static List<String> words(String column){
+        if(column.isEmpty()){
+            return new ArrayList<String>();
+        }
+        return Arrays.asList(column.split(" "));
+    }
+}
@@ -0,0 +1,509 @@
+package BoardGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import BoardGrammar.OutputProcessor.GadgetType;
+import client.Board;
+import client.ChunkIndex;
+import sim.Triggerable;
+
+/**
+ * BoardValidator
+ *
+ * checks board files in bulk, on a pool of threads, and summarizes the good
+ * ones in a BoardIndex.
+ *
+ * a board has errors, and is left out of the index, if it doesn't parse, if a
+ * gadget is missing a field it needs, like its position, if building it fails
+ * (two gadgets with the same name, say), if it has no name, or if an earlier
+ * board in the batch has the same name. a board that builds can still have
+ * warnings, which are reported but don't keep it out of the index:
+ *      gadgets that stick out of the board, or overlap each other
+ *      fire lines naming gadgets that aren't defined before them, which the
+ *          board ignores, and key lines naming gadgets that aren't on the board
+ *      portals whose exit isn't a portal on this board or on another board
+ *          in the batch
+ *
+ * each board is parsed with StreamingBoardParser and checked on its own in
+ * parallel. portals that lead to other boards are then checked on the calling
+ * thread, once every board's portals are known.
+ *
+ * Thread safety argument:
+ *      each board is parsed, built and checked entirely by one pool thread,
+ *      in objects that thread made. the calling thread only looks at a report
+ *      after getting it from its Future, which happens after the pool thread
+ *      finished with it
+ */
+public class BoardValidator {
+
+    private static final double CHUNK_SIZE = 4;
+    //side length of the chunks used to find overlapping gadgets
+
+    /**
+     * the outcome of checking one board file
+     */
+    public static class Report {
+        private final File file;
+        //the board file
+        private BoardIndex.Entry entry = null;
+        //the board's summary, or null if it has errors
+        private final List<String> errors = new ArrayList<String>();
+        private final List<String> warnings = new ArrayList<String>();
+        //the problems found, in the order they were found
+        private final List<String[]> remoteExits = new ArrayList<String[]>();
+        //{portal, exit board, exit portal} for each portal leading to another board
+
+        private Report(File file){
+            this.file = file;
+        }
+
+        /**
+         * @return the board file
+         */
+        public File file(){
+            return file;
+        }
+
+        /**
+         * @return the board's summary, or null if the board has errors
+         */
+        public BoardIndex.Entry entry(){
+            return entry;
+        }
+
+        /**
+         * @return the problems that keep the board out of the index
+         */
+        public List<String> errors(){
+            return Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * @return the problems found on a board that can still be indexed
+         */
+        public List<String> warnings(){
+            return Collections.unmodifiableList(warnings);
+        }
+
+        /**
+         * @return true if the board has no errors
+         */
+        public boolean isValid(){
+            return errors.isEmpty();
+        }
+
+        private void error(String message){
+            errors.add(message);
+            entry = null;
+        }
+
+        @Override public String toString(){
+            StringBuilder report = new StringBuilder(file.getPath());
+            report.append(isValid() ? (warnings.isEmpty() ? ": ok" : ": ok with warnings") : ": invalid");
+            for(String error : errors){
+                report.append("\n  error: ").append(error);
+            }
+            for(String warning : warnings){
+                report.append("\n  warning: ").append(warning);
+            }
+            return report.toString();
+        }
+    }
+
+    //collects what the board file says, as opposed to what the board keeps
+    private static class Calls implements CompiledBoard.Calls {
+        private final Report report;
+        //where problems are reported
+        private final Map<String, Integer> gadgetCounts = new TreeMap<String, Integer>();
+        //gadgets of each type, keyed by type as written in board files
+        private final Set<String> gadgetNames = new HashSet<String>();
+        //names of the gadgets defined so far
+        private final List<String[]> fires = new ArrayList<String[]>();
+        //{trigger, action, name} for each name in a fire line that isn't
+        //defined before it. the board ignores those lines
+        private final List<String[]> keys = new ArrayList<String[]>();
+        //{key, action} of each key line
+        private final List<String[]> portals = new ArrayList<String[]>();
+        //{portal, exit board, exit portal} of each portal
+        private int balls = 0;
+
+        private Calls(Report report){
+            this.report = report;
+        }
+
+        @Override public void board(String name, double gravity, double friction1, double friction2, int size){
+        }
+
+        @Override public void ball(double x, double y, double xVel, double yVel){
+            balls ++;
+        }
+
+        @Override public void gadget(GadgetType type, String name, Integer x, Integer y, Integer w, Integer h,
+                Integer angle, String otherBoard, String otherPortal){
+            String typeName = typeName(type);
+            Integer count = gadgetCounts.get(typeName);
+            gadgetCounts.put(typeName, count == null ? 1 : count + 1);
+            gadgetNames.add(name);
+            //the fields each type needs, which the board can't do without
+            List<String> missing = new ArrayList<String>();
+            if(x == null){
+                missing.add("x");
+            }
+            if(y == null){
+                missing.add("y");
+            }
+            if(type == GadgetType.ABSORBER && w == null){
+                missing.add("width");
+            }
+            if(type == GadgetType.ABSORBER && h == null){
+                missing.add("height");
+            }
+            if((type == GadgetType.TRIANGLEBUMPER || type == GadgetType.LEFTFLIPPER
+                    || type == GadgetType.RIGHTFLIPPER) && angle == null){
+                missing.add("orientation");
+            }
+            if(!missing.isEmpty()){
+                report.error(typeName + " " + name + " is missing " + missing);
+            }
+            if(type == GadgetType.PORTAL){
+                portals.add(new String[]{name, otherBoard, otherPortal});
+            }
+        }
+
+        @Override public void fire(String trigger, String action){
+            for(String name : new String[]{trigger, action}){
+                if(!gadgetNames.contains(name)){
+                    fires.add(new String[]{trigger, action, name});
+                }
+            }
+        }
+
+        @Override public void key(String keyName, String action){
+            keys.add(new String[]{keyName, action});
+        }
+    }
+
+    //helper method -- a gadget type as board files spell it
+    private static String typeName(GadgetType type){
+        switch(type){
+        case ABSORBER:
+            return "absorber";
+        case SQUAREBUMPER:
+            return "squareBumper";
+        case CIRCLEBUMPER:
+            return "circleBumper";
+        case TRIANGLEBUMPER:
+            return "triangleBumper";
+        case LEFTFLIPPER:
+            return "leftFlipper";
+        case RIGHTFLIPPER:
+            return "rightFlipper";
+        case PORTAL:
+            return "portal";
+        default:
+            return type.toString();
+        }
+    }
+
+    /**
+     * check one board file on its own. portals leading to other boards are
+     * not checked
+     *
+     * @param file the board file
+     * @return what was found
+     */
+    public static Report validate(File file){
+        Report report = new Report(file);
+        CompiledBoard compiled;
+        try{
+            compiled = StreamingBoardParser.compile(file);
+        }catch(IOException e){
+            report.error("unable to read: " + e.getMessage());
+            return report;
+        }catch(RuntimeException e){
+            report.error(e.getMessage());
+            return report;
+        }
+        Calls calls = new Calls(report);
+        compiled.replay(calls);
+        if(!report.isValid()){
+            return report;
+        }
+        Board board;
+        try{
+            board = compiled.build();
+        }catch(RuntimeException e){
+            report.error(e.getMessage());
+            return report;
+        }
+        checkBounds(board, report);
+        checkOverlaps(board, report);
+        for(String[] fire : calls.fires){
+            if(!calls.gadgetNames.contains(fire[2])){
+                report.warnings.add("fire trigger=" + fire[0] + " action=" + fire[1]
+                        + " names a missing gadget " + fire[2]);
+            }else{
+                report.warnings.add("fire trigger=" + fire[0] + " action=" + fire[1]
+                        + " comes before gadget " + fire[2] + " is defined, so it's ignored");
+            }
+        }
+        for(String[] key : calls.keys){
+            if(!calls.gadgetNames.contains(key[1])){
+                report.warnings.add("key " + key[0] + " acts on a missing gadget " + key[1]);
+            }
+        }
+        Set<String> portalNames = new HashSet<String>(board.getPortalNames());
+        for(String[] portal : calls.portals){
+            if(portal[2].isEmpty()){
+                report.warnings.add("portal " + portal[0] + " has no exit portal");
+            }else if(portal[1].isEmpty() || portal[1].equals(board.name())){
+                if(!portalNames.contains(portal[2])){
+                    report.warnings.add("portal " + portal[0] + " leads to " + portal[2]
+                            + ", which isn't a portal on this board");
+                }
+            }else{
+                report.remoteExits.add(portal);
+            }
+        }
+        if(board.name().isEmpty()){
+            report.error("the board has no name");
+        }else{
+            String contentHash;
+            try{
+                contentHash = BoardIndex.contentHash(file);
+            }catch(IOException e){
+                report.error("unable to read: " + e.getMessage());
+                return report;
+            }
+            report.entry = new BoardIndex.Entry(board.name(), file.getPath(), board.size(), calls.balls,
+                    calls.gadgetCounts, board.getPortalNames(), contentHash);
+        }
+        return report;
+    }
+
+    //helper method -- warn about gadgets that stick out of the board
+    private static void checkBounds(Board board, Report report){
+        int size = board.size();
+        for(Triggerable gadget : board.getGadgetList()){
+            if(gadget.x < 0 || gadget.y < 0 || gadget.x + gadget.w > size || gadget.y + gadget.h > size){
+                report.warnings.add("gadget " + gadget.name() + " at (" + gadget.x + "," + gadget.y
+                        + ") sticks out of the " + size + "x" + size + " board");
+            }
+        }
+    }
+
+    //helper method -- warn about each pair of gadgets that cover a common square
+    private static void checkOverlaps(Board board, Report report){
+        List<Triggerable> gadgets = board.getGadgetList();
+        ChunkIndex index = new ChunkIndex(CHUNK_SIZE);
+        for(int ii = 0; ii < gadgets.size(); ii ++){
+            Triggerable gadget = gadgets.get(ii);
+            index.insert(ii, gadget.x, gadget.y, gadget.x + gadget.w, gadget.y + gadget.h);
+        }
+        ChunkIndex.Items found = new ChunkIndex.Items();
+        for(int ii = 0; ii < gadgets.size(); ii ++){
+            Triggerable gadget = gadgets.get(ii);
+            found.clear();
+            index.query(gadget.x, gadget.y, gadget.x + gadget.w, gadget.y + gadget.h, found);
+            found.sort();
+            for(int kk = 0; kk < found.size(); kk ++){
+                Triggerable other = gadgets.get(found.get(kk));
+                //each pair is reported once, by its earlier gadget
+                if(found.get(kk) > ii && gadget.x < other.x + other.w && other.x < gadget.x + gadget.w
+                        && gadget.y < other.y + other.h && other.y < gadget.y + gadget.h){
+                    report.warnings.add("gadgets " + gadget.name() + " and " + other.name() + " overlap");
+                }
+            }
+        }
+    }
+
+    /**
+     * check board files in parallel, then check the portals that lead from
+     * one to another, and the board names they share
+     *
+     * @param files the board files
+     * @param threads the number of threads to check them on, must be > 0
+     * @return what was found, in the same order as files
+     * @throws InterruptedException if interrupted while waiting for the checks
+     */
+    public static List<Report> validateAll(List<File> files, int threads) throws InterruptedException {
+        if(threads <= 0){
+            throw new IllegalArgumentException("requires positive threads: received \"" + threads + "\"");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Report> reports = new ArrayList<Report>();
+        try{
+            List<Future<Report>> pending = new ArrayList<Future<Report>>();
+            for(final File file : files){
+                pending.add(pool.submit(new Callable<Report>(){
+                    @Override public Report call(){
+                        return validate(file);
+                    }
+                }));
+            }
+            for(Future<Report> report : pending){
+                try{
+                    reports.add(report.get());
+                }catch(ExecutionException e){
+                    //validate() reports its own failures, so this is a bug
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        }finally{
+            pool.shutdownNow();
+        }
+        Map<String, Report> byName = new HashMap<String, Report>();
+        for(Report report : reports){
+            if(report.entry == null){
+                continue;
+            }
+            Report first = byName.get(report.entry.name);
+            if(first != null){
+                report.error("board name " + report.entry.name + " is already used by " + first.file);
+            }else{
+                byName.put(report.entry.name, report);
+            }
+        }
+        for(Report report : reports){
+            if(report.entry == null){
+                continue;
+            }
+            for(String[] portal : report.remoteExits){
+                Report exitBoard = byName.get(portal[1]);
+                if(exitBoard == null){
+                    report.warnings.add("portal " + portal[0] + " leads to board " + portal[1]
+                            + ", which isn't in this batch");
+                }else if(!exitBoard.entry.portals.contains(portal[2])){
+                    report.warnings.add("portal " + portal[0] + " leads to " + portal[1] + "." + portal[2]
+                            + ", which isn't a portal on that board");
+                }
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * @param reports the results of validateAll()
+     * @return an index of the boards without errors
+     */
+    public static BoardIndex index(List<Report> reports){
+        BoardIndex index = new BoardIndex();
+        for(Report report : reports){
+            if(report.entry != null){
+                index.add(report.entry);
+            }
+        }
+        return index;
+    }
+
+    //helper method -- the board files a command line argument names
+    private static List<File> boardFiles(String path){
+        File file = new File(path);
+        if(!file.isDirectory()){
+            return Collections.singletonList(file);
+        }
+        List<File> boards = new ArrayList<File>();
+        File[] contents = file.listFiles();
+        if(contents != null){
+            for(File child : contents){
+                if(child.isFile() && child.getName().endsWith(".pb")){
+                    boards.add(child);
+                }
+            }
+        }
+        Collections.sort(boards);
+        return boards;
+    }
+
+    /**
+     * check board files and print what was found
+     *
+     * usage: BoardValidator [--threads N] [--index FILE] [--quiet] PATH...
+     *
+     * each PATH is a board file, or a directory whose .pb files are all
+     * checked. --threads is the number of threads to check them on, the number
+     * of processors by default. --index writes an index of the boards without
+     * errors to FILE. --quiet prints only boards with problems
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args){
+        Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
+        int threads = Runtime.getRuntime().availableProcessors();
+        String indexPath = "";
+        boolean quiet = false;
+        List<File> files = new ArrayList<File>();
+        String flag = "";
+        try{
+            while(!arguments.isEmpty()){
+                flag = arguments.remove();
+                if(flag.equals("--threads")){
+                    threads = Integer.parseInt(arguments.remove());
+                }else if(flag.equals("--index")){
+                    indexPath = arguments.remove();
+                }else if(flag.equals("--quiet")){
+                    quiet = true;
+                }else{
+                    files.addAll(boardFiles(flag));
+                }
+            }
+            if(files.isEmpty()){
+                throw new IllegalArgumentException("no board files given");
+            }
+            long start = System.nanoTime();
+            List<Report> reports = validateAll(files, threads);
+            long elapsed = System.nanoTime() - start;
+            int valid = 0;
+            int warned = 0;
+            for(Report report : reports){
+                if(report.isValid()){
+                    valid ++;
+                }
+                if(!report.warnings.isEmpty()){
+                    warned ++;
+                }
+                if(!quiet || !report.isValid() || !report.warnings.isEmpty()){
+                    System.out.println(report);
+                }
+            }
+            System.out.println(reports.size() + " boards checked in " + elapsed/1e6 + "ms on " + threads
+                    + " threads: " + valid + " valid, " + (reports.size() - valid) + " invalid, "
+                    + warned + " with warnings");
+            if(!indexPath.isEmpty()){
+                BoardIndex index = index(reports);
+                index.write(new File(indexPath));
+                System.out.println("indexed " + index.size() + " boards in " + indexPath);
+            }
+        } catch(NoSuchElementException e) {
+            System.err.println("missing argument for " + flag);
+            System.err.println("usage: BoardValidator [--threads N] [--index FILE] [--quiet] PATH...");
+        } catch(NumberFormatException e) {
+            System.err.println("unable to parse number for \"" + flag + "\"");
+        } catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: BoardValidator [--threads N] [--index FILE] [--quiet] PATH...");
+        } catch(InterruptedException e) {
+            System.err.println("interrupted");
+        } catch(IOException e) {
+            System.err.println("unable to write " + indexPath + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package BoardGrammar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import BoardGrammar.BoardValidator.Report;
+
+/**
+ * Tests the bulk board validator and the board index.
+ *
+ *  1. boards that don't parse, don't build, or share a name are invalid
+ *  2. gadgets out of bounds or overlapping, dangling fire and key lines, and
+ *      portals that lead nowhere, on the same board and across boards, are
+ *      warned about
+ *  3. the index holds the valid boards, and reads back as it was written
+ *  5. entries carry the hash of their board file, describe only a client
+ *      announcing that hash, and entries of indexes written without hashes
+ *      describe no client
+ *  4. checking on several threads finds the same as checking on one
+ */
+public class BoardValidatorTests {
+
+    //helper method -- write a board file
+    private static File write(File directory, String name, String... lines) throws IOException {
+        File file = new File(directory, name + ".pb");
+        StringBuilder text = new StringBuilder();
+        for(String line : lines){
+            text.append(line).append('\n');
+        }
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    //helper method -- true if some message contains the text
+    private static boolean mentions(List<String> messages, String text){
+        for(String message : messages){
+            if(message.contains(text)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //boards that don't parse or build are invalid, and good ones are indexed
+    @Test public void testResourceBoards() throws IOException {
+        Report good = BoardValidator.validate(new File(ParserTests.getResourcePath("client/resources/sampleBoard3.pb")));
+        assertTrue(good.isValid());
+        assertTrue(good.warnings().isEmpty());
+        assertEquals("ExampleB", good.entry().name);
+        assertEquals(2, good.entry().balls);
+        assertEquals(13, good.entry().numberOfGadgets());
+        Report unparsed = BoardValidator.validate(new File(ParserTests.getResourcePath("client/resources/BadFormattingNoSpace.pb")));
+        assertFalse(unparsed.isValid());
+        assertNull(unparsed.entry());
+        Report duplicates = BoardValidator.validate(new File(ParserTests.getResourcePath("client/resources/BadFormattingDuplicateNames.pb")));
+        assertFalse(duplicates.isValid());
+        Report incomplete = BoardValidator.validate(new File(ParserTests.getResourcePath("client/resources/BadFormattingEndBeforeLineEnd.pb")));
+        assertTrue(mentions(incomplete.errors(), "missing [y]"));
+    }
+
+    //problems on a single board are warnings
+    @Test public void testWarnings() throws IOException {
+        File directory = ParserTests.temporaryDirectory();
+        try{
+            Report report = BoardValidator.validate(write(directory, "warn",
+                    "board name=Warn",
+                    "fire trigger=A action=B",
+                    "squareBumper name=A x=1 y=1",
+                    "squareBumper name=B x=19 y=20",
+                    "absorber name=Abs x=0 y=5 width=4 height=2",
+                    "circleBumper name=C x=3 y=6",
+                    "leftFlipper name=F x=10 y=10 orientation=0",
+                    "triangleBumper name=T x=11 y=11 orientation=90",
+                    "squareBumper name=D x=12 y=10",
+                    "fire trigger=A action=Nothing",
+                    "keydown key=space action=Missing",
+                    "keyup key=space action=A",
+                    "portal name=P x=15 y=15 otherPortal=Q"));
+            assertTrue(report.isValid());
+            List<String> warnings = report.warnings();
+            assertTrue(mentions(warnings, "comes before gadget A"));
+            assertTrue(mentions(warnings, "gadget B at (19,20) sticks out"));
+            assertTrue(mentions(warnings, "gadgets Abs and C overlap"));
+            assertTrue(mentions(warnings, "gadgets F and T overlap"));
+            assertFalse(mentions(warnings, "F and D"));
+            assertTrue(mentions(warnings, "missing gadget Nothing"));
+            assertTrue(mentions(warnings, "missing gadget Missing"));
+            assertTrue(mentions(warnings, "portal P leads to Q"));
+            assertEquals(8, warnings.size());
+        }finally{
+            ParserTests.delete(directory);
+        }
+    }
+
+    //portals between boards, and boards sharing a name
+    @Test public void testAcrossBoards() throws IOException, InterruptedException {
+        File directory = ParserTests.temporaryDirectory();
+        try{
+            List<File> files = Arrays.asList(
+                    write(directory, "a",
+                            "board name=Alpha",
+                            "portal name=ToBeta x=1 y=1 otherBoard=Beta otherPortal=FromAlpha",
+                            "portal name=ToGone x=3 y=1 otherBoard=Beta otherPortal=Gone",
+                            "portal name=ToGamma x=5 y=1 otherBoard=Gamma otherPortal=X"),
+                    write(directory, "b",
+                            "board name=Beta",
+                            "portal name=FromAlpha x=1 y=1 otherBoard=Alpha otherPortal=ToBeta"),
+                    write(directory, "c",
+                            "board name=Beta"));
+            List<Report> reports = BoardValidator.validateAll(files, 2);
+            assertTrue(reports.get(0).isValid());
+            assertEquals(2, reports.get(0).warnings().size());
+            assertTrue(mentions(reports.get(0).warnings(), "Beta.Gone"));
+            assertTrue(mentions(reports.get(0).warnings(), "board Gamma"));
+            assertTrue(reports.get(1).isValid());
+            assertTrue(reports.get(1).warnings().isEmpty());
+            assertFalse(reports.get(2).isValid());
+            BoardIndex index = BoardValidator.index(reports);
+            assertEquals(2, index.size());
+            assertEquals(Arrays.asList("ToBeta", "ToGone", "ToGamma"), index.portalNames("Alpha"));
+            assertEquals(files.get(1).getPath(), index.get("Beta").file);
+        }finally{
+            ParserTests.delete(directory);
+        }
+    }
+
+    //the index reads back as it was written
+    @Test public void testIndexRoundTrip() throws IOException, InterruptedException {
+        File resources = new File(ParserTests.getResourcePath("client/resources/sampleBoard1.pb")).getParentFile();
+        List<File> files = new ArrayList<File>();
+        for(File file : resources.listFiles()){
+            if(file.getName().endsWith(".pb")){
+                files.add(file);
+            }
+        }
+        BoardIndex index = BoardValidator.index(BoardValidator.validateAll(files, 3));
+        assertTrue(index.size() > 0);
+        File directory = ParserTests.temporaryDirectory();
+        try{
+            File indexFile = new File(directory, "index.txt");
+            index.write(indexFile);
+            BoardIndex read = BoardIndex.read(indexFile);
+            assertEquals(index.size(), read.size());
+            for(BoardIndex.Entry entry : index.entries()){
+                assertEquals(entry.toString(), read.get(entry.name).toString());
+            }
+            assertNull(read.portalNames("no such board"));
+        }finally{
+            ParserTests.delete(directory);
+        }
+    }
+
+    //entries describe the board file they were made from, and no other
+    @Test public void testIndexContentHash() throws IOException, InterruptedException {
+        File directory = ParserTests.temporaryDirectory();
+        try{
+            File alpha = write(directory, "a", "board name=Alpha", "portal name=P x=1 y=1 otherPortal=P");
+            File edited = write(directory, "b", "board name=Alpha", "portal name=Q x=1 y=1 otherPortal=Q");
+            BoardIndex index = BoardValidator.index(BoardValidator.validateAll(Arrays.asList(alpha), 1));
+            String hash = BoardIndex.contentHash(alpha);
+            assertEquals(64, hash.length());
+            assertEquals(hash, index.get("Alpha").contentHash);
+            assertTrue(index.describes("Alpha", hash));
+            assertFalse(index.describes("Alpha", BoardIndex.contentHash(edited)));
+            assertFalse(index.describes("Alpha", null));
+            assertFalse(index.describes("Beta", hash));
+            File indexFile = new File(directory, "index.txt");
+            index.write(indexFile);
+            assertTrue(BoardIndex.read(indexFile).describes("Alpha", hash));
+            //an index from before entries had hashes
+            Files.write(indexFile.toPath(), "Alpha\ta.pb\t20\t0\tportal=1\tP\n".getBytes(StandardCharsets.UTF_8));
+            BoardIndex old = BoardIndex.read(indexFile);
+            assertEquals(Arrays.asList("P"), old.portalNames("Alpha"));
+            assertEquals("", old.get("Alpha").contentHash);
+            assertFalse(old.describes("Alpha", hash));
+            assertFalse(old.describes("Alpha", ""));
+        }finally{
+            ParserTests.delete(directory);
+        }
+    }
+
+    //several threads find the same as one
+    @Test public void testParallelSameAsSequential() throws IOException, InterruptedException {
+        File resources = new File(ParserTests.getResourcePath("client/resources/sampleBoard1.pb")).getParentFile();
+        List<File> files = new ArrayList<File>();
+        for(File file : resources.listFiles()){
+            if(file.getName().endsWith(".pb")){
+                files.add(file);
+            }
+        }
+        List<Report> sequential = BoardValidator.validateAll(files, 1);
+        List<Report> parallel = BoardValidator.validateAll(files, 4);
+        assertEquals(sequential.size(), parallel.size());
+        for(int ii = 0; ii < sequential.size(); ii ++){
+            assertEquals(sequential.get(ii).toString(), parallel.get(ii).toString());
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package BoardGrammar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import BoardGrammar.OutputProcessor.GadgetType;
+import client.Board;
+import sim.Absorber;
+import sim.Ball;
+import sim.CircleBumper;
+import sim.Flipper;
+import sim.Flipper.FlipperType;
+import sim.SquareBumper;
+import sim.TriangleBumper;
+
+/**
+ * CompiledBoard
+ *
+ * a board file after parsing, as the sequence of board construction calls
+ * that the file's lines make, in file order, encoded compactly in binary.
+ * building a board from it makes exactly the calls that parsing the file
+ * would, without touching the lexer or parser, so the two give the same board.
+ *
+ * compiled boards can be written to a file and read back through a memory
+ * mapping. the file format is
+ *      int MAGIC, int FORMAT_VERSION, int length, long crc, byte[length] calls
+ * where crc is the CRC-32 of the calls. all numbers are big endian, and
+ * strings are an int length followed by that many bytes of UTF-8.
+ *
+ * Thread safety argument:
+ *      a CompiledBoard is immutable once made. replay() reads through its own
+ *      view of the calls, so any number of threads may build from one at once
+ */
+public class CompiledBoard {
+
+    public static final int MAGIC = 0x50424331;
+    //"PBC1"
+    public static final int FORMAT_VERSION = 1;
+    //changes whenever the encoding of the calls changes
+    private static final int HEADER_BYTES = 20;
+
+    private static final byte BOARD = 1;
+    private static final byte BALL = 2;
+    private static final byte GADGET = 3;
+    private static final byte FIRE = 4;
+    private static final byte KEY = 5;
+    //the kinds of call
+
+    private static final int ABSENT = Integer.MIN_VALUE;
+    //stands in for a gadget field that the file didn't give
+
+    private final ByteBuffer calls;
+    //the encoded calls, from position 0 to the limit. never read through
+    //directly -- replay() reads through a duplicate
+
+    private CompiledBoard(ByteBuffer calls){
+        this.calls = calls;
+    }
+
+    /**
+     * the board construction calls that a board file makes, one per line.
+     * gadget fields the file didn't give are null
+     */
+    interface Calls {
+        void board(String name, double gravity, double friction1, double friction2, int size);
+        void ball(double x, double y, double xVel, double yVel);
+        void gadget(GadgetType type, String name, Integer x, Integer y, Integer w, Integer h,
+                Integer angle, String otherBoard, String otherPortal);
+        void fire(String trigger, String action);
+        void key(String keyName, String action);
+    }
+
+    /**
+     * records the calls made while a board file is parsed
+     */
+    static class Recorder implements Calls {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        //writes to a byte array never throw, so the IOExceptions that
+        //DataOutputStream declares are rethrown unchecked
+
+        @Override public void board(String name, double gravity, double friction1, double friction2, int size){
+            try{
+                out.writeByte(BOARD);
+                writeString(name);
+                out.writeDouble(gravity);
+                out.writeDouble(friction1);
+                out.writeDouble(friction2);
+                out.writeInt(size);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override public void ball(double x, double y, double xVel, double yVel){
+            try{
+                out.writeByte(BALL);
+                out.writeDouble(x);
+                out.writeDouble(y);
+                out.writeDouble(xVel);
+                out.writeDouble(yVel);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override public void gadget(GadgetType type, String name, Integer x, Integer y, Integer w, Integer h,
+                Integer angle, String otherBoard, String otherPortal){
+            try{
+                out.writeByte(GADGET);
+                out.writeByte(type.ordinal());
+                writeString(name);
+                for(Integer field : new Integer[]{x, y, w, h, angle}){
+                    out.writeInt(field == null ? ABSENT : field);
+                }
+                writeString(otherBoard);
+                writeString(otherPortal);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override public void fire(String trigger, String action){
+            try{
+                out.writeByte(FIRE);
+                writeString(trigger);
+                writeString(action);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override public void key(String keyName, String action){
+            try{
+                out.writeByte(KEY);
+                writeString(keyName);
+                writeString(action);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+
+        CompiledBoard finish(){
+            return new CompiledBoard(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+    }
+
+    /**
+     * make the board these calls describe, and build its distance field, as
+     * OutputProcessor.parse() does
+     *
+     * @return the board
+     * @throws RuntimeException under the same conditions that parsing the
+     *          original file would, such as a gadget defined before the board
+     *          or two gadgets with the same name
+     */
+    public Board build(){
+        Builder builder = new Builder();
+        replay(builder);
+        builder.board.buildDistanceField();
+        return builder.board;
+    }
+
+    /**
+     * make these calls, in order, on some other receiver of them
+     *
+     * @param receiver the receiver
+     */
+    void replay(Calls receiver){
+        ByteBuffer in = calls.duplicate();
+        in.rewind();
+        try{
+            while(in.hasRemaining()){
+                byte call = in.get();
+                switch(call){
+                case BOARD:
+                    String boardName = readString(in);
+                    double gravity = in.getDouble();
+                    double friction1 = in.getDouble();
+                    double friction2 = in.getDouble();
+                    receiver.board(boardName, gravity, friction1, friction2, in.getInt());
+                    break;
+                case BALL:
+                    double x = in.getDouble();
+                    double y = in.getDouble();
+                    double xVel = in.getDouble();
+                    receiver.ball(x, y, xVel, in.getDouble());
+                    break;
+                case GADGET:
+                    GadgetType type = GadgetType.values()[in.get()];
+                    String name = readString(in);
+                    Integer gadgetX = readField(in);
+                    Integer gadgetY = readField(in);
+                    Integer w = readField(in);
+                    Integer h = readField(in);
+                    Integer angle = readField(in);
+                    String otherBoard = readString(in);
+                    receiver.gadget(type, name, gadgetX, gadgetY, w, h, angle, otherBoard, readString(in));
+                    break;
+                case FIRE:
+                    String trigger = readString(in);
+                    receiver.fire(trigger, readString(in));
+                    break;
+                case KEY:
+                    String keyName = readString(in);
+                    receiver.key(keyName, readString(in));
+                    break;
+                default:
+                    throw new IllegalStateException("unknown call in compiled board: " + call);
+                }
+            }
+        }catch(BufferUnderflowException e){
+            throw new IllegalStateException("truncated compiled board", e);
+        }
+    }
+
+    //makes the board as the calls are replayed
+    private static class Builder implements Calls {
+        private Board board = null;
+
+        @Override public void board(String name, double gravity, double friction1, double friction2, int size){
+            board = new Board(name, gravity, friction1, friction2, size);
+        }
+
+        @Override public void ball(double x, double y, double xVel, double yVel){
+            board.add(new Ball(x, y, xVel, yVel));
+        }
+
+        @Override public void gadget(GadgetType type, String name, Integer x, Integer y, Integer w, Integer h,
+                Integer angle, String otherBoard, String otherPortal){
+            switch(type){
+            case ABSORBER:
+                board.add(new Absorber(x,y,w,h,name));
+                break;
+            case SQUAREBUMPER:
+                board.add(new SquareBumper(x,y,name));
+                break;
+            case CIRCLEBUMPER:
+                board.add(new CircleBumper(x,y,name));
+                break;
+            case TRIANGLEBUMPER:
+                board.add(new TriangleBumper(x,y,angle,name));
+                break;
+            case LEFTFLIPPER:
+                board.add(new Flipper(x,y,FlipperType.LEFT,angle,name));
+                break;
+            case RIGHTFLIPPER:
+                board.add(new Flipper(x,y,FlipperType.RIGHT,angle,name));
+                break;
+            case PORTAL:
+                board.addPortal(x, y, name, otherBoard, otherPortal);
+                break;
+            default:
+                throw new IllegalStateException("unrecognized gadget type in compiled board: " + type);
+            }
+        }
+
+        @Override public void fire(String trigger, String action){
+            board.createTriggerLink(trigger, action);
+        }
+
+        @Override public void key(String keyName, String action){
+            board.bindKey(keyName, action);
+        }
+    }
+
+    private static Integer readField(ByteBuffer in){
+        int field = in.getInt();
+        return field == ABSENT ? null : field;
+    }
+
+    private static String readString(ByteBuffer in){
+        byte[] utf8 = new byte[in.getInt()];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of bytes the calls take up, not counting the header
+     */
+    public int length(){
+        return calls.limit();
+    }
+
+    /**
+     * write this compiled board to a file, replacing its contents
+     *
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        ByteBuffer in = calls.duplicate();
+        in.rewind();
+        byte[] body = new byte[in.remaining()];
+        in.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        OutputStream stream = new FileOutputStream(file);
+        try{
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(body.length);
+            out.writeLong(crc.getValue());
+            out.write(body);
+            out.flush();
+        }finally{
+            stream.close();
+        }
+    }
+
+    /**
+     * read a compiled board from a file written by write(), through a memory
+     * mapping of the file
+     *
+     * @param file the file to read
+     * @return the compiled board
+     * @throws IOException if the file can't be read, isn't a compiled board in
+     *          this version of the format, or is damaged
+     */
+    public static CompiledBoard read(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try{
+            long size = channel.size();
+            if(size < HEADER_BYTES || size > Integer.MAX_VALUE){
+                throw new IOException("not a compiled board: " + file);
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if(mapped.getInt() != MAGIC){
+                throw new IOException("not a compiled board: " + file);
+            }
+            int version = mapped.getInt();
+            if(version != FORMAT_VERSION){
+                throw new IOException("compiled board format " + version + " is not "
+                        + FORMAT_VERSION + ": " + file);
+            }
+            int length = mapped.getInt();
+            long expected = mapped.getLong();
+            if(length != size - HEADER_BYTES){
+                throw new IOException("truncated compiled board: " + file);
+            }
+            ByteBuffer body = mapped.slice();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if(crc.getValue() != expected){
+                throw new IOException("damaged compiled board: " + file);
+            }
+            return new CompiledBoard(body);
+        }finally{
+            //the mapping stays valid after the channel is closed
+            channel.close();
+        }
+    }
+}
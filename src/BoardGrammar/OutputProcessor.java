@@ -1,30 +1,27 @@
 package BoardGrammar;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.util.List;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import BoardGrammar.BoardGrammarParser.FltContext;
 import BoardGrammar.BoardGrammarParser.FltvarContext;
 import BoardGrammar.BoardGrammarParser.IntvarContext;
 import BoardGrammar.BoardGrammarParser.KeydefContext;
 import BoardGrammar.BoardGrammarParser.WordvarContext;
 import client.Board;
-import sim.Absorber;
-import sim.Ball;
-import sim.CircleBumper;
-import sim.Flipper;
-import sim.SquareBumper;
-import sim.TriangleBumper;
-import sim.Flipper.FlipperType;
 
 
 /**
@@ -39,7 +36,7 @@ public class OutputProcessor {
     /**The various types of gadgets to be parsed from the board
      *
      */
-    private enum GadgetType{
+    enum GadgetType{
         ABSORBER, SQUAREBUMPER, CIRCLEBUMPER, TRIANGLEBUMPER, LEFTFLIPPER, RIGHTFLIPPER, PORTAL, INVALID}
     
     /**
@@ -52,8 +49,77 @@ public class OutputProcessor {
      */
     
     public static Board parse(File file) throws FileNotFoundException, IOException{
+        return compile(file).build();
+    }
+    
+    /**
+     * parses the board file, going through a cache of compiled boards
+     * @param file the file to parse into the board
+     * @param cache the cache to look the file up in, or null to parse it
+     * @return board, the board generated from the file
+     * @throws FileNotFoundException in case the file is missing
+     * @throws IOException in case file is missing or unreadable
+     */
+    public static Board parse(File file, BoardCache cache) throws FileNotFoundException, IOException{
+        if(cache == null){
+            return parse(file);
+        }
+        return cache.load(file);
+    }
+    
+    /**
+     * parses the board file into the calls that construct its board, without
+     * making the board
+     * @param file the file to parse
+     * @return the compiled board
+     * @throws FileNotFoundException in case the file is missing
+     * @throws IOException in case file is missing or unreadable
+     */
+    public static CompiledBoard compile(File file) throws FileNotFoundException, IOException{
+        return compile(Files.readAllBytes(file.toPath()));
+    }
+    
+    /**
+     * parses the board file into the calls that construct its board, going
+     * through a cache of compiled boards
+     * @param file the file to parse
+     * @param cache the cache to look the file up in, or null to parse it
+     * @return the compiled board
+     * @throws FileNotFoundException in case the file is missing
+     * @throws IOException in case file is missing or unreadable
+     */
+    public static CompiledBoard compile(File file, BoardCache cache) throws FileNotFoundException, IOException{
+        if(cache == null){
+            return compile(file);
+        }
+        return cache.compile(file);
+    }
+    
+    /**
+     * parses the contents of a board file into the calls that construct its board,
+     * going through a cache of compiled boards
+     * @param contents the bytes of the file, in the platform's default charset
+     * @param cache the cache to look the contents up in, or null to parse them
+     * @return the compiled board
+     * @throws IOException in case the contents can't be decoded
+     */
+    public static CompiledBoard compile(byte[] contents, BoardCache cache) throws IOException{
+        if(cache == null){
+            return compile(contents);
+        }
+        return cache.compile(contents);
+    }
+    
+    /**
+     * parses the contents of a board file into the calls that construct its board
+     * @param contents the bytes of the file, in the platform's default charset
+     * @return the compiled board
+     * @throws IOException in case the contents can't be decoded
+     */
+    static CompiledBoard compile(byte[] contents) throws IOException{
         //lexes a bunch of strings to make a set of tokens
-        CharStream stream = new ANTLRInputStream(new FileReader(file));
+        CharStream stream = new ANTLRInputStream(
+                new InputStreamReader(new ByteArrayInputStream(contents)));
         BoardGrammarLexer lexer = new BoardGrammarLexer(stream);
         lexer.reportErrorsAsExceptions();
         TokenStream tokens = new CommonTokenStream(lexer);
@@ -65,15 +131,14 @@ public class OutputProcessor {
         CreateBoardGrammarListener boardListener = new CreateBoardGrammarListener();
         treeWalker.walk(boardListener, tree);
         
-        return boardListener.getBoard();
-    
+        return boardListener.getCompiledBoard();
     }
     /**
      * Given a string gadget type, returns the GadgetType (enum) type
      * @param type, the String type of gadget
      * @return GadgetType gadget type, or invalid if type is not a valid gadget type.  
      */
-    private static GadgetType convertType(String type){
+    static GadgetType convertType(String type){
         
         for(GadgetType gType : GadgetType.values()){
             if(type.equalsIgnoreCase("" + gType)){
@@ -86,12 +151,12 @@ public class OutputProcessor {
     
     /**
      * Listens to the parse tree as tree is walked
-     * Creates obstacles based on the tokens on the board
+     * Records the calls that create the board and the obstacles on it
      * 
      *
      */
     private static class CreateBoardGrammarListener extends BoardGrammarBaseListener{
-        private Board board;
+        private final CompiledBoard.Recorder board = new CompiledBoard.Recorder();
         
         /**
          * When exiting a board token
@@ -104,6 +169,7 @@ public class OutputProcessor {
             double friction1 = Board.DEFAULT_FRICTION1;
             double friction2 = Board.DEFAULT_FRICTION2;
             double gravity = Board.DEFAULT_GRAVITY;
+            int size = Board.DEFAULT_SIZE;
             if(ctx.namevar() != null){
                 boardName = ctx.namevar().WORD().getText();
             }
@@ -116,9 +182,23 @@ public class OutputProcessor {
                     friction1 = Double.parseDouble(fvctx.flt().getText());
                 }else if(field.equals("friction2")){
                     friction2 = Double.parseDouble(fvctx.flt().getText());
+                }else if(field.equals("size")){
+                    size = parseInt(fvctx.flt());
                 }
             }
-            board = new Board(boardName, gravity, friction1, friction2);
+            board.board(boardName, gravity, friction1, friction2, size);
+        }
+        
+        //the integer value of a number, which is reported where it is, as
+        //StreamingBoardParser does, if it has a fraction
+        private static int parseInt(FltContext value){
+            try{
+                return Integer.parseInt(value.getText());
+            }catch(NumberFormatException e){
+                Token start = value.getStart();
+                throw new BoardFormatException(start.getLine(), start.getCharPositionInLine(),
+                        "not an integer: " + value.getText());
+            }
         }
         
         /**
@@ -144,7 +224,7 @@ public class OutputProcessor {
                     yVel = Double.parseDouble(fvctx.flt().getText());
                 }
             }
-            board.add(new Ball(x,y,xVel,yVel));
+            board.ball(x,y,xVel,yVel);
         }
         
         /**
@@ -190,34 +270,12 @@ public class OutputProcessor {
                     throw new RuntimeException("invalid variable assignment: " + field);
                 }
             }
-            //checks to see which type of gadget the given gadget is.
-            switch(type){
-            case ABSORBER:
-                board.add(new Absorber(x,y,w,h,name));
-                break;
-            case SQUAREBUMPER:
-                board.add(new SquareBumper(x,y,name));
-                break;
-            case CIRCLEBUMPER:
-                board.add(new CircleBumper(x,y,name));
-                break;
-            case TRIANGLEBUMPER:
-                board.add(new TriangleBumper(x,y,angle,name));
-                break;
-            case LEFTFLIPPER:
-                board.add(new Flipper(x,y,FlipperType.LEFT,angle,name));
-                break;
-            case RIGHTFLIPPER:
-                board.add(new Flipper(x,y,FlipperType.RIGHT,angle,name));
-                break;
-            case PORTAL:
-                board.addPortal(x, y, name, otherBoard, otherPortal);
-                break;
-                default:
-                    throw new IllegalArgumentException("Unrecognized gadget type: " + ctx.WORD().getText());
+            //checks that the gadget is of a known type. the gadget itself is
+            //made when the compiled board is built
+            if(type == GadgetType.INVALID){
+                throw new IllegalArgumentException("Unrecognized gadget type: " + ctx.WORD().getText());
             }
-            
-            
+            board.gadget(type, name, x, y, w, h, angle, otherBoard, otherPortal);
         }
 
 
@@ -229,7 +287,7 @@ public class OutputProcessor {
         public void exitFireInstance(BoardGrammarParser.FireInstanceContext ctx) {
             String action = ctx.wordvar().WORD(1).getText();
             String trigger = ctx.trigger().WORD().getText();
-            board.createTriggerLink(trigger,action);
+            board.fire(trigger,action);
         }
         /**
          * When exiting a key-definition token
@@ -250,15 +308,15 @@ public class OutputProcessor {
                 }
             }
             String keyName = pressType + ":" + key;
-            board.bindKey(keyName, action);
+            board.key(keyName, action);
         }
         
         /**
-         * Returns the board created from the parsed file
-         * @return board, the board parsed from the file
+         * Returns the calls that create the board from the parsed file
+         * @return the compiled board, recorded from the file
          */
-        public Board getBoard(){
-            return this.board;
+        public CompiledBoard getCompiledBoard(){
+            return board.finish();
         }
     }   
 }
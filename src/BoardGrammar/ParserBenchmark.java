@@ -0,0 +1,117 @@
+package BoardGrammar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * ParserBenchmark
+ *
+ * times one of the board file parsers, OutputProcessor's ANTLR parser or
+ * StreamingBoardParser, compiling a board file. it reports the cold start time,
+ * which is the first compile in the JVM and so includes loading and
+ * initializing the parser's classes, and then the throughput of repeated
+ * compiles once the JIT has warmed up.
+ *
+ * only one parser is timed per run, so that the cold start isn't shared with
+ * the other parser. run it once for each parser to compare them.
+ *
+ * Thread safety argument:
+ *      only used from main()
+ */
+public class ParserBenchmark {
+
+    //a parser under test
+    private interface Parser {
+        CompiledBoard compile(File file) throws IOException;
+    }
+
+    private static final Parser ANTLR = new Parser(){
+        @Override public CompiledBoard compile(File file) throws IOException {
+            return OutputProcessor.compile(file);
+        }
+    };
+    private static final Parser STREAMING = new Parser(){
+        @Override public CompiledBoard compile(File file) throws IOException {
+            return StreamingBoardParser.compile(file);
+        }
+    };
+
+    private static volatile int sink;
+    //keeps the JIT from dropping compiles whose result is never used
+
+    /**
+     * time a parser on a board file, printing the results
+     *
+     * usage: ParserBenchmark [--parser antlr|streaming] [--iterations N] FILE
+     *
+     * --parser is the parser to time, antlr by default. --iterations is the
+     * number of compiles timed for throughput, 2000 by default. as many again
+     * are run first to warm up
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args){
+        Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
+        Parser parser = ANTLR;
+        String parserName = "antlr";
+        int iterations = 2000;
+        String filepath = "";
+        String flag = "";
+        try{
+            while(!arguments.isEmpty()){
+                flag = arguments.remove();
+                if(flag.equals("--parser")){
+                    parserName = arguments.remove();
+                    if(parserName.equals("antlr")){
+                        parser = ANTLR;
+                    }else if(parserName.equals("streaming")){
+                        parser = STREAMING;
+                    }else{
+                        throw new IllegalArgumentException("unknown parser: " + parserName);
+                    }
+                }else if(flag.equals("--iterations")){
+                    iterations = Integer.parseInt(arguments.remove());
+                    if(iterations <= 0){
+                        throw new IllegalArgumentException("requires positive iterations: received \"" + iterations + "\"");
+                    }
+                }else{
+                    filepath = flag;
+                }
+            }
+            if(filepath.isEmpty()){
+                throw new IllegalArgumentException("no board file given");
+            }
+            File file = new File(filepath);
+            long start = System.nanoTime();
+            sink += parser.compile(file).length();
+            long cold = System.nanoTime() - start;
+            for(int ii = 0; ii < iterations; ii ++){
+                sink += parser.compile(file).length();
+            }
+            start = System.nanoTime();
+            for(int ii = 0; ii < iterations; ii ++){
+                sink += parser.compile(file).length();
+            }
+            long warm = System.nanoTime() - start;
+            double megabytes = file.length()*(double)iterations/(1 << 20);
+            System.out.println(parserName + " " + file.getName() + " (" + file.length() + " bytes)");
+            System.out.println("  cold start: " + cold/1e6 + "ms");
+            System.out.println("  warm: " + warm/1e3/iterations + "us per compile, "
+                    + megabytes/(warm/1e9) + " MB/s");
+        } catch(NoSuchElementException e) {
+            System.err.println("missing argument for " + flag);
+            System.err.println("usage: ParserBenchmark [--parser antlr|streaming] [--iterations N] FILE");
+        } catch(NumberFormatException e) {
+            System.err.println("unable to parse number for \"" + flag + "\"");
+        } catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: ParserBenchmark [--parser antlr|streaming] [--iterations N] FILE");
+        } catch(IOException e) {
+            System.err.println("unable to read " + filepath + ": " + e.getMessage());
+        }
+    }
+}
@@ -10,8 +10,10 @@ import sim.Triggerable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 /**
@@ -30,6 +32,8 @@ import java.util.List;
  *      files with endlines consisting of all spaces, so I added a test case and fixed 
  *      the bug).  
  *  9. files containing portals
+ *  10. board sizes, which must be integers. a fractional size is reported at
+ *      its position
  * 
  * Specific test cases explained above each test method.  
  */
@@ -37,6 +41,11 @@ import java.util.List;
 @SuppressWarnings("unused")
 public class ParserTests {
     
+    //the parser under test. subclasses override this to run these tests
+    //against another parser
+    protected Board parse(File file) throws IOException {
+        return OutputProcessor.parse(file);
+    }
 
     //testing our keybinding implementation
     @Test
@@ -44,7 +53,7 @@ public class ParserTests {
         try {
             File testBoardFile = new File(
                     getResourcePath("client/resources/keybindTest.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
         } catch (IOException e) {
             System.err.println("Test passed because of IOException");
         }
@@ -55,7 +64,7 @@ public class ParserTests {
         try {
             File testBoardFile = new File(
                     getResourcePath("client/resources/sampleBoard1.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertEquals(testBoard.name(), "sampleBoard1");
             assertTrue(testBoard.numberOfBalls() == 1);
             assertTrue(testBoard.numberOfGadgets() == 31);
@@ -73,7 +82,7 @@ public class ParserTests {
         try {
             File testBoardFile = new File(
                     getResourcePath("client/resources/sampleBoard2-1.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertEquals(testBoard.name(), "sampleBoard2_1");
             assertTrue(testBoard.numberOfBalls() == 1);
             assertTrue(testBoard.numberOfGadgets() == 27);
@@ -88,7 +97,7 @@ public class ParserTests {
         try {
             File testBoardFile = new File(
                     getResourcePath("client/resources/sampleBoard2-2.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertEquals(testBoard.name(), "sampleBoard2_2");
             assertTrue(testBoard.numberOfBalls() == 0);
             assertTrue(testBoard.numberOfGadgets() == 27);
@@ -104,7 +113,7 @@ public class ParserTests {
         try {
             File testBoardFile = new File(
                     getResourcePath("client/resources/badSpacing.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertEquals(testBoard.name(), "badSpacing");
             assertTrue(testBoard.numberOfBalls() == 0);
             assertTrue(testBoard.numberOfGadgets() == 28);
@@ -119,7 +128,7 @@ public class ParserTests {
         try {
             File testBoardFile = new File(
                     getResourcePath("client/resources/sampleBoard3.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertEquals(testBoard.name(), "ExampleB");
             assertTrue(testBoard.numberOfBalls() == 2);
             assertTrue(testBoard.numberOfGadgets() == 13);
@@ -136,7 +145,7 @@ public class ParserTests {
         try {
             testBoardFile = new File(
                     getResourcePath("client/resources/sampleBoard4.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertEquals(testBoard.name(), "ExampleA");
             assertTrue(testBoard.numberOfBalls() == 1);
             assertTrue(testBoard.numberOfGadgets() == 9);
@@ -151,7 +160,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/BadFormattingNoSpace.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(false);
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
@@ -165,7 +174,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/sampleBoard3.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(testBoard.numberOfBalls() == 2);
             assertTrue(testBoard.numberOfGadgets() == 13);
             assertTrue(testBoard.numberOfTriggerLinks() == 9);
@@ -178,7 +187,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/BadFormattingBoardLines.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(false);
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
@@ -191,7 +200,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/BadFormattingDuplicateNames.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(false);
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
@@ -205,7 +214,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/BadFormattingNewline.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(false);
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
@@ -219,7 +228,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/GoodFormattingUnspecifiedBoardParams.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
         }
@@ -229,7 +238,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/BadFormattingFirstLineNotBoard.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(false);
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
@@ -242,7 +251,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/GoodFormattingPhysParams.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(testBoard.gravity() == 12.3652);
             assertTrue(testBoard.friction1() == -0.03333);
             assertTrue(testBoard.friction2() == 1245);
@@ -255,7 +264,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/GoodFormattingNoComponents.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
         }
@@ -265,7 +274,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/GoodFormattingTripleDigit.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(testBoard.toString().contains("square bumper(234,23)"));
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
@@ -276,7 +285,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/GoodFormattingFloats.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
         }
@@ -287,7 +296,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/BadFormattingEndBeforeLineEnd.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(false);
         } catch(IOException e) {
             System.err.println("Test passed because of IOException");
@@ -302,7 +311,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/endsOnSpaces.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(testBoard.numberOfBalls() == 2);
             assertTrue(testBoard.numberOfGadgets() == 13);
             assertTrue(testBoard.numberOfTriggerLinks() == 9);
@@ -316,7 +325,7 @@ public class ParserTests {
         try{
             File testBoardFile = new File(
                     getResourcePath("client/resources/portalBoard.pb"));
-            Board testBoard = OutputProcessor.parse(testBoardFile);
+            Board testBoard = parse(testBoardFile);
             assertTrue(testBoard.numberOfBalls() == 1);
             assertTrue(testBoard.numberOfGadgets() == 10);
             assertTrue(testBoard.numberOfTriggerLinks() == 1);
@@ -329,6 +338,67 @@ public class ParserTests {
         }
     }
     
+    //a board's size sets the length of its walls. a size with a fraction is
+    //an error at the value, not a crash
+    @Test
+    public void testBoardSize() throws IOException {
+        File file = File.createTempFile("size", ".pb");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "board name=Big size=30\nsquareBumper name=A x=25 y=28\n".getBytes("UTF-8"));
+        Board big = parse(file);
+        assertEquals(30, big.size());
+        assertEquals(1, big.numberOfGadgets());
+        Files.write(file.toPath(), "board name=Big size=20.0\n".getBytes("UTF-8"));
+        try{
+            parse(file);
+            assertTrue(false);
+        }catch(BoardFormatException e){
+            assertEquals(1, e.line());
+            assertEquals(20, e.column());
+        }
+    }
+
+    /**
+     * @return a new board parsed from the generic test board file, with its
+     *          balls saved as the configuration it restarts from
+     * @throws IOException if the file can't be found or read
+     */
+    public static Board genericTestBoard() throws IOException {
+        Board board = OutputProcessor.parse(new File(getResourcePath("client/resources/genericTestBoard.pb")));
+        board.saveConfiguration();
+        return board;
+    }
+
+    /**
+     * @param lines the lines of a board file
+     * @return the file compiled by StreamingBoardParser
+     * @throws IOException never, since the file is read from memory
+     */
+    public static CompiledBoard compile(String... lines) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for(String line : lines){
+            text.append(line).append('\n');
+        }
+        return StreamingBoardParser.compile(new StringReader(text.toString()));
+    }
+
+    //helper method -- a fresh empty directory, for tests that write files
+    static File temporaryDirectory() throws IOException {
+        File directory = Files.createTempDirectory("boards").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    //helper method -- remove a directory and the files in it
+    static void delete(File directory){
+        File[] files = directory.listFiles();
+        if(files != null){
+            for(File file : files){
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
 
     /**
      * taken from ps3 Return the absolute path of the specified file resource on
@@ -0,0 +1,523 @@
+package BoardGrammar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import BoardGrammar.OutputProcessor.GadgetType;
+import client.Board;
+
+/**
+ * StreamingBoardParser
+ *
+ * a hand written parser for board files that accepts exactly the language of
+ * BoardGrammar.g4 and gives the same boards as OutputProcessor, without the
+ * ANTLR runtime. it reads the file one line at a time, tokenizes each line with
+ * the grammar's lexical rules (longest match first, keywords before words on a
+ * tie), and records the same board construction calls that OutputProcessor's
+ * listener does.
+ *
+ * errors are reported as BoardFormatExceptions giving the line (from 1) and
+ * column (from 0) where they were found. errors are reported in file order, so
+ * when a file has both, a bad variable name can be reported before a syntax
+ * error further down, where OutputProcessor would report the syntax error.
+ * errors the Board itself raises, like duplicate gadget names, are thrown
+ * unchanged when the board is built.
+ *
+ * Thread safety argument:
+ *      the static methods share no state. each parse uses its own instance
+ */
+public class StreamingBoardParser {
+
+    //token kinds, with the names the grammar gives them
+    private static final int KEYUP = 0;
+    private static final int FIRE = 1;
+    private static final int NAME = 2;
+    private static final int BOARD = 3;
+    private static final int BALL = 4;
+    private static final int TRIGGER = 5;
+    private static final int KEYDOWN = 6;
+    private static final int SPACE = 7;
+    private static final int COMMENT = 8;
+    private static final int INT = 9;
+    private static final int FLOAT = 10;
+    private static final int WORD = 11;
+    private static final int EQUALS = 12;
+    private static final int END = 13;
+    private static final String[] KIND_NAMES = {"'keyup'", "'fire'", "'name'", "'board'",
+        "'ball'", "'trigger'", "'keydown'", "SPACE", "COMMENT", "INT", "FLOAT", "WORD",
+        "EQUALS", "end of line"};
+    private static final String[] KEYWORDS = {"keyup", "fire", "name", "board", "ball",
+        "trigger", "keydown"};
+    //KEYWORDS[k] is the text of the keyword token of kind k
+
+    private final Reader in;
+    //the file being parsed
+    private final CompiledBoard.Recorder board = new CompiledBoard.Recorder();
+    //the calls made so far
+    private char[] line = new char[256];
+    private int length;
+    //the current line, without its line ending, is line[0..length)
+    private boolean lastLine;
+    //true if the current line ended at the end of the file rather than a newline
+    private int lineNumber = 0;
+    //the current line's number, from 1
+    private int[] kinds = new int[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int tokenCount;
+    //the current line's tokens, in order, ending with an END token. token i
+    //is of kind kinds[i] and covers line[starts[i]..ends[i])
+    private int next;
+    //the index of the next token to parse
+
+    private StreamingBoardParser(Reader in){
+        this.in = in;
+    }
+
+    /**
+     * parse a board file into a board
+     *
+     * @param file the file to parse
+     * @return the board, the same as OutputProcessor.parse(file)
+     * @throws IOException if the file can't be read
+     * @throws BoardFormatException if the file is not a valid board file
+     */
+    public static Board parse(File file) throws IOException {
+        return compile(file).build();
+    }
+
+    /**
+     * parse a board file into the calls that construct its board
+     *
+     * @param file the file to parse, in the platform's default charset
+     * @return the compiled board
+     * @throws IOException if the file can't be read
+     * @throws BoardFormatException if the file is not a valid board file
+     */
+    public static CompiledBoard compile(File file) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+        try{
+            return compile(reader);
+        }finally{
+            reader.close();
+        }
+    }
+
+    /**
+     * parse the text of a board file into the calls that construct its board
+     *
+     * @param reader the text, read up to its end
+     * @return the compiled board
+     * @throws IOException if the text can't be read
+     * @throws BoardFormatException if the text is not a valid board file
+     */
+    public static CompiledBoard compile(Reader reader) throws IOException {
+        StreamingBoardParser parser = new StreamingBoardParser(reader);
+        parser.parseFile();
+        return parser.board.finish();
+    }
+
+    //file : board line* EOF
+    private void parseFile() throws IOException {
+        readLine();
+        tokenize();
+        parseBoard();
+        while(!lastLine){
+            readLine();
+            tokenize();
+            parseLine();
+        }
+    }
+
+    //helper method -- read the next line into line[0..length), dropping the
+    //"\n" or "\r\n" that ends it
+    private void readLine() throws IOException {
+        length = 0;
+        lineNumber ++;
+        int c;
+        while((c = in.read()) != -1 && c != '\n'){
+            if(length == line.length){
+                char[] grown = new char[2*length];
+                System.arraycopy(line, 0, grown, 0, length);
+                line = grown;
+            }
+            line[length ++] = (char)c;
+        }
+        lastLine = c == -1;
+        if(!lastLine && length > 0 && line[length - 1] == '\r'){
+            length --;
+        }
+    }
+
+    //helper method -- split the current line into tokens by the grammar's
+    //lexical rules
+    private void tokenize(){
+        tokenCount = 0;
+        next = 0;
+        int position = 0;
+        while(position < length){
+            char c = line[position];
+            int kind;
+            int end;
+            if(isBlank(c) || c == '='){
+                //SPACE : [ \t\f]+  EQUALS : [ \t\f]*'='[ \t\f]*
+                end = skipBlanks(position);
+                kind = SPACE;
+                if(end < length && line[end] == '='){
+                    end = skipBlanks(end + 1);
+                    kind = EQUALS;
+                }
+            }else if(c == '#'){
+                //COMMENT : '#' ~[\n\r]*
+                end = position + 1;
+                while(end < length && line[end] != '\r'){
+                    end ++;
+                }
+                kind = COMMENT;
+            }else if(c == '-' || isWordChar(c)){
+                //INT : '-'?[0-9]+  FLOAT : '-'?[0-9]+('.'[0-9]+)  WORD : [a-z_A-Z0-9]+
+                int digits = skipDigits(c == '-' ? position + 1 : position);
+                int intEnd = digits > (c == '-' ? position + 1 : position) ? digits : -1;
+                int floatEnd = -1;
+                if(intEnd > 0 && intEnd + 1 < length && line[intEnd] == '.'
+                        && isDigit(line[intEnd + 1])){
+                    floatEnd = skipDigits(intEnd + 1);
+                }
+                int wordEnd = -1;
+                if(c != '-'){
+                    wordEnd = position;
+                    while(wordEnd < length && isWordChar(line[wordEnd])){
+                        wordEnd ++;
+                    }
+                }
+                //the longest match wins, and earlier rules win ties
+                if(floatEnd > intEnd && floatEnd > wordEnd){
+                    kind = FLOAT;
+                    end = floatEnd;
+                }else if(intEnd > 0 && intEnd >= wordEnd){
+                    kind = INT;
+                    end = intEnd;
+                }else if(wordEnd > 0){
+                    kind = keywordKind(position, wordEnd);
+                    end = wordEnd;
+                }else{
+                    throw error(position, "token recognition error at: '" + c + "'");
+                }
+            }else{
+                throw error(position, "token recognition error at: '" + c + "'");
+            }
+            addToken(kind, position, end);
+            position = end;
+        }
+        addToken(END, length, length);
+    }
+
+    private void addToken(int kind, int start, int end){
+        if(tokenCount == kinds.length){
+            kinds = grow(kinds);
+            starts = grow(starts);
+            ends = grow(ends);
+        }
+        kinds[tokenCount] = kind;
+        starts[tokenCount] = start;
+        ends[tokenCount] = end;
+        tokenCount ++;
+    }
+
+    private static int[] grow(int[] array){
+        int[] grown = new int[2*array.length];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    //helper method -- the kind of the word line[start..end), a keyword if it
+    //is exactly one
+    private int keywordKind(int start, int end){
+        for(int kk = 0; kk < KEYWORDS.length; kk ++){
+            String keyword = KEYWORDS[kk];
+            if(keyword.length() == end - start){
+                boolean same = true;
+                for(int ii = 0; ii < keyword.length() && same; ii ++){
+                    same = line[start + ii] == keyword.charAt(ii);
+                }
+                if(same){
+                    return kk;
+                }
+            }
+        }
+        return WORD;
+    }
+
+    private int skipBlanks(int position){
+        while(position < length && isBlank(line[position])){
+            position ++;
+        }
+        return position;
+    }
+
+    private int skipDigits(int position){
+        while(position < length && isDigit(line[position])){
+            position ++;
+        }
+        return position;
+    }
+
+    private static boolean isBlank(char c){
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isDigit(char c){
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(char c){
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || isDigit(c);
+    }
+
+    //board : 'board' namevar? fltvar* SPACE?
+    private void parseBoard(){
+        expect(BOARD);
+        String boardName = "";
+        double friction1 = Board.DEFAULT_FRICTION1;
+        double friction2 = Board.DEFAULT_FRICTION2;
+        double gravity = Board.DEFAULT_GRAVITY;
+        int size = Board.DEFAULT_SIZE;
+        if(peek(0) == SPACE && peek(1) == NAME){
+            boardName = parseNamevar();
+        }
+        while(peek(0) == SPACE && peek(1) == WORD){
+            int field = parseVariableName();
+            int value = parseFlt();
+            String fieldName = text(field);
+            if(fieldName.equals("gravity")){
+                gravity = Double.parseDouble(text(value));
+            }else if(fieldName.equals("friction1")){
+                friction1 = Double.parseDouble(text(value));
+            }else if(fieldName.equals("friction2")){
+                friction2 = Double.parseDouble(text(value));
+            }else if(fieldName.equals("size")){
+                size = parseInt(value);
+            }
+        }
+        accept(SPACE);
+        expect(END);
+        board.board(boardName, gravity, friction1, friction2, size);
+    }
+
+    //line : endline term SPACE? | endline | endline ignore, where the SPACE
+    //before the line ending belongs to the line it's on
+    private void parseLine(){
+        accept(SPACE);
+        switch(peek(0)){
+        case END:
+            break;
+        case COMMENT:
+            next ++;
+            break;
+        case BALL:
+            parseBall();
+            break;
+        case WORD:
+            parseGadget();
+            break;
+        case FIRE:
+            parseFire();
+            break;
+        case KEYUP:
+        case KEYDOWN:
+            parseKey();
+            break;
+        default:
+            throw unexpected();
+        }
+        accept(SPACE);
+        expect(END);
+    }
+
+    //ball : 'ball' namevar fltvar+
+    private void parseBall(){
+        expect(BALL);
+        parseNamevar();
+        double x = 0;
+        double y = 0;
+        double xVel = 0;
+        double yVel = 0;
+        do{
+            int field = parseVariableName();
+            double value = Double.parseDouble(text(parseFlt()));
+            String fieldName = text(field);
+            if(fieldName.equals("x")){
+                x = value;
+            }else if(fieldName.equals("y")){
+                y = value;
+            }else if(fieldName.equals("xVelocity")){
+                xVel = value;
+            }else if(fieldName.equals("yVelocity")){
+                yVel = value;
+            }
+        }while(peek(0) == SPACE && peek(1) == WORD);
+        board.ball(x, y, xVel, yVel);
+    }
+
+    //gadgetdef : WORD namevar intvar+ wordvar*
+    private void parseGadget(){
+        int typeToken = expect(WORD);
+        String name = parseNamevar();
+        Integer x = null;
+        Integer y = null;
+        Integer w = null;
+        Integer h = null;
+        Integer angle = null;
+        do{
+            int field = parseVariableName();
+            if(peek(0) != INT){
+                throw unexpected();
+            }
+            int value = parseInt(next ++);
+            String fieldName = text(field);
+            if(fieldName.equals("x")){
+                x = value;
+            }else if(fieldName.equals("y")){
+                y = value;
+            }else if(fieldName.equals("width")){
+                w = value;
+            }else if(fieldName.equals("height")){
+                h = value;
+            }else if(fieldName.equals("orientation")){
+                angle = value;
+            }else{
+                throw error(starts[field], "invalid variable assignment: " + fieldName);
+            }
+        }while(peek(0) == SPACE && peek(1) == WORD && peek(2) == EQUALS && peek(3) == INT);
+        String otherBoard = "";
+        String otherPortal = "";
+        while(peek(0) == SPACE && peek(1) == WORD){
+            int field = parseVariableName();
+            String value = text(expect(WORD));
+            String fieldName = text(field);
+            if(fieldName.equals("otherBoard")){
+                otherBoard = value;
+            }else if(fieldName.equals("otherPortal")){
+                otherPortal = value;
+            }else{
+                throw error(starts[field], "invalid variable assignment: " + fieldName);
+            }
+        }
+        GadgetType type = OutputProcessor.convertType(text(typeToken));
+        if(type == GadgetType.INVALID){
+            throw error(starts[typeToken], "Unrecognized gadget type: " + text(typeToken));
+        }
+        board.gadget(type, name, x, y, w, h, angle, otherBoard, otherPortal);
+    }
+
+    //fireInstance : 'fire' trigger wordvar
+    private void parseFire(){
+        expect(FIRE);
+        expect(SPACE);
+        expect(TRIGGER);
+        expect(EQUALS);
+        String trigger = text(expect(WORD));
+        parseVariableName();
+        String action = text(expect(WORD));
+        board.fire(trigger, action);
+    }
+
+    //keydef : keypress wordvar wordvar
+    private void parseKey(){
+        String pressType = text(next ++);
+        String key = "";
+        String action = "";
+        for(int ii = 0; ii < 2; ii ++){
+            int field = parseVariableName();
+            String value = text(expect(WORD));
+            String fieldName = text(field);
+            if(fieldName.equals("key")){
+                key = value;
+            }else if(fieldName.equals("action")){
+                action = value;
+            }else{
+                throw error(starts[field], "invalid variable assignment: " + fieldName);
+            }
+        }
+        board.key(pressType + ":" + key, action);
+    }
+
+    //namevar : SPACE 'name' EQUALS WORD -- returns the name
+    private String parseNamevar(){
+        expect(SPACE);
+        expect(NAME);
+        expect(EQUALS);
+        return text(expect(WORD));
+    }
+
+    //SPACE WORD EQUALS, the start of fltvar, intvar and wordvar -- returns the
+    //WORD token
+    private int parseVariableName(){
+        expect(SPACE);
+        int field = expect(WORD);
+        expect(EQUALS);
+        return field;
+    }
+
+    //flt : INT | FLOAT -- returns the token
+    private int parseFlt(){
+        if(peek(0) != INT && peek(0) != FLOAT){
+            throw unexpected();
+        }
+        return next ++;
+    }
+
+    private int parseInt(int token){
+        try{
+            return Integer.parseInt(text(token));
+        }catch(NumberFormatException e){
+            throw error(starts[token], "not an integer: " + text(token));
+        }
+    }
+
+    //helper method -- the kind of the token ahead of the next one by offset, or
+    //END past the end of the line
+    private int peek(int offset){
+        int index = next + offset;
+        return index < tokenCount ? kinds[index] : END;
+    }
+
+    //helper method -- consume the next token if it's of this kind
+    private void accept(int kind){
+        if(peek(0) == kind){
+            next ++;
+        }
+    }
+
+    //helper method -- consume the next token, which must be of this kind, and
+    //return its index
+    private int expect(int kind){
+        if(peek(0) != kind){
+            throw error(starts[next], "expected " + KIND_NAMES[kind] + " but found " + describe(next));
+        }
+        return next ++;
+    }
+
+    private BoardFormatException unexpected(){
+        return error(starts[next], "unexpected " + describe(next));
+    }
+
+    private String describe(int token){
+        if(kinds[token] == END){
+            return lastLine ? "end of file" : "end of line";
+        }
+        return KIND_NAMES[kinds[token]] + " '" + text(token) + "'";
+    }
+
+    private String text(int token){
+        return new String(line, starts[token], ends[token] - starts[token]);
+    }
+
+    private BoardFormatException error(int column, String message){
+        return new BoardFormatException(lineNumber, column, message);
+    }
+}
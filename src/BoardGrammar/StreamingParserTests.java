@@ -0,0 +1,108 @@
+package BoardGrammar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import client.Board;
+
+/**
+ * Tests the streaming parser.
+ *
+ * Runs all of ParserTests against StreamingBoardParser, along with:
+ *  1. every board in the resources, which should be accepted or rejected just
+ *      as OutputProcessor does, and give the same board when accepted
+ *  2. the line and column reported for lexical, syntax and value errors
+ *  3. "\r\n" line endings, and files that don't end with a newline
+ */
+public class StreamingParserTests extends ParserTests {
+
+    @Override protected Board parse(File file) throws IOException {
+        return StreamingBoardParser.parse(file);
+    }
+
+    //helper method -- a summary of a board that doesn't depend on hash ordering
+    private static String describe(Board board){
+        return board.name() + " " + board.gravity() + " " + board.friction1() + " "
+                + board.friction2() + " " + board.size() + "\n" + board.getBallList() + "\n"
+                + board.getGadgetList() + "\n" + board.numberOfTriggerLinks() + " "
+                + board.getPortalNames();
+    }
+
+    //helper method -- parse some text, summarized as above
+    private static String parseText(String text) throws IOException {
+        return describe(StreamingBoardParser.compile(new StringReader(text)).build());
+    }
+
+    //helper method -- parse some text that should fail, and check where
+    private static void assertErrorAt(String text, int line, int column) throws IOException {
+        try{
+            StreamingBoardParser.compile(new StringReader(text));
+            fail("expected an error at " + line + ":" + column);
+        }catch(BoardFormatException e){
+            assertEquals(e.getMessage(), line, e.line());
+            assertEquals(e.getMessage(), column, e.column());
+        }
+    }
+
+    //every resource board parses the same way with both parsers
+    @Test public void testSameAsOutputProcessor() throws IOException {
+        File resources = new File(getResourcePath("client/resources/sampleBoard1.pb")).getParentFile();
+        int accepted = 0;
+        for(File file : resources.listFiles()){
+            if(!file.getName().endsWith(".pb")){
+                continue;
+            }
+            String expected;
+            try{
+                expected = describe(OutputProcessor.parse(file));
+            }catch(RuntimeException e){
+                expected = null;
+            }
+            String actual;
+            try{
+                actual = describe(StreamingBoardParser.parse(file));
+            }catch(RuntimeException e){
+                actual = null;
+            }
+            assertEquals(file.getName(), expected, actual);
+            if(expected != null){
+                accepted ++;
+            }
+        }
+        assertTrue(accepted > 0);
+    }
+
+    //errors give the line and column where they were found
+    @Test public void testErrorPositions() throws IOException {
+        String board = "board name=Test gravity=10.0\n";
+        //a character that isn't in any token
+        assertErrorAt(board + "squareBumper name=A x=1 y=$\n", 2, 26);
+        //a missing value
+        assertErrorAt(board + "# comment\n  ball name=B x=1.0 y=\n", 3, 22);
+        //a misspelled variable
+        assertErrorAt(board + "squareBumper name=A x=1 why=2\n", 2, 24);
+        //an unknown gadget
+        assertErrorAt(board + "\n\nhexBumper name=A x=1 y=2\n", 4, 0);
+        //a board line that isn't first
+        assertErrorAt("ball name=B x=1.0 y=1.0 xVelocity=0 yVelocity=0\n", 1, 0);
+        //an empty file
+        assertErrorAt("", 1, 0);
+    }
+
+    //"\r\n" line endings, and a last line without a newline
+    @Test public void testLineEndings() throws IOException {
+        String unix = "board name=Ends gravity=5.0\nsquareBumper name=A x=1 y=2\nfire trigger=A action=A\n";
+        String expected = parseText(unix);
+        assertEquals(expected, parseText(unix.replace("\n", "\r\n")));
+        assertEquals(expected, parseText(unix.substring(0, unix.length() - 1)));
+        //a lone "\r" is not a line ending
+        assertErrorAt("board name=Ends\rsquareBumper name=A x=1 y=2\n", 1, 15);
+    }
+}
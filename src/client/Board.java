@@ -5,24 +5,30 @@ import graphics.CollidableGraphic;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import physics.Geometry.VectPair;
 import physics.Vect;
 import message.Messages;
+import metrics.Gauge;
+import metrics.MetricsRegistry;
+import profiling.TeleportEvent;
+import sim.Absorber;
 import sim.Ball;
+import sim.BallRegistry;
 import sim.Collidable;
 import sim.Envelope;
 import sim.Portal;
+import sim.TriggerGraph;
 import sim.Triggerable;
 import sim.Wall;
 import sim.Wall.WallType;
@@ -43,6 +49,8 @@ public class Board {
     //default physics parameters
     public static final int DEFAULT_SIZE = 20;
     //default size
+    private static final TeleportEvent TELEPORT_EVENTS = new TeleportEvent();
+    //never committed; only asked whether teleport events are enabled
 
     private final Simulation simulation;
     //internal simulation instance
@@ -53,21 +61,30 @@ public class Board {
     //the name of the board
     private final double g, mu, mu2;
     //physics parameters
+    private final int size;
+    //the side length of the board
+    //rep invariant -- size > 0
     private Vect vortex;
     //gravity vortex
-    private char[][] grid = new char[DEFAULT_SIZE + 2][DEFAULT_SIZE + 2];
-    //character grid for text based rendering
+    private char[][] grid;
+    //character grid for text based rendering, (size + 2) on a side
     // +2 because we must add extra space for walls
+    //null until the board is first drawn as text
     private List<Wall> wallList;
     //contains the four walls of the board
     //rep invariant -- all walls in this list must have references to this
     //                 board's transport queue
-    private List<Ball> ballList = new ArrayList<Ball>();
-    //contains all balls currently on the board
-    //rep invariant -- all balls are positioned within the board's (-0.5,20.5)^2
+    private final BallRegistry ballList = new BallRegistry();
+    //contains all balls currently on the board. removing a ball takes constant
+    //time, and moves the last ball into its place
+    //rep invariant -- all balls are positioned within the board's (-0.5,size+0.5)^2
     //                 board space. This is guaranteed through calls of handleClipping()
     private List<Triggerable> triggerableList = new ArrayList<Triggerable>();
     //contains all triggerable gadgets on the board
+    private final TriggerGraph triggerGraph = new TriggerGraph();
+    //the trigger links between the gadgets, dispatched by the simulation after
+    //each collision
+    //rep invariant -- holds exactly the gadgets in triggerableList
     private List<Portal> portalList = new ArrayList<Portal>();
     //contains specific references to portals, for resolving teleport events
     //rep invariant -- all portals in portalList must have references to this
@@ -85,12 +102,45 @@ public class Board {
     //this Queue is used to store messages that have been translated from Envelopes
     //taken from the transportQueue. Higher level classes can access this queue by
     //calling hasPendingMessage() and grabMessage()
-    private BlockingQueue<String> userInputQueue = new LinkedBlockingQueue<String>();
-    //this Queue is used to communicate key press events from the client to the board
+    private long nextTraceId = 0;
+    //the id of the next teleport message's trace
+    private final Map<String, List<Envelope>> outgoingBatches = new LinkedHashMap<String, List<Envelope>>();
+    //the envelopes leaving for each board (and portal) this step, in the order
+    //their destinations were first reached. empty between steps
+    private final InputRing inputRing = new InputRing();
+    //this ring is used to communicate key and mouse events from the client to the board
+    private final UserInput userInput = new UserInput();
+    //applies the events drained from inputRing
+    private long ticks = 0;
+    //the number of calls of advanceSimulation() finished
+    private boolean removesEscapedBalls = false;
+    //whether each step removes the balls that escaped through a solid wall. set
+    //only on copies, so the live game's physics are left alone
+    private long escapedBalls = 0;
+    //the number of balls removed for having escaped through a solid wall
+    private Journal journal = null;
+    //records the inputs, messages and restarts that reach the board, or null
+    private double journaledTimeStep = Double.NaN;
+    //the time step last recorded in the journal
+    private boolean distanceFieldStale = false;
+    //true if the walls or gadgets have changed since the distance field was
+    //built. it is rebuilt before the next step, so that a batch of changes,
+    //like loading a board gadget by gadget, rebuilds it once
     private Map<String, Set<String>> keyBindings = new HashMap<String, Set<String>>();
     //this map is used to map keypress events to board actions
     //rep invariant -- A's name is in keyBindings.get(B) iff user input B should trigger
     //                 gadget A's action
+    private Map<String, Integer> keyEventIds = new HashMap<String, Integer>();
+    //the id of each key event in keyBindings, numbered from 0 in the order bound
+    private volatile Map<String, Integer> publishedKeyEventIds = Collections.emptyMap();
+    //an unmodifiable copy of keyEventIds, replaced whole by resolveKeyBindings(),
+    //so that keyEventId() may be called from the thread sending inputs while
+    //the thread editing the board binds keys
+    private Triggerable[][] keyActions = new Triggerable[0][];
+    //keyBindings resolved to gadgets, indexed by key event id, so that input
+    //handling needs no lookups by name
+    //rep invariant -- keyActions[keyEventIds.get(B)] holds exactly the gadgets on
+    //                 the board whose names are in keyBindings.get(B)
     private Map<String, Triggerable> nameLookup = new HashMap<String, Triggerable>();
     //for looking up gadgets by name
     //rep invariant -- the set of keys consists of exactly the names of every gadget
@@ -115,16 +165,35 @@ public class Board {
      * @param mu2 the second value of friction
      */
     public Board(String name, double g, double mu, double mu2){
-        Wall[] walls = {new Wall(WallType.TOP, DEFAULT_SIZE, transportQueue),
-                new Wall(WallType.BOTTOM, DEFAULT_SIZE, transportQueue),
-                new Wall(WallType.LEFT, DEFAULT_SIZE, transportQueue),
-                new Wall(WallType.RIGHT, DEFAULT_SIZE, transportQueue)};
+        this(name, g, mu, mu2, DEFAULT_SIZE);
+    }
+    
+    /**
+     * construct a square board with the specified name, physics parameters
+     * and side length
+     * 
+     * @param name the name to be used by this board
+     * @param g the value of gravity
+     * @param mu the first value of friction
+     * @param mu2 the second value of friction
+     * @param size the side length of the board, must be > 0
+     */
+    public Board(String name, double g, double mu, double mu2, int size){
+        if(size <= 0){
+            throw new IllegalArgumentException("requires positive size: received \"" + size + "\"");
+        }
+        Wall[] walls = {new Wall(WallType.TOP, size, transportQueue),
+                new Wall(WallType.BOTTOM, size, transportQueue),
+                new Wall(WallType.LEFT, size, transportQueue),
+                new Wall(WallType.RIGHT, size, transportQueue)};
 
         this.wallList = Arrays.asList(walls);
         this.name = name;
+        this.size = size;
         this.g = g; this.mu = mu; this.mu2 = mu2;
         this.simulation = new Simulation(wallList, ballList, triggerableList, 
                 g, mu, mu2);
+        simulation.setTriggerGraph(triggerGraph);
     }
     
     
@@ -137,6 +206,12 @@ public class Board {
     public String name(){
         return name;
     }
+    /**
+     * @return the side length of the board
+     */
+    public int size(){
+        return size;
+    }
     /**
      * @return the gravity value used by this board
      */
@@ -168,6 +243,20 @@ public class Board {
     public List<Portal> getPortalList(){
         return portalList;
     }
+    /**
+     * 
+     * @return the list of balls on the board, including balls held by absorbers
+     */
+    public List<Ball> getBallList(){
+        return ballList;
+    }
+    /**
+     * 
+     * @return the list of triggerable gadgets on the board
+     */
+    public List<Triggerable> getGadgetList(){
+        return triggerableList;
+    }
     /**
      * @return the number of triggerable gadgets on the board
      */
@@ -185,6 +274,22 @@ public class Board {
         return count;
     }
     
+    /**
+     * @param gadgetName the name of a gadget
+     * @return the gadget on the board with that name, or null if there is none
+     */
+    public Triggerable getGadget(String gadgetName){
+        return nameLookup.get(gadgetName);
+    }
+    
+    /**
+     * @return the compiled trigger links between the gadgets on the board, with
+     *          their dispatch counts
+     */
+    public TriggerGraph getTriggerGraph(){
+        return triggerGraph;
+    }
+    
     /**
      * get a list of Portal objects on the board
      * 
@@ -200,12 +305,50 @@ public class Board {
     
     /**
      * Higher level classes can call this method to get a reference to the
-     * blocking queue used to pipe user inputs into the board simulation
+     * ring used to pipe user inputs into the board simulation. only one thread
+     * may offer events to it
      * 
-     * @return the user input queue by which to send user inputs to the board
+     * @return the input ring by which to send user inputs to the board
      */
-    public BlockingQueue<String> getUserInputQueue(){
-        return userInputQueue;
+    public InputRing getInputRing(){
+        return inputRing;
+    }
+    
+    /**
+     * look up the id by which a key event is sent through the input ring. key
+     * event syntax is as for bindKey()
+     * 
+     * @param keyEvent the key event string
+     * @return the key event's id, or -1 if nothing is bound to it, in which case
+     *          there is no need to send it. safe to call from any thread
+     */
+    public int keyEventId(String keyEvent){
+        Integer id = publishedKeyEventIds.get(keyEvent);
+        return id == null ? -1 : id;
+    }
+    
+    /**
+     * send a user input written as a string to the board through its input ring.
+     * inputs are "keydown:KEY", "keyup:KEY" with key events as for bindKey(),
+     * "mouse:X:Y" for the mouse being pressed or dragged at board position (X, Y),
+     * and "mouse:release". anything else is ignored
+     * 
+     * @param input the user input
+     * @return false if the input ring was full and the input was dropped, true
+     *          otherwise
+     */
+    public boolean postInput(String input){
+        if(input.startsWith("key")){
+            int id = keyEventId(input);
+            return id < 0 || inputRing.offerKey(id);
+        }else if(input.equals("mouse:release")){
+            return inputRing.offerRelease();
+        }else if(input.startsWith("mouse:")){
+            String[] mouseInputTokens = input.split(":");
+            return inputRing.offerDrag(Double.parseDouble(mouseInputTokens[1]),
+                    Double.parseDouble(mouseInputTokens[2]));
+        }
+        return true;
     }
     
     //private helper method -- checks the availability of the specified gadget name
@@ -224,9 +367,115 @@ public class Board {
      *                the simulation should be advanced.                
      */
     public void advanceSimulation(double deltaT){
+        if(distanceFieldStale){
+            buildDistanceField();
+        }
+        if(journal != null && deltaT != journaledTimeStep){
+            journal.timeStep(ticks, deltaT);
+            journaledTimeStep = deltaT;
+        }
         simulation.advance(deltaT,0);
+        if(removesEscapedBalls){
+            removeEscapedBalls();
+        }
         handleUserInput();
         processTransportQueue();
+        ticks ++;
+    }
+    
+    /**
+     * @return the number of calls of advanceSimulation() the board has finished
+     */
+    public long ticks(){
+        return ticks;
+    }
+    
+    /**
+     * record everything that reaches the board from outside its simulation
+     * from now on -- drained user input, messages passed to applyMessage(),
+     * restarts and time steps -- in a journal. ends and closes the journal
+     * being recorded before, if any
+     * 
+     * @param journal the journal to record in, or null to stop recording
+     */
+    public void setJournal(Journal journal){
+        if(this.journal != null){
+            this.journal.end(ticks);
+        }
+        this.journal = journal;
+        journaledTimeStep = Double.NaN;
+    }
+    
+    /**
+     * @return the journal the board is recording in, or null if there isn't one
+     */
+    public Journal getJournal(){
+        return journal;
+    }
+    
+    /**
+     * turn parabolic collision prediction on or off for this board's simulation
+     * 
+     * @param enabled true to predict collisions along ballistic parabolas while
+     *          gravity is uniform
+     * @see Simulation#setParabolicPrediction(boolean)
+     */
+    public void setParabolicPrediction(boolean enabled){
+        simulation.setParabolicPrediction(enabled);
+    }
+    
+    /**
+     * record the board's metrics in a registry: gauges of its numbers of balls
+     * and gadgets, and its simulation's metrics as for Simulation.setMetrics().
+     * the gauges are read from other threads, so they only show a recent count
+     * 
+     * @param registry the registry, or null to stop recording the simulation's
+     *          metrics
+     */
+    public void setMetrics(MetricsRegistry registry){
+        simulation.setMetrics(registry);
+        if(registry == null){
+            return;
+        }
+        registry.gauge("board.balls", new Gauge.Source(){
+            @Override public long value(){
+                return ballList.size();
+            }
+        });
+        registry.gauge("board.gadgets", new Gauge.Source(){
+            @Override public long value(){
+                return triggerableList.size();
+            }
+        });
+    }
+    
+    /**
+     * @return the number of balls removed so far because they escaped the board
+     *          through a solid wall, which only happens when the simulation gives
+     *          up on resolving a ball pinned between gadgets. only boards made
+     *          by copy() remove them, so this is 0 for any other
+     */
+    public long escapedBalls(){
+        return escapedBalls;
+    }
+    
+    /**
+     * build the distance field over this board's walls and gadgets, which the
+     * simulation uses to skip collision tests for balls in open space. once
+     * built, it is kept up to date as gadgets are added and walls are connected
+     * or disconnected, by rebuilding it before the next step after a change
+     */
+    public void buildDistanceField(){
+        simulation.setDistanceField(new DistanceField(size, wallList, triggerableList));
+        distanceFieldStale = false;
+    }
+    
+    //private helper method marks the distance field, if there is one, to be
+    //rebuilt before the next step, after the static geometry has changed
+    private void refreshDistanceField(){
+        if(simulation.hasDistanceField()){
+            distanceFieldStale = true;
+        }
     }
     
     /**
@@ -235,6 +484,9 @@ public class Board {
      * saveConfiguration() was called
      */
     public void restartSimulation(){
+        if(journal != null){
+            journal.restart(ticks);
+        }
         for(Triggerable gadget : triggerableList){
             gadget.reset();
         }
@@ -244,9 +496,7 @@ public class Board {
             transportQueue.remove();
         }
         //get rid of all balls on the board.
-        while(!ballList.isEmpty()){
-            ballList.remove(0);
-        }
+        ballList.clear();
         //spawn new balls from saved state
         for(VectPair pair : saveList){
             spawnBall(pair);
@@ -258,40 +508,52 @@ public class Board {
     }
     
     //private helper method executes keypresses and mouse actions from the
-    //user input queue
+    //input ring
     private void handleUserInput(){
-        String mouseDrag = "";
-        while(!userInputQueue.isEmpty()){
-            String input = userInputQueue.remove();
-            if(input.startsWith("key")){
-                if(keyBindings.get(input) != null){
-                    for(String gadgetName : keyBindings.get(input)){
-                        triggerGadget(gadgetName);
-                    }
-                }
-            }else if(input.contains("mouse:")){
-                if(input.equals("mouse:release")){
-                    simulation.resetGravity();
-                    vortex = null;
-                }else{
-                    mouseDrag = input;
-                }
-            }
-        }
+        userInput.dragged = false;
+        inputRing.drain(userInput);
         //if the mouse is being dragged, make a gravity vortex using the
-        //most recent mouse position from the queue
-        if(!mouseDrag.isEmpty()){
-            String[] mouseInputTokens = mouseDrag.split(":");
-            double x = Double.parseDouble(mouseInputTokens[1]);
-            double y = Double.parseDouble(mouseInputTokens[2]);
-            vortex = new Vect(x,y);
-            simulation.distortGravity(x,y);
+        //most recent mouse position from the ring
+        if(userInput.dragged){
+            vortex = new Vect(userInput.dragX, userInput.dragY);
+            simulation.distortGravity(userInput.dragX, userInput.dragY);
         }
     }
     
-    //trigger the action of the gadget with name gadgetName
-    private void triggerGadget(String gadgetName){
-        nameLookup.get(gadgetName).triggerAction();
+    //applies the events drained from the input ring. keys act immediately,
+    //and only the last drag of a frame is kept
+    private class UserInput implements InputRing.Handler {
+        private boolean dragged;
+        private double dragX, dragY;
+        //the most recent mouse drag drained this frame, if dragged
+        
+        @Override public void key(int keyEventId){
+            if(journal != null){
+                journal.key(ticks, keyEventId);
+            }
+            if(keyEventId >= 0 && keyEventId < keyActions.length){
+                for(Triggerable gadget : keyActions[keyEventId]){
+                    gadget.triggerAction();
+                }
+            }
+        }
+        
+        @Override public void drag(double x, double y){
+            if(journal != null){
+                journal.drag(ticks, x, y);
+            }
+            dragged = true;
+            dragX = x;
+            dragY = y;
+        }
+        
+        @Override public void release(){
+            if(journal != null){
+                journal.release(ticks);
+            }
+            simulation.resetGravity();
+            vortex = null;
+        }
     }
     
 
@@ -332,10 +594,9 @@ public class Board {
      * @param ball the ball to be spawned
      */
     public void spawnBall(String spawnerName, Ball ball){
-        for(Portal p : portalList){
-            if(p.name().equals(spawnerName)){
-                p.spawnBall(ball);
-            }
+        Triggerable spawner = nameLookup.get(spawnerName);
+        if(spawner instanceof Portal){
+            ((Portal)spawner).spawnBall(ball);
         }
     }
     
@@ -358,13 +619,53 @@ public class Board {
     public void add(Triggerable gadget){
         if(!nameIsTaken(gadget.name())){
             triggerableList.add(gadget);
+            triggerGraph.add(gadget);
             nameLookup.put(gadget.name(), gadget);
+            refreshDistanceField();
+            //a key may have been bound to this gadget's name before it was added
+            resolveKeyBindings();
         }else{
             throw new IllegalArgumentException(
                     "Error: A gadget with that name already exists: " + gadget.name());
         }
     }
     
+    /**
+     * remove the named gadget from the board, along with any trigger links to
+     * it. balls held by an absorber are let go where they are, and local
+     * portals leading to a removed portal are closed. key bindings to the name
+     * are kept, and apply again if a gadget with the name is added later
+     * 
+     * @param gadgetName the name of the gadget
+     * @return the removed gadget, or null if there was no gadget with that name
+     */
+    public Triggerable remove(String gadgetName){
+        Triggerable gadget = nameLookup.remove(gadgetName);
+        if(gadget == null){
+            return null;
+        }
+        triggerableList.remove(gadget);
+        triggerGraph.remove(gadget);
+        for(Triggerable other : triggerableList){
+            other.removeTrigger(gadget);
+        }
+        if(gadget instanceof Portal){
+            portalList.remove(gadget);
+            for(Portal p : portalList){
+                if(p.exitBoard().isEmpty() && p.exitPortal().equals(gadgetName)){
+                    p.close();
+                }
+            }
+        }
+        if(gadget instanceof Absorber){
+            ((Absorber)gadget).releaseAll();
+        }
+        simulation.gadgetsChanged();
+        refreshDistanceField();
+        resolveKeyBindings();
+        return gadget;
+    }
+    
     /**
      * add a portal to the board at position x,y with the specified parameters
      * 
@@ -405,6 +706,19 @@ public class Board {
         }
     }
     
+    /**
+     * remove the trigger link from the first named gadget to the second, if
+     * there is one
+     * 
+     * @param nameFrom the source of the trigger signal
+     * @param nameTo the gadget whose action should no longer be triggered
+     */
+    public void removeTriggerLink(String nameFrom, String nameTo){
+        if(nameLookup.get(nameFrom) != null && nameLookup.get(nameTo) != null){
+            nameLookup.get(nameFrom).removeTrigger(nameLookup.get(nameTo));
+        }
+    }
+    
     /**
      * bind key event keyName to gadget gadgetName's action. key event syntax
      * consists of "(keyup | keydown)':'key", where key is the lower case, spaces
@@ -418,6 +732,102 @@ public class Board {
             keyBindings.put(keyName, new HashSet<String>());
         }
         keyBindings.get(keyName).add(gadgetName);
+        if(keyEventIds.get(keyName) == null){
+            keyEventIds.put(keyName, keyEventIds.size());
+        }
+        resolveKeyBindings();
+    }
+    
+    /**
+     * undo bindKey(keyName, gadgetName), if that binding was made. the key event
+     * keeps its id
+     * 
+     * @param keyName the key event string
+     * @param gadgetName the name of the gadget bound to that key
+     */
+    public void unbindKey(String keyName, String gadgetName){
+        if(keyBindings.get(keyName) != null && keyBindings.get(keyName).remove(gadgetName)){
+            resolveKeyBindings();
+        }
+    }
+    
+    //private helper method rebuilds keyActions from the key bindings, skipping
+    //any gadget names that aren't on the board
+    private void resolveKeyBindings(){
+        Triggerable[][] actions = new Triggerable[keyEventIds.size()][];
+        for(Map.Entry<String, Integer> keyEvent : keyEventIds.entrySet()){
+            List<Triggerable> gadgets = new ArrayList<Triggerable>();
+            for(String gadgetName : keyBindings.get(keyEvent.getKey())){
+                if(nameLookup.get(gadgetName) != null){
+                    gadgets.add(nameLookup.get(gadgetName));
+                }
+            }
+            actions[keyEvent.getValue()] = gadgets.toArray(new Triggerable[gadgets.size()]);
+        }
+        keyActions = actions;
+        //ids are never taken back, so a reader with the old copy still sends
+        //valid ids
+        publishedKeyEventIds = Collections.unmodifiableMap(new HashMap<String, Integer>(keyEventIds));
+    }
+    
+    /**
+     * make an independent copy of this board, for running offline simulations.
+     * the copy has the same physics parameters, gadgets, trigger links, key
+     * bindings, saved configuration and free balls as this board. every gadget
+     * starts in its initial state and every wall is solid. balls held by
+     * absorbers are not copied, and neither are pending inputs or messages.
+     * unlike this board, the copy removes balls that escape through a wall
+     * 
+     * @return the copy
+     */
+    public Board copy(){
+        Board copy = new Board(name, g, mu, mu2, size);
+        for(Triggerable gadget : triggerableList){
+            if(gadget instanceof Portal){
+                Portal portal = (Portal)gadget;
+                copy.addPortal(portal.x, portal.y, portal.name(), portal.exitBoard(), portal.exitPortal());
+            }else{
+                copy.add(gadget.copy());
+            }
+        }
+        for(Triggerable gadget : triggerableList){
+            for(String target : gadget.triggerNames()){
+                copy.createTriggerLink(gadget.name(), target);
+            }
+        }
+        for(Map.Entry<String, Set<String>> binding : keyBindings.entrySet()){
+            for(String gadgetName : binding.getValue()){
+                copy.bindKey(binding.getKey(), gadgetName);
+            }
+        }
+        for(Ball ball : ballList){
+            if(!ball.isInStasis()){
+                copy.add(new Ball(ball.x(), ball.y(), ball.vx(), ball.vy(), ball.getRadius()));
+            }
+        }
+        copy.saveList = new ArrayList<VectPair>(saveList);
+        copy.removesEscapedBalls = true;
+        copy.simulation.setParabolicPrediction(simulation.hasParabolicPrediction());
+        //the copy's walls are all solid, so this board's field only fits it if
+        //this board's walls are too, and it is up to date
+        if(simulation.hasDistanceField()){
+            if(isDisconnected() && !distanceFieldStale){
+                copy.simulation.setDistanceField(simulation.getDistanceField());
+            }else{
+                copy.buildDistanceField();
+            }
+        }
+        return copy;
+    }
+    
+    //private helper method -- true iff every wall is solid
+    private boolean isDisconnected(){
+        for(Wall wall : wallList){
+            if(wall.isTransparent()){
+                return false;
+            }
+        }
+        return true;
     }
     
     /**
@@ -437,10 +847,77 @@ public class Board {
         }
     }
     
+    /**
+     * replace the restore point for reset features with the given ball states
+     * 
+     * @param states the <position,velocity> pairs of the balls to restore
+     */
+    public void saveConfiguration(List<VectPair> states){
+        saveList = new ArrayList<VectPair>(states);
+    }
+    
     
     
     //Board Link control methods!
     
+    /**
+     * apply a message from the server to the board: spawn balls that teleport
+     * in, open and close portals, connect and disconnect walls, and drop the
+     * connections of boards that disconnect. messages that don't change the
+     * board are ignored. the message is recorded in the board's journal, if
+     * it has one, whether or not it changes the board
+     * 
+     * @param message a valid message addressed to this board
+     */
+    public void applyMessage(String message){
+        if(journal != null){
+            journal.message(ticks, message);
+        }
+        String sender = Messages.parseSender(message);
+        String[] tokens = Messages.parseArguments(message);
+        switch(Messages.parseType(message)){
+        case WALL_TELEPORT:
+            //spawn the balls that have entered our board through a wall
+            for(VectPair pair : Messages.parseWallTeleportBalls(message)){
+                spawnBall(pair);
+            }
+            break;
+            
+        case PORTAL_TELEPORT:
+            //spawn the balls that have entered our board through a portal
+            for(Vect velocity : Messages.parsePortalTeleportVelocities(message)){
+                spawnBall(tokens[0], velocity.x(), velocity.y());
+            }
+            break;
+            
+        case PORTAL_REPLY:
+            //a reply lists all of the sender's portals, so ours to portals it
+            //no longer has close
+            closePortals(sender);
+            openPortals(sender, Arrays.asList(tokens));
+            break;
+            
+        case LINK:
+            connectWall(Wall.stringToWallType(tokens[1]), tokens[0]);
+            break;
+            
+        case DELINK:
+            disconnectWall(Wall.stringToWallType(tokens[1]), tokens[0]);
+            break;
+            
+        case DISCONNECT:
+            //if we have disconnected from the server, disconnect ALL links
+            if(tokens[0].equals(name)){
+                disconnectAll();
+            }
+            disconnectBoard(tokens[0]);
+            break;
+            
+        default:
+            //nothing on the board changes
+        }
+    }
+    
     /**
      * removes all connections to the named board. called when another board
      * becomes disconnected from the server
@@ -463,6 +940,7 @@ public class Board {
             wall.disconnect();
             handleClipping(wall);
         }
+        refreshDistanceField();
         closeNonLocalPortals();
     }
     
@@ -478,6 +956,7 @@ public class Board {
             if(wall.type() == type){
                 if(!wall.isTransparent()){
                     wall.connectBoard(otherBoard);
+                    refreshDistanceField();
                     return;
                 }
                 if(!wall.linkName().equals(otherBoard)){
@@ -540,6 +1019,7 @@ public class Board {
         if(wall.linkName().equals(boardName)){
             wall.disconnect();
             handleClipping(wall);
+            refreshDistanceField();
         }
     }
     
@@ -558,6 +1038,28 @@ public class Board {
         }
     }
     
+    //private helper method -- removes balls that have ended up outside of a
+    //solid wall, and counts them. this happens when a ball is pinned between
+    //gadgets for so long that the simulation gives up on resolving its collisions
+    //runs every step, so it indexes rather than allocating iterators. removing a
+    //ball moves the last one into its place, which is checked next
+    private void removeEscapedBalls(){
+        for(int jj = 0; jj < wallList.size(); jj ++){
+            Wall wall = wallList.get(jj);
+            if(wall.isTransparent()){
+                continue;
+            }
+            for(int ii = 0; ii < ballList.size();){
+                if(wall.isOutOfBounds(ballList.get(ii))){
+                    ballList.remove(ii);
+                    escapedBalls ++;
+                }else{
+                    ii ++;
+                }
+            }
+        }
+    }
+    
     //private method removes balls that are placed into illegal states by the 
     //materialization of solid walls
     private void handleClipping(Wall wall){
@@ -579,9 +1081,14 @@ public class Board {
     
     /**
      * resolve all pending (outgoing) transport events by composing appropriate server
-     * messages or directly resolving local teleportation
+     * messages or directly resolving local teleportation. the balls leaving for
+     * the same board through the same wall or portal in this step are sent in
+     * one message, which shares a trace
      */
     private void processTransportQueue(){
+        if(transportQueue.isEmpty()){
+            return;
+        }
         while(!transportQueue.isEmpty()){
             Envelope envelope = transportQueue.remove();
             Ball contents = envelope.contents();
@@ -591,22 +1098,58 @@ public class Board {
             String gadgetAddress = envelope.getSecondaryAddress();
             
             if(boardAddress.isEmpty()){
-                //then it is a local event
-                Vect vel = contents.vel();
-                spawnBall(gadgetAddress, vel.x(), vel.y());
+                //then it is a local event. the same ball comes out of the exit
+                //portal, so it keeps its id
+                recordTeleport(contents, boardAddress, gadgetAddress, -1);
+                spawnBall(gadgetAddress, contents);
+                ballList.add(contents);
             } else {
-                //otherwise the ball needs to be sent over the network
-                String message = "";
-                if(gadgetAddress.isEmpty()){
-                    //if gadget is not specified, then the ball is being teleported
-                    //by position
-                    message = Messages.composeWallTeleportMessage(name,boardAddress,contents);
-                }else{
-                    //otherwise we address the message to the destination gadget
-                    message = Messages.composePortalTeleportMessage(name,boardAddress,gadgetAddress,contents);
+                //otherwise the ball needs to be sent over the network, with
+                //the others headed the same way. names can't contain spaces
+                String destination = boardAddress + " " + gadgetAddress;
+                List<Envelope> batch = outgoingBatches.get(destination);
+                if(batch == null){
+                    batch = new ArrayList<Envelope>();
+                    outgoingBatches.put(destination, batch);
                 }
-                messageQueue.add(message);
+                batch.add(envelope);
+            }
+        }
+        
+        for(List<Envelope> batch : outgoingBatches.values()){
+            String boardAddress = batch.get(0).getPrimaryAddress();
+            String gadgetAddress = batch.get(0).getSecondaryAddress();
+            long traceId = nextTraceId ++;
+            List<Ball> balls = new ArrayList<Ball>(batch.size());
+            for(Envelope envelope : batch){
+                recordTeleport(envelope.contents(), boardAddress, gadgetAddress, traceId);
+                balls.add(envelope.contents());
+            }
+            String message = "";
+            if(gadgetAddress.isEmpty()){
+                //if gadget is not specified, then the balls are being teleported
+                //by position
+                message = Messages.composeWallTeleportMessage(name,boardAddress,balls,traceId);
+            }else{
+                //otherwise we address the message to the destination gadget
+                message = Messages.composePortalTeleportMessage(name,boardAddress,gadgetAddress,balls,traceId);
             }
+            messageQueue.add(message);
+        }
+        outgoingBatches.clear();
+    }
+    
+    //helper method -- records a ball's teleport, if teleports are being profiled
+    private void recordTeleport(Ball ball, String boardAddress, String gadgetAddress, long traceId){
+        if(TELEPORT_EVENTS.isEnabled()){
+            TeleportEvent event = new TeleportEvent();
+            event.board = name;
+            event.destinationBoard = boardAddress;
+            event.destinationPortal = gadgetAddress;
+            event.xVelocity = ball.vx();
+            event.yVelocity = ball.vy();
+            event.traceId = traceId;
+            event.commit();
         }
     }
     
@@ -638,6 +1181,9 @@ public class Board {
      * Redraw the character grid with all objects
      */
     public void initGrid(){
+        if(grid == null){
+            grid = new char[size + 2][size + 2];
+        }
         for(int ii = 0; ii < grid.length; ii++){
             for(int jj = 0; jj < grid[0].length; jj++){
                 grid[ii][jj] = ' ';
@@ -675,9 +1221,9 @@ public class Board {
      */
     public CollidableGraphic getGraphic(){
         if(vortex == null){
-            return new BoardGraphic(ballList, wallList, triggerableList);
+            return new BoardGraphic(ballList, wallList, triggerableList, size);
         }else{
-            return new BoardGraphic(ballList, wallList, triggerableList, vortex);
+            return new BoardGraphic(ballList, wallList, triggerableList, size, vortex);
         }
     }
     
@@ -0,0 +1,152 @@
+package client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * watches a board file for changes, and tells a listener when its contents
+ * change, so that the board can be reloaded while it runs.
+ *
+ * editors often save a file in several steps -- truncating it and writing it,
+ * or writing a new file and renaming it over the old one -- so a change is only
+ * reported once the file has been quiet for DEBOUNCE_MILLIS. saves that leave
+ * the contents as they were aren't reported.
+ *
+ * Thread safety argument:
+ *      run() is meant to have a thread of its own, and the listener is called
+ *      from that thread. watch() and stop() may be called from any thread: the
+ *      watched file is guarded by this object's lock, the WatchService is
+ *      thread safe, and the stopped flag is volatile
+ */
+public class BoardFileWatcher implements Runnable{
+
+    /**
+     * told when the watched file changes
+     */
+    public interface Listener {
+        /**
+         * called from the watcher's thread once the file has changed
+         *
+         * @param file the watched file
+         */
+        void fileChanged(File file);
+    }
+
+    private static final long DEBOUNCE_MILLIS = 100;
+    //how long the file must be quiet before a change is reported
+
+    private final WatchService watchService;
+    private final Listener listener;
+    private File file = null;
+    //the watched file, or null if none is
+    private byte[] contents = null;
+    //the contents of the file when it was last watched or reported
+    private volatile boolean stopped = false;
+
+    /**
+     * make a watcher that isn't watching anything yet
+     *
+     * @param listener the listener to tell about changes
+     * @throws IOException if the file system can't watch files
+     */
+    public BoardFileWatcher(Listener listener) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+    }
+
+    /**
+     * watch a file, instead of the one watched before
+     *
+     * @param boardFile the file to watch
+     * @throws IOException if the file's directory can't be watched
+     */
+    public synchronized void watch(File boardFile) throws IOException {
+        File absolute = boardFile.getAbsoluteFile();
+        absolute.getParentFile().toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        file = absolute;
+        contents = read(absolute);
+    }
+
+    /**
+     * stop watching, which ends run() within a tenth of a second
+     */
+    public void stop(){
+        stopped = true;
+    }
+
+    /**
+     * wait for changes to the watched file and report them, until stop() is
+     * called
+     */
+    public void run(){
+        try{
+            long quietAt = -1;
+            //when a pending change can be reported, or -1 if none is pending
+            while(!stopped){
+                WatchKey key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                if(key != null){
+                    for(WatchEvent<?> event : key.pollEvents()){
+                        if(isWatched((Path)key.watchable(), event)){
+                            quietAt = System.currentTimeMillis() + DEBOUNCE_MILLIS;
+                        }
+                    }
+                    key.reset();
+                }
+                if(quietAt >= 0 && System.currentTimeMillis() >= quietAt){
+                    quietAt = -1;
+                    File changed = takeChange();
+                    if(changed != null){
+                        listener.fileChanged(changed);
+                    }
+                }
+            }
+        }catch(InterruptedException e){
+            System.err.println("Board file watcher interrupted");
+        }finally{
+            try{
+                watchService.close();
+            }catch(IOException e){
+                System.err.println("Error closing board file watcher: " + e.getMessage());
+            }
+        }
+    }
+
+    //helper method -- true if the event is about the watched file
+    private synchronized boolean isWatched(Path directory, WatchEvent<?> event){
+        if(file == null || event.kind() == StandardWatchEventKinds.OVERFLOW){
+            return file != null;
+        }
+        return directory.resolve((Path)event.context()).toFile().getAbsoluteFile().equals(file);
+    }
+
+    //helper method -- the watched file if its contents changed since they
+    //were last seen, or null
+    private synchronized File takeChange(){
+        byte[] current = read(file);
+        if(current == null || Arrays.equals(current, contents)){
+            return null;
+        }
+        contents = current;
+        return file;
+    }
+
+    //helper method -- a file's contents, or null if it can't be read, as when
+    //it is being replaced
+    private static byte[] read(File file){
+        try{
+            return Files.readAllBytes(file.toPath());
+        }catch(IOException e){
+            return null;
+        }
+    }
+}
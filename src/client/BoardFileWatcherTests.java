@@ -0,0 +1,120 @@
+package client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing strategy
+ *
+ * each test runs a watcher on its own thread over a fresh directory, and
+ * collects the files it reports
+ *
+ * run():
+ *  1. a change to the watched file's contents is reported once, after it has
+ *     been quiet, even when it was written in several steps
+ *  2. saving the same contents again, and changing other files in the
+ *     directory, are not reported
+ *  3. a new file renamed over the watched one is reported
+ *
+ * watch():
+ *  4. watching another file stops reports about the one watched before
+ *
+ * stop():
+ *  5. ends run()
+ */
+public class BoardFileWatcherTests {
+
+    private static final long WAIT_MILLIS = 5000;
+    //how long to wait for a report that should come
+    private static final long QUIET_MILLIS = 500;
+    //how long to wait for a report that shouldn't
+
+    private File directory;
+    private final BlockingQueue<File> reported = new LinkedBlockingQueue<File>();
+    private BoardFileWatcher watcher;
+    private Thread thread;
+
+    @Before public void start() throws IOException {
+        directory = Files.createTempDirectory("watcher").toFile();
+        watcher = new BoardFileWatcher(new BoardFileWatcher.Listener(){
+            public void fileChanged(File file){
+                reported.add(file);
+            }
+        });
+        thread = new Thread(watcher);
+        thread.start();
+    }
+
+    @After public void stop() throws InterruptedException {
+        watcher.stop();
+        thread.join(WAIT_MILLIS);
+        for(File file : directory.listFiles()){
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    //helper method -- write a file's contents
+    private static File write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test public void testChangeReportedOnce() throws IOException, InterruptedException {
+        File board = write(new File(directory, "a.pb"), "board name=A\n");
+        watcher.watch(board);
+        //truncated and then written, as some editors save
+        write(board, "");
+        write(board, "board name=A\nsquareBumper name=S x=1 y=1\n");
+        assertEquals(board.getAbsoluteFile(), reported.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        assertNull(reported.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test public void testSameContentsAndOtherFiles() throws IOException, InterruptedException {
+        File board = write(new File(directory, "a.pb"), "board name=A\n");
+        watcher.watch(board);
+        write(board, "board name=A\n");
+        write(new File(directory, "b.pb"), "board name=B\n");
+        assertNull(reported.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test public void testRenamedOver() throws IOException, InterruptedException {
+        File board = write(new File(directory, "a.pb"), "board name=A\n");
+        watcher.watch(board);
+        File saved = write(new File(directory, "a.pb.tmp"), "board name=A gravity=10\n");
+        Files.move(saved.toPath(), board.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        assertEquals(board.getAbsoluteFile(), reported.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test public void testWatchAnother() throws IOException, InterruptedException {
+        File first = write(new File(directory, "a.pb"), "board name=A\n");
+        File second = write(new File(directory, "b.pb"), "board name=B\n");
+        watcher.watch(first);
+        watcher.watch(second);
+        write(first, "board name=A gravity=10\n");
+        assertNull(reported.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+        write(second, "board name=B gravity=10\n");
+        assertEquals(second.getAbsoluteFile(), reported.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test public void testStop() throws InterruptedException {
+        watcher.stop();
+        thread.join(WAIT_MILLIS);
+        assertFalse(thread.isAlive());
+    }
+}
@@ -0,0 +1,244 @@
+package client;
+
+import java.util.Arrays;
+
+/**
+ * ChunkIndex
+ *
+ * a spatial index over items numbered 0..n-1, each with an axis aligned
+ * bounding box. the plane is cut into square chunks, and each chunk lists the
+ * items whose boxes overlap it. only chunks that hold something are stored,
+ * so memory scales with the occupied part of a board rather than its area,
+ * and a query only looks at the chunks its box overlaps.
+ *
+ * queries report each item once, even if its box spans several chunks, and
+ * don't allocate once the index has warmed up.
+ *
+ * Thread safety argument:
+ *      ChunkIndex is not thread safe. queries modify the index's bookkeeping
+ */
+public class ChunkIndex {
+
+    /**
+     * a growable list of item numbers
+     */
+    public static class Items {
+        private int[] items = new int[8];
+        private int size = 0;
+        //rep invariant -- items[0..size) are the contents of the list
+
+        /**
+         * @return the number of items in the list
+         */
+        public int size(){
+            return size;
+        }
+
+        /**
+         * @param index the position in the list, must be >= 0 and < size()
+         * @return the item number at that position
+         */
+        public int get(int index){
+            return items[index];
+        }
+
+        /**
+         * sort the list into increasing order
+         */
+        public void sort(){
+            Arrays.sort(items, 0, size);
+        }
+
+        /**
+         * empty the list, keeping its storage
+         */
+        public void clear(){
+            size = 0;
+        }
+
+        private void add(int item){
+            if(size == items.length){
+                int[] grown = new int[2*size];
+                System.arraycopy(items, 0, grown, 0, size);
+                items = grown;
+            }
+            items[size ++] = item;
+        }
+    }
+
+    private final double chunkSize;
+    //side length of a chunk
+    private long[] keys = new long[16];
+    private Items[] chunks = new Items[16];
+    //open addressed hash table from chunkKey() to the items overlapping that chunk
+    //rep invariant -- keys.length == chunks.length is a power of two, less than
+    //                 half full. chunks[i] == null iff slot i is empty
+    private int occupied = 0;
+    //number of nonempty slots
+    private Items[] filled = new Items[16];
+    private int filledCount = 0;
+    //rep invariant -- filled[0..filledCount) are exactly the chunks holding
+    //                 at least one item
+    private int[] stamps = new int[0];
+    //stamps[i] == stamp iff item i has already been reported by the current query
+    private int stamp = 0;
+    //rep invariant -- every entry of stamps is <= stamp
+
+    /**
+     * make an empty index
+     *
+     * @param chunkSize the side length of a chunk, must be > 0
+     */
+    public ChunkIndex(double chunkSize){
+        if(!(chunkSize > 0)){
+            throw new IllegalArgumentException("requires positive chunkSize: received \"" + chunkSize + "\"");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the side length of a chunk
+     */
+    public double chunkSize(){
+        return chunkSize;
+    }
+
+    /**
+     * @return the number of chunks holding at least one item
+     */
+    public int occupiedChunks(){
+        return filledCount;
+    }
+
+    /**
+     * add an item to the index
+     *
+     * @param item the item's number, must be >= 0
+     * @param x0 the left edge of the item's bounding box
+     * @param y0 the top edge of the item's bounding box
+     * @param x1 the right edge of the item's bounding box, >= x0
+     * @param y1 the bottom edge of the item's bounding box, >= y0
+     */
+    public void insert(int item, double x0, double y0, double x1, double y1){
+        if(item >= stamps.length){
+            int[] grown = new int[Math.max(2*stamps.length, item + 1)];
+            System.arraycopy(stamps, 0, grown, 0, stamps.length);
+            stamps = grown;
+        }
+        int i0 = chunkOf(x0), i1 = chunkOf(x1);
+        int j0 = chunkOf(y0), j1 = chunkOf(y1);
+        for(int jj = j0; jj <= j1; jj ++){
+            for(int ii = i0; ii <= i1; ii ++){
+                long key = chunkKey(ii, jj);
+                Items items = find(key);
+                if(items == null){
+                    items = new Items();
+                    put(key, items);
+                }
+                if(items.size == 0){
+                    if(filledCount == filled.length){
+                        Items[] grown = new Items[2*filledCount];
+                        System.arraycopy(filled, 0, grown, 0, filledCount);
+                        filled = grown;
+                    }
+                    filled[filledCount ++] = items;
+                }
+                items.add(item);
+            }
+        }
+    }
+
+    /**
+     * remove every item, keeping the chunks' storage for reuse. takes time
+     * proportional to the number of occupied chunks
+     */
+    public void clear(){
+        for(int ii = 0; ii < filledCount; ii ++){
+            filled[ii].clear();
+            filled[ii] = null;
+        }
+        filledCount = 0;
+    }
+
+    /**
+     * find the items whose chunks overlap a box. every item whose bounding box
+     * overlaps the query box is found, along with some that are merely nearby
+     *
+     * @param x0 the left edge of the query box
+     * @param y0 the top edge of the query box
+     * @param x1 the right edge of the query box, >= x0
+     * @param y1 the bottom edge of the query box, >= y0
+     * @param found the list to which the items are added, each one once
+     */
+    public void query(double x0, double y0, double x1, double y1, Items found){
+        if(stamp == Integer.MAX_VALUE){
+            Arrays.fill(stamps, 0);
+            stamp = 0;
+        }
+        stamp ++;
+        int i0 = chunkOf(x0), i1 = chunkOf(x1);
+        int j0 = chunkOf(y0), j1 = chunkOf(y1);
+        for(int jj = j0; jj <= j1; jj ++){
+            for(int ii = i0; ii <= i1; ii ++){
+                Items items = find(chunkKey(ii, jj));
+                if(items == null){
+                    continue;
+                }
+                for(int kk = 0; kk < items.size; kk ++){
+                    int item = items.items[kk];
+                    if(stamps[item] != stamp){
+                        stamps[item] = stamp;
+                        found.add(item);
+                    }
+                }
+            }
+        }
+    }
+
+    //helper method -- the index of the chunk containing a coordinate
+    private int chunkOf(double coordinate){
+        return (int)Math.floor(coordinate/chunkSize);
+    }
+
+    //helper method -- packs a pair of chunk indices into a table key
+    private static long chunkKey(int ii, int jj){
+        return ((long)ii << 32) | (jj & 0xffffffffL);
+    }
+
+    //helper method -- the table slot where a key is, or would go
+    private int slot(long key){
+        long hash = key*0x9E3779B97F4A7C15L;
+        int mask = keys.length - 1;
+        int index = (int)(hash >>> 32) & mask;
+        while(chunks[index] != null && keys[index] != key){
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    //helper method -- the items for a chunk, or null if it has never held any
+    private Items find(long key){
+        return chunks[slot(key)];
+    }
+
+    //helper method -- adds a chunk to the table, growing it if needed
+    private void put(long key, Items items){
+        if(2*(occupied + 1) > keys.length){
+            long[] oldKeys = keys;
+            Items[] oldChunks = chunks;
+            keys = new long[2*oldKeys.length];
+            chunks = new Items[2*oldChunks.length];
+            for(int ii = 0; ii < oldKeys.length; ii ++){
+                if(oldChunks[ii] != null){
+                    int index = slot(oldKeys[ii]);
+                    keys[index] = oldKeys[ii];
+                    chunks[index] = oldChunks[ii];
+                }
+            }
+        }
+        int index = slot(key);
+        keys[index] = key;
+        chunks[index] = items;
+        occupied ++;
+    }
+}
@@ -0,0 +1,122 @@
+package client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Testing strategy
+ *
+ * query():
+ *  1. finds every item whose box overlaps the query box, compared against
+ *     brute force over seeded random boxes, including negative coordinates
+ *     and enough chunks to grow the table several times
+ *  2. reports an item spanning several chunks once, and again in the next query
+ *  3. finds nothing in empty chunks
+ *
+ * clear():
+ *  4. empties the index, which can then be refilled
+ *
+ * Items:
+ *  5. sort() orders the items, clear() empties the list
+ */
+public class ChunkIndexTests {
+
+    //the found items as a set, checking that none was reported twice
+    private static Set<Integer> asSet(ChunkIndex.Items items){
+        Set<Integer> set = new HashSet<Integer>();
+        for(int ii = 0; ii < items.size(); ii ++){
+            assertTrue("reported twice: " + items.get(ii), set.add(items.get(ii)));
+        }
+        return set;
+    }
+
+    private static boolean overlaps(double[] a, double[] b){
+        return a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3];
+    }
+
+    @Test public void testQueryFindsOverlapping(){
+        Random gen = new Random(6005);
+        ChunkIndex index = new ChunkIndex(4);
+        double[][] boxes = new double[2000][];
+        for(int ii = 0; ii < boxes.length; ii ++){
+            double x = gen.nextDouble()*400 - 100, y = gen.nextDouble()*400 - 100;
+            boxes[ii] = new double[] { x, y, x + gen.nextDouble()*10, y + gen.nextDouble()*10 };
+            index.insert(ii, boxes[ii][0], boxes[ii][1], boxes[ii][2], boxes[ii][3]);
+        }
+        assertTrue(index.occupiedChunks() > 1000);
+        ChunkIndex.Items found = new ChunkIndex.Items();
+        for(int query = 0; query < 500; query ++){
+            double x = gen.nextDouble()*420 - 110, y = gen.nextDouble()*420 - 110;
+            double[] box = { x, y, x + gen.nextDouble()*20, y + gen.nextDouble()*20 };
+            found.clear();
+            index.query(box[0], box[1], box[2], box[3], found);
+            Set<Integer> reported = asSet(found);
+            for(int ii = 0; ii < boxes.length; ii ++){
+                if(overlaps(boxes[ii], box)){
+                    assertTrue("missed " + ii, reported.contains(ii));
+                }
+            }
+        }
+    }
+
+    @Test public void testSpanningItemOnce(){
+        ChunkIndex index = new ChunkIndex(1);
+        index.insert(0, -2.5, -2.5, 2.5, 2.5);
+        index.insert(1, 0.5, 0.5, 0.6, 0.6);
+        assertEquals(36, index.occupiedChunks());
+        ChunkIndex.Items found = new ChunkIndex.Items();
+        for(int round = 0; round < 2; round ++){
+            found.clear();
+            index.query(-3, -3, 3, 3, found);
+            found.sort();
+            assertEquals(2, found.size());
+            assertEquals(0, found.get(0));
+            assertEquals(1, found.get(1));
+        }
+        found.clear();
+        index.query(10, 10, 12, 12, found);
+        assertEquals(0, found.size());
+    }
+
+    @Test public void testClear(){
+        ChunkIndex index = new ChunkIndex(2);
+        index.insert(0, 0, 0, 1, 1);
+        index.insert(1, 5, 5, 6, 6);
+        index.clear();
+        assertEquals(0, index.occupiedChunks());
+        ChunkIndex.Items found = new ChunkIndex.Items();
+        index.query(-10, -10, 10, 10, found);
+        assertEquals(0, found.size());
+        index.insert(3, 4.5, 4.5, 5.5, 5.5);
+        assertEquals(1, index.occupiedChunks());
+        index.query(-10, -10, 10, 10, found);
+        assertEquals(1, found.size());
+        assertEquals(3, found.get(0));
+    }
+
+    @Test public void testItems(){
+        ChunkIndex index = new ChunkIndex(1);
+        for(int ii = 19; ii >= 0; ii --){
+            index.insert(ii, ii, 0, ii, 0);
+        }
+        ChunkIndex.Items found = new ChunkIndex.Items();
+        index.query(0, 0, 19, 0, found);
+        assertEquals(20, found.size());
+        found.sort();
+        for(int ii = 0; ii < 20; ii ++){
+            assertEquals(ii, found.get(ii));
+        }
+        found.clear();
+        assertEquals(0, found.size());
+    }
+
+    @Test(expected=IllegalArgumentException.class) public void testChunkSizeMustBePositive(){
+        new ChunkIndex(0);
+    }
+}
@@ -12,6 +12,7 @@ import java.util.concurrent.BlockingQueue;
 import client.PingballClient.KillSwitch;
 import message.Messages;
 import message.Messages.MessageType;
+import message.TeleportTrace;
 
 /**
  * class monitors a socket for incoming messages and feeds a
@@ -81,7 +82,7 @@ public class ClientMessageReceiver implements Runnable{
                         if(Messages.parseType(line) == MessageType.DISCONNECT){
                             boardList.remove(Messages.parseArguments(line)[0]);
                         }
-                        messagesReceived.add(line);
+                        messagesReceived.add(TeleportTrace.stamp(line));
                     }
                 } catch(SocketTimeoutException ste) {
                     if(killSwitch.check()){
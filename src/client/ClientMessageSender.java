@@ -4,10 +4,14 @@ import java.io.*;
 import java.net.Socket;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import client.PingballClient.KillSwitch;
 import message.Messages;
 import message.Messages.MessageType;
+import message.TeleportTrace;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
 
 /**
  * monitors a message queue which is fed by the main client thread
@@ -28,6 +32,11 @@ public class ClientMessageSender implements Runnable{
     private final Socket server;
     private final String name;
     private final KillSwitch killSwitch;
+    private final Histogram outgoingWait;
+    //how long teleport messages wait in the input queue before they're sent
+    private final AtomicReference<String> hello;
+    //the hello the sender greets the server with, which the client replaces
+    //when it loads another board file
     
     
     /**
@@ -55,10 +64,69 @@ public class ClientMessageSender implements Runnable{
      * @param killSwitch the switch that kills this thread
      */
     public ClientMessageSender(String name, Socket socket, BlockingQueue<String> input, KillSwitch killSwitch){
+        this(name,socket,input,killSwitch,new MetricsRegistry("client"));
+    }
+    
+    /**
+     * create a new message sender to send messages from a PingballClient to
+     * a PingballServer
+     * 
+     * @param name the name of the client's board
+     * @param socket the socket of the server
+     * @param input the queue through which the primary thread will feed
+     *          messages for the server
+     * @param killSwitch the switch that kills this thread
+     * @param metrics the client's metrics, which the sender records how long
+     *          teleport messages wait in its input queue into
+     */
+    public ClientMessageSender(String name, Socket socket, BlockingQueue<String> input, KillSwitch killSwitch,
+            MetricsRegistry metrics){
+        this(name,socket,input,killSwitch,metrics,Board.DEFAULT_SIZE);
+    }
+    
+    /**
+     * create a new message sender to send messages from a PingballClient to
+     * a PingballServer
+     * 
+     * @param name the name of the client's board
+     * @param socket the socket of the server
+     * @param input the queue through which the primary thread will feed
+     *          messages for the server
+     * @param killSwitch the switch that kills this thread
+     * @param metrics the client's metrics, which the sender records how long
+     *          teleport messages wait in its input queue into
+     * @param boardSize the side length of the client's board, announced in the
+     *          hello so that the server only links it to boards of the same size
+     */
+    public ClientMessageSender(String name, Socket socket, BlockingQueue<String> input, KillSwitch killSwitch,
+            MetricsRegistry metrics, int boardSize){
+        this(name,socket,input,killSwitch,metrics,
+                new AtomicReference<String>(Messages.composeClientHello(name, "Server", boardSize)));
+    }
+    
+    /**
+     * create a new message sender to send messages from a PingballClient to
+     * a PingballServer
+     * 
+     * @param name the name of the client's board
+     * @param socket the socket of the server
+     * @param input the queue through which the primary thread will feed
+     *          messages for the server
+     * @param killSwitch the switch that kills this thread
+     * @param metrics the client's metrics, which the sender records how long
+     *          teleport messages wait in its input queue into
+     * @param hello the client hello the sender greets the server with, every
+     *          time it polls. the client may replace it while the sender runs
+     */
+    public ClientMessageSender(String name, Socket socket, BlockingQueue<String> input, KillSwitch killSwitch,
+            MetricsRegistry metrics, AtomicReference<String> hello){
         this.name = name;
+        this.hello = hello;
         this.server = socket;
         this.messagesToSend = input;
         this.killSwitch = killSwitch;
+        this.outgoingWait = metrics.histogram(
+                "teleport.hop." + TeleportTrace.hopName(TeleportTrace.SENT) + "Nanos");
     }
     
     /**
@@ -93,7 +161,7 @@ public class ClientMessageSender implements Runnable{
     
     //send a hello message through the specified output stream
     private void greet(PrintWriter out) throws IOException{
-        String hello = Messages.composeClientHello(name, "Server");
+        String hello = this.hello.get();
         //System.out.println(hello);
         out.println(hello);
     }
@@ -118,7 +186,7 @@ public class ClientMessageSender implements Runnable{
                             return false;
                         }
                     }
-                    out.println(message);
+                    out.println(TeleportTrace.stamp(message, outgoingWait));
                 }
             }
             return true;
@@ -0,0 +1,188 @@
+package client;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import sim.Triggerable;
+import sim.Wall;
+
+/**
+ * DistanceField
+ *
+ * a grid of distances from points on the board to the nearest piece of static
+ * geometry -- the walls and the gadgets. gadgets are represented by their
+ * bounding boxes, which also covers every position a flipper can swing
+ * through. distances are negative inside of a gadget's bounding box.
+ *
+ * the simulation uses this to tell that a ball is too far away from everything
+ * to hit any of it during a time step, and skip its collision tests entirely.
+ * the grid has to be rebuilt whenever the static geometry changes.
+ *
+ * the grid is split into chunks which are only filled in the first time a
+ * ball looks at them, so the memory and time it takes follow the parts of the
+ * board that balls actually visit rather than its area. distances are capped
+ * at the side length of a chunk, which keeps each chunk's work down to the
+ * gadgets in and around it.
+ *
+ * Thread safety argument:
+ *      filling in a chunk is deterministic, and chunks are published through
+ *      an atomic array, so a field can be shared between simulations running
+ *      on different threads. two threads may both fill in the same chunk, but
+ *      they compute the same values and only one copy is kept
+ */
+public class DistanceField {
+
+    private static final int RESOLUTION = 4;
+    //grid cells per unit length
+    private static final double MARGIN = 1;
+    //the grid extends this far past the board on every side, to cover
+    //connected walls and balls that are passing through them
+    private static final double SLACK = Math.sqrt(2)/2/RESOLUTION;
+    //half of the diagonal of a grid cell -- the furthest any point in a cell
+    //can be from the cell's center
+    private static final int CHUNK_CELLS = 32;
+    //cells along each side of a chunk
+    private static final double CHUNK_SIZE = (double)CHUNK_CELLS/RESOLUTION;
+    //side length of a chunk, and the largest distance the field stores
+
+    private final int dimension;
+    //number of cells along each side of the grid
+    private final int chunksPerSide;
+    //number of chunks along each side of the grid
+    private final List<Wall> walls;
+    //the walls the distances are measured to
+    private final int[] boxes;
+    //the gadgets' bounding boxes -- x, y, w, h of gadget i at [4i, 4i + 4)
+    private final ChunkIndex gadgetIndex;
+    //the gadgets' bounding boxes, by the field's chunks
+    //rep invariant -- only used while holding its lock
+    private final AtomicReferenceArray<double[]> chunks;
+    //the chunks, at j*chunksPerSide + i, or null if not filled in yet. each is
+    //row major, and entry [jj*CHUNK_CELLS + ii] is the distance from the center
+    //of cell (i*CHUNK_CELLS + ii, j*CHUNK_CELLS + jj) to the nearest wall or
+    //gadget bounding box, or CHUNK_SIZE if that is smaller
+
+    /**
+     * build the distance field for a square board. the field keeps a reference to
+     * the walls, which must not change while it is in use
+     *
+     * @param size the side length of the board
+     *          must be > 0
+     * @param walls the walls of the board
+     * @param gadgets the gadgets on the board
+     */
+    public DistanceField(int size, List<Wall> walls, List<Triggerable> gadgets){
+        if(size <= 0){
+            throw new IllegalArgumentException("requires positive size: received \"" + size + "\"");
+        }
+        dimension = (int)Math.ceil((size + 2*MARGIN)*RESOLUTION);
+        chunksPerSide = (dimension + CHUNK_CELLS - 1)/CHUNK_CELLS;
+        this.walls = walls;
+        chunks = new AtomicReferenceArray<double[]>(chunksPerSide*chunksPerSide);
+        boxes = new int[4*gadgets.size()];
+        gadgetIndex = new ChunkIndex(CHUNK_SIZE);
+        for(int ii = 0; ii < gadgets.size(); ii ++){
+            Triggerable gadget = gadgets.get(ii);
+            boxes[4*ii] = gadget.x;
+            boxes[4*ii + 1] = gadget.y;
+            boxes[4*ii + 2] = gadget.w;
+            boxes[4*ii + 3] = gadget.h;
+            //indexed in grid coordinates, so that the field's chunks line up
+            //with the index's
+            gadgetIndex.insert(ii, gadget.x + MARGIN, gadget.y + MARGIN,
+                    gadget.x + gadget.w + MARGIN, gadget.y + gadget.h + MARGIN);
+        }
+    }
+
+    //helper method -- fill in the chunk at (ci, cj)
+    private double[] fill(int ci, int cj){
+        double[] distances = new double[CHUNK_CELLS*CHUNK_CELLS];
+        ChunkIndex.Items nearby = new ChunkIndex.Items();
+        //anything further than CHUNK_SIZE from every point in the chunk can't
+        //lower any of its capped distances
+        synchronized(gadgetIndex){
+            gadgetIndex.query((ci - 1)*CHUNK_SIZE, (cj - 1)*CHUNK_SIZE,
+                    (ci + 2)*CHUNK_SIZE, (cj + 2)*CHUNK_SIZE, nearby);
+        }
+        for(int jj = 0; jj < CHUNK_CELLS; jj ++){
+            double y = cellCenter(cj*CHUNK_CELLS + jj);
+            for(int ii = 0; ii < CHUNK_CELLS; ii ++){
+                double x = cellCenter(ci*CHUNK_CELLS + ii);
+                double distance = CHUNK_SIZE;
+                for(Wall wall : walls){
+                    distance = Math.min(distance, wall.distanceTo(x, y));
+                }
+                for(int kk = 0; kk < nearby.size(); kk ++){
+                    distance = Math.min(distance, boxDistance(4*nearby.get(kk), x, y));
+                }
+                distances[jj*CHUNK_CELLS + ii] = distance;
+            }
+        }
+        return distances;
+    }
+
+    //helper method -- board coordinate of the center of the cell with this index
+    private static double cellCenter(int index){
+        return (index + 0.5)/RESOLUTION - MARGIN;
+    }
+
+    //helper method -- signed distance from (x, y) to the bounding box at boxes[box]
+    private double boxDistance(int box, double x, double y){
+        double dx = Math.max(boxes[box] - x, x - (boxes[box] + boxes[box + 2]));
+        double dy = Math.max(boxes[box + 1] - y, y - (boxes[box + 1] + boxes[box + 3]));
+        if(dx <= 0 && dy <= 0){
+            //inside the box
+            return Math.max(dx, dy);
+        }
+        dx = Math.max(dx, 0);
+        dy = Math.max(dy, 0);
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    /**
+     * get a lower bound on the distance from a point to the nearest wall or gadget.
+     * points off of the grid are treated as touching something
+     *
+     * @param x the x position
+     * @param y the y position
+     * @return a distance no greater than the distance from (x, y) to any wall
+     *          or gadget, or negative infinity if the point is off the grid.
+     *          distances are capped, so large values only mean "at least this far"
+     */
+    public double clearance(double x, double y){
+        int ii = (int)Math.floor((x + MARGIN)*RESOLUTION);
+        int jj = (int)Math.floor((y + MARGIN)*RESOLUTION);
+        if(ii < 0 || jj < 0 || ii >= dimension || jj >= dimension){
+            return Double.NEGATIVE_INFINITY;
+        }
+        int ci = ii/CHUNK_CELLS, cj = jj/CHUNK_CELLS;
+        int chunk = cj*chunksPerSide + ci;
+        double[] distances = chunks.get(chunk);
+        if(distances == null){
+            chunks.compareAndSet(chunk, null, fill(ci, cj));
+            distances = chunks.get(chunk);
+        }
+        //distances change by at most one unit per unit moved
+        return distances[(jj % CHUNK_CELLS)*CHUNK_CELLS + ii % CHUNK_CELLS] - SLACK;
+    }
+
+    /**
+     * @return the number of cells along each side of the grid
+     */
+    public int dimension(){
+        return dimension;
+    }
+
+    /**
+     * @return the number of chunks that have been filled in
+     */
+    public int filledChunks(){
+        int count = 0;
+        for(int ii = 0; ii < chunks.length(); ii ++){
+            if(chunks.get(ii) != null){
+                count ++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,222 @@
+package client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import BoardGrammar.ParserTests;
+import metrics.MetricsRegistry;
+import sim.Absorber;
+import sim.Ball;
+import sim.CircleBumper;
+import sim.Envelope;
+import sim.Flipper;
+import sim.Flipper.FlipperType;
+import sim.SquareBumper;
+import sim.TriangleBumper;
+import sim.Triggerable;
+import sim.Wall;
+import sim.Wall.WallType;
+
+/**
+ * Testing strategy
+ *
+ * clearance():
+ *  1. at random points, it is never more than the brute force distance to
+ *     the nearest wall or gadget bounding box
+ *  2. points off of the grid are touching something
+ *  3. on a large board, with gadgets on either side of chunk boundaries, it is
+ *     also within a cell's slack of the brute force distance, capped at the
+ *     side length of a chunk
+ *
+ * chunks:
+ *  4. none are filled until a point is looked up, then only the chunk holding
+ *     it, once
+ *
+ * the simulation's use of the field:
+ *  5. seeded random balls on a board with gadgets and trigger links follow
+ *     exactly the same trajectories with and without the field, in both
+ *     constant velocity and parabolic mode -- the field never skips a
+ *     collision the brute force path finds -- while the field does skip tests
+ *  6. a gadget added to a board with a field is hit by the next step
+ */
+public class DistanceFieldTests {
+
+    private static final int SIZE = 20;
+
+    private static List<Wall> walls(int size){
+        List<Wall> walls = new ArrayList<Wall>();
+        for(WallType type : new WallType[] { WallType.TOP, WallType.BOTTOM, WallType.LEFT, WallType.RIGHT }){
+            walls.add(new Wall(type, size, new LinkedList<Envelope>()));
+        }
+        return walls;
+    }
+
+    //brute force signed distance from (x, y) to a gadget's bounding box
+    private static double boxDistance(Triggerable gadget, double x, double y){
+        double dx = Math.max(gadget.x - x, x - (gadget.x + gadget.w));
+        double dy = Math.max(gadget.y - y, y - (gadget.y + gadget.h));
+        if(dx <= 0 && dy <= 0){
+            return Math.max(dx, dy);
+        }
+        dx = Math.max(dx, 0);
+        dy = Math.max(dy, 0);
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+    @Test public void testClearanceIsConservative() throws IOException {
+        List<Triggerable> gadgets = ParserTests.genericTestBoard().getGadgetList();
+        List<Wall> walls = walls(SIZE);
+        DistanceField field = new DistanceField(SIZE, walls, gadgets);
+        Random gen = new Random(6005);
+        for(int ii = 0; ii < 20000; ii ++){
+            double x = gen.nextDouble()*(SIZE + 1.8) - 0.9;
+            double y = gen.nextDouble()*(SIZE + 1.8) - 0.9;
+            double distance = Double.POSITIVE_INFINITY;
+            for(Wall wall : walls){
+                distance = Math.min(distance, wall.distanceTo(x, y));
+            }
+            for(Triggerable gadget : gadgets){
+                distance = Math.min(distance, boxDistance(gadget, x, y));
+            }
+            double clearance = field.clearance(x, y);
+            assertTrue(x + "," + y + ": " + clearance + " > " + distance, clearance <= distance);
+        }
+    }
+
+    @Test public void testClearanceLargeBoard(){
+        int size = 120;
+        Random gen = new Random(6007);
+        List<Triggerable> gadgets = new ArrayList<Triggerable>();
+        for(int ii = 0; ii < 60; ii ++){
+            //chunks are 8 units on a side, starting a unit outside the board
+            int x = 8*(1 + gen.nextInt(13)) - 1 + gen.nextInt(3) - 1;
+            int y = 8*(1 + gen.nextInt(13)) - 1 + gen.nextInt(3) - 1;
+            gadgets.add(new SquareBumper(x, y, "Square" + ii));
+        }
+        List<Wall> walls = walls(size);
+        DistanceField field = new DistanceField(size, walls, gadgets);
+        double slack = Math.sqrt(2)/4;
+        for(int ii = 0; ii < 20000; ii ++){
+            double x = gen.nextDouble()*(size + 1.8) - 0.9;
+            double y = gen.nextDouble()*(size + 1.8) - 0.9;
+            double distance = Double.POSITIVE_INFINITY;
+            for(Wall wall : walls){
+                distance = Math.min(distance, wall.distanceTo(x, y));
+            }
+            for(Triggerable gadget : gadgets){
+                distance = Math.min(distance, boxDistance(gadget, x, y));
+            }
+            double clearance = field.clearance(x, y);
+            assertTrue(x + "," + y + ": " + clearance + " > " + distance, clearance <= distance);
+            assertTrue(x + "," + y + ": " + clearance + " << " + distance,
+                    clearance >= Math.min(distance, 8) - slack - 1e-9);
+        }
+    }
+
+    @Test public void testChunksFilledLazily(){
+        DistanceField field = new DistanceField(200, walls(200), new ArrayList<Triggerable>());
+        assertEquals(0, field.filledChunks());
+        field.clearance(50, 50);
+        assertEquals(1, field.filledChunks());
+        field.clearance(50.5, 51);
+        assertEquals(1, field.filledChunks());
+        field.clearance(150, 20);
+        assertEquals(2, field.filledChunks());
+        field.clearance(-5, 20);
+        assertEquals(2, field.filledChunks());
+    }
+
+    @Test public void testClearanceOffGrid(){
+        DistanceField field = new DistanceField(SIZE, walls(SIZE), new ArrayList<Triggerable>());
+        assertEquals(Double.NEGATIVE_INFINITY, field.clearance(-5, 10), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, field.clearance(10, SIZE + 5), 0);
+        assertTrue(field.clearance(10, 10) > 0);
+    }
+
+    //a board like genericTestBoard, with bumpers triggering flippers so that
+    //gadgets move during the run. parsed boards always have a field, so this
+    //one is put together by hand, and only given a field if asked
+    private static Board linkedBoard(boolean withField){
+        Board board = new Board("linked", 20, 0.025, 0.025);
+        for(int ii = 0; ii < 6; ii ++){
+            board.add(new SquareBumper(2*ii, 12, "Square" + ii));
+        }
+        board.add(new CircleBumper(15, 12, "Circle"));
+        board.add(new TriangleBumper(19, 2, 90, "Tri"));
+        board.add(new Flipper(1, 8, FlipperType.LEFT, 180, "FlipL1"));
+        board.add(new Flipper(4, 8, FlipperType.LEFT, 90, "FlipL2"));
+        board.add(new Flipper(4, 4, FlipperType.LEFT, 270, "FlipL3"));
+        board.add(new Flipper(11, 8, FlipperType.RIGHT, 0, "FlipR1"));
+        board.add(new Flipper(14, 4, FlipperType.RIGHT, 270, "FlipR2"));
+        board.add(new Absorber(0, 18, 20, 2, "Abs"));
+        board.createTriggerLink("Square0", "FlipL1");
+        board.createTriggerLink("Square1", "FlipL2");
+        board.createTriggerLink("Square2", "FlipL3");
+        board.createTriggerLink("Square3", "FlipR1");
+        board.createTriggerLink("Circle", "FlipR2");
+        board.createTriggerLink("Tri", "FlipR1");
+        if(withField){
+            board.buildDistanceField();
+        }
+        return board;
+    }
+
+    @Test public void testFieldMatchesBruteForce(){
+        for(boolean parabolic : new boolean[] { false, true }){
+            Board brute = linkedBoard(false);
+            Board fielded = linkedBoard(true);
+            MetricsRegistry bruteMetrics = new MetricsRegistry("brute");
+            MetricsRegistry fieldMetrics = new MetricsRegistry("field");
+            brute.setMetrics(bruteMetrics);
+            fielded.setMetrics(fieldMetrics);
+            brute.setParabolicPrediction(parabolic);
+            fielded.setParabolicPrediction(parabolic);
+            Random gen = new Random(parabolic ? 6006 : 6005);
+            for(int ii = 0; ii < 12; ii ++){
+                double x = 0.5 + gen.nextDouble()*19, y = 0.5 + gen.nextDouble()*17;
+                double vx = (gen.nextDouble() - 0.5)*40, vy = (gen.nextDouble() - 0.5)*40;
+                brute.add(new Ball(x, y, vx, vy));
+                fielded.add(new Ball(x, y, vx, vy));
+            }
+            for(int step = 0; step < 600; step ++){
+                brute.advanceSimulation(0.05);
+                fielded.advanceSimulation(0.05);
+                List<Ball> expected = brute.getBallList();
+                List<Ball> actual = fielded.getBallList();
+                assertEquals(expected.size(), actual.size());
+                for(int ii = 0; ii < expected.size(); ii ++){
+                    Ball one = expected.get(ii), two = actual.get(ii);
+                    assertTrue("step " + step + ": " + one + " != " + two,
+                            one.x() == two.x() && one.y() == two.y()
+                            && one.vx() == two.vx() && one.vy() == two.vy());
+                }
+            }
+            assertEquals(bruteMetrics.counter("simulation.collisions").count(),
+                    fieldMetrics.counter("simulation.collisions").count());
+            assertTrue(fieldMetrics.counter("simulation.narrowPhaseTests").count()
+                    < bruteMetrics.counter("simulation.narrowPhaseTests").count());
+        }
+    }
+
+    //the field is rebuilt before the step after a gadget is added, so a ball
+    //that was in open space still hits the new gadget
+    @Test public void testAddedGadgetIsHit(){
+        Board board = new Board("open", 0, 0, 0);
+        board.buildDistanceField();
+        board.add(new Ball(10, 9.5, 10, 0));
+        board.advanceSimulation(0.05);
+        board.add(new SquareBumper(11, 9, "Late"));
+        board.advanceSimulation(0.1);
+        Ball ball = board.getBallList().get(0);
+        assertTrue(ball.vx() < 0);
+        assertTrue(ball.x() < 10.75);
+    }
+}
@@ -0,0 +1,271 @@
+package client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+import BoardGrammar.BoardCache;
+import BoardGrammar.OutputProcessor;
+
+/**
+ * HeadlessSimulation
+ *
+ * runs a board without any animation or networking, as fast as the cpu allows,
+ * rather than in 50ms real time frames like PingballClient's simulation thread.
+ *
+ * inputs can be scripted ahead of time. each one is a string in the same format
+ * that Board.postInput() accepts ("keydown:space", "mouse:3.5:7.0",
+ * "mouse:release", ...), and is delivered at the first frame
+ * boundary at or after its scheduled time, just as a real key press is picked up
+ * at the end of the frame it happened during.
+ *
+ * a sampler can be registered to look at the board periodically while it runs.
+ *
+ * Thread safety argument:
+ *      HeadlessSimulation is not thread safe. the board is confined to the thread
+ *      that calls run()
+ */
+public class HeadlessSimulation {
+
+    /**
+     * callback for looking at the board while a headless simulation runs
+     */
+    public interface Sampler {
+        /**
+         * called between frames of a headless simulation. implementations must not
+         * keep a reference to the board, or modify it
+         *
+         * @param board the board being simulated
+         * @param time the simulated time since run() was called, in seconds
+         */
+        void sample(Board board, double time);
+    }
+
+    /**
+     * the outcome of a call to run()
+     */
+    public static class Report {
+        public final double simulatedSeconds;
+        //total simulated time
+        public final long frames;
+        //number of calls of Board.advanceSimulation
+        public final long elapsedNanos;
+        //wall clock time spent simulating, including samplers
+        public final long droppedInputs;
+        //scripted inputs thrown away because the board's input ring was full
+
+        private Report(double simulatedSeconds, long frames, long elapsedNanos, long droppedInputs){
+            this.simulatedSeconds = simulatedSeconds;
+            this.frames = frames;
+            this.elapsedNanos = elapsedNanos;
+            this.droppedInputs = droppedInputs;
+        }
+
+        /**
+         * @return simulated seconds per wall clock second, or positive infinity
+         *          if no measurable time passed
+         */
+        public double throughput(){
+            if(elapsedNanos == 0){
+                return Double.POSITIVE_INFINITY;
+            }
+            return simulatedSeconds/(elapsedNanos/1e9);
+        }
+
+        @Override public String toString(){
+            return "simulated " + simulatedSeconds + "s in " + frames + " frames, "
+                    + elapsedNanos/1e6 + "ms (" + throughput() + " simulated s/s)"
+                    + (droppedInputs > 0 ? ", " + droppedInputs + " inputs dropped" : "");
+        }
+    }
+
+    //a scripted input and the simulated time at which to deliver it
+    private static class ScriptedInput {
+        private final double time;
+        private final String input;
+
+        private ScriptedInput(double time, String input){
+            this.time = time;
+            this.input = input;
+        }
+    }
+
+    private final Board board;
+    //the board being simulated
+    private final double timeStep;
+    //simulated seconds per frame
+    private final List<ScriptedInput> script = new ArrayList<ScriptedInput>();
+    //rep invariant -- sorted by time, inputs with equal times in the order they
+    //                 were scheduled
+    private Sampler sampler = null;
+    //null if nothing is sampling the board
+    private double samplePeriod = 0;
+    //simulated seconds between samples
+
+    /**
+     * make a headless simulation of a board
+     *
+     * @param board the board to simulate. it must not be simulated anywhere else
+     *          while this is running
+     * @param timeStep the simulated time per frame, in seconds
+     *          must be > 0
+     */
+    public HeadlessSimulation(Board board, double timeStep){
+        if(!(timeStep > 0)){
+            throw new IllegalArgumentException("requires positive timeStep: received \"" + timeStep + "\"");
+        }
+        this.board = board;
+        this.timeStep = timeStep;
+    }
+
+    /**
+     * schedule an input for the board
+     *
+     * @param time the simulated time, in seconds after the start of run(), at which
+     *          to deliver the input. must be >= 0
+     * @param input the input, in the format of Board.postInput()
+     */
+    public void schedule(double time, String input){
+        if(!(time >= 0)){
+            throw new IllegalArgumentException("requires nonnegative time: received \"" + time + "\"");
+        }
+        int index = script.size();
+        while(index > 0 && script.get(index - 1).time > time){
+            index --;
+        }
+        script.add(index, new ScriptedInput(time, input));
+    }
+
+    /**
+     * look at the board every period seconds of simulated time, starting at the
+     * beginning of the run. replaces any previous sampler
+     *
+     * @param period simulated seconds between samples. must be > 0. samples are
+     *          taken at frame boundaries, so a period shorter than the time step
+     *          samples every frame
+     * @param sampler the callback
+     */
+    public void setSampler(double period, Sampler sampler){
+        if(!(period > 0)){
+            throw new IllegalArgumentException("requires positive period: received \"" + period + "\"");
+        }
+        this.samplePeriod = period;
+        this.sampler = sampler;
+    }
+
+    /**
+     * simulate the board for the given amount of simulated time, delivering the
+     * scripted inputs as it goes. scripted inputs are consumed, so a second call
+     * continues with the inputs scheduled after the first one ended, measured from
+     * the start of the second call. messages the board queues for the server are
+     * thrown away
+     *
+     * @param duration simulated seconds to run for. must be >= 0. the run stops at
+     *          the first frame boundary at or after duration
+     * @return what was simulated, how long it took, and how many inputs were
+     *          dropped
+     */
+    public Report run(double duration){
+        if(!(duration >= 0)){
+            throw new IllegalArgumentException("requires nonnegative duration: received \"" + duration + "\"");
+        }
+        int nextInput = 0;
+        double nextSample = 0;
+        double time = 0;
+        long frames = 0;
+        long dropped = 0;
+        long start = System.nanoTime();
+        while(time < duration){
+            if(sampler != null && time >= nextSample){
+                sampler.sample(board, time);
+                while(nextSample <= time){
+                    nextSample += samplePeriod;
+                }
+            }
+            //the board reads its input ring at the end of each frame, so
+            //anything due by the end of this frame goes in now. this thread is
+            //both the ring's producer and its consumer, and the ring is drained
+            //every frame, so it only fills if a single frame is overscheduled,
+            //and the inputs that don't fit are counted in the report
+            while(nextInput < script.size() && script.get(nextInput).time <= time + timeStep){
+                if(!board.postInput(script.get(nextInput).input)){
+                    dropped ++;
+                }
+                nextInput ++;
+            }
+            board.advanceSimulation(timeStep);
+            while(board.hasPendingMessage()){
+                board.grabMessage();
+            }
+            frames ++;
+            time = frames*timeStep;
+        }
+        if(sampler != null && time >= nextSample){
+            sampler.sample(board, time);
+        }
+        long elapsed = System.nanoTime() - start;
+        //keep the inputs that weren't reached, shifted to the next run's clock
+        List<ScriptedInput> remaining = new ArrayList<ScriptedInput>();
+        for(ScriptedInput scripted : script.subList(nextInput, script.size())){
+            remaining.add(new ScriptedInput(Math.max(0, scripted.time - time), scripted.input));
+        }
+        script.clear();
+        script.addAll(remaining);
+        return new Report(time, frames, elapsed, dropped);
+    }
+
+    /**
+     * simulate a board file headlessly and print the throughput
+     *
+     * usage: HeadlessSimulation [--step SECONDS] [--time SECONDS] [--cache DIR] FILE
+     *
+     * --step is the simulated time per frame, 0.05 by default. --time is the total
+     * simulated time, 60 by default. --cache is a directory of compiled boards to
+     * load the file through
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args){
+        Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
+        double step = 0.050;
+        double time = 60;
+        String filepath = "";
+        BoardCache cache = null;
+        String flag = "";
+        try{
+            while(!arguments.isEmpty()){
+                flag = arguments.remove();
+                if(flag.equals("--step")){
+                    step = Double.parseDouble(arguments.remove());
+                }else if(flag.equals("--time")){
+                    time = Double.parseDouble(arguments.remove());
+                }else if(flag.equals("--cache")){
+                    cache = new BoardCache(new File(arguments.remove()));
+                }else{
+                    filepath = flag;
+                }
+            }
+            if(filepath.isEmpty()){
+                throw new IllegalArgumentException("no board file given");
+            }
+            Board board = OutputProcessor.parse(new File(filepath), cache);
+            board.saveConfiguration();
+            System.out.println(new HeadlessSimulation(board, step).run(time));
+        } catch(NoSuchElementException e) {
+            System.err.println("missing argument for " + flag);
+            System.err.println("usage: HeadlessSimulation [--step SECONDS] [--time SECONDS] [--cache DIR] FILE");
+        } catch(NumberFormatException e) {
+            System.err.println("unable to parse number for \"" + flag + "\"");
+        } catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: HeadlessSimulation [--step SECONDS] [--time SECONDS] [--cache DIR] FILE");
+        } catch(IOException e) {
+            System.err.println("unable to read " + filepath + ": " + e.getMessage());
+        }
+    }
+}
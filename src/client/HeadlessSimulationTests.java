@@ -0,0 +1,109 @@
+package client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sim.Absorber;
+import sim.Ball;
+
+/**
+ * Testing strategy
+ *
+ * inputs are observed through an absorber bound to a key: a ball dropped into
+ * it is caught during the first frame, and launched out of it at the end of
+ * the frame its key press is delivered in. a sampler records how many balls it
+ * holds before each frame
+ *
+ * run():
+ *  1. an input is delivered at the first frame boundary at or after its time,
+ *     not before
+ *  2. inputs scheduled out of order are delivered in time order
+ *  3. inputs not reached by one run carry over to the next, timed from its start
+ *  4. inputs that don't fit in the board's input ring are dropped and counted,
+ *     and none are dropped when they fit
+ */
+public class HeadlessSimulationTests {
+
+    private static final double TIME_STEP = 0.05;
+
+    private Absorber absorber;
+    //the absorber on the board made by absorberBoard()
+
+    //a board without gravity whose only ball falls into an absorber fired by
+    //the space key
+    private Board absorberBoard(){
+        Board board = new Board("keyed", 0, 0, 0);
+        absorber = new Absorber(0, 18, 20, 2, "Abs");
+        board.add(absorber);
+        board.add(new Ball(10, 17.5, 0, 10));
+        board.bindKey("keydown:space", "Abs");
+        return board;
+    }
+
+    //the number of balls the absorber holds before each frame of a run
+    private List<Integer> heldBeforeFrames(HeadlessSimulation headless, double duration){
+        final List<Integer> held = new ArrayList<Integer>();
+        headless.setSampler(TIME_STEP, new HeadlessSimulation.Sampler() {
+            @Override public void sample(Board board, double time){
+                held.add(absorber.capturedBalls());
+            }
+        });
+        headless.run(duration);
+        return held;
+    }
+
+    @Test public void testDeliveredAtFrameBoundary(){
+        HeadlessSimulation headless = new HeadlessSimulation(absorberBoard(), TIME_STEP);
+        //falls inside the third frame, so it is picked up at the end of it
+        headless.schedule(0.12, "keydown:space");
+        List<Integer> held = heldBeforeFrames(headless, 0.25);
+        assertEquals(0, (int)held.get(0));
+        assertEquals(1, (int)held.get(1));
+        assertEquals(1, (int)held.get(2));
+        assertEquals(0, (int)held.get(3));
+        assertEquals(0, (int)held.get(4));
+    }
+
+    @Test public void testScheduledOutOfOrder(){
+        Board board = absorberBoard();
+        board.add(new Ball(5, 17.5, 0, 10));
+        HeadlessSimulation headless = new HeadlessSimulation(board, TIME_STEP);
+        headless.schedule(0.22, "keydown:space");
+        headless.schedule(0.07, "keydown:space");
+        List<Integer> held = heldBeforeFrames(headless, 0.3);
+        assertEquals(0, (int)held.get(0));
+        assertEquals(2, (int)held.get(1));
+        assertEquals(1, (int)held.get(2));
+        assertEquals(1, (int)held.get(4));
+        assertEquals(0, (int)held.get(5));
+    }
+
+    @Test public void testCarriesOverToNextRun(){
+        HeadlessSimulation headless = new HeadlessSimulation(absorberBoard(), TIME_STEP);
+        headless.schedule(0.17, "keydown:space");
+        assertEquals(1, (int)heldBeforeFrames(headless, 0.1).get(2));
+        //0.07 into the second run, so delivered at the end of its second frame
+        List<Integer> held = heldBeforeFrames(headless, 0.15);
+        assertEquals(1, (int)held.get(0));
+        assertEquals(1, (int)held.get(1));
+        assertEquals(0, (int)held.get(2));
+    }
+
+    @Test public void testDroppedInputsCounted(){
+        HeadlessSimulation headless = new HeadlessSimulation(absorberBoard(), TIME_STEP);
+        for(int ii = 0; ii < InputRing.DEFAULT_CAPACITY + 10; ii ++){
+            headless.schedule(0, "mouse:" + ii%20 + ":5");
+        }
+        HeadlessSimulation.Report report = headless.run(0.1);
+        assertEquals(2, report.frames);
+        assertEquals(10, report.droppedInputs);
+        for(int ii = 0; ii < InputRing.DEFAULT_CAPACITY; ii ++){
+            headless.schedule(0, "keydown:space");
+        }
+        assertEquals(0, headless.run(0.1).droppedInputs);
+    }
+}
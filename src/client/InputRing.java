@@ -0,0 +1,185 @@
+package client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InputRing
+ *
+ * a bounded, lock free queue of user input events from one producer thread
+ * (the swing event thread) to one consumer thread (the simulation thread).
+ * events are stored as primitives in preallocated arrays, so neither side
+ * allocates or blocks.
+ *
+ * there are three kinds of event:
+ *      KEY -- a key event, identified by the id the board gave it (see
+ *             Board.keyEventId). only bound key events need to be sent
+ *      DRAG -- the mouse was pressed or dragged at a board position
+ *      RELEASE -- the mouse was released
+ *
+ * Thread safety argument:
+ *      only one thread may call the offer methods, and only one thread may
+ *      call drain. the producer writes a slot before publishing it by
+ *      advancing tail, and the consumer reads a slot before freeing it by
+ *      advancing head, so neither ever touches a slot the other owns. the
+ *      volatile writes of head and tail order the slot accesses between them
+ */
+public class InputRing {
+
+    /**
+     * receives the events drained from a ring, in the order they were offered
+     */
+    public interface Handler {
+        /**
+         * @param keyEventId the board's id for the key event
+         */
+        void key(int keyEventId);
+
+        /**
+         * @param x the x position of the mouse, in board units
+         * @param y the y position of the mouse, in board units
+         */
+        void drag(double x, double y);
+
+        void release();
+    }
+
+    public static final int DEFAULT_CAPACITY = 256;
+    //room for a few seconds of continuous mouse dragging
+
+    private static final int KEY = 0;
+    private static final int DRAG = 1;
+    private static final int RELEASE = 2;
+    //event kinds
+
+    private final int mask;
+    //capacity - 1, where capacity is a power of two
+    private final int[] kinds;
+    private final int[] keys;
+    private final double[] xs;
+    private final double[] ys;
+    //slot i holds an event of kind kinds[i]. keys[i] is set for KEY events,
+    //and xs[i] and ys[i] for DRAG events
+    private final AtomicLong head = new AtomicLong();
+    //number of events drained, written only by the consumer
+    private final AtomicLong tail = new AtomicLong();
+    //number of events offered, written only by the producer
+    //rep invariant -- head <= tail <= head + capacity. the events waiting are
+    //                 in slots (head & mask) up to (tail & mask), wrapping around
+
+    /**
+     * make an empty ring with the default capacity
+     */
+    public InputRing(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * make an empty ring
+     *
+     * @param capacity the most events the ring can hold, rounded up to a power
+     *          of two. must be > 0
+     */
+    public InputRing(int capacity){
+        if(capacity <= 0){
+            throw new IllegalArgumentException("requires positive capacity: received \"" + capacity + "\"");
+        }
+        int slots = Integer.highestOneBit(capacity);
+        if(slots < capacity){
+            slots <<= 1;
+        }
+        mask = slots - 1;
+        kinds = new int[slots];
+        keys = new int[slots];
+        xs = new double[slots];
+        ys = new double[slots];
+    }
+
+    /**
+     * queue a key event. producer only
+     *
+     * @param keyEventId the board's id for the key event
+     * @return true if the event was queued, false if the ring was full
+     */
+    public boolean offerKey(int keyEventId){
+        return offer(KEY, keyEventId, 0, 0);
+    }
+
+    /**
+     * queue a mouse press or drag. producer only
+     *
+     * @param x the x position of the mouse, in board units
+     * @param y the y position of the mouse, in board units
+     * @return true if the event was queued, false if the ring was full
+     */
+    public boolean offerDrag(double x, double y){
+        return offer(DRAG, 0, x, y);
+    }
+
+    /**
+     * queue a mouse release. producer only
+     *
+     * @return true if the event was queued, false if the ring was full
+     */
+    public boolean offerRelease(){
+        return offer(RELEASE, 0, 0, 0);
+    }
+
+    //helper method -- write an event into the next free slot and publish it
+    private boolean offer(int kind, int key, double x, double y){
+        long t = tail.get();
+        if(t - head.get() > mask){
+            return false;
+        }
+        int slot = (int)t & mask;
+        kinds[slot] = kind;
+        keys[slot] = key;
+        xs[slot] = x;
+        ys[slot] = y;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * hand every waiting event to a handler, oldest first, and remove them.
+     * consumer only. events offered while this runs may or may not be included
+     *
+     * @param handler the handler to receive the events
+     * @return the number of events drained
+     */
+    public int drain(Handler handler){
+        long h = head.get();
+        long t = tail.get();
+        for(long ii = h; ii < t; ii ++){
+            int slot = (int)ii & mask;
+            switch(kinds[slot]){
+            case KEY:
+                handler.key(keys[slot]);
+                break;
+            case DRAG:
+                handler.drag(xs[slot], ys[slot]);
+                break;
+            default:
+                handler.release();
+                break;
+            }
+            //free each slot as soon as it has been read
+            head.lazySet(ii + 1);
+        }
+        return (int)(t - h);
+    }
+
+    /**
+     * @return true if no events are waiting. only a hint while the producer
+     *          is running
+     */
+    public boolean isEmpty(){
+        return head.get() == tail.get();
+    }
+
+    /**
+     * @return the most events the ring can hold
+     */
+    public int capacity(){
+        return mask + 1;
+    }
+}
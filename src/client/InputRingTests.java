@@ -0,0 +1,150 @@
+package client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Testing strategy
+ *
+ * the constructor:
+ *  1. rounds capacities up to a power of two, and rejects capacities <= 0
+ *
+ * offer and drain:
+ *  2. each kind of event comes out as it went in, oldest first
+ *  3. the slots wrap around many times over, with the ring partly drained
+ *     between offers
+ *  4. a full ring rejects events without losing the ones it holds, and takes
+ *     events again once drained
+ *  5. a producer thread hands a long run of events to a consumer thread
+ *     polling a small ring, and every accepted event arrives once, in order
+ */
+public class InputRingTests {
+
+    //records the drained events as strings
+    private static class Recorder implements InputRing.Handler {
+        private final List<String> events = new ArrayList<String>();
+
+        @Override public void key(int keyEventId){
+            events.add("key " + keyEventId);
+        }
+
+        @Override public void drag(double x, double y){
+            events.add("drag " + x + " " + y);
+        }
+
+        @Override public void release(){
+            events.add("release");
+        }
+    }
+
+    @Test public void testCapacity(){
+        assertEquals(1, new InputRing(1).capacity());
+        assertEquals(8, new InputRing(5).capacity());
+        assertEquals(8, new InputRing(8).capacity());
+        assertEquals(InputRing.DEFAULT_CAPACITY, new InputRing().capacity());
+    }
+
+    @Test(expected=IllegalArgumentException.class) public void testCapacityMustBePositive(){
+        new InputRing(0);
+    }
+
+    @Test public void testKinds(){
+        InputRing ring = new InputRing(4);
+        assertTrue(ring.isEmpty());
+        assertTrue(ring.offerKey(3));
+        assertTrue(ring.offerDrag(1.5, -2.25));
+        assertTrue(ring.offerRelease());
+        assertFalse(ring.isEmpty());
+        Recorder recorder = new Recorder();
+        assertEquals(3, ring.drain(recorder));
+        assertTrue(ring.isEmpty());
+        assertEquals("[key 3, drag 1.5 -2.25, release]", recorder.events.toString());
+        assertEquals(0, ring.drain(recorder));
+    }
+
+    @Test public void testWraparound(){
+        InputRing ring = new InputRing(8);
+        Recorder recorder = new Recorder();
+        List<String> expected = new ArrayList<String>();
+        int next = 0;
+        for(int round = 0; round < 100; round ++){
+            //1 to 7 events at a time, so the ring's start moves around it
+            for(int ii = 0; ii <= round % 7; ii ++){
+                assertTrue(ring.offerKey(next));
+                expected.add("key " + next);
+                next ++;
+            }
+            ring.drain(recorder);
+        }
+        assertEquals(expected, recorder.events);
+    }
+
+    @Test public void testFull(){
+        InputRing ring = new InputRing(4);
+        Recorder recorder = new Recorder();
+        assertTrue(ring.offerKey(0));
+        ring.drain(recorder);
+        //the full ring straddles the end of the arrays
+        for(int ii = 1; ii <= 4; ii ++){
+            assertTrue(ring.offerKey(ii));
+        }
+        assertFalse(ring.offerKey(5));
+        assertFalse(ring.offerDrag(0, 0));
+        assertFalse(ring.offerRelease());
+        assertEquals(4, ring.drain(recorder));
+        assertEquals("[key 0, key 1, key 2, key 3, key 4]", recorder.events.toString());
+        assertTrue(ring.offerKey(6));
+        assertEquals(1, ring.drain(recorder));
+        assertEquals("key 6", recorder.events.get(5));
+    }
+
+    @Test public void testProducerToConsumer() throws InterruptedException {
+        final InputRing ring = new InputRing(16);
+        final int events = 200000;
+        final List<Integer> accepted = new ArrayList<Integer>();
+        Thread producer = new Thread(new Runnable(){
+            public void run(){
+                for(int ii = 0; ii < events; ii ++){
+                    boolean offered = ii % 3 == 0 ? ring.offerKey(ii) : ring.offerDrag(ii, -ii);
+                    if(offered){
+                        accepted.add(ii);
+                    }
+                }
+            }
+        });
+        final List<Integer> received = new ArrayList<Integer>();
+        final boolean[] mismatched = { false };
+        InputRing.Handler consumer = new InputRing.Handler(){
+            @Override public void key(int keyEventId){
+                received.add(keyEventId);
+            }
+
+            @Override public void drag(double x, double y){
+                if(x != -y){
+                    mismatched[0] = true;
+                }
+                received.add((int)x);
+            }
+
+            @Override public void release(){
+                mismatched[0] = true;
+            }
+        };
+        producer.start();
+        while(producer.isAlive()){
+            ring.drain(consumer);
+        }
+        producer.join();
+        ring.drain(consumer);
+        assertFalse(mismatched[0]);
+        //join orders the producer's list before this read
+        assertEquals(accepted, received);
+        assertTrue(accepted.size() > 0);
+    }
+}
@@ -0,0 +1,389 @@
+package client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Journal
+ *
+ * a compact binary record of everything that reaches a board from outside its
+ * simulation -- the user input events drained from its input ring, the server
+ * messages the client handles, restarts and changes of time step -- each
+ * tagged with the tick it arrived at. the simulation is deterministic, so
+ * replaying a journal against the board file it was recorded from (see
+ * JournalReplay) repeats the session exactly.
+ *
+ * a board's tick is the number of calls of Board.advanceSimulation it has
+ * finished. input events drained during a call are tagged with the tick the
+ * call started at; messages, restarts and time steps, which take effect
+ * between calls, with the tick of the call they come before.
+ *
+ * File format (all numbers big endian, as DataOutputStream writes them):
+ *      journal ::= MAGIC boardFile record* end?
+ *      boardFile ::= UTF                  //path of the board file, may be empty
+ *      record  ::= kind:byte tickDelta:varint payload
+ *      payload ::= id:varint              //KEY: the board's key event id
+ *                | x:double y:double      //DRAG
+ *                | ''                     //RELEASE, RESTART, END
+ *                | message:UTF            //MESSAGE
+ *                | seconds:double         //TIME_STEP
+ * tickDelta is the record's tick minus the tick of the record before it, and
+ * varints are unsigned, seven bits a byte, low bits first. a journal that was
+ * cut short ends at its last whole record.
+ *
+ * writing never throws. the first error writing, or the first record whose
+ * tick is less than the one before it, is printed, and the journal stops
+ * recording; see checkError(). what it recorded before stays readable.
+ *
+ * Thread safety argument:
+ *      a journal being written is locked on every call, so a board's thread
+ *      can record to it while another thread closes it. a journal being read
+ *      is confined to the reading thread
+ */
+public class Journal implements Closeable {
+
+    private static final int MAGIC = 0x50424a31;
+    //"PBJ1"
+
+    static final byte KEY = 0, DRAG = 1, RELEASE = 2, MESSAGE = 3, TIME_STEP = 4, RESTART = 5, END = 6;
+    //record kinds
+
+    /**
+     * a record read back from a journal
+     */
+    public static class Entry {
+        public final byte kind;
+        public final long tick;
+        public final int key;
+        //the key event id of a KEY entry
+        public final double x, y;
+        //the position of a DRAG entry, or the seconds of a TIME_STEP entry in x
+        public final String message;
+        //the message of a MESSAGE entry
+
+        private Entry(byte kind, long tick, int key, double x, double y, String message){
+            this.kind = kind;
+            this.tick = tick;
+            this.key = key;
+            this.x = x;
+            this.y = y;
+            this.message = message;
+        }
+    }
+
+    private final File file;
+    private final DataOutputStream out;
+    //null if the journal is being read
+    private final DataInputStream in;
+    //null if the journal is being written
+    private final String boardFile;
+    private long lastTick = 0;
+    //the tick of the last record written or read
+    private boolean failed = false;
+    private boolean ended = false;
+
+    //use create() or open()
+    private Journal(File file, DataOutputStream out, DataInputStream in, String boardFile){
+        this.file = file;
+        this.out = out;
+        this.in = in;
+        this.boardFile = boardFile;
+    }
+
+    /**
+     * start a new journal, replacing the file if it exists
+     *
+     * @param file where to write the journal
+     * @param boardFile the path of the board file the journaled board was
+     *          loaded from, or "" if it wasn't
+     * @return an empty journal, ready to record
+     * @throws IOException if the file can't be written
+     */
+    public static Journal create(File file, String boardFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try{
+            out.writeInt(MAGIC);
+            out.writeUTF(boardFile);
+        }catch(IOException e){
+            out.close();
+            throw e;
+        }
+        return new Journal(file, out, null, boardFile);
+    }
+
+    /**
+     * open a journal to read it back
+     *
+     * @param file the journal
+     * @return the journal, positioned at its first record
+     * @throws IOException if the file can't be read or isn't a journal
+     */
+    public static Journal open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try{
+            if(in.readInt() != MAGIC){
+                throw new IOException(file + " is not a journal");
+            }
+            return new Journal(file, null, in, in.readUTF());
+        }catch(IOException e){
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the path of the board file the journaled board was loaded from,
+     *          or "" if it wasn't loaded from a file
+     */
+    public String boardFile(){
+        return boardFile;
+    }
+
+    /**
+     * @return the journal's file
+     */
+    public File file(){
+        return file;
+    }
+
+    //recording methods -- each takes the tick the event arrived at, which must
+    //not be less than the tick of the event before it, or the journal stops
+    //recording
+
+    /**
+     * @param tick the tick of the call the key event was drained during
+     * @param keyEventId the board's id for the key event
+     */
+    public synchronized void key(long tick, int keyEventId){
+        if(start(KEY, tick)){
+            try{
+                writeVarint(keyEventId);
+            }catch(IOException e){
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * @param tick the tick of the call the drag was drained during
+     * @param x the x position of the mouse, in board units
+     * @param y the y position of the mouse, in board units
+     */
+    public synchronized void drag(long tick, double x, double y){
+        if(start(DRAG, tick)){
+            try{
+                out.writeDouble(x);
+                out.writeDouble(y);
+            }catch(IOException e){
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * @param tick the tick of the call the release was drained during
+     */
+    public synchronized void release(long tick){
+        start(RELEASE, tick);
+    }
+
+    /**
+     * @param tick the tick of the call the message was handled before
+     * @param message the message
+     */
+    public synchronized void message(long tick, String message){
+        if(start(MESSAGE, tick)){
+            try{
+                out.writeUTF(message);
+            }catch(IOException e){
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * @param tick the first tick advanced by the new time step
+     * @param seconds the new time step
+     */
+    public synchronized void timeStep(long tick, double seconds){
+        if(start(TIME_STEP, tick)){
+            try{
+                out.writeDouble(seconds);
+            }catch(IOException e){
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * @param tick the tick of the call the board was restarted before
+     */
+    public synchronized void restart(long tick){
+        start(RESTART, tick);
+    }
+
+    /**
+     * end the journal, so that a replay runs up to a tick even if nothing
+     * happened in the last ticks, and close it
+     *
+     * @param tick the number of ticks the board finished
+     */
+    public synchronized void end(long tick){
+        if(!ended){
+            start(END, Math.max(tick, lastTick));
+            ended = true;
+        }
+        close();
+    }
+
+    /**
+     * @return true if writing the journal failed, or it was given a tick out of
+     *          order, and it has stopped recording
+     */
+    public synchronized boolean checkError(){
+        return failed;
+    }
+
+    /**
+     * close the journal. a journal being written is ended at the tick of its
+     * last record, if it hasn't been ended already
+     */
+    @Override public synchronized void close(){
+        try{
+            if(out != null){
+                if(!ended){
+                    start(END, lastTick);
+                    ended = true;
+                }
+                out.close();
+            }else{
+                in.close();
+            }
+        }catch(IOException e){
+            fail(e);
+        }
+    }
+
+    //helper method -- write the start of a record. returns false if the
+    //journal isn't recording
+    private boolean start(byte kind, long tick){
+        if(failed || ended || out == null){
+            return false;
+        }
+        if(tick < lastTick){
+            //a delta can't be negative, and the journal would replay wrongly
+            //without the record
+            fail("tick " + tick + " came after tick " + lastTick);
+            return false;
+        }
+        try{
+            out.writeByte(kind);
+            writeVarint(tick - lastTick);
+            lastTick = tick;
+            return true;
+        }catch(IOException e){
+            fail(e);
+            return false;
+        }
+    }
+
+    //helper method -- stop recording after an error
+    private void fail(IOException e){
+        fail(e.getMessage());
+    }
+
+    //helper method -- stop recording, for a reason
+    private void fail(String reason){
+        if(!failed){
+            System.err.println("journal " + file + " stopped: " + reason);
+        }
+        failed = true;
+    }
+
+    //helper method -- write an unsigned varint
+    private void writeVarint(long value) throws IOException {
+        while((value & ~0x7fL) != 0){
+            out.writeByte((int)(value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    //helper method -- read an unsigned varint
+    private long readVarint() throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7f) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in " + file);
+    }
+
+    /**
+     * read the next record of a journal opened with open()
+     *
+     * @return the next record, an END record if the journal was ended, or null
+     *          if there are no more records
+     * @throws IOException if the journal can't be read, or holds a record of
+     *          an unknown kind
+     */
+    public Entry read() throws IOException {
+        if(in == null){
+            throw new IllegalStateException("journal " + file + " is being written");
+        }
+        if(ended){
+            return null;
+        }
+        int kind = in.read();
+        if(kind < 0){
+            ended = true;
+            return null;
+        }
+        try{
+            long tick = lastTick + readVarint();
+            int key = 0;
+            double x = 0, y = 0;
+            String message = null;
+            switch(kind){
+            case KEY:
+                key = (int)readVarint();
+                break;
+            case DRAG:
+                x = in.readDouble();
+                y = in.readDouble();
+                break;
+            case MESSAGE:
+                message = in.readUTF();
+                break;
+            case TIME_STEP:
+                x = in.readDouble();
+                break;
+            case RELEASE:
+            case RESTART:
+                break;
+            case END:
+                ended = true;
+                break;
+            default:
+                throw new IOException("unknown record kind " + kind + " in " + file);
+            }
+            lastTick = tick;
+            return new Entry((byte)kind, tick, key, x, y, message);
+        }catch(EOFException e){
+            //cut short in the middle of a record
+            ended = true;
+            return null;
+        }
+    }
+}
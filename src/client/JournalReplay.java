@@ -0,0 +1,304 @@
+package client;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+import metrics.Histogram;
+import BoardGrammar.BoardCache;
+import BoardGrammar.OutputProcessor;
+
+/**
+ * JournalReplay
+ *
+ * replays a journal (see Journal) against a fresh copy of the board it was
+ * recorded from, headlessly and as fast as the cpu allows, timing every tick.
+ * the simulation is deterministic, so a journal captured from a real session
+ * replays the same way every time, and is a benchmark of exactly the flipper
+ * presses and teleports that made that session slow.
+ *
+ * each tick, the journal's messages and restarts for the tick are applied to
+ * the board, its input events are put in the board's input ring, and the board
+ * is advanced, which drains them at the same point the client's board did. the
+ * time taken by all of that is the tick's time. messages the board queues for
+ * the server are thrown away, as there's no server to send them to.
+ *
+ * Thread safety argument:
+ *      JournalReplay is not thread safe. the board is confined to the thread
+ *      that calls run()
+ */
+public class JournalReplay {
+
+    private static final int SLOWEST = 10;
+    //the number of slowest ticks reported
+    private static final double DEFAULT_TIME_STEP = 0.050;
+    //the time step before the journal gives one, as in PingballClient
+
+    /**
+     * the outcome of a call to run()
+     */
+    public static class Report {
+        public final long ticks;
+        //number of calls of Board.advanceSimulation
+        public final double simulatedSeconds;
+        //total simulated time
+        public final long elapsedNanos;
+        //wall clock time spent replaying ticks
+        public final Histogram tickNanos;
+        //the time taken by each tick
+        public final int droppedInputs;
+        //input events that didn't fit in the board's input ring
+        private final long[] slowestTicks;
+        private final long[] slowestNanos;
+        //the slowest ticks and their times, slowest first
+
+        private Report(long ticks, double simulatedSeconds, long elapsedNanos, Histogram tickNanos,
+                int droppedInputs, long[] slowestTicks, long[] slowestNanos){
+            this.ticks = ticks;
+            this.simulatedSeconds = simulatedSeconds;
+            this.elapsedNanos = elapsedNanos;
+            this.tickNanos = tickNanos;
+            this.droppedInputs = droppedInputs;
+            this.slowestTicks = slowestTicks;
+            this.slowestNanos = slowestNanos;
+        }
+
+        /**
+         * @return the numbers of the slowest ticks, slowest first
+         */
+        public long[] slowestTicks(){
+            return slowestTicks.clone();
+        }
+
+        @Override public String toString(){
+            StringBuilder text = new StringBuilder();
+            text.append("replayed ").append(ticks).append(" ticks (").append(simulatedSeconds)
+                    .append(" simulated s) in ").append(elapsedNanos/1e6).append("ms\n");
+            text.append("tick nanos: ").append(tickNanos).append('\n');
+            text.append("slowest ticks:");
+            for(int ii = 0; ii < slowestTicks.length; ii ++){
+                text.append(' ').append(slowestTicks[ii]).append(" (").append(slowestNanos[ii]).append("ns)");
+            }
+            if(droppedInputs > 0){
+                text.append("\n").append(droppedInputs).append(" input events didn't fit in the input ring");
+            }
+            return text.toString();
+        }
+    }
+
+    private final Board board;
+    //the board being replayed
+    private final File journal;
+    private PrintWriter tickLog = null;
+    //null if the time of each tick isn't written out
+
+    /**
+     * make a replay of a journal
+     *
+     * @param board a fresh copy of the journaled board, built from the same
+     *          board file, whose configuration has been saved. it must not be
+     *          simulated anywhere else while this is running
+     * @param journal the journal
+     */
+    public JournalReplay(Board board, File journal){
+        this.board = board;
+        this.journal = journal;
+    }
+
+    /**
+     * write the time of every tick, a line "tick nanos" per tick, as the replay runs
+     *
+     * @param tickLog where to write the times, or null to not write them
+     */
+    public void setTickLog(PrintWriter tickLog){
+        this.tickLog = tickLog;
+    }
+
+    /**
+     * replay the whole journal, up to the tick it was ended at or, if it was
+     * cut short, through the tick of its last record
+     *
+     * @return how many ticks were replayed, and how long they took
+     * @throws IOException if the journal can't be read
+     */
+    public Report run() throws IOException {
+        Histogram tickNanos = new Histogram();
+        long[] slowestTicks = new long[SLOWEST];
+        long[] slowestNanos = new long[SLOWEST];
+        Arrays.fill(slowestNanos, -1);
+        InputRing ring = board.getInputRing();
+        List<Journal.Entry> due = new ArrayList<Journal.Entry>();
+        double timeStep = DEFAULT_TIME_STEP;
+        double time = 0;
+        long tick = 0;
+        long elapsed = 0;
+        int dropped = 0;
+        Journal replayed = Journal.open(journal);
+        try{
+            Journal.Entry entry = replayed.read();
+            while(entry != null && !(entry.kind == Journal.END && entry.tick <= tick)){
+                //read ahead of timing the tick
+                due.clear();
+                while(entry != null && entry.kind != Journal.END && entry.tick <= tick){
+                    due.add(entry);
+                    entry = replayed.read();
+                }
+                long start = System.nanoTime();
+                for(Journal.Entry event : due){
+                    switch(event.kind){
+                    case Journal.KEY:
+                        dropped += ring.offerKey(event.key) ? 0 : 1;
+                        break;
+                    case Journal.DRAG:
+                        dropped += ring.offerDrag(event.x, event.y) ? 0 : 1;
+                        break;
+                    case Journal.RELEASE:
+                        dropped += ring.offerRelease() ? 0 : 1;
+                        break;
+                    case Journal.MESSAGE:
+                        board.applyMessage(event.message);
+                        break;
+                    case Journal.TIME_STEP:
+                        timeStep = event.x;
+                        break;
+                    case Journal.RESTART:
+                        board.restartSimulation();
+                        break;
+                    default:
+                        throw new IOException("unexpected record kind " + event.kind + " in " + journal);
+                    }
+                }
+                board.advanceSimulation(timeStep);
+                long nanos = System.nanoTime() - start;
+                while(board.hasPendingMessage()){
+                    board.grabMessage();
+                }
+                elapsed += nanos;
+                tickNanos.record(nanos);
+                keepSlowest(tick, nanos, slowestTicks, slowestNanos);
+                if(tickLog != null){
+                    tickLog.println(tick + " " + nanos);
+                }
+                time += timeStep;
+                tick ++;
+            }
+        }finally{
+            replayed.close();
+            if(tickLog != null){
+                tickLog.flush();
+            }
+        }
+        int kept = 0;
+        while(kept < SLOWEST && slowestNanos[kept] >= 0){
+            kept ++;
+        }
+        return new Report(tick, time, elapsed, tickNanos, dropped,
+                Arrays.copyOf(slowestTicks, kept), Arrays.copyOf(slowestNanos, kept));
+    }
+
+    //helper method -- insert a tick into the slowest ticks, if it's one of them
+    private static void keepSlowest(long tick, long nanos, long[] ticks, long[] times){
+        int index = times.length;
+        while(index > 0 && times[index - 1] < nanos){
+            index --;
+        }
+        if(index == times.length){
+            return;
+        }
+        System.arraycopy(ticks, index, ticks, index + 1, ticks.length - index - 1);
+        System.arraycopy(times, index, times, index + 1, times.length - index - 1);
+        ticks[index] = tick;
+        times[index] = nanos;
+    }
+
+    /**
+     * replay a journal and print its tick times
+     *
+     * usage: JournalReplay [--board FILE] [--cache DIR] [--ticks FILE] [--repeat N] JOURNAL
+     *
+     * --board is the board file to replay against, the one the journal was
+     * recorded from by default. --cache is a directory of compiled boards to load
+     * it through. --ticks is a file to write the time of every tick of the last
+     * repetition to. --repeat replays the journal N times, each against a fresh
+     * board, so that the later ones run with the JIT warmed up; 1 by default
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args){
+        Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
+        String boardPath = "";
+        String journalPath = "";
+        String ticksPath = "";
+        int repeat = 1;
+        BoardCache cache = null;
+        String flag = "";
+        String usage = "usage: JournalReplay [--board FILE] [--cache DIR] [--ticks FILE] [--repeat N] JOURNAL";
+        try{
+            while(!arguments.isEmpty()){
+                flag = arguments.remove();
+                if(flag.equals("--board")){
+                    boardPath = arguments.remove();
+                }else if(flag.equals("--cache")){
+                    cache = new BoardCache(new File(arguments.remove()));
+                }else if(flag.equals("--ticks")){
+                    ticksPath = arguments.remove();
+                }else if(flag.equals("--repeat")){
+                    repeat = Integer.parseInt(arguments.remove());
+                    if(repeat <= 0){
+                        throw new IllegalArgumentException("requires positive repeat: received \"" + repeat + "\"");
+                    }
+                }else{
+                    journalPath = flag;
+                }
+            }
+            if(journalPath.isEmpty()){
+                throw new IllegalArgumentException("no journal given");
+            }
+            File journal = new File(journalPath);
+            if(boardPath.isEmpty()){
+                Journal header = Journal.open(journal);
+                boardPath = header.boardFile();
+                header.close();
+                if(boardPath.isEmpty()){
+                    throw new IllegalArgumentException("the journal doesn't name its board file; give one with --board");
+                }
+            }
+            for(int ii = 0; ii < repeat; ii ++){
+                Board board = OutputProcessor.parse(new File(boardPath), cache);
+                board.saveConfiguration();
+                JournalReplay replay = new JournalReplay(board, journal);
+                PrintWriter tickLog = null;
+                if(!ticksPath.isEmpty() && ii == repeat - 1){
+                    tickLog = new PrintWriter(new File(ticksPath));
+                    replay.setTickLog(tickLog);
+                }
+                try{
+                    System.out.println(replay.run());
+                }finally{
+                    if(tickLog != null){
+                        tickLog.close();
+                    }
+                }
+            }
+        } catch(NoSuchElementException e) {
+            System.err.println("missing argument for " + flag);
+            System.err.println(usage);
+        } catch(NumberFormatException e) {
+            System.err.println("unable to parse number for \"" + flag + "\"");
+        } catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+        } catch(FileNotFoundException e) {
+            System.err.println("unable to open " + e.getMessage());
+        } catch(IOException e) {
+            System.err.println("unable to replay " + journalPath + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import BoardGrammar.OutputProcessor;
+import BoardGrammar.ParserTests;
+import message.Messages;
+import sim.Ball;
+
+/**
+ * Testing strategy
+ *
+ * writing and reading back:
+ *  1. every kind of record reads back as written, with tick deltas and key ids
+ *     on either side of each varint byte boundary, up to the largest values,
+ *     and messages outside of ASCII
+ *  2. a journal cut short at any byte reads back as the whole records before
+ *     the cut, without an END record, and never throws
+ *  3. end() writes an END record at the later of its tick and the last
+ *     record's, after which nothing is recorded and reading stops; close()
+ *     without end() writes one at the last record's tick
+ *  4. a tick less than the one before doesn't throw, but stops recording,
+ *     leaving the earlier records readable
+ *  5. files that aren't journals, or hold unknown records, are rejected
+ *
+ * replaying:
+ *  6. a session with key presses, drags, a ball teleporting in, a change of
+ *     time step and a restart replays to bit for bit the same balls
+ */
+public class JournalTests {
+
+    //helper method -- a temporary journal file
+    private static File temporaryFile() throws IOException {
+        File file = File.createTempFile("journal", ".pbj");
+        file.deleteOnExit();
+        return file;
+    }
+
+    //helper method -- all of the records in a journal
+    private static List<Journal.Entry> readAll(File file) throws IOException {
+        List<Journal.Entry> entries = new ArrayList<Journal.Entry>();
+        Journal journal = Journal.open(file);
+        try{
+            for(Journal.Entry entry = journal.read(); entry != null; entry = journal.read()){
+                entries.add(entry);
+            }
+            assertNull(journal.read());
+        }finally{
+            journal.close();
+        }
+        return entries;
+    }
+
+    //helper method -- assert two records are the same, doubles bit for bit
+    private static void assertSameEntry(Journal.Entry expected, Journal.Entry actual){
+        assertEquals(expected.kind, actual.kind);
+        assertEquals(expected.tick, actual.tick);
+        assertEquals(expected.key, actual.key);
+        assertEquals(Double.doubleToRawLongBits(expected.x), Double.doubleToRawLongBits(actual.x));
+        assertEquals(Double.doubleToRawLongBits(expected.y), Double.doubleToRawLongBits(actual.y));
+        assertEquals(expected.message, actual.message);
+    }
+
+    //write one of every kind of record, with varints of every length
+    private static void writeSession(Journal journal){
+        long tick = 0;
+        for(long delta : new long[] { 0, 1, 127, 128, 16383, 16384, 1L << 35, 1L << 56 }){
+            tick += delta;
+            journal.key(tick, (int)Math.min(delta, Integer.MAX_VALUE));
+        }
+        journal.key(tick, Integer.MAX_VALUE);
+        journal.drag(tick, -0.0, 19.75);
+        journal.drag(tick + 1, Double.NaN, Double.MIN_VALUE);
+        journal.release(tick + 1);
+        journal.message(tick + 2, "Alpha--->Beta:PORTAL_REPLY:Entr\u00e9e \u95e8");
+        journal.timeStep(tick + 2, 0.03);
+        journal.restart(tick + 3);
+    }
+
+    @Test public void testRoundTrip() throws IOException {
+        File file = temporaryFile();
+        Journal journal = Journal.create(file, "boards/a.pb");
+        writeSession(journal);
+        journal.end(Long.MAX_VALUE);
+        assertFalse(journal.checkError());
+        Journal read = Journal.open(file);
+        assertEquals("boards/a.pb", read.boardFile());
+        read.close();
+        List<Journal.Entry> entries = readAll(file);
+        assertEquals(16, entries.size());
+        long tick = 0;
+        long[] deltas = { 0, 1, 127, 128, 16383, 16384, 1L << 35, 1L << 56 };
+        for(int ii = 0; ii < deltas.length; ii ++){
+            tick += deltas[ii];
+            assertEquals(Journal.KEY, entries.get(ii).kind);
+            assertEquals(tick, entries.get(ii).tick);
+            assertEquals((int)Math.min(deltas[ii], Integer.MAX_VALUE), entries.get(ii).key);
+        }
+        assertEquals(Integer.MAX_VALUE, entries.get(8).key);
+        assertEquals(Journal.DRAG, entries.get(9).kind);
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(entries.get(9).x));
+        assertEquals(19.75, entries.get(9).y, 0);
+        assertTrue(Double.isNaN(entries.get(10).x));
+        assertEquals(Double.MIN_VALUE, entries.get(10).y, 0);
+        assertEquals(Journal.RELEASE, entries.get(11).kind);
+        assertEquals(tick + 1, entries.get(11).tick);
+        assertEquals("Alpha--->Beta:PORTAL_REPLY:Entr\u00e9e \u95e8", entries.get(12).message);
+        assertEquals(Journal.TIME_STEP, entries.get(13).kind);
+        assertEquals(0.03, entries.get(13).x, 0);
+        assertEquals(Journal.RESTART, entries.get(14).kind);
+        assertEquals(tick + 3, entries.get(14).tick);
+        assertEquals(Journal.END, entries.get(15).kind);
+        assertEquals(Long.MAX_VALUE, entries.get(15).tick);
+    }
+
+    @Test public void testTruncated() throws IOException {
+        File empty = temporaryFile();
+        Journal.create(empty, "a.pb").close();
+        //the header, then an END record of two bytes
+        int header = (int)empty.length() - 2;
+        File file = temporaryFile();
+        Journal journal = Journal.create(file, "a.pb");
+        writeSession(journal);
+        journal.end(0);
+        List<Journal.Entry> whole = readAll(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        File cut = temporaryFile();
+        int lastCount = 0;
+        for(int length = header; length < bytes.length; length ++){
+            Files.write(cut.toPath(), Arrays.copyOf(bytes, length));
+            List<Journal.Entry> entries = readAll(cut);
+            assertTrue(entries.size() < whole.size());
+            assertTrue(entries.size() >= lastCount);
+            lastCount = entries.size();
+            for(int ii = 0; ii < entries.size(); ii ++){
+                assertSameEntry(whole.get(ii), entries.get(ii));
+            }
+        }
+        assertEquals(whole.size() - 1, lastCount);
+    }
+
+    @Test public void testEnd() throws IOException {
+        File file = temporaryFile();
+        Journal journal = Journal.create(file, "");
+        journal.key(3, 0);
+        journal.end(7);
+        journal.key(8, 0);
+        journal.end(9);
+        List<Journal.Entry> entries = readAll(file);
+        assertEquals(2, entries.size());
+        assertEquals(Journal.END, entries.get(1).kind);
+        assertEquals(7, entries.get(1).tick);
+
+        //an end before the last record is moved up to it
+        journal = Journal.create(file, "");
+        journal.key(3, 0);
+        journal.end(1);
+        assertEquals(3, readAll(file).get(1).tick);
+
+        journal = Journal.create(file, "");
+        journal.release(4);
+        journal.close();
+        entries = readAll(file);
+        assertEquals(Journal.END, entries.get(1).kind);
+        assertEquals(4, entries.get(1).tick);
+    }
+
+    @Test public void testTickBackwards() throws IOException {
+        File file = temporaryFile();
+        Journal journal = Journal.create(file, "");
+        journal.key(10, 1);
+        journal.key(5, 2);
+        assertTrue(journal.checkError());
+        journal.key(20, 3);
+        journal.end(30);
+        List<Journal.Entry> entries = readAll(file);
+        assertEquals(1, entries.size());
+        assertEquals(10, entries.get(0).tick);
+        assertEquals(1, entries.get(0).key);
+    }
+
+    @Test public void testNotAJournal() throws IOException {
+        File file = temporaryFile();
+        Files.write(file.toPath(), "board name=NotAJournal\n".getBytes("UTF-8"));
+        try{
+            Journal.open(file);
+            assertTrue(false);
+        }catch(IOException e){
+            assertTrue(true);
+        }
+        Journal.create(file, "").close();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        //the END record becomes one of an unknown kind
+        bytes[bytes.length - 2] = 99;
+        Files.write(file.toPath(), bytes);
+        try{
+            readAll(file);
+            assertTrue(false);
+        }catch(IOException e){
+            assertTrue(true);
+        }
+    }
+
+    @Test public void testReplayMatches() throws IOException {
+        File boardFile = new File(ParserTests.getResourcePath("client/resources/keybindTest.pb"));
+        File file = temporaryFile();
+        Board board = OutputProcessor.parse(boardFile);
+        board.saveConfiguration();
+        board.setJournal(Journal.create(file, boardFile.getPath()));
+        double timeStep = 0.05;
+        for(int step = 0; step < 400; step ++){
+            if(step % 23 == 0){
+                board.postInput("keydown:space");
+            }else if(step % 23 == 4){
+                board.postInput("keyup:space");
+            }
+            if(step % 50 == 10){
+                board.postInput("mouse:" + (step % 20) + ".5:4.25");
+                board.postInput("mouse:release");
+            }
+            //the restart comes first, so that it doesn't undo the rest
+            if(step == 120){
+                board.restartSimulation();
+            }
+            if(step == 200){
+                timeStep = 0.03;
+            }
+            if(step == 250){
+                board.applyMessage(Messages.composeWallTeleportMessage("Other", board.name(),
+                        new Ball(10.25, 0.5, 3.5, 7.75)));
+            }
+            board.advanceSimulation(timeStep);
+        }
+        board.setJournal(null);
+
+        Board replayed = OutputProcessor.parse(boardFile);
+        replayed.saveConfiguration();
+        JournalReplay.Report report = new JournalReplay(replayed, file).run();
+        assertEquals(400, report.ticks);
+        assertEquals(0, report.droppedInputs);
+        List<Ball> expected = board.getBallList();
+        List<Ball> actual = replayed.getBallList();
+        //the board's own ball, and the one that teleported in
+        assertEquals(2, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for(int ii = 0; ii < expected.size(); ii ++){
+            Ball one = expected.get(ii), two = actual.get(ii);
+            assertTrue(one + " != " + two, one.x() == two.x() && one.y() == two.y()
+                    && one.vx() == two.vx() && one.vy() == two.vy());
+        }
+    }
+}
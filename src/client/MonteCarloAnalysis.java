@@ -0,0 +1,409 @@
+package client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import BoardGrammar.BoardCache;
+import BoardGrammar.OutputProcessor;
+import sim.Absorber;
+import sim.Ball;
+import sim.Triggerable;
+
+/**
+ * MonteCarloAnalysis
+ *
+ * estimates how a board behaves by simulating many copies of it headlessly,
+ * each starting with the board's balls randomly nudged away from their
+ * initial positions and velocities. the trials are split across a fork-join
+ * pool, and their results are summed into a Report with
+ *      - the fraction of trials in which a ball drained into an absorber
+ *      - the average number of times each gadget was triggered per trial
+ *      - a heatmap of where the free balls spent their time
+ *
+ * each trial's randomness comes only from the seed and the trial's index, so
+ * a run is reproducible no matter how the pool schedules it.
+ *
+ * Thread safety argument:
+ *      the template board is only ever read, by Board.copy(), so the tasks
+ *      can copy it concurrently as long as nothing else modifies it during a
+ *      run. each trial's copy is confined to the task that simulates it, and
+ *      partial tallies are only merged after the tasks that made them have
+ *      been joined
+ */
+public class MonteCarloAnalysis {
+
+    public static final int HEATMAP_RESOLUTION = 2;
+    //heatmap cells per unit length, on boards small enough
+    public static final int MAX_HEATMAP_CELLS = 80;
+    //most heatmap cells along each side -- larger boards get larger cells
+    private static final int TRIALS_PER_TASK = 8;
+    //tasks with at most this many trials run them instead of splitting
+    private static final int PLACEMENT_ATTEMPTS = 10;
+    //number of random positions tried for a ball before giving up and
+    //leaving it where it started
+
+    private final Board template;
+    //the board being analyzed -- never simulated
+    private final double timeStep;
+    //simulated seconds per frame
+    private final double duration;
+    //simulated seconds per trial
+    private double positionJitter = 0.5;
+    //balls start up to this far from their template position along each axis
+    private double velocityJitter = 2;
+    //balls start with up to this much added to each velocity component
+
+    /**
+     * @param template the board to analyze. its free balls are the starting
+     *          point of every trial. it is not modified, and must not be
+     *          modified by anyone else while run() is in progress
+     * @param timeStep the simulated time per frame, in seconds
+     *          must be > 0
+     * @param duration the simulated time per trial, in seconds
+     *          must be >= 0
+     */
+    public MonteCarloAnalysis(Board template, double timeStep, double duration){
+        if(!(timeStep > 0)){
+            throw new IllegalArgumentException("requires positive timeStep: received \"" + timeStep + "\"");
+        }
+        if(!(duration >= 0)){
+            throw new IllegalArgumentException("requires nonnegative duration: received \"" + duration + "\"");
+        }
+        this.template = template;
+        this.timeStep = timeStep;
+        this.duration = duration;
+    }
+
+    /**
+     * set how far each trial's balls are nudged from the template's. a ball
+     * is never placed where it would overlap a gadget or leave the board
+     *
+     * @param position the largest change to each coordinate, must be >= 0
+     * @param velocity the largest change to each velocity component, must be >= 0
+     */
+    public void setJitter(double position, double velocity){
+        if(!(position >= 0) || !(velocity >= 0)){
+            throw new IllegalArgumentException("requires nonnegative jitter: received \""
+                    + position + "\", \"" + velocity + "\"");
+        }
+        positionJitter = position;
+        velocityJitter = velocity;
+    }
+
+    /**
+     * run trials on the common fork-join pool
+     *
+     * @param trials the number of trials, must be > 0
+     * @param seed the seed for the trials' random starting states
+     * @return the combined results of every trial
+     */
+    public Report run(int trials, long seed){
+        return run(trials, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * run trials on the given fork-join pool
+     *
+     * @param trials the number of trials, must be > 0
+     * @param seed the seed for the trials' random starting states
+     * @param pool the pool to run the trials on
+     * @return the combined results of every trial
+     */
+    public Report run(int trials, long seed, ForkJoinPool pool){
+        if(trials <= 0){
+            throw new IllegalArgumentException("requires positive trials: received \"" + trials + "\"");
+        }
+        long start = System.nanoTime();
+        Tally tally = pool.invoke(new Trials(0, trials, seed));
+        return new Report(tally, System.nanoTime() - start);
+    }
+
+    //the summed results of some trials
+    private static class Tally {
+        private final int size;
+        //number of heatmap cells along each side
+        private final double cellSize;
+        //side length of a heatmap cell
+        private final long[] occupancy;
+        //row major -- number of frames a free ball ended in each cell
+        private final Map<String, Long> triggerCounts = new LinkedHashMap<String, Long>();
+        //total times each gadget was triggered, in the template's gadget order
+        private int trials = 0;
+        private int drains = 0;
+        //number of trials, and how many of them had a ball caught by an absorber
+
+        private Tally(int boardSize){
+            size = Math.min(boardSize*HEATMAP_RESOLUTION, MAX_HEATMAP_CELLS);
+            cellSize = (double)boardSize/size;
+            occupancy = new long[size*size];
+        }
+
+        //the heatmap cell containing a coordinate
+        private int cellOf(double coordinate){
+            return (int)Math.floor(coordinate/cellSize);
+        }
+
+        //record where the board's free balls are
+        private void sample(Board board){
+            for(Ball ball : board.getBallList()){
+                if(ball.isInStasis()){
+                    continue;
+                }
+                int ii = cellOf(ball.x());
+                int jj = cellOf(ball.y());
+                if(ii >= 0 && jj >= 0 && ii < size && jj < size){
+                    occupancy[jj*size + ii] ++;
+                }
+            }
+        }
+
+        //record the end of a trial on this board
+        private void finish(Board board){
+            trials ++;
+            boolean drained = false;
+            for(Triggerable gadget : board.getGadgetList()){
+                add(gadget.name(), gadget.timesTriggered());
+                drained = drained || (gadget instanceof Absorber && gadget.timesTriggered() > 0);
+            }
+            if(drained){
+                drains ++;
+            }
+        }
+
+        private void add(String name, long count){
+            Long total = triggerCounts.get(name);
+            triggerCounts.put(name, total == null ? count : total + count);
+        }
+
+        private void merge(Tally other){
+            for(int ii = 0; ii < occupancy.length; ii ++){
+                occupancy[ii] += other.occupancy[ii];
+            }
+            for(Map.Entry<String, Long> entry : other.triggerCounts.entrySet()){
+                add(entry.getKey(), entry.getValue());
+            }
+            trials += other.trials;
+            drains += other.drains;
+        }
+    }
+
+    //simulates trials [from, to), splitting the range in half until it is small
+    private class Trials extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final long seed;
+
+        private Trials(int from, int to, long seed){
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+        }
+
+        @Override protected Tally compute(){
+            if(to - from > TRIALS_PER_TASK){
+                int middle = (from + to) >>> 1;
+                Trials left = new Trials(from, middle, seed);
+                left.fork();
+                Tally tally = new Trials(middle, to, seed).compute();
+                tally.merge(left.join());
+                return tally;
+            }
+            final Tally tally = new Tally(template.size());
+            for(int ii = from; ii < to; ii ++){
+                Board board = template.copy();
+                randomize(board, new Random(seed ^ (ii*0x9E3779B97F4A7C15L)));
+                HeadlessSimulation simulation = new HeadlessSimulation(board, timeStep);
+                simulation.setSampler(timeStep, new HeadlessSimulation.Sampler(){
+                    @Override public void sample(Board board, double time){
+                        tally.sample(board);
+                    }
+                });
+                simulation.run(duration);
+                tally.finish(board);
+            }
+            return tally;
+        }
+    }
+
+    //helper method -- nudge the free balls on a freshly copied board
+    private void randomize(Board board, Random gen){
+        List<Triggerable> gadgets = board.getGadgetList();
+        for(Ball ball : board.getBallList()){
+            double r = ball.getRadius();
+            for(int attempt = 0; attempt < PLACEMENT_ATTEMPTS; attempt ++){
+                double x = ball.x() + positionJitter*(2*gen.nextDouble() - 1);
+                double y = ball.y() + positionJitter*(2*gen.nextDouble() - 1);
+                if(isClear(gadgets, board.size(), x, y, r)){
+                    ball.moveTo(x, y);
+                    break;
+                }
+            }
+            ball.impart(ball.vx() + velocityJitter*(2*gen.nextDouble() - 1),
+                    ball.vy() + velocityJitter*(2*gen.nextDouble() - 1));
+        }
+    }
+
+    //helper method -- true iff a ball of radius r at (x, y) is on the board
+    //and clear of every gadget's bounding box
+    private static boolean isClear(List<Triggerable> gadgets, int size, double x, double y, double r){
+        if(x < r || y < r || x > size - r || y > size - r){
+            return false;
+        }
+        for(Triggerable gadget : gadgets){
+            if(x + r > gadget.x && x - r < gadget.x + gadget.w
+                    && y + r > gadget.y && y - r < gadget.y + gadget.h){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the combined results of a Monte Carlo analysis
+     */
+    public static class Report {
+        private static final String SHADES = " .:-=+*#%@";
+        //heatmap characters, from least to most occupied
+
+        public final int trials;
+        //number of trials run
+        public final long elapsedNanos;
+        //wall clock time spent simulating
+        private final Tally tally;
+
+        private Report(Tally tally, long elapsedNanos){
+            this.trials = tally.trials;
+            this.tally = tally;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the fraction of trials in which an absorber caught a ball
+         */
+        public double drainProbability(){
+            return (double)tally.drains/trials;
+        }
+
+        /**
+         * @return the average number of times each gadget was triggered per
+         *          trial, by gadget name
+         */
+        public Map<String, Double> triggersPerTrial(){
+            Map<String, Double> averages = new LinkedHashMap<String, Double>();
+            for(Map.Entry<String, Long> entry : tally.triggerCounts.entrySet()){
+                averages.put(entry.getKey(), (double)entry.getValue()/trials);
+            }
+            return averages;
+        }
+
+        /**
+         * @param x the x position
+         * @param y the y position
+         * @return the fraction of all ball-frames spent in the heatmap cell
+         *          containing (x, y), or 0 if (x, y) is off the board
+         */
+        public double occupancy(double x, double y){
+            int ii = tally.cellOf(x);
+            int jj = tally.cellOf(y);
+            if(ii < 0 || jj < 0 || ii >= tally.size || jj >= tally.size){
+                return 0;
+            }
+            long total = 0;
+            for(long count : tally.occupancy){
+                total += count;
+            }
+            return total == 0 ? 0 : (double)tally.occupancy[jj*tally.size + ii]/total;
+        }
+
+        @Override public String toString(){
+            StringBuilder report = new StringBuilder();
+            report.append(trials + " trials in " + elapsedNanos/1e6 + "ms\n");
+            report.append("drain probability: " + drainProbability() + "\n");
+            report.append("triggers per trial:\n");
+            for(Map.Entry<String, Double> entry : triggersPerTrial().entrySet()){
+                report.append("    " + entry.getKey() + ": " + entry.getValue() + "\n");
+            }
+            report.append("heatmap:\n");
+            long most = 0;
+            for(long count : tally.occupancy){
+                most = Math.max(most, count);
+            }
+            for(int jj = 0; jj < tally.size; jj ++){
+                for(int ii = 0; ii < tally.size; ii ++){
+                    long count = tally.occupancy[jj*tally.size + ii];
+                    int shade = most == 0 ? 0 : (int)((SHADES.length() - 1)*count/most);
+                    report.append(SHADES.charAt(shade));
+                }
+                report.append("\n");
+            }
+            return report.toString();
+        }
+    }
+
+    /**
+     * run a Monte Carlo analysis of a board file and print the report
+     *
+     * usage: MonteCarloAnalysis [--trials N] [--time SECONDS] [--step SECONDS] [--seed N] [--cache DIR] FILE
+     *
+     * by default runs 1000 trials of 30 seconds each, in 0.05 second frames.
+     * --cache is a directory of compiled boards to load the file through
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args){
+        Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
+        int trials = 1000;
+        double time = 30;
+        double step = 0.050;
+        long seed = 6005;
+        String filepath = "";
+        BoardCache cache = null;
+        String flag = "";
+        String usage = "usage: MonteCarloAnalysis [--trials N] [--time SECONDS] [--step SECONDS] [--seed N] [--cache DIR] FILE";
+        try{
+            while(!arguments.isEmpty()){
+                flag = arguments.remove();
+                if(flag.equals("--trials")){
+                    trials = Integer.parseInt(arguments.remove());
+                }else if(flag.equals("--time")){
+                    time = Double.parseDouble(arguments.remove());
+                }else if(flag.equals("--step")){
+                    step = Double.parseDouble(arguments.remove());
+                }else if(flag.equals("--seed")){
+                    seed = Long.parseLong(arguments.remove());
+                }else if(flag.equals("--cache")){
+                    cache = new BoardCache(new File(arguments.remove()));
+                }else{
+                    filepath = flag;
+                }
+            }
+            if(filepath.isEmpty()){
+                throw new IllegalArgumentException("no board file given");
+            }
+            Board board = OutputProcessor.parse(new File(filepath), cache);
+            board.saveConfiguration();
+            System.out.print(new MonteCarloAnalysis(board, step, time).run(trials, seed));
+        } catch(NoSuchElementException e) {
+            System.err.println("missing argument for " + flag);
+            System.err.println(usage);
+        } catch(NumberFormatException e) {
+            System.err.println("unable to parse number for \"" + flag + "\"");
+        } catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage);
+        } catch(IOException e) {
+            System.err.println("unable to read " + filepath + ": " + e.getMessage());
+        }
+    }
+}
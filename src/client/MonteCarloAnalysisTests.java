@@ -0,0 +1,103 @@
+package client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import BoardGrammar.ParserTests;
+import sim.Absorber;
+import sim.Ball;
+
+/**
+ * Testing strategy
+ *
+ * run():
+ *  1. the same seed gives the same results whether the trials run on one
+ *     thread or are split across several
+ *  2. different seeds give different results on a board where the balls'
+ *     starting states matter
+ *  3. the tally is checked on boards whose outcome is known without
+ *     simulating: a ball dropped onto an absorber drains in every trial and
+ *     triggers it once, a ball at rest spends every frame in its own cell
+ */
+public class MonteCarloAnalysisTests {
+
+    private static final double TIME_STEP = 0.05;
+
+    //true iff two reports agree on everything but how long they took
+    private static void assertSameResults(MonteCarloAnalysis.Report one, MonteCarloAnalysis.Report two){
+        assertEquals(one.trials, two.trials);
+        assertEquals(one.drainProbability(), two.drainProbability(), 0);
+        assertEquals(one.triggersPerTrial(), two.triggersPerTrial());
+        for(double y = 0.25; y < 20; y += 0.5){
+            for(double x = 0.25; x < 20; x += 0.5){
+                assertEquals(one.occupancy(x, y), two.occupancy(x, y), 0);
+            }
+        }
+    }
+
+    @Test public void testDeterministicAcrossPools() throws IOException {
+        MonteCarloAnalysis analysis = new MonteCarloAnalysis(ParserTests.genericTestBoard(), TIME_STEP, 3);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool several = new ForkJoinPool(4);
+        try{
+            MonteCarloAnalysis.Report first = analysis.run(40, 6005, single);
+            MonteCarloAnalysis.Report second = analysis.run(40, 6005, several);
+            assertEquals(40, first.trials);
+            assertSameResults(first, second);
+            assertSameResults(first, analysis.run(40, 6005, single));
+        }finally{
+            single.shutdown();
+            several.shutdown();
+        }
+    }
+
+    @Test public void testSeedChangesResults() throws IOException {
+        MonteCarloAnalysis analysis = new MonteCarloAnalysis(ParserTests.genericTestBoard(), TIME_STEP, 3);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try{
+            Map<String, Double> first = analysis.run(16, 1, pool).triggersPerTrial();
+            Map<String, Double> second = analysis.run(16, 2, pool).triggersPerTrial();
+            assertTrue(!first.equals(second));
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    //a ball falling straight onto an absorber spanning the board is caught
+    //once in every trial, no matter how it is nudged
+    @Test public void testTallyDrains(){
+        Board board = new Board("drop", 25, 0, 0);
+        board.add(new Absorber(0, 18, 20, 2, "Abs"));
+        board.add(new Ball(10, 5, 0, 0));
+        board.saveConfiguration();
+        MonteCarloAnalysis analysis = new MonteCarloAnalysis(board, TIME_STEP, 3);
+        analysis.setJitter(0.5, 1);
+        MonteCarloAnalysis.Report report = analysis.run(20, 7);
+        assertEquals(20, report.trials);
+        assertEquals(1.0, report.drainProbability(), 0);
+        assertEquals(1.0, report.triggersPerTrial().get("Abs"), 0);
+    }
+
+    //without gravity, friction or jitter, a ball at rest spends every sampled
+    //frame in its own heatmap cell, and nothing drains
+    @Test public void testTallyOccupancy(){
+        Board board = new Board("still", 0, 0, 0);
+        board.add(new Absorber(0, 18, 20, 2, "Abs"));
+        board.add(new Ball(3.2, 4.7, 0, 0));
+        board.saveConfiguration();
+        MonteCarloAnalysis analysis = new MonteCarloAnalysis(board, TIME_STEP, 1);
+        analysis.setJitter(0, 0);
+        MonteCarloAnalysis.Report report = analysis.run(10, 7);
+        assertEquals(0.0, report.drainProbability(), 0);
+        assertEquals(0.0, report.triggersPerTrial().get("Abs"), 0);
+        assertEquals(1.0, report.occupancy(3.2, 4.7), 0);
+        assertEquals(0.0, report.occupancy(10, 10), 0);
+        assertEquals(0.0, report.occupancy(-1, 4.7), 0);
+    }
+}
@@ -13,13 +13,18 @@ import java.io.IOException;
 import java.net.Socket;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.DefaultListModel;
 import javax.swing.GroupLayout;
@@ -33,10 +38,19 @@ import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 
+import message.LaneQueue;
 import message.Messages;
 import message.Messages.MessageType;
-import physics.Geometry.VectPair;
+import message.TeleportTrace;
+import metrics.Counter;
+import metrics.Gauge;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
 import sim.Wall;
+import BoardGrammar.BoardCache;
+import BoardGrammar.BoardEdit;
+import BoardGrammar.BoardIndex;
+import BoardGrammar.CompiledBoard;
 import BoardGrammar.OutputProcessor;
 
 /**
@@ -78,6 +92,12 @@ import BoardGrammar.OutputProcessor;
  * For tasks that must be handled while the simulation is running, such as key press events or 
  * server messages, thread-safe message queues are used under the producer-consumer paradigm.
  * 
+ * When the board file changes on disk, the file watcher thread reloads it like a background
+ * task: it synchronizes on the model and stops the simulation before editing the board in place.
+ * 
+ * A board's journal is written by the simulation thread, and closed by the shutdown hook if the
+ * client exits while it's running. journals lock themselves, and ignore events once closed.
+ * 
  * 
  * THE UI
  * Background tasks that modify UI components will do so through SwingUtilities.invokeLater(),
@@ -108,9 +128,10 @@ public class PingballClient extends JFrame{
     private Object serverLock = new Object();
     //lock object for access to network-related variables
     
-    private BlockingQueue<String> serverOutgoing = new LinkedBlockingQueue<String>();
-    private BlockingQueue<String> serverIncoming = new LinkedBlockingQueue<String>();
-    //message passing queues for network threads
+    private BlockingQueue<String> serverOutgoing;
+    private BlockingQueue<String> serverIncoming;
+    //message passing queues for network threads. teleports go ahead of other
+    //messages in both, see LaneQueue
     //rep invariant -- any time that network threads are running, these queues must
     //                 be the queues for those threads
     
@@ -135,12 +156,54 @@ public class PingballClient extends JFrame{
     private KillSwitch kill = new KillSwitch();
     //for killing network threads
     
-    private Board model = new Board("");
-    //the board to be used for the animation
-    private BlockingQueue<String> userInputQueue = model.getUserInputQueue();
-    //message passing queue for key-press events
-    //rep invariant -- userInputQueue must be the userInputQueue of model
-    //                 so this must be reassigned any time a new model is used
+    private final BoardCache boardCache;
+    //compiled boards, for loading board files without parsing them. null if
+    //board files are always parsed
+    private final File journalDirectory;
+    //where to journal each board's session, for replaying with JournalReplay.
+    //null if sessions aren't journaled
+    
+    private CompiledBoard loadedBoard = null;
+    //the compiled form of the board file the model was built from, for diffing
+    //against when the file changes. null if the model wasn't loaded from a file
+    private File loadedFile = null;
+    //the board file the model was loaded from, null if it wasn't
+    private String loadedHash = null;
+    //BoardIndex.contentHash() of the contents the model was built from, which
+    //our hello announces so that the server only answers portal queries for us
+    //from an index of the same file. null if the model wasn't loaded from a file
+    private final AtomicReference<String> hello = new AtomicReference<String>();
+    //the hello the message sender greets the server with
+    private BoardFileWatcher watcher = null;
+    //watches the loaded board file, to edit the model when it changes. null if
+    //the file system can't watch files
+    private final Set<String> otherBoards = new CopyOnWriteArraySet<String>();
+    //names of the other boards connected to the server, to tell when our
+    //portals change
+    private final MetricsRegistry metrics = new MetricsRegistry("client");
+    //the simulation's and network queues' metrics, published over JMX
+    private final Histogram messageQueueWait = metrics.histogram(
+            "teleport.hop." + TeleportTrace.hopName(TeleportTrace.QUEUED) + "Nanos");
+    private final Histogram serverIncomingWait = metrics.histogram(
+            "teleport.hop." + TeleportTrace.hopName(TeleportTrace.HANDLED) + "Nanos");
+    //how long teleport messages wait in the board's message queue before the
+    //simulation thread hands them to the sender, and in serverIncoming before
+    //it handles them
+    private final Histogram teleportEndToEnd = metrics.histogram("teleport.endToEndMillis");
+    private final Histogram teleportNetwork = metrics.histogram("teleport.networkMillis");
+    //how long teleport messages to this board took from the sender's board, and
+    //the part of that spent outside of any process. both go by the wall clock,
+    //so they are only right if this machine's clock agrees with the sender's
+    private final Counter inputsDropped = metrics.counter("input.dropped");
+    //key and mouse events lost because the input ring was full, which only
+    //happens if the simulation thread falls behind
+    
+    private volatile Board model = new Board("");
+    //the board to be used for the animation. volatile because the swing event
+    //thread reads it, once per event, to send key-press and mouse events through
+    //its input ring. only the swing event thread may offer events to the ring,
+    //and it must offer them to the ring of the board it read, so that a key
+    //event id always goes to the board that gave it out
     
     private Thread simThread;
     //the simulation thread that will mutate the board
@@ -158,6 +221,8 @@ public class PingballClient extends JFrame{
     private JTextField hostnameTextField = new JTextField("hostname");
     private JTextField portTextField = new JTextField("port");
     private JTextField fileTextField = new JTextField("file");
+    private JLabel hostnameLabel = new JLabel("hostname:");
+    private JLabel portLabel = new JLabel("port number:");
     //for specifying board file and connection parameters
     
     private JButton connectButton = new JButton("Connect");
@@ -195,21 +260,104 @@ public class PingballClient extends JFrame{
      * @param initPort the port for the server connection
      */
     public PingballClient(String initFilepath, String initHostname, int initPort){
+        this(initFilepath, initHostname, initPort, null);
+    }
+    
+    /**
+     * Create a new Pingball Client UI that loads board files through a cache
+     * of compiled boards
+     * 
+     * @param initFilepath the relative path of the file to be used on startup,
+     *          as for PingballClient(String, String, int)
+     * @param initHostname the hostname for a server connection to be used on startup,
+     *          as for PingballClient(String, String, int)
+     * @param initPort the port for the server connection
+     * @param boardCache the cache to load board files through, or null to
+     *          always parse them
+     */
+    public PingballClient(String initFilepath, String initHostname, int initPort, BoardCache boardCache){
+        this(initFilepath, initHostname, initPort, boardCache, null);
+    }
+    
+    /**
+     * Create a new Pingball Client UI that loads board files through a cache
+     * of compiled boards, and journals each board's session
+     * 
+     * @param initFilepath the relative path of the file to be used on startup,
+     *          as for PingballClient(String, String, int)
+     * @param initHostname the hostname for a server connection to be used on startup,
+     *          as for PingballClient(String, String, int)
+     * @param initPort the port for the server connection
+     * @param boardCache the cache to load board files through, or null to
+     *          always parse them
+     * @param journalDirectory the directory to write a journal of each board's
+     *          session to, or null to not journal them
+     */
+    public PingballClient(String initFilepath, String initHostname, int initPort, BoardCache boardCache,
+            File journalDirectory){
         
+        this.boardCache = boardCache;
+        this.journalDirectory = journalDirectory;
         setTitle("Pingball");
         
+        serverOutgoing = laneQueue("network.outgoing");
+        serverIncoming = laneQueue("network.incoming");
+        metrics.gauge("network.outgoing", new Gauge.Source(){
+            public long value(){
+                return serverOutgoing.size();
+            }
+        });
+        metrics.gauge("network.incoming", new Gauge.Source(){
+            public long value(){
+                return serverIncoming.size();
+            }
+        });
+        metrics.publish();
+        
+        //journals are buffered, so the last one has to be ended on the way out
+        if(journalDirectory != null){
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
+                public void run(){
+                    Journal journal = model.getJournal();
+                    if(journal != null){
+                        journal.close();
+                    }
+                }
+            }));
+        }
+        
         //if a hostname has been specified, display in the appropriate text fields
         if(!initHostname.isEmpty()){
             hostnameTextField.setText(initHostname);
             portTextField.setText("" + initPort);
         }
         
+        //watch the loaded board file, to edit the board when the file changes
+        try{
+            watcher = new BoardFileWatcher(new BoardFileWatcher.Listener(){
+                public void fileChanged(File file){
+                    loadBoardFile(file, true);
+                }
+            });
+            Thread watcherThread = new Thread(watcher);
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+        }catch(IOException e){
+            System.err.println("Board files won't be reloaded when they change: " + e.getMessage());
+        }
+        
         //if a filepath has been specified
         if(!initFilepath.isEmpty()){
             fileTextField.setText(initFilepath);
             try{
-                model = OutputProcessor.parse(new File(getResourcePath(initFilepath)));
-                userInputQueue = model.getUserInputQueue();
+                File file = new File(getResourcePath(initFilepath));
+                byte[] contents = Files.readAllBytes(file.toPath());
+                CompiledBoard compiled = OutputProcessor.compile(contents, boardCache);
+                model = compiled.build();
+                loadedBoard = compiled;
+                loadedFile = file;
+                loadedHash = BoardIndex.contentHash(contents);
+                watch(file);
             }catch(Exception e){
                 System.err.println("Error retrieving specified file:" + initFilepath);
             }
@@ -220,11 +368,9 @@ public class PingballClient extends JFrame{
         }
         
         hostnameTextField.setName("hostnameTextField");
-        JLabel hostnameLabel = new JLabel("hostname:");
         hostnameLabel.setName("hostnameLabel");
         
         portTextField.setName("portTextField");
-        JLabel portLabel = new JLabel("port number:");
         portLabel.setName("portLabel");
 
         nameLabel.setName("nameLabel");
@@ -235,7 +381,9 @@ public class PingballClient extends JFrame{
         MouseAdapter myListener = new MouseAdapter(){
             @Override
             public void mouseClicked(MouseEvent arg0){
-                userInputQueue.add("mouse:release");
+                if(!model.getInputRing().offerRelease()){
+                    inputsDropped.increment();
+                }
             }
             
             @Override
@@ -254,7 +402,9 @@ public class PingballClient extends JFrame{
                 double y = arg0.getY();
                 x = (x-CollidableGraphic.ORIG_X)/CollidableGraphic.PIXELS_PER_UNIT;
                 y = (y-CollidableGraphic.ORIG_Y)/CollidableGraphic.PIXELS_PER_UNIT;
-                userInputQueue.add("mouse:" + x + ":" + y);
+                if(!model.getInputRing().offerDrag(x, y)){
+                    inputsDropped.increment();
+                }
             }
         };
         animation.addMouseListener(myListener);
@@ -264,19 +414,25 @@ public class PingballClient extends JFrame{
         animation.addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
-                String keyName = KeyEvent.getKeyText(e.getKeyCode()).toLowerCase().replaceAll(" ", "");
-                keyName = "keydown:" + keyName;
-                if(!togglePause){
-                    userInputQueue.add(keyName);
-                }
+                sendKey("keydown:", e);
             }
 
             @Override
             public void keyReleased(KeyEvent e) {
+                sendKey("keyup:", e);
+            }
+            
+            //the board resolves its key bindings up front, so only the id of a
+            //bound key event goes through the ring
+            private void sendKey(String pressType, KeyEvent e){
+                if(togglePause){
+                    return;
+                }
                 String keyName = KeyEvent.getKeyText(e.getKeyCode()).toLowerCase().replaceAll(" ", "");
-                keyName = "keyup:" + keyName;
-                if(!togglePause){
-                    userInputQueue.add(keyName);
+                Board board = model;
+                int keyEventId = board.keyEventId(pressType + keyName);
+                if(keyEventId >= 0 && !board.getInputRing().offerKey(keyEventId)){
+                    inputsDropped.increment();
                 }
             }
         });
@@ -401,9 +557,15 @@ public class PingballClient extends JFrame{
         
         writeNameLabel(model.name());
         startSimulation();
-        
-        //for sizing the panel - fits the 20x20 (or whatever) board + 1 unit of border space
-        int panelSize = (2 + Board.DEFAULT_SIZE)*CollidableGraphic.PIXELS_PER_UNIT;
+        layOut(model.size());
+    }
+    
+    //private helper method -- lay out the window's components around a board
+    //panel sized for a board of the given side length. must be called from
+    //the event dispatch thread
+    private void layOut(int boardSize){
+        //for sizing the panel - fits the board + 1 unit of border space
+        int panelSize = (2 + boardSize)*CollidableGraphic.PIXELS_PER_UNIT;
         
         GroupLayout layout = new GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
@@ -497,35 +659,140 @@ public class PingballClient extends JFrame{
             final String newFile = fileTextField.getText().trim();
             Thread backgroundThread = new Thread(new Runnable(){
                 public void run(){
-                    synchronized(model){
-                        try{
-                            model = OutputProcessor.parse(new File(getResourcePath(newFile)));
-                        } catch(Exception e){
-                            e.printStackTrace();
-                            JOptionPane.showMessageDialog(null, "File not found", "Error",
-                                    JOptionPane.ERROR_MESSAGE);
-                            System.err.println("error retrieving file: " + newFile);
-                            return;
-                        }
-    
-                        synchronized(serverLock){
-                            stopSimulation();
-                            String newName = model.name();
-                            writeNameLabel(newName);
-                            if(server != null){
-                                if(!openNewServerConnection(hostname,portNumber,newName)){
-                                    writeServerLabel("not connected");
-                                }
-                            }
-                            startSimulation();
-                        }
+                    File file;
+                    try{
+                        file = new File(getResourcePath(newFile));
+                    } catch(IOException e){
+                        e.printStackTrace();
+                        JOptionPane.showMessageDialog(null, "File not found", "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                        System.err.println("error retrieving file: " + newFile);
+                        return;
                     }
+                    loadBoardFile(file, false);
                 }
             });
             backgroundThread.start();
         }
     }
     
+    //private helper method -- load a board file. a file loaded from the UI replaces
+    //the board and restarts it. a change to the watched file is applied to the running
+    //board in place, keeping its balls and connections, unless the board line changed
+    //and the board has to be replaced. errors loading a changed file are only printed,
+    //and the board keeps running as it was
+    private void loadBoardFile(File file, boolean changed){
+        synchronized(model){
+            CompiledBoard compiled;
+            String contentHash;
+            BoardEdit edit = null;
+            Board board = null;
+            try{
+                //the hash is of the same bytes the board is built from
+                byte[] contents = Files.readAllBytes(file.toPath());
+                compiled = OutputProcessor.compile(contents, boardCache);
+                contentHash = BoardIndex.contentHash(contents);
+                if(changed && loadedBoard != null){
+                    edit = BoardEdit.diff(loadedBoard, compiled);
+                }
+                if(edit == null || !edit.isInPlace()){
+                    board = compiled.build();
+                }
+            } catch(Exception e){
+                if(changed){
+                    System.err.println("unable to reload " + file + ": " + e.getMessage());
+                    return;
+                }
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(null, "Unable to load board file", "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                System.err.println("error loading file: " + file);
+                return;
+            }
+            
+            if(edit != null && edit.isInPlace()){
+                synchronized(serverLock){
+                    stopSimulation();
+                    loadedBoard = compiled;
+                    loadedHash = contentHash;
+                    hello.set(composeHello(model.name()));
+                    List<String> messages = applyInPlace(model, edit, hello.get(), otherBoards);
+                    if(server != null){
+                        serverOutgoing.addAll(messages);
+                    }
+                    resumeSimulation();
+                }
+                System.out.println("Reloaded " + file + ": " + edit);
+                return;
+            }
+            
+            synchronized(serverLock){
+                stopSimulation();
+                model.setJournal(null);
+                if(board.size() != model.size()){
+                    resizeBoardPanel(board.size());
+                }
+                model = board;
+                loadedBoard = compiled;
+                loadedFile = file;
+                loadedHash = contentHash;
+                String newName = model.name();
+                writeNameLabel(newName);
+                if(server != null){
+                    if(!openNewServerConnection(hostname,portNumber,newName)){
+                        writeServerLabel("not connected");
+                    }
+                }
+                startSimulation();
+            }
+            watch(file);
+        }
+    }
+    
+    /**
+     * apply a change to a running board's file to the board in place. the
+     * board's simulation must be stopped. the board's journal is ended, since
+     * a replay starts from the board file, so edits can't be replayed
+     * 
+     * @param board the board
+     * @param edit the change to its file, which must be in place
+     * @param hello the board's hello, announcing the hash of the changed file
+     * @param otherBoards the names of the other boards connected to the server
+     * @return the messages to tell the server about the change: the hello,
+     *          since the server's index no longer describes the board unless
+     *          it indexes the changed file, then, if the edit changes portals,
+     *          a portal query and reply for each other board, from which other
+     *          boards open and close their portals to ours
+     */
+    static List<String> applyInPlace(Board board, BoardEdit edit, String hello, Collection<String> otherBoards){
+        if(board.getJournal() != null){
+            System.out.println("Journal " + board.getJournal().file() + " ended by the edit");
+            board.setJournal(null);
+        }
+        edit.apply(board);
+        List<String> messages = new ArrayList<String>();
+        messages.add(hello);
+        if(edit.changesPortals()){
+            for(String other : otherBoards){
+                messages.add(Messages.composePortalQueryMessage(board.name(), other));
+                messages.add(Messages.composePortalResponseMessage(board.name(), other, board.getPortalNames()));
+            }
+        }
+        return messages;
+    }
+    
+    //private helper method -- watch a board file, if files can be watched
+    private void watch(File file){
+        if(watcher == null){
+            return;
+        }
+        try{
+            watcher.watch(file);
+        } catch(IOException e){
+            System.err.println("unable to watch " + file + ": " + e.getMessage());
+        }
+    }
+    
     //resolve a hostname from the hostname text field
     private String resolveHostname(){
         return hostnameTextField.getText().trim();
@@ -582,6 +849,16 @@ public class PingballClient extends JFrame{
         });
     }
     
+    //resize the board panel for a board of another size using SwingUtilities.invokeLater
+    private void resizeBoardPanel(final int boardSize){
+        SwingUtilities.invokeLater(new Runnable(){
+            public void run(){
+                layOut(boardSize);
+                pack();
+            }
+        });
+    }
+    
     //set the displayed server connection using SwingUtilities.invokeLater
     private void writeServerLabel(final String server){
         SwingUtilities.invokeLater(new Runnable(){
@@ -620,10 +897,37 @@ public class PingballClient extends JFrame{
         if(cancelled == false){
             return;
         }
-        cancelled = false;
         model.saveConfiguration();
+        model.setMetrics(metrics);
+        startJournal();
+        resumeSimulation();
+    }
+    
+    //private helper method -- start journaling the model's session, if sessions
+    //are journaled and the model isn't being journaled already. a restart is
+    //recorded in the journal it interrupts
+    private void startJournal(){
+        if(journalDirectory == null || model.getJournal() != null){
+            return;
+        }
+        String boardName = model.name().isEmpty() ? "board" : model.name();
+        File file = new File(journalDirectory, boardName + "-" + System.currentTimeMillis() + ".pbj");
+        try{
+            model.setJournal(Journal.create(file, loadedFile == null ? "" : loadedFile.getPath()));
+            System.out.println("Journaling to " + file);
+        } catch(IOException e){
+            System.err.println("unable to journal to " + file + ": " + e.getMessage());
+        }
+    }
+    
+    //private helper method -- start a new simulation thread from the board as it is,
+    //without saving its configuration for restarts
+    private void resumeSimulation(){
+        if(cancelled == false){
+            return;
+        }
+        cancelled = false;
         animation.newFrame(model.getGraphic());
-        userInputQueue = model.getUserInputQueue();
         simThread = new Thread(new Runnable(){
 
             public void run() {
@@ -651,7 +955,7 @@ public class PingballClient extends JFrame{
                         //First check if any messages need to be sent to the server,
                         //and handle one
                         if(model.hasPendingMessage()){
-                            serverOutgoing.add(model.grabMessage());
+                            serverOutgoing.add(TeleportTrace.stamp(model.grabMessage(), messageQueueWait));
                         }
                         
                         //Then check if any messages have been received from the server,
@@ -667,31 +971,28 @@ public class PingballClient extends JFrame{
         System.out.println("New simulation started");
     }
     
+    //private helper method -- a network queue, which records how long each of
+    //its lanes' messages wait under the queue's name
+    private LaneQueue laneQueue(String name){
+        return new LaneQueue(metrics.histogram(name + ".teleportWaitNanos"),
+                metrics.histogram(name + ".controlWaitNanos"));
+    }
+    
     //private helper method -- resolves the server message parameters and
     //appropriately modifies the board connections and contents
     private void handleIncomingMessage(){
         
         String message = serverIncoming.remove();
         //System.out.println("received new server message: " + message); //debug
+        traceArrival(message);
         String sender = Messages.parseSender(message);
         MessageType type = Messages.parseType(message);
         String[] tokens = Messages.parseArguments(message);
         
+        //teleports, portal replies, links and disconnects change the board
+        model.applyMessage(message);
+        
         switch(type){
-        case WALL_TELEPORT:
-            //spawn a ball that has entered our board through a wall
-            VectPair pair = Messages.parseWallTeleportArguments(message);
-            model.spawnBall(pair);
-            break;
-            
-        case PORTAL_TELEPORT:
-            //spawn a ball that has entered our board through a portal
-            String portalName = tokens[0];
-            double xVel = Double.parseDouble(tokens[1]);
-            double yVel = Double.parseDouble(tokens[2]);
-            model.spawnBall(portalName, xVel, yVel);
-            break;
-            
         case PORTAL_QUERY:
             //if we receive a query, we compose a reply
             List<String> portalNames = model.getPortalNames();
@@ -699,47 +1000,47 @@ public class PingballClient extends JFrame{
             serverOutgoing.add(toSend);
             break;
             
-        case PORTAL_REPLY:
-            //when we receive a reply, we can open portals as necessary
-            model.openPortals(sender, Arrays.asList(tokens));
-            break;
-            
-        case LINK:
-            //connect a wall
-            model.connectWall(Wall.stringToWallType(tokens[1]), tokens[0]);
-            break;
-            
-        case DELINK:
-            //disconnect a wall
-            model.disconnectWall(Wall.stringToWallType(tokens[1]), tokens[0]);
-            break;
-
         case CONNECTION:
             //when we become aware of a new client, we have to send a portal query to them
             //and add them to our UI client list
             serverOutgoing.add(Messages.composePortalQueryMessage(model.name(), tokens[0]));
             addNameToTable(tokens[0]);
+            if(!tokens[0].equals(model.name())){
+                otherBoards.add(tokens[0]);
+            }
             break;
             
         case DISCONNECT:
-            //when another client disconnects, we have to remove them from our client list
-            //and disconnect any elements that are linked to them through the server
-            //if we have disconnected from the server, instead disconnect ALL such links
-            //and clear the client list completely
+            //when another client disconnects, we have to remove them from our client list.
+            //if we have disconnected from the server, instead clear the client list completely
             if(tokens[0].equals(model.name())){
-                model.disconnectAll();
                 removeAllNamesFromTable();
+                otherBoards.clear();
             }else{
                 removeNameFromTable(tokens[0]);
+                otherBoards.remove(tokens[0]);
             }
-            model.disconnectBoard(Messages.parseArguments(message)[0]);
             break;
             
         default:
-            //ignore
+            //nothing else to do
         }
     }
     
+    //private helper method -- if a message is a traced teleport, records how
+    //long it waited in serverIncoming, and how long it took to get here
+    private void traceArrival(String message){
+        TeleportTrace trace = TeleportTrace.parse(message);
+        if(trace == null || trace.hops() != TeleportTrace.HANDLED){
+            return;
+        }
+        long waited = System.nanoTime() - trace.stamp(TeleportTrace.RECEIVED);
+        serverIncomingWait.record(waited);
+        long endToEnd = System.currentTimeMillis() - trace.originMillis();
+        teleportEndToEnd.record(endToEnd);
+        teleportNetwork.record(endToEnd - (trace.localNanos() + waited)/1000000);
+    }
+    
     //if connected to a server, close the connection and wait for the messaging
     //threads to die
     private void closeServerConnection(){
@@ -759,8 +1060,8 @@ public class PingballClient extends JFrame{
                 server.close();
                 
                 //discard old queues
-                serverOutgoing = new LinkedBlockingQueue<String>();
-                serverIncoming = new LinkedBlockingQueue<String>();
+                serverOutgoing = laneQueue("network.outgoing");
+                serverIncoming = laneQueue("network.incoming");
                 
                 System.out.println("Server connection stopped");
                 
@@ -773,7 +1074,17 @@ public class PingballClient extends JFrame{
             hostname = "";
             writeServerLabel("not connected");
             removeAllNamesFromTable();
+            otherBoards.clear();
+        }
+    }
+    
+    //private helper method -- our hello, announcing the size of our board, and
+    //the hash of its board file if it was loaded from one
+    private String composeHello(String name){
+        if(loadedHash == null){
+            return Messages.composeClientHello(name, "Server", model.size());
         }
+        return Messages.composeClientHello(name, "Server", model.size(), loadedHash);
     }
     
     //open a new network connection to the server at host:port
@@ -808,7 +1119,8 @@ public class PingballClient extends JFrame{
         //if the connection was successful, then start the communication threads
         System.out.println("Connection resolved: " + host + ":" + port);
         
-        sender = new Thread(new ClientMessageSender(name, server, serverOutgoing, kill));
+        hello.set(composeHello(name));
+        sender = new Thread(new ClientMessageSender(name, server, serverOutgoing, kill, metrics, hello));
         sender.start();
         
         receiver = new Thread(new ClientMessageReceiver(name, server, serverIncoming, kill));
@@ -868,6 +1180,8 @@ public class PingballClient extends JFrame{
         int port = DEFAULT_PORT;//default port
         String hostname = "";//if not specified, no server connection will be attempted
         String filepath = "";
+        String cacheDirectory = "";//if not specified, board files are always parsed
+        String journalDirectory = "";//if not specified, sessions aren't journaled
         //parse arguments
         try{
             String flag = "";
@@ -881,6 +1195,10 @@ public class PingballClient extends JFrame{
                         }
                     }else if(flag.equals("--host")){
                         hostname = arguments.remove();
+                    }else if(flag.equals("--cache")){
+                        cacheDirectory = arguments.remove();
+                    }else if(flag.equals("--journal")){
+                        journalDirectory = arguments.remove();
                     }else{
                         filepath = flag;
                     }
@@ -892,16 +1210,19 @@ public class PingballClient extends JFrame{
             }
         } catch(IllegalArgumentException e) {
             System.err.println(e.getMessage());
-            System.err.println("usage: PingballClient [--host HOST] [--port PORT] FILE");
+            System.err.println("usage: PingballClient [--host HOST] [--port PORT] [--cache DIR] [--journal DIR] FILE");
         }
         
         final int initPort = port;
         final String initHostname = hostname;
         final String initFilepath = filepath;
+        final BoardCache boardCache = cacheDirectory.isEmpty() ? null : new BoardCache(new File(cacheDirectory));
+        final File initJournalDirectory = journalDirectory.isEmpty() ? null : new File(journalDirectory);
         
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                PingballClient main = new PingballClient(initFilepath, initHostname, initPort);
+                PingballClient main = new PingballClient(initFilepath, initHostname, initPort, boardCache,
+                        initJournalDirectory);
                 main.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
                 main.pack();
                 main.setVisible(true);
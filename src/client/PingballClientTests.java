@@ -0,0 +1,101 @@
+package client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import BoardGrammar.BoardEdit;
+import BoardGrammar.CompiledBoard;
+import BoardGrammar.ParserTests;
+import message.Messages;
+import message.Messages.MessageType;
+
+/**
+ * Testing strategy
+ *
+ * applyInPlace(), the reload of a changed board file that keeps the board
+ * running:
+ *  1. the board is edited to match the changed file, keeping its balls
+ *  2. a key bound by the change gets an id the input thread can look up
+ *  3. the board's journal is ended, with an END record
+ *  4. the hello is always sent, and a portal query and reply go to each other
+ *     board only when the portals changed, listing the new portals
+ */
+public class PingballClientTests {
+
+    private static final String HELLO = Messages.composeClientHello("Edit", "Server", 20, "abc123");
+
+    @Test public void testEditsBoard() throws IOException {
+        CompiledBoard from = ParserTests.compile("board name=Edit",
+                "ball name=B x=5 y=5 xVelocity=0 yVelocity=0",
+                "squareBumper name=Kept x=1 y=1");
+        CompiledBoard to = ParserTests.compile("board name=Edit",
+                "ball name=B x=5 y=5 xVelocity=0 yVelocity=0",
+                "squareBumper name=Kept x=1 y=1",
+                "leftFlipper name=Flip x=10 y=10 orientation=0",
+                "keydown key=space action=Flip");
+        Board board = from.build();
+        board.advanceSimulation(0.05);
+        double y = board.getBallList().get(0).y();
+        assertEquals(-1, board.keyEventId("keydown:space"));
+        List<String> messages = PingballClient.applyInPlace(board, BoardEdit.diff(from, to), HELLO,
+                Arrays.asList("Other"));
+        assertEquals(2, board.numberOfGadgets());
+        assertEquals(10, board.getGadget("Flip").x);
+        assertEquals(y, board.getBallList().get(0).y(), 0);
+        assertTrue(board.keyEventId("keydown:space") >= 0);
+        assertEquals(Arrays.asList(HELLO), messages);
+    }
+
+    @Test public void testEndsJournal() throws IOException {
+        CompiledBoard from = ParserTests.compile("board name=Edit", "squareBumper name=A x=1 y=1");
+        CompiledBoard to = ParserTests.compile("board name=Edit", "squareBumper name=A x=2 y=1");
+        Board board = from.build();
+        File file = File.createTempFile("edit", ".pbj");
+        file.deleteOnExit();
+        board.setJournal(Journal.create(file, "edit.pb"));
+        board.advanceSimulation(0.05);
+        PingballClient.applyInPlace(board, BoardEdit.diff(from, to), HELLO, new ArrayList<String>());
+        assertNull(board.getJournal());
+        Journal journal = Journal.open(file);
+        try{
+            Journal.Entry last = null;
+            for(Journal.Entry entry = journal.read(); entry != null; entry = journal.read()){
+                last = entry;
+            }
+            assertEquals(Journal.END, last.kind);
+        }finally{
+            journal.close();
+        }
+    }
+
+    @Test public void testPortalsChanged() throws IOException {
+        CompiledBoard from = ParserTests.compile("board name=Edit",
+                "portal name=In x=1 y=1 otherBoard=Other otherPortal=Out");
+        CompiledBoard to = ParserTests.compile("board name=Edit",
+                "portal name=In x=1 y=1 otherBoard=Other otherPortal=Out",
+                "portal name=Added x=5 y=5 otherBoard=Other otherPortal=Out");
+        Board board = from.build();
+        List<String> messages = PingballClient.applyInPlace(board, BoardEdit.diff(from, to), HELLO,
+                Arrays.asList("Other", "Third"));
+        assertEquals(5, messages.size());
+        assertEquals(HELLO, messages.get(0));
+        for(int ii = 0; ii < 2; ii ++){
+            String other = ii == 0 ? "Other" : "Third";
+            String query = messages.get(1 + 2*ii), reply = messages.get(2 + 2*ii);
+            assertEquals(MessageType.PORTAL_QUERY, Messages.parseType(query));
+            assertEquals(other, Messages.parseReceiver(query));
+            assertEquals(MessageType.PORTAL_REPLY, Messages.parseType(reply));
+            assertEquals(other, Messages.parseReceiver(reply));
+            assertEquals(Arrays.asList("In", "Added"), Arrays.asList(Messages.parseArguments(reply)));
+        }
+    }
+}
@@ -2,9 +2,15 @@ package client;
 
 import java.util.List;
 
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
 import physics.Vect;
+import profiling.CollisionEvent;
+import profiling.SimulationStepEvent;
 import sim.Ball;
 import sim.Collidable;
+import sim.TriggerGraph;
 import sim.Triggerable;
 import sim.Wall;
 
@@ -18,10 +24,19 @@ public class Simulation {
     private static final int MAX_CALL_STACK_SIZE = 100;
     //stack limit to avoid stack overflow when clipping glitches occur
     private static final int G_FIELD_RESOLUTION = 2;
-    private static final int G_FIELD_SIZE = G_FIELD_RESOLUTION*(Board.DEFAULT_SIZE+1);
     private static final double WARP_INTENSITY = -30;
     private static final double WARP_RADIUS = Board.DEFAULT_DISTORTION_RADIUS*2;
-    //parameters for gravity distortions
+    private static final int WARP_REACH = (int)Math.ceil(WARP_RADIUS);
+    //parameters for gravity distortions. WARP_RADIUS and WARP_REACH are in
+    //gravity field cells, G_FIELD_RESOLUTION of which span one unit
+    private static final double CHUNK_SIZE = 4;
+    //side length of the chunks that gadgets and balls are indexed by
+    private static final double CHUNK_PADDING = 1e-3;
+    //added to the reach of a ball when looking for things it could hit, to
+    //absorb rounding in the collision predictions
+    private static final SimulationStepEvent STEP_EVENTS = new SimulationStepEvent();
+    private static final CollisionEvent COLLISION_EVENTS = new CollisionEvent();
+    //never committed; only asked whether their kinds of event are enabled
     
     private List<Wall> walls;
     //the walls of the board
@@ -37,9 +52,50 @@ public class Simulation {
     private final double mu2;
     //the second friction value to be used
     
-    private VectField gravity;
-    //this is the VectField used to compute physical accelerations during
-    //simulation
+    private VectField distortion;
+    //the gravity field around a distortion, or null if gravity is uniform.
+    //gravity is g everywhere outside of this window
+    private int distortionX, distortionY;
+    //the gravity field cell of the window's [0][0] entry
+    private boolean uniformGravity = true;
+    //rep invariant -- true iff distortion is null
+    private boolean parabolic = false;
+    //if true, balls follow exact parabolas between collisions whenever
+    //gravity is uniform
+    private DistanceField staticField;
+    //distances to the walls and gadgets, for skipping the collision tests of
+    //balls that are out in the open. null if there is none
+    //rep invariant -- if not null, must reflect the current walls and gadgets
+    private TriggerGraph triggerGraph;
+    //runs the trigger actions raised by each collision, after the collision has
+    //been resolved. null if the gadgets run their actions immediately
+    private final ChunkIndex gadgetIndex = new ChunkIndex(CHUNK_SIZE);
+    private int indexedGadgets = 0;
+    //the bounding boxes of gadgets [0, indexedGadgets), which is brought up to
+    //date at the start of each advance(). gadgets added to the end of the list
+    //are picked up, and any other change is signalled by gadgetsChanged()
+    private final ChunkIndex ballIndex = new ChunkIndex(CHUNK_SIZE);
+    //the balls' centers, rebuilt at each step of advance()
+    private final ChunkIndex.Items nearby = new ChunkIndex.Items();
+    //scratch list for index queries
+    
+    private Histogram stepNanos;
+    //time taken by each call of advance(), null if metrics aren't recorded
+    private Histogram stepDepths;
+    //recursion depth reached by each call of advance()
+    private Counter depthLimitHits;
+    //calls of advance() that stopped at MAX_CALL_STACK_SIZE with collisions left
+    private Counter collisions;
+    private Counter narrowPhaseTests;
+    //collisions resolved, and timeUntilCollision() calls made
+    private long stepTests;
+    //collision tests made so far in the current call of advance()
+    private boolean cutShort;
+    //true if the current call of advance() hit the recursion limit with
+    //collisions left
+    private boolean recordingCollisions;
+    //true if a flight recording wants the current call of advance()'s
+    //collision events. checked once per call
     
     /**
      * construct a simulation using the provided lists of walls, balls, and gadgets,
@@ -61,7 +117,6 @@ public class Simulation {
         this.g = new Vect(0,g);
         this.mu = mu;
         this.mu2 = mu2;
-        gravity = VectField.uniformVectField(42, this.g);
     }
     
     /**
@@ -69,29 +124,86 @@ public class Simulation {
      * physical accelerations, and other state changes that occur during that time
      * 
      * @param timeStepSeconds the length of the time step in seconds
+     * @param n the number of collisions already resolved in this time step,
+     *          normally 0
      */
     public void advance(double timeStepSeconds, int n){
+        //events are only made if a recording wants them, so with JFR off
+        //advancing allocates nothing
+        SimulationStepEvent event = STEP_EVENTS.isEnabled() ? new SimulationStepEvent() : null;
+        if(event != null){
+            event.begin();
+        }
+        recordingCollisions = COLLISION_EVENTS.isEnabled();
+        long start = stepNanos == null ? 0 : System.nanoTime();
+        stepTests = 0;
+        int depth = resolve(timeStepSeconds, n);
+        if(event != null){
+            event.end();
+        }
+        if(event != null && event.shouldCommit()){
+            event.timeStep = timeStepSeconds;
+            event.collisions = depth - n;
+            event.depth = depth;
+            event.cutShort = cutShort;
+            event.balls = balls.size();
+            event.commit();
+        }
+        if(stepNanos != null){
+            recordStep(start, depth, depth - n);
+        }
+    }
+    
+    //private helper method. resolves the collisions of a time step one at a time,
+    //recursing after each, and returns the depth it reached
+    private int resolve(double timeStepSeconds, int n){
+        //with no acceleration the parabolic predictions reduce exactly to
+        //the constant velocity ones
+        double gx = isParabolic() ? g.x() : 0;
+        double gy = isParabolic() ? g.y() : 0;
         double lowestTime = Double.POSITIVE_INFINITY;
         double t;
         Ball collidingBall = null;
         Collidable collidingWith = null;
+        indexGadgets();
+        //nothing further than this from a ball can reach it during the step
+        double ballReach = indexBalls(timeStepSeconds, gx, gy);
         //iterate over all balls, finding earliest collision
         for(int ii = 0; ii < balls.size(); ii ++){
-            //first check for ball-ball collisions
-            for(int jj = 0; jj < balls.size(); jj ++){
+            Ball ball = balls.get(ii);
+            double reach = reach(ball, timeStepSeconds, gx, gy);
+            //first check for ball-ball collisions. balls in the same uniform
+            //field move in straight lines relative to one another, so these
+            //are exact in either mode. only balls in nearby chunks can
+            //collide during this step; they're visited in list order, so
+            //ties go the same way they would if every ball were checked
+            nearby.clear();
+            double span = reach + ball.getRadius() + ballReach;
+            ballIndex.query(ball.x() - span, ball.y() - span, ball.x() + span, ball.y() + span, nearby);
+            nearby.sort();
+            stepTests += nearby.size() - 1;
+            for(int kk = 0; kk < nearby.size(); kk ++){
+                int jj = nearby.get(kk);
                 if(ii != jj){
-                   t = balls.get(jj).timeUntilCollision(balls.get(ii));
+                   t = balls.get(jj).timeUntilCollision(ball);
                    if(t < lowestTime){
                        lowestTime = t;
-                       collidingBall = balls.get(ii);
+                       collidingBall = ball;
                        collidingWith = balls.get(jj);
                    }
                 }
             } if(lowestTime == 0)break;
             
+            //a ball that can't reach any wall or gadget during this time step
+            //can't collide with any of them either
+            if(isClear(ball, reach)){
+                continue;
+            }
+            
             //second, check for ball-wall collisions
+            stepTests += walls.size();
             for(int kk = 0; kk < walls.size(); kk ++){
-                t = walls.get(kk).timeUntilCollision(balls.get(ii));
+                t = walls.get(kk).timeUntilCollision(balls.get(ii), gx, gy);
                 if(t < lowestTime){
                     lowestTime = t;
                     collidingBall = balls.get(ii);
@@ -99,9 +211,16 @@ public class Simulation {
                 }
             } if(lowestTime == 0)break;
             
-            //finally, check for ball-gadget collisions
-            for(int hh = 0; hh < gadgets.size(); hh++){
-                t = gadgets.get(hh).timeUntilCollision(balls.get(ii));
+            //finally, check for ball-gadget collisions, with the gadgets whose
+            //chunks the ball can reach
+            nearby.clear();
+            double r = ball.getRadius() + reach;
+            gadgetIndex.query(ball.x() - r, ball.y() - r, ball.x() + r, ball.y() + r, nearby);
+            nearby.sort();
+            stepTests += nearby.size();
+            for(int kk = 0; kk < nearby.size(); kk ++){
+                int hh = nearby.get(kk);
+                t = gadgets.get(hh).timeUntilCollision(balls.get(ii), gx, gy);
                 if(t < lowestTime){
                     lowestTime = t;
                     collidingBall = balls.get(ii);
@@ -112,45 +231,162 @@ public class Simulation {
         
         if(lowestTime <= timeStepSeconds && n < MAX_CALL_STACK_SIZE){
             //if a collision will occur within this time step, then call
-            //advance() recursively until the time step is completed.
+            //resolve() recursively until the time step is completed.
             displaceAll(lowestTime);
-            collidingWith.collideWith(collidingBall);
+            if(recordingCollisions){
+                CollisionEvent collision = new CollisionEvent();
+                collision.collidable = collidingWith.getClass().getSimpleName();
+                collision.timeOfImpact = lowestTime;
+                collision.depth = n;
+                collision.x = collidingBall.x();
+                collision.y = collidingBall.y();
+                collision.commit();
+            }
+            collidingWith.collideWith(collidingBall, gx, gy);
+            if(triggerGraph != null){
+                triggerGraph.dispatch();
+            }
             applyPhysics(lowestTime);
-            advance(timeStepSeconds - lowestTime, n+1);
+            return resolve(timeStepSeconds - lowestTime, n+1);
         } else{
             //base case; no collisions remaining. displace objects and return.
             displaceAll(timeStepSeconds);
             applyPhysics(timeStepSeconds);
+            cutShort = lowestTime <= timeStepSeconds;
+            return n;
+        }
+    }
+    
+    //private helper method. records the metrics of a call of advance() that
+    //started at start, reached the given depth and resolved some collisions
+    private void recordStep(long start, int depth, int resolved){
+        stepNanos.record(System.nanoTime() - start);
+        stepDepths.record(depth);
+        collisions.add(resolved);
+        narrowPhaseTests.add(stepTests);
+        if(cutShort){
+            depthLimitHits.increment();
+        }
+    }
+    
+    /**
+     * record the simulation's metrics in a registry: the time and recursion
+     * depth of each step, steps cut short by the recursion limit, and the
+     * collisions resolved and collision tests made
+     * 
+     * @param registry the registry, or null to stop recording
+     */
+    public void setMetrics(MetricsRegistry registry){
+        if(registry == null){
+            stepNanos = null;
+            return;
+        }
+        stepDepths = registry.histogram("simulation.recursionDepth");
+        depthLimitHits = registry.counter("simulation.recursionLimitHits");
+        collisions = registry.counter("simulation.collisions");
+        narrowPhaseTests = registry.counter("simulation.narrowPhaseTests");
+        stepNanos = registry.histogram("simulation.stepNanos");
+    }
+    
+    //private helper method. the furthest the ball can travel in the time
+    //step, whether it moves in a straight line or accelerates at <gx, gy>
+    private static double reach(Ball ball, double timeStepSeconds, double gx, double gy){
+        double speed = Math.sqrt(ball.vx()*ball.vx() + ball.vy()*ball.vy());
+        return speed*timeStepSeconds
+                + 0.5*Math.sqrt(gx*gx + gy*gy)*timeStepSeconds*timeStepSeconds
+                + CHUNK_PADDING;
+    }
+    
+    //private helper method. true iff the distance field shows that the ball
+    //cannot travel far enough to reach any wall or gadget
+    private boolean isClear(Ball ball, double reach){
+        if(staticField == null){
+            return false;
+        }
+        return staticField.clearance(ball.x(), ball.y()) - ball.getRadius() > reach;
+    }
+    
+    //private helper method. brings the gadget index up to date with the
+    //gadget list
+    private void indexGadgets(){
+        if(gadgets.size() < indexedGadgets){
+            gadgetIndex.clear();
+            indexedGadgets = 0;
+        }
+        for(; indexedGadgets < gadgets.size(); indexedGadgets ++){
+            Triggerable gadget = gadgets.get(indexedGadgets);
+            gadgetIndex.insert(indexedGadgets, gadget.x, gadget.y, gadget.x + gadget.w, gadget.y + gadget.h);
         }
     }
     
+    //private helper method. indexes the balls by their centers, and returns
+    //the largest reach plus radius of any of them -- two balls can only
+    //collide during the step if their centers are within the sum of their
+    //reaches and radii
+    private double indexBalls(double timeStepSeconds, double gx, double gy){
+        ballIndex.clear();
+        double largest = 0;
+        for(int ii = 0; ii < balls.size(); ii ++){
+            Ball ball = balls.get(ii);
+            ballIndex.insert(ii, ball.x(), ball.y(), ball.x(), ball.y());
+            largest = Math.max(largest, reach(ball, timeStepSeconds, gx, gy) + ball.getRadius());
+        }
+        return largest;
+    }
+    
     //private helper method. displaces all objects on the board through
-    //the specified time step, assuming that no collisions or physical accelerations
-    //will take place
+    //the specified time step, assuming that no collisions will take place.
+    //in parabolic mode balls are accelerated by gravity along the way;
+    //otherwise no physical accelerations are applied
+    //these run several times a step, so they index rather than allocating
+    //iterators
     private void displaceAll(double timeStepSeconds){
-        for(Ball ball : balls){
+        boolean ballistic = isParabolic();
+        for(int ii = 0; ii < balls.size(); ii ++){
+            Ball ball = balls.get(ii);
             if(timeStepSeconds != 0){
-                ball.displace(timeStepSeconds);
+                if(ballistic){
+                    ball.displace(timeStepSeconds, g.x(), g.y());
+                }else{
+                    ball.displace(timeStepSeconds);
+                }
             }
         }
-        for(Collidable gadget: gadgets){
-            gadget.displace(timeStepSeconds);
+        for(int ii = 0; ii < gadgets.size(); ii ++){
+            gadgets.get(ii).displace(timeStepSeconds);
         }
     }
     
     //private helper method. apply physical accelerations to all pertinent
     //objects on the board, for the given time step
     private void applyPhysics(double timeStepSeconds){
-        if(timeStepSeconds > 0){
-            for(Ball ball : balls){
-                //have to transform ball position from (-0.5,20.5) to (0, G_FIELD_SIZE-1)
-                Vect g = gravity.valueAt(ball.getCenter()
-                        .plus(new Vect(0.5,0.5)).times(G_FIELD_RESOLUTION));
-                ball.applyPhysics(timeStepSeconds, g, mu, mu2);
+        if(timeStepSeconds > 0 && isParabolic()){
+            //gravity was already applied by displaceAll(); only friction is left
+            for(int ii = 0; ii < balls.size(); ii ++){
+                balls.get(ii).applyPhysics(timeStepSeconds, Vect.ZERO, mu, mu2);
+            }
+        }else if(timeStepSeconds > 0){
+            for(int ii = 0; ii < balls.size(); ii ++){
+                Ball ball = balls.get(ii);
+                ball.applyPhysics(timeStepSeconds, gravityAt(ball.x(), ball.y()), mu, mu2);
             }
         }
     }
     
+    //private helper method. the gravity at a position on the board
+    private Vect gravityAt(double x, double y){
+        if(distortion == null){
+            return g;
+        }
+        //transform the position from board units to gravity field cells
+        int ii = (int)((x + 0.5)*G_FIELD_RESOLUTION) - distortionX;
+        int jj = (int)((y + 0.5)*G_FIELD_RESOLUTION) - distortionY;
+        if(ii < 0 || jj < 0 || ii >= distortion.dimension() || jj >= distortion.dimension()){
+            return g;
+        }
+        return distortion.valueAt(ii, jj);
+    }
+    
     /**
      * create a local gravity distortion around position x,y
      * the gravity distortion will attract nearby objects to position x,y
@@ -159,16 +395,101 @@ public class Simulation {
      * @param y the y position
      */
     public void distortGravity(double x, double y){
-        //have to transform x,y position from (-0.5,20.5) to (0, G_FIELD_SIZE-1)
-        gravity = VectField.createLocalDistortion(
-                G_FIELD_SIZE, WARP_RADIUS, g, WARP_INTENSITY,
-                G_FIELD_RESOLUTION*(x+0.5), G_FIELD_RESOLUTION*(y+0.5));
+        //only the cells within WARP_REACH of the center are distorted, so the
+        //field is just that window, however big the board is
+        int centerX = (int)(G_FIELD_RESOLUTION*(x+0.5));
+        int centerY = (int)(G_FIELD_RESOLUTION*(y+0.5));
+        distortionX = centerX - WARP_REACH;
+        distortionY = centerY - WARP_REACH;
+        distortion = VectField.createLocalDistortion(
+                2*WARP_REACH + 1, WARP_RADIUS, g, WARP_INTENSITY, WARP_REACH, WARP_REACH);
+        uniformGravity = false;
     }
     
     /**
      * return simulation gravity to a uniform field
      */
     public void resetGravity(){
-        gravity = VectField.uniformVectField(G_FIELD_SIZE, g);
+        distortion = null;
+        uniformGravity = true;
+    }
+    
+    /**
+     * turn parabolic collision prediction on or off. while it is on and gravity
+     * is uniform, balls are moved along their true ballistic parabolas between
+     * collisions, and collisions with walls and gadgets are predicted along those
+     * parabolas instead of along straight lines. trajectories then stay accurate
+     * over much longer time steps. friction is still applied once per step.
+     * 
+     * while gravity is distorted the simulation falls back on straight line
+     * prediction. off by default
+     * 
+     * @param enabled true to turn parabolic prediction on
+     */
+    public void setParabolicPrediction(boolean enabled){
+        parabolic = enabled;
+    }
+    
+    /**
+     * set the distance field used to skip collision tests for balls that are far
+     * from every wall and gadget. the field must be replaced whenever the walls or
+     * gadgets change shape or position
+     * 
+     * @param field the distance field for the current walls and gadgets, or null
+     *          to test every ball against every wall and gadget
+     */
+    public void setDistanceField(DistanceField field){
+        staticField = field;
+    }
+    
+    /**
+     * set the trigger graph whose raised triggers are dispatched after each
+     * collision. it should hold every gadget in the simulation
+     * 
+     * @param graph the trigger graph, or null if the gadgets aren't in one
+     */
+    public void setTriggerGraph(TriggerGraph graph){
+        triggerGraph = graph;
+    }
+    
+    /**
+     * rebuild the gadget index from the gadget list at the next advance. the
+     * index only notices gadgets being added, so this must be called whenever
+     * gadgets are removed from the list or moved within it
+     */
+    public void gadgetsChanged(){
+        gadgetIndex.clear();
+        indexedGadgets = 0;
+    }
+    
+    /**
+     * @return true iff a distance field is in use
+     */
+    public boolean hasDistanceField(){
+        return staticField != null;
+    }
+    
+    /**
+     * @return the distance field in use, or null if there is none. distance
+     *          fields are immutable, so simulations of identical boards can share one
+     */
+    public DistanceField getDistanceField(){
+        return staticField;
+    }
+    
+    /**
+     * @return true iff parabolic prediction has been turned on, whether or not
+     *          gravity is currently uniform
+     */
+    public boolean hasParabolicPrediction(){
+        return parabolic;
+    }
+    
+    /**
+     * @return true iff balls are currently being moved along parabolas -- that is,
+     *          parabolic prediction is on and gravity is uniform
+     */
+    public boolean isParabolic(){
+        return parabolic && uniformGravity;
     }
 }
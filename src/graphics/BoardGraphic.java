@@ -18,8 +18,8 @@ import sim.Wall;
  */
 public class BoardGraphic extends CollidableGraphic {
     
-    public static final int WIDTH = 20*PIXELS_PER_UNIT;
-    public static final int HEIGHT = 20*PIXELS_PER_UNIT;
+    private final int width, height;
+    //the size of the board's background, in pixels
     
     private Vect vortex;
     
@@ -33,6 +33,18 @@ public class BoardGraphic extends CollidableGraphic {
     //this still serves a purpose though, because it allows the board to specify,
     //in a sense, the order in which things are drawn
     
+    /**
+     * construct a BoardGraphic for a board of the default size containing a
+     * CollidableGraphic for every specified Collidable object
+     * 
+     * @param balls balls to be included
+     * @param walls walls to be included
+     * @param gadgets Triggerable objects to be included
+     */
+    public BoardGraphic(List<Ball> balls, List<Wall> walls, List<Triggerable> gadgets){
+        this(balls, walls, gadgets, Board.DEFAULT_SIZE);
+    }
+    
     /**
      * construct a BoardGraphic containing a CollidableGraphic for every
      * specified Collidable object
@@ -40,8 +52,11 @@ public class BoardGraphic extends CollidableGraphic {
      * @param balls balls to be included
      * @param walls walls to be included
      * @param gadgets Triggerable objects to be included
+     * @param size the side length of the board
      */
-    public BoardGraphic(List<Ball> balls, List<Wall> walls, List<Triggerable> gadgets){
+    public BoardGraphic(List<Ball> balls, List<Wall> walls, List<Triggerable> gadgets, int size){
+        this.width = size*PIXELS_PER_UNIT;
+        this.height = size*PIXELS_PER_UNIT;
         this.balls = new LinkedList<CollidableGraphic>();
         this.walls = new LinkedList<CollidableGraphic>();
         this.gadgets = new LinkedList<CollidableGraphic>();
@@ -67,7 +82,22 @@ public class BoardGraphic extends CollidableGraphic {
      * @param vortex the Vect position of the center of a gravity vortex
      */
     public BoardGraphic(List<Ball> balls, List<Wall> walls, List<Triggerable> gadgets, Vect vortex){
-        this(balls,walls,gadgets);
+        this(balls,walls,gadgets,Board.DEFAULT_SIZE,vortex);
+    }
+    
+    /**
+     * construct a BoardGraphic containing a CollidableGraphic for every
+     * specified Collidable object, and also draws a representation of a
+     * gravity vortex at the specified position
+     * 
+     * @param balls balls to be included
+     * @param walls walls to be included
+     * @param gadgets Triggerable objects to be included
+     * @param size the side length of the board
+     * @param vortex the Vect position of the center of a gravity vortex
+     */
+    public BoardGraphic(List<Ball> balls, List<Wall> walls, List<Triggerable> gadgets, int size, Vect vortex){
+        this(balls,walls,gadgets,size);
         this.vortex = vortex;
     }
     
@@ -79,7 +109,7 @@ public class BoardGraphic extends CollidableGraphic {
         Font font = new Font(g.getFont().getFontName(),PIXELS_PER_UNIT/2,PIXELS_PER_UNIT/2);
         g.setFont(font);
         g.setColor(Color.BLACK);
-        g.fillRect(ORIG_X,ORIG_Y,WIDTH,HEIGHT);
+        g.fillRect(ORIG_X,ORIG_Y,width,height);
         
         if(vortex != null){
             float color = 1; color*=0.25;
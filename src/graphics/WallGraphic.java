@@ -3,7 +3,6 @@ package graphics;
 import java.awt.Color;
 import java.awt.Graphics2D;
 
-import client.Board;
 import physics.Vect;
 
 /**
@@ -54,9 +53,10 @@ public class WallGraphic extends CollidableGraphic {
         this.nameX = convertToPixels(facing.x(),0)/2 - PIXELS_PER_UNIT/4;
         this.nameY = convertToPixels(facing.y(),0)/2 + PIXELS_PER_UNIT/4;
         
-        //this is the spacing increment for individual characters
-        this.dx = Math.abs(this.x2 - this.x1)/Board.DEFAULT_SIZE;
-        this.dy = Math.abs(this.y2 - this.y1)/Board.DEFAULT_SIZE;
+        //this is the spacing increment for individual characters -- the array
+        //has a character for each unit of the wall, plus one at each end
+        this.dx = Math.abs(this.x2 - this.x1)/Math.max(1, charArray.length - 2);
+        this.dy = Math.abs(this.y2 - this.y1)/Math.max(1, charArray.length - 2);
         
         //then we can just make a copy of the passed character array
         this.name = new char[charArray.length];
@@ -0,0 +1,323 @@
+package message;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import message.Messages.MessageType;
+import metrics.Histogram;
+
+/**
+ * LaneQueue
+ *
+ * an unbounded blocking queue of messages with two lanes, so that messages
+ * carrying balls don't wait behind control traffic:
+ *
+ *      TELEPORT  -- WALL_TELEPORT and PORTAL_TELEPORT messages
+ *      CONTROL   -- every other message
+ *
+ * each lane is first in, first out, and a message is taken from the teleport
+ * lane whenever it has one. so that a steady stream of balls can't starve the
+ * control lane, after teleportBurst teleports in a row have been taken while a
+ * control message was waiting, that control message is taken next.
+ *
+ * the time each message spent waiting is recorded in its lane's histogram when
+ * it is taken, so the lanes' queueing delays can be compared.
+ *
+ * messages are never reordered within a lane, so teleports arrive in the order
+ * they were sent, as do control messages. a teleport may overtake a control
+ * message sent before it; nothing a teleport does depends on one.
+ *
+ * Thread safety argument:
+ *      every method is synchronized on the queue, and takers wait on it
+ */
+public class LaneQueue extends AbstractQueue<String> implements BlockingQueue<String> {
+
+    public static final int TELEPORT = 0, CONTROL = 1;
+    //the lanes
+    public static final int DEFAULT_TELEPORT_BURST = 8;
+
+    private static final int INITIAL_LANE_CAPACITY = 16;
+
+    //a first in, first out ring of messages and the nanoTimes they were added
+    private static class Lane {
+        private String[] messages = new String[INITIAL_LANE_CAPACITY];
+        private long[] times = new long[INITIAL_LANE_CAPACITY];
+        private int head = 0;
+        private int count = 0;
+
+        private void add(String message, long time){
+            if(count == messages.length){
+                String[] grownMessages = new String[2*count];
+                long[] grownTimes = new long[2*count];
+                for(int ii = 0; ii < count; ii ++){
+                    grownMessages[ii] = messages[(head + ii) % count];
+                    grownTimes[ii] = times[(head + ii) % count];
+                }
+                messages = grownMessages;
+                times = grownTimes;
+                head = 0;
+            }
+            int tail = (head + count) % messages.length;
+            messages[tail] = message;
+            times[tail] = time;
+            count ++;
+        }
+
+        private String get(int index){
+            return messages[(head + index) % messages.length];
+        }
+
+        private long headTime(){
+            return times[head];
+        }
+
+        private String remove(){
+            String message = messages[head];
+            messages[head] = null;
+            head = (head + 1) % messages.length;
+            count --;
+            return message;
+        }
+
+        //remove the message at an index, moving the ones after it up
+        private void remove(int index){
+            for(int ii = index; ii < count - 1; ii ++){
+                int to = (head + ii) % messages.length;
+                int from = (to + 1) % messages.length;
+                messages[to] = messages[from];
+                times[to] = times[from];
+            }
+            messages[(head + count - 1) % messages.length] = null;
+            count --;
+        }
+
+        private void clear(){
+            for(int ii = 0; ii < count; ii ++){
+                messages[(head + ii) % messages.length] = null;
+            }
+            head = 0;
+            count = 0;
+        }
+    }
+
+    private final Lane[] lanes = { new Lane(), new Lane() };
+    private final Histogram[] waits;
+    //how long the messages taken from each lane waited, in nanoseconds. either may be null
+    private final int teleportBurst;
+    private int burst = 0;
+    //teleports taken in a row while a control message was waiting
+
+    /**
+     * make an empty queue which doesn't record how long messages wait
+     */
+    public LaneQueue(){
+        this(null, null);
+    }
+
+    /**
+     * make an empty queue with the default teleport burst
+     *
+     * @param teleportWait where to record how long teleports wait, or null
+     * @param controlWait where to record how long other messages wait, or null
+     */
+    public LaneQueue(Histogram teleportWait, Histogram controlWait){
+        this(teleportWait, controlWait, DEFAULT_TELEPORT_BURST);
+    }
+
+    /**
+     * make an empty queue
+     *
+     * @param teleportWait where to record how long teleports wait, or null
+     * @param controlWait where to record how long other messages wait, or null
+     * @param teleportBurst the most teleports taken in a row while a control
+     *          message waits, must be > 0
+     */
+    public LaneQueue(Histogram teleportWait, Histogram controlWait, int teleportBurst){
+        if(teleportBurst <= 0){
+            throw new IllegalArgumentException("requires positive teleportBurst: received \"" + teleportBurst + "\"");
+        }
+        this.waits = new Histogram[] { teleportWait, controlWait };
+        this.teleportBurst = teleportBurst;
+    }
+
+    /**
+     * @param message a message
+     * @return the lane the message goes in, TELEPORT or CONTROL
+     */
+    public static int laneOf(String message){
+        MessageType type = Messages.peekType(message);
+        return type == MessageType.WALL_TELEPORT || type == MessageType.PORTAL_TELEPORT ? TELEPORT : CONTROL;
+    }
+
+    /**
+     * @param lane TELEPORT or CONTROL
+     * @return the number of messages waiting in the lane
+     */
+    public synchronized int size(int lane){
+        return lanes[lane].count;
+    }
+
+    @Override public synchronized int size(){
+        return lanes[TELEPORT].count + lanes[CONTROL].count;
+    }
+
+    /**
+     * add a message to the back of its lane. never blocks
+     *
+     * @param message the message
+     * @return true
+     */
+    @Override public synchronized boolean offer(String message){
+        if(message == null){
+            throw new NullPointerException();
+        }
+        lanes[laneOf(message)].add(message, System.nanoTime());
+        notifyAll();
+        return true;
+    }
+
+    @Override public void put(String message){
+        offer(message);
+    }
+
+    @Override public boolean offer(String message, long timeout, TimeUnit unit){
+        return offer(message);
+    }
+
+    //helper method -- the lane the next message will be taken from, or -1 if
+    //the queue is empty
+    private int nextLane(){
+        if(lanes[TELEPORT].count == 0){
+            return lanes[CONTROL].count == 0 ? -1 : CONTROL;
+        }
+        if(lanes[CONTROL].count == 0 || burst < teleportBurst){
+            return TELEPORT;
+        }
+        return CONTROL;
+    }
+
+    @Override public synchronized String poll(){
+        int lane = nextLane();
+        if(lane < 0){
+            return null;
+        }
+        if(lane == TELEPORT && lanes[CONTROL].count > 0){
+            burst ++;
+        }else{
+            burst = 0;
+        }
+        long added = lanes[lane].headTime();
+        String message = lanes[lane].remove();
+        if(waits[lane] != null){
+            waits[lane].record(System.nanoTime() - added);
+        }
+        return message;
+    }
+
+    @Override public synchronized String take() throws InterruptedException {
+        while(size() == 0){
+            wait();
+        }
+        return poll();
+    }
+
+    @Override public synchronized String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(size() == 0){
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0){
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return poll();
+    }
+
+    @Override public synchronized String peek(){
+        int lane = nextLane();
+        return lane < 0 ? null : lanes[lane].get(0);
+    }
+
+    /**
+     * remove the first message equal to a given one, searching the teleport
+     * lane first
+     *
+     * @param o the message
+     * @return true if a message was removed
+     */
+    @Override public synchronized boolean remove(Object o){
+        for(Lane lane : lanes){
+            for(int ii = 0; ii < lane.count; ii ++){
+                if(lane.get(ii).equals(o)){
+                    lane.remove(ii);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override public synchronized void clear(){
+        lanes[TELEPORT].clear();
+        lanes[CONTROL].clear();
+        burst = 0;
+    }
+
+    @Override public int remainingCapacity(){
+        return Integer.MAX_VALUE;
+    }
+
+    @Override public int drainTo(Collection<? super String> c){
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override public synchronized int drainTo(Collection<? super String> c, int maxElements){
+        if(c == this){
+            throw new IllegalArgumentException("can't drain a queue into itself");
+        }
+        int drained = 0;
+        while(drained < maxElements && size() > 0){
+            c.add(poll());
+            drained ++;
+        }
+        return drained;
+    }
+
+    /**
+     * @return an iterator over a snapshot of the queue, the teleport lane then
+     *          the control lane. its remove() removes the first message equal
+     *          to the last one returned
+     */
+    @Override public synchronized Iterator<String> iterator(){
+        final List<String> snapshot = new ArrayList<String>(size());
+        for(Lane lane : lanes){
+            for(int ii = 0; ii < lane.count; ii ++){
+                snapshot.add(lane.get(ii));
+            }
+        }
+        return new Iterator<String>(){
+            private int next = 0;
+            public boolean hasNext(){
+                return next < snapshot.size();
+            }
+            public String next(){
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                return snapshot.get(next ++);
+            }
+            public void remove(){
+                if(next == 0){
+                    throw new IllegalStateException();
+                }
+                LaneQueue.this.remove(snapshot.get(next - 1));
+            }
+        };
+    }
+}
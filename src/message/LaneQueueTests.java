@@ -0,0 +1,125 @@
+package message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import metrics.Histogram;
+import sim.Ball;
+
+/**
+ * Testing strategy
+ *
+ * Sort each message type into its lane
+ * Take teleports ahead of control messages, keeping each lane in order
+ * Take a waiting control message after a burst of teleports, and not before
+ * Record each lane's waits in its own histogram
+ * Remove, iterate and clear across both lanes, and grow a lane past its
+ * initial size with removals at the ring's wrap point
+ */
+public class LaneQueueTests {
+
+    //untraced, so that the same id makes an equal message
+    private static String teleport(int id){
+        return Messages.composeWallTeleportMessage("Alpha", "Beta", new Ball(id, 1, 1, 1));
+    }
+
+    private static String query(String sender){
+        return Messages.composePortalQueryMessage(sender, "Beta");
+    }
+
+    @Test public void testLaneOf(){
+        assertEquals(LaneQueue.TELEPORT, LaneQueue.laneOf(teleport(0)));
+        assertEquals(LaneQueue.TELEPORT, LaneQueue.laneOf("Alpha--->Beta:PORTAL_TELEPORT:p Beta 1 1"));
+        assertEquals(LaneQueue.CONTROL, LaneQueue.laneOf(query("Alpha")));
+        assertEquals(LaneQueue.CONTROL, LaneQueue.laneOf(Messages.composeDisconnectMessage("Server", "Beta", "Alpha")));
+        assertEquals(LaneQueue.CONTROL, LaneQueue.laneOf("Alpha--->Beta:WALL_TELEPORTS:"));
+        assertEquals(LaneQueue.CONTROL, LaneQueue.laneOf("garbage"));
+    }
+
+    @Test public void testTeleportsFirst() throws InterruptedException {
+        LaneQueue queue = new LaneQueue();
+        queue.add(query("A"));
+        queue.add(teleport(1));
+        queue.add(query("B"));
+        queue.add(teleport(2));
+        assertEquals(2, queue.size(LaneQueue.TELEPORT));
+        assertEquals(2, queue.size(LaneQueue.CONTROL));
+        assertEquals(teleport(1), queue.peek());
+        assertEquals(teleport(1), queue.take());
+        assertEquals(teleport(2), queue.take());
+        assertEquals(query("A"), queue.take());
+        assertEquals(query("B"), queue.poll());
+        assertNull(queue.poll());
+        assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test public void testControlNotStarved(){
+        LaneQueue queue = new LaneQueue(null, null, 3);
+        queue.add(query("A"));
+        for(int ii = 0; ii < 7; ii ++){
+            queue.add(teleport(ii));
+        }
+        List<String> taken = new ArrayList<String>();
+        queue.drainTo(taken);
+        assertEquals(teleport(2), taken.get(2));
+        assertEquals(query("A"), taken.get(3));
+        assertEquals(teleport(3), taken.get(4));
+        assertEquals(teleport(6), taken.get(7));
+    }
+
+    @Test public void testLaneWaits(){
+        Histogram teleportWait = new Histogram();
+        Histogram controlWait = new Histogram();
+        LaneQueue queue = new LaneQueue(teleportWait, controlWait);
+        queue.add(teleport(1));
+        queue.add(teleport(2));
+        queue.add(query("A"));
+        queue.clear();
+        queue.add(teleport(3));
+        queue.add(query("A"));
+        queue.poll();
+        queue.poll();
+        assertEquals(1, teleportWait.count());
+        assertEquals(1, controlWait.count());
+    }
+
+    @Test public void testRemoveIterateAndGrow(){
+        LaneQueue queue = new LaneQueue();
+        for(int ii = 0; ii < 10; ii ++){
+            queue.add(teleport(ii));
+        }
+        for(int ii = 0; ii < 10; ii ++){
+            queue.poll();
+        }
+        //the lane's ring now wraps
+        for(int ii = 0; ii < 40; ii ++){
+            queue.add(teleport(ii));
+        }
+        queue.add(query("A"));
+        queue.add(query("B"));
+        assertTrue(queue.remove(teleport(5)));
+        assertFalse(queue.remove(teleport(5)));
+        Iterator<String> it = queue.iterator();
+        assertEquals(teleport(0), it.next());
+        it.next();
+        it.remove();
+        assertEquals(40, queue.size());
+        List<String> taken = new ArrayList<String>();
+        queue.drainTo(taken);
+        assertEquals(teleport(0), taken.get(0));
+        assertEquals(teleport(2), taken.get(1));
+        assertEquals(teleport(6), taken.get(4));
+        assertTrue(taken.contains(query("A")));
+        assertEquals(teleport(39), taken.get(39));
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -2,13 +2,21 @@ package message;
 
 import static org.junit.Assert.assertTrue;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
 import static message.Messages.*;
+import metrics.Histogram;
 import physics.Vect;
 import physics.Geometry.VectPair;
+import sim.Ball;
 
 /**
  * Testing strategy
@@ -17,6 +25,12 @@ import physics.Geometry.VectPair;
  * Checks corner cases and invalid characters
  * Makes sure all parser methods can correctly parse messages
  * Makes sure all parser methods reject invalid messages
+ * Makes sure teleport traces are accepted by the parsers, stamped at each hop
+ * and leave other messages alone
+ * Makes sure batched teleports carry every ball in order, with or without a
+ * trace, and that a single ball batch is the same as a one ball message
+ * Makes sure client hellos carry the board size and board file hash, and that
+ * hellos without valid ones are told apart
  * 
  */
 public class MessageTests {
@@ -81,7 +95,18 @@ public class MessageTests {
         assertTrue(parseType(message3) == MessageType.DISCONNECT);
         assertTrue(parseType(message4) == MessageType.INVALID);
     }
-    
+
+    //Tests to make sure peekType reads the type field without validating the rest
+    @Test public void testPeekType(){
+        assertTrue(peekType("fran--->bob:HELLO:") == MessageType.HELLO);
+        assertTrue(peekType("P_as0945--->c99999999:WALL_TELEPORT:b.lah blah blah") == MessageType.WALL_TELEPORT);
+        assertTrue(peekType("4dam--->bob:PORTAL_QUERY:") == MessageType.PORTAL_QUERY);
+        assertTrue(peekType("farm--->cow:BOB:") == MessageType.INVALID);
+        assertTrue(peekType("farm--->cow:HELLOS:") == MessageType.INVALID);
+        assertTrue(peekType("farm--->cow:HELLO") == MessageType.INVALID);
+        assertTrue(peekType("") == MessageType.INVALID);
+    }
+
     //Tests to make sure parseSender can correctly parse messages
     @Test public void testParseSender(){
         String message1 = "fran--->bob:HELLO:";
@@ -146,4 +171,165 @@ public class MessageTests {
         }
     }
     
+    //Tests to make sure traced teleports still parse, and untraced messages
+    //are neither stamped nor mistaken for traces
+    @Test public void testTraceParsing(){
+        Ball ball = new Ball(1.5, 2.5, 3, -4);
+        String wall = composeWallTeleportMessage("bob", "frank", ball, 7);
+        assertTrue(isValidMessage(wall));
+        VectPair vects = parseWallTeleportArguments(wall);
+        assertTrue(vects.v1.equals(new Vect(1.5, 2.5)) && vects.v2.equals(new Vect(3, -4)));
+        assertEquals(7, TeleportTrace.parse(wall).id());
+        assertEquals(1, TeleportTrace.parse(wall).hops());
+        
+        String portal = composePortalTeleportMessage("bob", "frank", "trace_1_2", ball, 8);
+        assertEquals("trace_1_2", parseArguments(portal)[0]);
+        assertEquals(8, TeleportTrace.parse(portal).id());
+        
+        String untraced = composePortalTeleportMessage("bob", "frank", "trace_1_2", ball);
+        assertNull(TeleportTrace.parse(untraced));
+        assertSame(untraced, TeleportTrace.stamp(untraced));
+        String hello = "fran--->bob:HELLO:";
+        assertSame(hello, TeleportTrace.stamp(hello));
+    }
+    
+    //Tests to make sure every hop adds a stamp, and only waits within one
+    //process are measured
+    @Test public void testTraceHops(){
+        String message = composeWallTeleportMessage("bob", "frank", new Ball(1, 1, 1, 1), 0);
+        Histogram waited = new Histogram();
+        message = TeleportTrace.stamp(message, waited);                 //QUEUED
+        message = TeleportTrace.stamp(message, waited);                 //SENT
+        message = TeleportTrace.stamp(message);                         //SERVER_RECEIVED
+        message = TeleportTrace.stamp(message, waited);                 //SERVER_SENT
+        message = TeleportTrace.stamp(message);                         //RECEIVED
+        assertEquals(3, waited.count());
+        assertTrue(isValidMessage(message));
+        parseWallTeleportArguments(message);
+        
+        TeleportTrace trace = TeleportTrace.parse(message);
+        assertEquals(TeleportTrace.HANDLED, trace.hops());
+        assertTrue(trace.originMillis() <= System.currentTimeMillis());
+        long total = 0;
+        for(int hop = TeleportTrace.QUEUED; hop < trace.hops(); hop ++){
+            assertTrue(trace.stamp(hop) >= trace.stamp(hop - 1));
+            if(TeleportTrace.isLocal(hop)){
+                total += trace.latency(hop);
+            }
+        }
+        assertFalse(TeleportTrace.isLocal(TeleportTrace.SERVER_RECEIVED));
+        assertFalse(TeleportTrace.isLocal(TeleportTrace.RECEIVED));
+        assertEquals(total, trace.localNanos());
+        assertTrue(trace.toString().contains("serverQueue="));
+    }
+    
+    //Tests to make sure a batch of balls through a wall composes and parses in
+    //order, and one ball batches match the one ball message
+    @Test public void testWallTeleportBatch(){
+        Ball ball1 = new Ball(1.5, 2.5, 3, -4);
+        Ball ball2 = new Ball(6, 7.25, -0.5, 8);
+        List<Ball> balls = Arrays.asList(ball1, ball2);
+        String untraced = composeWallTeleportMessage("bob", "frank", balls);
+        assertEquals("bob--->frank:WALL_TELEPORT:1.5 2.5 3.0 -4.0 6.0 7.25 -0.5 8.0", untraced);
+        assertNull(TeleportTrace.parse(untraced));
+        
+        String traced = composeWallTeleportMessage("bob", "frank", balls, 9);
+        assertTrue(isValidMessage(traced));
+        List<VectPair> pairs = parseWallTeleportBalls(traced);
+        assertEquals(2, pairs.size());
+        assertTrue(pairs.get(0).v1.equals(new Vect(1.5, 2.5)) && pairs.get(0).v2.equals(new Vect(3, -4)));
+        assertTrue(pairs.get(1).v1.equals(new Vect(6, 7.25)) && pairs.get(1).v2.equals(new Vect(-0.5, 8)));
+        assertTrue(parseWallTeleportArguments(traced).v1.equals(new Vect(1.5, 2.5)));
+        assertEquals(9, TeleportTrace.parse(traced).id());
+        assertEquals(2, TeleportTrace.parse(TeleportTrace.stamp(traced)).hops());
+        
+        assertEquals(composeWallTeleportMessage("bob", "frank", ball1),
+                composeWallTeleportMessage("bob", "frank", Arrays.asList(ball1)));
+        try{
+            parseWallTeleportBalls("bob--->frank:WALL_TELEPORT:1 2 3 4 5 6");
+            assertTrue(false);
+        }catch(IllegalArgumentException e){
+            assertTrue(true);
+        }
+        try{
+            composeWallTeleportMessage("bob", "frank", Arrays.<Ball>asList());
+            assertTrue(false);
+        }catch(IllegalArgumentException e){
+            assertTrue(true);
+        }
+    }
+    
+    //Tests to make sure a batch of balls through a portal composes and parses
+    //in order, and malformed batches are rejected
+    @Test public void testPortalTeleportBatch(){
+        Ball ball1 = new Ball(1.5, 2.5, 3, -4);
+        Ball ball2 = new Ball(6, 7.25, -0.5, 8);
+        String traced = composePortalTeleportMessage("bob", "frank", "exit", Arrays.asList(ball1, ball2), 4);
+        assertTrue(isValidMessage(traced));
+        assertEquals("exit", parseArguments(traced)[0]);
+        List<Vect> velocities = parsePortalTeleportVelocities(traced);
+        assertEquals(Arrays.asList(new Vect(3, -4), new Vect(-0.5, 8)), velocities);
+        assertEquals(4, TeleportTrace.parse(traced).id());
+        
+        String single = composePortalTeleportMessage("bob", "frank", "exit", ball1);
+        assertEquals(single, composePortalTeleportMessage("bob", "frank", "exit", Arrays.asList(ball1)));
+        assertEquals(Arrays.asList(new Vect(3, -4)), parsePortalTeleportVelocities(single));
+        
+        String[] bad = { "bob--->frank:PORTAL_TELEPORT:exit", "bob--->frank:PORTAL_TELEPORT:exit 1 2 3",
+                "bob--->frank:PORTAL_TELEPORT:exit 1 up", "bob--->frank:WALL_TELEPORT:1 2 3 4" };
+        for(String message : bad){
+            try{
+                parsePortalTeleportVelocities(message);
+                assertTrue(false);
+            }catch(IllegalArgumentException e){
+                assertTrue(true);
+            }
+        }
+    }
+    
+    @Test public void testClientHelloSize(){
+        String sized = composeClientHello("bob", "Server", 40);
+        assertEquals(MessageType.HELLO, parseType(sized));
+        assertEquals("bob", parseSender(sized));
+        assertEquals(40, parseClientHelloSize(sized));
+        assertEquals(-1, parseClientHelloSize(composeClientHello("bob", "Server")));
+        assertEquals(-1, parseClientHelloSize("bob--->Server:HELLO:big"));
+        assertEquals(-1, parseClientHelloSize("bob--->Server:HELLO:-3"));
+        assertEquals(-1, parseClientHelloSize("bob--->Server:HELLO:20 ab 40"));
+        assertNull(parseClientHelloHash(sized));
+        try{
+            composeClientHello("bob", "Server", 0);
+            assertTrue(false);
+        }catch(IllegalArgumentException e){
+            assertTrue(true);
+        }
+        try{
+            parseClientHelloSize("bob--->Server:PORTAL_QUERY:");
+            assertTrue(false);
+        }catch(IllegalArgumentException e){
+            assertTrue(true);
+        }
+    }
+    
+    @Test public void testClientHelloHash(){
+        String hashed = composeClientHello("bob", "Server", 40, "9f86d081");
+        assertTrue(isValidMessage(hashed));
+        assertEquals(40, parseClientHelloSize(hashed));
+        assertEquals("9f86d081", parseClientHelloHash(hashed));
+        assertNull(parseClientHelloHash(composeClientHello("bob", "Server")));
+        assertNull(parseClientHelloHash("bob--->Server:HELLO:big 9f86d081"));
+        try{
+            composeClientHello("bob", "Server", 40, "");
+            assertTrue(false);
+        }catch(IllegalArgumentException e){
+            assertTrue(true);
+        }
+        try{
+            composeClientHello("bob", "Server", 40, "9f86:d081");
+            assertTrue(false);
+        }catch(IllegalArgumentException e){
+            assertTrue(true);
+        }
+    }
+    
 }
@@ -1,5 +1,7 @@
 package message;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -28,12 +30,16 @@ import sim.Wall.WallType;
  *      arguments ::= (name\s+)* name  //there must be at least one person connected...
  *  
  *  wall teleport arguments:
- *      arguments ::= xpos ypos xvel yvel
- *                ::= (double){4}\s*
+ *      arguments ::= (xpos ypos xvel yvel)+ trace?
+ *                ::= ((double){4})+ trace?\s*
  *                
  *  portal teleport arguments:
- *      arguments ::= name xvel yvel
- *                ::= name (double){2}\s*
+ *      arguments ::= name (xvel yvel)+ trace?
+ *                ::= name ((double){2})+ trace?\s*
+ *                
+ *  a teleport carries every ball its sender passed to the same board (and
+ *  portal) in one step, so a multiball doesn't become a message per ball.
+ *  teleport traces are described in TeleportTrace, and follow the whole batch
  *                
  *  portal poll arguments:
  *      arguments ::= ''          //none
@@ -58,6 +64,9 @@ public class Messages {
         PORTAL_REPLY, LINK, DELINK, DISCONNECT, CONNECTION, INVALID
         };
     
+    private static final MessageType[] TYPES = MessageType.values();
+    //values() copies its array every call
+    
     /*
      * message grammar
      * name      ::= [a-zA-Z_][a-zA-Z_0-9]*
@@ -66,22 +75,28 @@ public class Messages {
      * arguments ::= \:([a-zA-Z_0-9.-]+ ' ')*([a-zA-Z_0-9.-]+)?
      * message   ::= routing type arguments
      *           ::= [a-zA-Z_]\w*--->[a-zA-Z_]\w*\:[A-Z]+\:([a-zA-Z_0-9.-]+\s+)*([a-zA-Z_0-9.-]+)?
+     * 
+     * every message the server relays is checked against this grammar, so
+     * isValidMessage scans for it by hand, in one pass without allocating,
+     * rather than with a regular expression
      */
     private static Pattern namePattern = Pattern.compile(
             "[a-zA-Z_]\\w*"
             );
-    private static Pattern messagePattern =Pattern.compile(
-            "[a-zA-Z_]\\w*--->[a-zA-Z_]\\w*\\:[A-Z_]+\\:([a-zA-Z_0-9\\.\\-]+\\s+)*([a-zA-Z_0-9\\.-]+)?"
-            );
     /*
      * ball transport argument grammar
      * double    ::= -?[0-9]+(\.[0-9]+)?(E-?[0-9]+)?
-     * arguments ::= xpos ypos xvel yvel
-     *           ::= (double\\s+){3}double\s*
-     *           ::= (-?[0-9]+(\.[0-9]+)?(E-?[0-9]+)?\s+){3}-?[0-9]+(\.[0-9]+)?(E-?[0-9]+)?\s*
+     * trace     ::= trace(_-?[0-9]+)+
+     * ball      ::= xpos ypos xvel yvel
+     *           ::= double(\s+double){3}
+     * arguments ::= ball(\s+ball)* trace?
+     *           ::= double(\s+double){3}(\s+double(\s+double){3})*(\s+trace)?\s*
      */
+    private static final String doublePattern = "-?[0-9]+(\\.[0-9]+)?(E-?[0-9]+)?";
     private static Pattern wallTeleportArgumentPattern = Pattern.compile(
-            "(-?[0-9]+(\\.[0-9]+)?(E-?[0-9]+)?\\s+){3}-?[0-9]+(\\.[0-9]+)?(E-?[0-9]+)?\\s*"
+            doublePattern + "(\\s+" + doublePattern + "){3}"
+            + "(\\s+" + doublePattern + "(\\s+" + doublePattern + "){3})*"
+            + "(\\s+trace(_-?[0-9]+)+)?\\s*"
             );
     
     private static String nameSeparator = "--->";
@@ -118,6 +133,91 @@ public class Messages {
         return composeBlankMessage(sender,receiver) + ":HELLO:";
     }
     
+    /**
+     * compose a new client hello message which announces the side length of
+     * the client's board, so that the server only links it to boards of the
+     * same size
+     * 
+     * @param sender the name of the greeter
+     * @param receiver the name of the greeted
+     * @param boardSize the side length of the greeter's board, > 0
+     * @return a properly formatted hello message from [sender] to [receiver]
+     * @throws IllegalArgumentException if the passed names do not match the
+     *          message formatting rules
+     */
+    public static String composeClientHello(String sender, String receiver, int boardSize){
+        if(boardSize <= 0){
+            throw new IllegalArgumentException("requires positive boardSize: received \"" + boardSize + "\"");
+        }
+        return composeClientHello(sender, receiver) + boardSize;
+    }
+    
+    /**
+     * compose a new client hello message which announces the side length of
+     * the client's board and the hash of the board file it was loaded from, so
+     * that the server only answers portal queries for the client from a board
+     * index describing that same file
+     * 
+     * @param sender the name of the greeter
+     * @param receiver the name of the greeted
+     * @param boardSize the side length of the greeter's board, > 0
+     * @param contentHash the hash of the greeter's board file, as
+     *          BoardIndex.contentHash() gives it
+     * @return a properly formatted hello message from [sender] to [receiver]
+     * @throws IllegalArgumentException if the passed names do not match the
+     *          message formatting rules, or the hash isn't a nonempty word
+     */
+    public static String composeClientHello(String sender, String receiver, int boardSize, String contentHash){
+        if(contentHash.isEmpty()){
+            throw new IllegalArgumentException("requires nonempty contentHash: received \"" + contentHash + "\"");
+        }
+        for(int ii = 0; ii < contentHash.length(); ii ++){
+            if(!isArgumentChar(contentHash.charAt(ii))){
+                throw new IllegalArgumentException("requires word contentHash: received \"" + contentHash + "\"");
+            }
+        }
+        return composeClientHello(sender, receiver, boardSize) + " " + contentHash;
+    }
+    
+    /**
+     * extract the board size a client announced in its hello message
+     * 
+     * @param clientHello a client hello message
+     * @return the side length of the client's board, or -1 if the hello
+     *          doesn't announce a valid one
+     * @throws IllegalArgumentException if the message isn't a valid hello
+     */
+    public static int parseClientHelloSize(String clientHello){
+        if(parseType(clientHello) != MessageType.HELLO){
+            throw new IllegalArgumentException("invalid message");
+        }
+        String[] args = parseArguments(clientHello);
+        if(args.length != 1 && args.length != 2){
+            return -1;
+        }
+        try{
+            int size = Integer.parseInt(args[0]);
+            return size > 0 ? size : -1;
+        }catch(NumberFormatException e){
+            return -1;
+        }
+    }
+    
+    /**
+     * extract the hash of its board file a client announced in its hello message
+     * 
+     * @param clientHello a client hello message
+     * @return the hash, or null if the hello doesn't announce one
+     * @throws IllegalArgumentException if the message isn't a valid hello
+     */
+    public static String parseClientHelloHash(String clientHello){
+        if(parseType(clientHello) != MessageType.HELLO){
+            throw new IllegalArgumentException("invalid message");
+        }
+        String[] args = parseArguments(clientHello);
+        return args.length == 2 && parseClientHelloSize(clientHello) > 0 ? args[1] : null;
+    }
+    
     /**
      * Compose a Server hello message, which includes a list of clients
      * connected to the server
@@ -146,10 +246,61 @@ public class Messages {
      * @return a ball message containing the ball's physical parameters
      */
     public static String composeWallTeleportMessage(String sender, String receiver, Ball ball){
-        Vect pos = ball.toCircle().getCenter();
-        Vect vel = ball.vel();
-        String arguments = pos.x() + " " + pos.y() + " " + vel.x() + " " + vel.y();
-        return composeBlankMessage(sender,receiver) + ":WALL_TELEPORT:" + arguments;
+        return composeWallTeleportMessage(sender, receiver, Collections.singletonList(ball));
+    }
+    
+    /**
+     * compose a new Wall teleport message carrying several balls to the same board
+     * 
+     * @param sender the source of the balls
+     * @param receiver the destination of the balls
+     * @param balls the balls which are being transported, at least one
+     * @return a ball message containing each ball's physical parameters, in order
+     */
+    public static String composeWallTeleportMessage(String sender, String receiver, List<Ball> balls){
+        if(balls.isEmpty()){
+            throw new IllegalArgumentException("requires at least one ball: received \"" + balls + "\"");
+        }
+        StringBuilder message = new StringBuilder(composeBlankMessage(sender,receiver)).append(":WALL_TELEPORT:");
+        for(int ii = 0; ii < balls.size(); ii ++){
+            Ball ball = balls.get(ii);
+            if(ii > 0){
+                message.append(' ');
+            }
+            message.append(ball.x()).append(' ').append(ball.y()).append(' ')
+                    .append(ball.vx()).append(' ').append(ball.vy());
+        }
+        return message.toString();
+    }
+    
+    /**
+     * compose a new Wall teleport message with the specified ball, carrying a
+     * new teleport trace
+     * 
+     * @param sender the source of the ball
+     * @param receiver the destination of the ball
+     * @param ball the ball which is being transported
+     * @param traceId the trace's id, unique among the sender's teleports
+     * @return a ball message containing the ball's physical parameters and a trace
+     *          stamped as COMPOSED
+     */
+    public static String composeWallTeleportMessage(String sender, String receiver, Ball ball, long traceId){
+        return composeWallTeleportMessage(sender, receiver, ball) + " " + TeleportTrace.start(traceId);
+    }
+    
+    /**
+     * compose a new Wall teleport message carrying several balls to the same
+     * board, and a new teleport trace which follows all of them
+     * 
+     * @param sender the source of the balls
+     * @param receiver the destination of the balls
+     * @param balls the balls which are being transported, at least one
+     * @param traceId the trace's id, unique among the sender's teleports
+     * @return a ball message containing each ball's physical parameters and a
+     *          trace stamped as COMPOSED
+     */
+    public static String composeWallTeleportMessage(String sender, String receiver, List<Ball> balls, long traceId){
+        return composeWallTeleportMessage(sender, receiver, balls) + " " + TeleportTrace.start(traceId);
     }
     
     /**
@@ -164,9 +315,62 @@ public class Messages {
      */
     public static String composePortalTeleportMessage(String sender, String receiver, 
             String portal, Ball ball){
-        Vect vel = ball.vel();
-        String arguments = portal + " " + vel.x() + " " + vel.y();
-        return composeBlankMessage(sender,receiver) + ":PORTAL_TELEPORT:" + arguments;
+        return composePortalTeleportMessage(sender, receiver, portal, Collections.singletonList(ball));
+    }
+    
+    /**
+     * Compose a Portal Teleport message to transport several balls to the named
+     * portal on the named client's board
+     * 
+     * @param sender the sender of the balls
+     * @param receiver the board to which the balls are being teleported
+     * @param portal the name of the portal from which the balls should exit
+     * @param balls the balls to be teleported, at least one
+     * @return a network message to teleport the balls, in order
+     */
+    public static String composePortalTeleportMessage(String sender, String receiver, 
+            String portal, List<Ball> balls){
+        if(balls.isEmpty()){
+            throw new IllegalArgumentException("requires at least one ball: received \"" + balls + "\"");
+        }
+        StringBuilder message = new StringBuilder(composeBlankMessage(sender,receiver))
+                .append(":PORTAL_TELEPORT:").append(portal);
+        for(Ball ball : balls){
+            Vect vel = ball.vel();
+            message.append(' ').append(vel.x()).append(' ').append(vel.y());
+        }
+        return message.toString();
+    }
+    
+    /**
+     * Compose a Portal Teleport message carrying a new teleport trace
+     * 
+     * @param sender the sender of the ball
+     * @param receiver the board to which the ball is being teleported
+     * @param portal the name of the portal from which the ball should exit
+     * @param ball the ball to be teleported
+     * @param traceId the trace's id, unique among the sender's teleports
+     * @return a network message to teleport the ball, with a trace stamped as COMPOSED
+     */
+    public static String composePortalTeleportMessage(String sender, String receiver, 
+            String portal, Ball ball, long traceId){
+        return composePortalTeleportMessage(sender, receiver, portal, ball) + " " + TeleportTrace.start(traceId);
+    }
+    
+    /**
+     * Compose a Portal Teleport message for several balls, carrying a new
+     * teleport trace which follows all of them
+     * 
+     * @param sender the sender of the balls
+     * @param receiver the board to which the balls are being teleported
+     * @param portal the name of the portal from which the balls should exit
+     * @param balls the balls to be teleported, at least one
+     * @param traceId the trace's id, unique among the sender's teleports
+     * @return a network message to teleport the balls, with a trace stamped as COMPOSED
+     */
+    public static String composePortalTeleportMessage(String sender, String receiver, 
+            String portal, List<Ball> balls, long traceId){
+        return composePortalTeleportMessage(sender, receiver, portal, balls) + " " + TeleportTrace.start(traceId);
     }
     
     /**
@@ -252,18 +456,80 @@ public class Messages {
      *          messages
      */
     public static boolean isValidMessage(String message){
-        if(messagePattern.matcher(message).matches()){
-            String type = message.split(":")[1];
-            return isValidType(type);
+        int length = message.length();
+        int ii = scanName(message, 0);
+        if(ii < 0 || !message.startsWith(nameSeparator, ii)){
+            return false;
         }
-        return false;
+        ii = scanName(message, ii + nameSeparator.length());
+        if(ii < 0 || ii == length || message.charAt(ii) != ':'){
+            return false;
+        }
+        int typeStart = ++ ii;
+        while(ii < length && (isUpperCase(message.charAt(ii)) || message.charAt(ii) == '_')){
+            ii ++;
+        }
+        if(ii == typeStart || ii == length || message.charAt(ii) != ':'
+                || !isValidType(message, typeStart, ii)){
+            return false;
+        }
+        //arguments are argument characters and whitespace, starting with an
+        //argument character
+        ii ++;
+        if(ii < length && !isArgumentChar(message.charAt(ii))){
+            return false;
+        }
+        for(; ii < length; ii ++){
+            char c = message.charAt(ii);
+            if(!isArgumentChar(c) && !isWhitespace(c)){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    //private helper method -- the index just past a name starting at an index
+    //of a message, or -1 if no name starts there
+    private static int scanName(String message, int start){
+        if(start >= message.length() || !(isLetter(message.charAt(start)) || message.charAt(start) == '_')){
+            return -1;
+        }
+        int ii = start + 1;
+        while(ii < message.length() && isWordChar(message.charAt(ii))){
+            ii ++;
+        }
+        return ii;
+    }
+    
+    //private helper methods -- the character classes of the grammar, in ASCII
+    //as java.util.regex has them
+    private static boolean isUpperCase(char c){
+        return c >= 'A' && c <= 'Z';
+    }
+    
+    private static boolean isLetter(char c){
+        return isUpperCase(c) || (c >= 'a' && c <= 'z');
+    }
+    
+    private static boolean isWordChar(char c){
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
     }
     
-    //private helper method -- checks that a message's type is valid
-    private static boolean isValidType(String type){
-        for(MessageType mType : MessageType.values()){
-            if(type.equals("" + mType)){
-                return !type.equals("INVALID");
+    private static boolean isArgumentChar(char c){
+        return isWordChar(c) || c == '.' || c == '-';
+    }
+    
+    private static boolean isWhitespace(char c){
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+    
+    //private helper method -- checks that the type between two indices of a
+    //message is valid
+    private static boolean isValidType(String message, int start, int end){
+        for(MessageType type : TYPES){
+            String name = type.name();
+            if(end - start == name.length() && message.regionMatches(start, name, 0, name.length())){
+                return type != MessageType.INVALID;
             }
         }
         return false;
@@ -277,13 +543,28 @@ public class Messages {
      *          or INVALID if this message's type is not valid
      */
     public static MessageType parseType(String message){
-        if(isValidMessage(message)){
-            String[] split = message.split(":");
-            String token = split.length > 1 ? split[1]:"INVALID";
-            for(MessageType type : MessageType.values()){
-                if(token.equals("" + type)){
-                    return type;
-                }
+        return isValidMessage(message) ? peekType(message) : MessageType.INVALID;
+    }
+    
+    /**
+     * read a message's type without validating the message, for deciding what
+     * to do with a message before paying for parseType
+     * 
+     * @param message the message
+     * @return the type named between the message's first and second colons,
+     *          or INVALID if there is no such type. parseType may still find a
+     *          message peekType accepts invalid
+     */
+    public static MessageType peekType(String message){
+        int start = message.indexOf(':') + 1;
+        int end = message.indexOf(':', start);
+        if(start == 0 || end < 0){
+            return MessageType.INVALID;
+        }
+        for(MessageType type : TYPES){
+            String name = type.name();
+            if(end - start == name.length() && message.regionMatches(start, name, 0, name.length())){
+                return type;
             }
         }
         return MessageType.INVALID;
@@ -302,12 +583,8 @@ public class Messages {
         if(!isValidMessage(message)){
             throw new IllegalArgumentException("invalid message format");
         }
-        String name = message.split(nameSeparator)[0];
-        if(isValidName(name)){
-            return name;
-        }else{
-            throw new IllegalArgumentException("invalid message");
-        }
+        //a valid message starts with a valid name
+        return message.substring(0, message.indexOf(nameSeparator));
     }
     
     /**
@@ -320,8 +597,7 @@ public class Messages {
      */
     public static String parseReceiver(String message){
         if(isValidMessage(message)){
-            String substring = message.split(nameSeparator)[1];
-            return substring.split(":")[0];
+            return message.substring(message.indexOf(nameSeparator) + nameSeparator.length(), message.indexOf(':'));
         }else{
             throw new IllegalArgumentException("invalid message");
         }
@@ -357,6 +633,20 @@ public class Messages {
      *          velocity vector
      */
     public static VectPair parseWallTeleportArguments(String wallTeleportMessage){
+        return parseWallTeleportBalls(wallTeleportMessage).get(0);
+    }
+    
+    /**
+     * extract the position and velocity vectors of every ball a wall teleport
+     * message carries
+     * 
+     * @param wallTeleportMessage the WALL_TELEPORT type message that contains the position
+     *          and velocity vectors
+     * @return a vectpair (p,v) for each ball, in the order they were composed,
+     *          where p is the position vector and v is the velocity vector
+     * @throws IllegalArgumentException if the message isn't a valid wall teleport
+     */
+    public static List<VectPair> parseWallTeleportBalls(String wallTeleportMessage){
         if(parseType(wallTeleportMessage) != MessageType.WALL_TELEPORT){
             throw new IllegalArgumentException("invalid message");
         }
@@ -365,9 +655,44 @@ public class Messages {
         }
         
         String[] args = parseArguments(wallTeleportMessage);
-        Vect position = new Vect(Double.parseDouble(args[0]), Double.parseDouble(args[1]));
-        Vect velocity = new Vect(Double.parseDouble(args[2]), Double.parseDouble(args[3]));
-        return new VectPair(position, velocity);
+        List<VectPair> balls = new ArrayList<VectPair>(args.length/4);
+        for(int ii = 0; ii + 3 < args.length; ii += 4){
+            Vect position = new Vect(Double.parseDouble(args[ii]), Double.parseDouble(args[ii + 1]));
+            Vect velocity = new Vect(Double.parseDouble(args[ii + 2]), Double.parseDouble(args[ii + 3]));
+            balls.add(new VectPair(position, velocity));
+        }
+        return balls;
+    }
+    
+    /**
+     * extract the velocity of every ball a portal teleport message carries. the
+     * portal they exit from is the message's first argument
+     * 
+     * @param portalTeleportMessage the PORTAL_TELEPORT type message
+     * @return the velocity of each ball, in the order they were composed
+     * @throws IllegalArgumentException if the message isn't a valid portal teleport
+     */
+    public static List<Vect> parsePortalTeleportVelocities(String portalTeleportMessage){
+        if(parseType(portalTeleportMessage) != MessageType.PORTAL_TELEPORT){
+            throw new IllegalArgumentException("invalid message");
+        }
+        String[] args = parseArguments(portalTeleportMessage);
+        int velocities = args.length - 1;
+        if(velocities > 0 && TeleportTrace.isTrace(args[velocities])){
+            velocities --;
+        }
+        if(velocities == 0 || velocities % 2 != 0){
+            throw new IllegalArgumentException("invalid message");
+        }
+        List<Vect> balls = new ArrayList<Vect>(velocities/2);
+        try{
+            for(int ii = 1; ii < velocities; ii += 2){
+                balls.add(new Vect(Double.parseDouble(args[ii]), Double.parseDouble(args[ii + 1])));
+            }
+        }catch(NumberFormatException e){
+            throw new IllegalArgumentException("invalid message");
+        }
+        return balls;
     }
     
     //checks that the given string message has valid routing prefix, arguments, and type
@@ -0,0 +1,289 @@
+package message;
+
+import message.Messages.MessageType;
+import metrics.Histogram;
+
+/**
+ * TeleportTrace
+ *
+ * the trace carried by a teleport message, so that the time a ball spends
+ * between boards can be split up by where it was spent. the trace is the last
+ * argument of a WALL_TELEPORT or PORTAL_TELEPORT message, and is shared by
+ * every ball the message carries:
+ *
+ *      trace     ::= trace_id_millis(_stamp)*
+ *      id        ::= [0-9]+          //unique among the sender's teleports
+ *      millis    ::= -?[0-9]+        //wall clock time the message was composed
+ *      stamp     ::= -?[0-9]+        //System.nanoTime() at a hop
+ *
+ * every thread the message passes through appends a stamp, in this order:
+ *      COMPOSED         -- the board turns the ball into a message (sending client)
+ *      QUEUED           -- the simulation thread hands it to the sender thread
+ *      SENT             -- the sender thread writes it to the server
+ *      SERVER_RECEIVED  -- the server reads it from the sending client
+ *      SERVER_SENT      -- the server writes it to the receiving client
+ *      RECEIVED         -- the receiver thread reads it from the server
+ *      HANDLED          -- the simulation thread spawns the ball
+ *
+ * nanoTime stamps can only be compared with stamps from the same process, so
+ * the hops from SENT to SERVER_RECEIVED and from SERVER_SENT to RECEIVED, which
+ * cross the network, have no latency of their own. they can be estimated from
+ * the wall clock time the trace started, if the clocks of the machines agree.
+ *
+ * older clients neither add nor stamp traces, and messages without one are
+ * passed along unchanged.
+ */
+public class TeleportTrace {
+
+    public static final int COMPOSED = 0, QUEUED = 1, SENT = 2, SERVER_RECEIVED = 3,
+            SERVER_SENT = 4, RECEIVED = 5, HANDLED = 6;
+    //the hops, by the index of their stamps
+
+    private static final String[] HOP_NAMES = {
+        "composed", "messageQueue", "serverOutgoing", "clientToServer",
+        "serverQueue", "serverToClient", "serverIncoming"
+    };
+    //the name of the wait that ends at each hop
+
+    private static final String PREFIX = "trace";
+    private static final char SEPARATOR = '_';
+
+    private final long id;
+    private final long originMillis;
+    private final long[] stamps;
+
+    //use parse()
+    private TeleportTrace(long id, long originMillis, long[] stamps){
+        this.id = id;
+        this.originMillis = originMillis;
+        this.stamps = stamps;
+    }
+
+    /**
+     * start a new trace, stamped as COMPOSED
+     *
+     * @param id the trace's id, unique among the sender's teleports
+     * @return the trace argument to append to a teleport message
+     */
+    public static String start(long id){
+        if(id < 0){
+            throw new IllegalArgumentException("requires nonnegative id: received \"" + id + "\"");
+        }
+        return PREFIX + SEPARATOR + id + SEPARATOR + System.currentTimeMillis()
+                + SEPARATOR + System.nanoTime();
+    }
+
+    /**
+     * stamp the next hop of a message's trace
+     *
+     * @param message a message
+     * @return the message with the current nanoTime appended to its trace, or
+     *          the message unchanged if it isn't a traced teleport
+     */
+    public static String stamp(String message){
+        message = message.trim();
+        if(traceStart(message) < 0){
+            return message;
+        }
+        return message + SEPARATOR + System.nanoTime();
+    }
+
+    /**
+     * stamp the next hop of a message's trace, and record how long the message
+     * waited since the hop before, which must have been stamped in this process
+     *
+     * @param message a message
+     * @param waited the histogram to record the wait in, in nanoseconds
+     * @return the message with the current nanoTime appended to its trace, or
+     *          the message unchanged if it isn't a traced teleport
+     */
+    public static String stamp(String message, Histogram waited){
+        message = message.trim();
+        if(traceStart(message) < 0){
+            return message;
+        }
+        long now = System.nanoTime();
+        waited.record(now - Long.parseLong(message.substring(message.lastIndexOf(SEPARATOR) + 1)));
+        return message + SEPARATOR + now;
+    }
+
+    /**
+     * parse the trace of a message
+     *
+     * @param message a message
+     * @return the message's trace, or null if it isn't a traced teleport
+     */
+    public static TeleportTrace parse(String message){
+        message = message.trim();
+        int start = traceStart(message);
+        if(start < 0){
+            return null;
+        }
+        String[] fields = message.substring(start + PREFIX.length() + 1).split("" + SEPARATOR);
+        long[] stamps = new long[fields.length - 2];
+        for(int ii = 0; ii < stamps.length; ii ++){
+            stamps[ii] = Long.parseLong(fields[ii + 2]);
+        }
+        return new TeleportTrace(Long.parseLong(fields[0]), Long.parseLong(fields[1]), stamps);
+    }
+
+    //helper method -- the index of a message's trace argument, or -1 if the
+    //message isn't a teleport with a well formed trace. the server checks every
+    //message it relays, so this scans the arguments in place
+    private static int traceStart(String message){
+        MessageType type = Messages.parseType(message);
+        int minimum, perBall;
+        //a batch of balls, then the trace: four arguments a ball through a
+        //wall, and a portal then two a ball through it
+        if(type == MessageType.WALL_TELEPORT){
+            minimum = 5;
+            perBall = 4;
+        }else if(type == MessageType.PORTAL_TELEPORT){
+            minimum = 4;
+            perBall = 2;
+        }else{
+            return -1;
+        }
+        //count the arguments, which follow the second colon, and find the last one
+        int start = message.indexOf(':', message.indexOf(':') + 1) + 1;
+        int count = 0;
+        int last = -1;
+        for(int ii = start; ii < message.length(); ii ++){
+            if(!Character.isWhitespace(message.charAt(ii))
+                    && (ii == start || Character.isWhitespace(message.charAt(ii - 1)))){
+                count ++;
+                last = ii;
+            }
+        }
+        int end = last;
+        while(end >= 0 && end < message.length() && !Character.isWhitespace(message.charAt(end))){
+            end ++;
+        }
+        if(count < minimum || (count - minimum) % perBall != 0 || !isTrace(message, last, end)){
+            return -1;
+        }
+        return last;
+    }
+
+    /**
+     * @param token a message argument
+     * @return true iff the argument is a well formed trace
+     */
+    static boolean isTrace(String token){
+        return isTrace(token, 0, token.length());
+    }
+
+    //helper method -- true iff the characters between two indices of a string
+    //are a well formed trace: trace_[0-9]+_-?[0-9]+(_-?[0-9]+)*
+    private static boolean isTrace(String text, int start, int end){
+        if(start < 0 || !text.startsWith(PREFIX, start)){
+            return false;
+        }
+        int ii = start + PREFIX.length();
+        int fields = 0;
+        while(ii < end){
+            if(text.charAt(ii) != SEPARATOR){
+                return false;
+            }
+            ii ++;
+            //the id can't be negative
+            if(fields > 0 && ii < end && text.charAt(ii) == '-'){
+                ii ++;
+            }
+            int digits = ii;
+            while(ii < end && text.charAt(ii) >= '0' && text.charAt(ii) <= '9'){
+                ii ++;
+            }
+            if(ii == digits){
+                return false;
+            }
+            fields ++;
+        }
+        return fields >= 2;
+    }
+
+    /**
+     * @param hop a hop, COMPOSED <= hop <= HANDLED
+     * @return the name of the wait that ends at the hop, such as "serverQueue"
+     *          for the time between SERVER_RECEIVED and SERVER_SENT
+     */
+    public static String hopName(int hop){
+        return HOP_NAMES[hop];
+    }
+
+    /**
+     * @return the trace's id
+     */
+    public long id(){
+        return id;
+    }
+
+    /**
+     * @return the wall clock time, in milliseconds, the trace started
+     */
+    public long originMillis(){
+        return originMillis;
+    }
+
+    /**
+     * @return the number of hops stamped so far
+     */
+    public int hops(){
+        return stamps.length;
+    }
+
+    /**
+     * @param hop a hop that has been stamped
+     * @return the nanoTime the message passed the hop
+     */
+    public long stamp(int hop){
+        return stamps[hop];
+    }
+
+    /**
+     * @param hop a stamped hop after COMPOSED
+     * @return true iff the hop and the one before it were stamped in the same
+     *          process, so the time between them can be measured
+     */
+    public static boolean isLocal(int hop){
+        return hop > COMPOSED && hop != SERVER_RECEIVED && hop != RECEIVED;
+    }
+
+    /**
+     * @param hop a stamped hop after COMPOSED, in the same process as the hop
+     *          before it
+     * @return the nanoseconds the message waited between the hop before and this one
+     */
+    public long latency(int hop){
+        if(!isLocal(hop)){
+            throw new IllegalArgumentException("requires a hop within one process: received \"" + hop + "\"");
+        }
+        return stamps[hop] - stamps[hop - 1];
+    }
+
+    /**
+     * @return the nanoseconds the message spent within processes, summed over
+     *          every local hop stamped so far
+     */
+    public long localNanos(){
+        long total = 0;
+        for(int hop = COMPOSED + 1; hop < stamps.length; hop ++){
+            if(isLocal(hop)){
+                total += latency(hop);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return the trace, with the latency of each hop, for debugging
+     */
+    @Override public String toString(){
+        StringBuilder text = new StringBuilder("trace " + id + ":");
+        for(int hop = COMPOSED + 1; hop < stamps.length; hop ++){
+            text.append(' ').append(hopName(hop)).append('=');
+            text.append(isLocal(hop) ? latency(hop) + "ns" : "?");
+        }
+        return text.toString();
+    }
+}
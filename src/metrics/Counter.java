@@ -0,0 +1,99 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Counter
+ *
+ * a count that only goes up, such as messages sent, along with its rate. the
+ * rate is worked out when it's read, over the window since the window before
+ * it ended, so that counting costs one atomic add. a window is at least
+ * MIN_WINDOW_NANOS long, so reading the rate more often than that sees the
+ * same value.
+ *
+ * Thread safety argument:
+ *      the count is an AtomicLong. a window is immutable, and windows are
+ *      replaced by compare and set, so a reader that loses the race just
+ *      reports the winner's rate
+ */
+public class Counter implements CounterMBean {
+
+    static final long MIN_WINDOW_NANOS = 1000000000L;
+    //the shortest window a rate is taken over
+
+    //where a rate window starts, and the rate over the window before it
+    private static class Window {
+        private final long startNanos;
+        private final long startCount;
+        private final double rate;
+
+        private Window(long startNanos, long startCount, double rate){
+            this.startNanos = startNanos;
+            this.startCount = startCount;
+            this.rate = rate;
+        }
+    }
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicReference<Window> window =
+            new AtomicReference<Window>(new Window(System.nanoTime(), 0, 0));
+
+    /**
+     * count one
+     */
+    public void increment(){
+        count.incrementAndGet();
+    }
+
+    /**
+     * count several at once
+     *
+     * @param amount the number to count, must be >= 0
+     */
+    public void add(long amount){
+        if(amount < 0){
+            throw new IllegalArgumentException("requires nonnegative amount: received \"" + amount + "\"");
+        }
+        count.addAndGet(amount);
+    }
+
+    /**
+     * @return the total counted
+     */
+    public long count(){
+        return count.get();
+    }
+
+    /**
+     * @return the count per second over the latest window that is at least
+     *          MIN_WINDOW_NANOS long, or 0 before the first one ends
+     */
+    public double rate(){
+        return rate(System.nanoTime());
+    }
+
+    //helper method -- the rate as of a time, ending the window if it's long enough
+    double rate(long nowNanos){
+        Window current = window.get();
+        long elapsed = nowNanos - current.startNanos;
+        if(elapsed < MIN_WINDOW_NANOS){
+            return current.rate;
+        }
+        long total = count.get();
+        Window next = new Window(nowNanos, total, (total - current.startCount)*1e9/elapsed);
+        return window.compareAndSet(current, next) ? next.rate : window.get().rate;
+    }
+
+    @Override public long getCount(){
+        return count();
+    }
+
+    @Override public double getRatePerSecond(){
+        return rate();
+    }
+
+    @Override public String toString(){
+        return count() + " (" + String.format("%.1f", rate()) + "/s)";
+    }
+}
@@ -0,0 +1,17 @@
+package metrics;
+
+/**
+ * the JMX view of a Counter
+ */
+public interface CounterMBean {
+
+    /**
+     * @return the total counted
+     */
+    long getCount();
+
+    /**
+     * @return the count per second over the latest window, as for Counter.rate()
+     */
+    double getRatePerSecond();
+}
@@ -0,0 +1,56 @@
+package metrics;
+
+/**
+ * Gauge
+ *
+ * a value that is read when it's asked for, such as a queue's length. the
+ * value comes from a source, which can be replaced -- when a board is
+ * reloaded, say -- without the gauge going away.
+ *
+ * Thread safety argument:
+ *      the source is volatile. sources are read from whichever thread asks for
+ *      the value, so they must be safe to call from any thread
+ */
+public class Gauge implements GaugeMBean {
+
+    /**
+     * where a gauge's value comes from
+     */
+    public interface Source {
+        /**
+         * @return the current value. called from any thread
+         */
+        long value();
+    }
+
+    private volatile Source source;
+
+    /**
+     * @param source where the value comes from
+     */
+    public Gauge(Source source){
+        this.source = source;
+    }
+
+    /**
+     * @param source where the value comes from from now on
+     */
+    public void setSource(Source source){
+        this.source = source;
+    }
+
+    /**
+     * @return the current value
+     */
+    public long value(){
+        return source.value();
+    }
+
+    @Override public long getValue(){
+        return value();
+    }
+
+    @Override public String toString(){
+        return "" + value();
+    }
+}
@@ -0,0 +1,12 @@
+package metrics;
+
+/**
+ * the JMX view of a Gauge
+ */
+public interface GaugeMBean {
+
+    /**
+     * @return the gauge's current value
+     */
+    long getValue();
+}
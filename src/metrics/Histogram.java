@@ -0,0 +1,156 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram
+ *
+ * the distribution of a nonnegative value, such as a time in nanoseconds, in
+ * the style of an HDR histogram: values below SUB_BUCKETS each have a bucket of
+ * their own, and every power of two above that is split into SUB_BUCKETS
+ * equal buckets. a percentile is reported as the largest value in its bucket,
+ * so it is never under the true value, and over it by less than
+ * 1/SUB_BUCKETS of the value. the count, mean and max are exact.
+ *
+ * recording is a handful of atomic updates and never allocates, so it can be
+ * done on every simulation step.
+ *
+ * Thread safety argument:
+ *      every field is atomic, so any number of threads can record at once.
+ *      reads aren't a snapshot -- a percentile read while values are recorded
+ *      may count some of them and not others
+ */
+public class Histogram implements HistogramMBean {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //buckets per power of two
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS)*SUB_BUCKETS;
+    //enough buckets for every nonnegative long
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record a value
+     *
+     * @param value the value. negative values are recorded as 0
+     */
+    public void record(long value){
+        if(value < 0){
+            value = 0;
+        }
+        buckets.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long largest = max.get();
+        while(value > largest && !max.compareAndSet(largest, value)){
+            largest = max.get();
+        }
+    }
+
+    //helper method -- the bucket a nonnegative value goes in
+    static int bucket(long value){
+        if(value < SUB_BUCKETS){
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (exponent - SUB_BUCKET_BITS + 1)*SUB_BUCKETS + (int)(value >>> shift) - SUB_BUCKETS;
+    }
+
+    //helper method -- the largest value that goes in a bucket
+    static long highestInBucket(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = bucket/SUB_BUCKETS - 1;
+        long subBucket = bucket%SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long count(){
+        return count.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if there are none
+     */
+    public double mean(){
+        long n = count.get();
+        return n == 0 ? 0 : sum.get()/(double)n;
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if there are none
+     */
+    public long max(){
+        return max.get();
+    }
+
+    /**
+     * @param percentile the percentage of values to be at or below the result,
+     *          0 < percentile <= 100
+     * @return the smallest bucket bound that at least that percentage of the
+     *          values recorded are at or below, capped at max(), or 0 if there
+     *          are no values
+     */
+    public long percentile(double percentile){
+        if(!(percentile > 0 && percentile <= 100)){
+            throw new IllegalArgumentException("requires percentile in (0, 100]: received \"" + percentile + "\"");
+        }
+        long n = count.get();
+        if(n == 0){
+            return 0;
+        }
+        long rank = (long)Math.ceil(n*percentile/100);
+        long seen = 0;
+        for(int ii = 0; ii < BUCKETS; ii ++){
+            seen += buckets.get(ii);
+            if(seen >= rank){
+                return Math.min(highestInBucket(ii), max.get());
+            }
+        }
+        //values recorded since count was read
+        return max.get();
+    }
+
+    @Override public long getCount(){
+        return count();
+    }
+
+    @Override public double getMean(){
+        return mean();
+    }
+
+    @Override public long getMax(){
+        return max();
+    }
+
+    @Override public long get50thPercentile(){
+        return percentile(50);
+    }
+
+    @Override public long get90thPercentile(){
+        return percentile(90);
+    }
+
+    @Override public long get99thPercentile(){
+        return percentile(99);
+    }
+
+    @Override public long get999thPercentile(){
+        return percentile(99.9);
+    }
+
+    @Override public String toString(){
+        return "count=" + count() + " mean=" + String.format("%.1f", mean()) + " p50=" + percentile(50)
+                + " p99=" + percentile(99) + " max=" + max();
+    }
+}
@@ -0,0 +1,42 @@
+package metrics;
+
+/**
+ * the JMX view of a Histogram
+ */
+public interface HistogramMBean {
+
+    /**
+     * @return the number of values recorded
+     */
+    long getCount();
+
+    /**
+     * @return the mean of the values recorded, or 0 if there are none
+     */
+    double getMean();
+
+    /**
+     * @return the largest value recorded, or 0 if there are none
+     */
+    long getMax();
+
+    /**
+     * @return the median, as for Histogram.percentile()
+     */
+    long get50thPercentile();
+
+    /**
+     * @return the 90th percentile, as for Histogram.percentile()
+     */
+    long get90thPercentile();
+
+    /**
+     * @return the 99th percentile, as for Histogram.percentile()
+     */
+    long get99thPercentile();
+
+    /**
+     * @return the 99.9th percentile, as for Histogram.percentile()
+     */
+    long get999thPercentile();
+}
@@ -0,0 +1,214 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * MetricsRegistry
+ *
+ * the counters, gauges and histograms of one part of the program -- the
+ * client or the server -- by name. once published, every metric is a JMX
+ * MBean named
+ *      pingball:scope=SCOPE,type=TYPE,name="NAME"
+ * so that it can be watched with jconsole or any other JMX client, and
+ * metrics made later are registered as they're made.
+ *
+ * names are dotted paths, like "simulation.stepNanos" or
+ * "clients.Alpha.bytesSent". asking for a name that's already taken returns the
+ * metric that has it, so a counter keeps counting when whatever counts into it
+ * is replaced.
+ *
+ * Thread safety argument:
+ *      the metrics are kept in a ConcurrentHashMap, and are thread safe
+ *      themselves. the MBean server is volatile. a metric made while the
+ *      registry is being published may be registered twice, and the second
+ *      registration is ignored
+ */
+public class MetricsRegistry {
+
+    private static final String DOMAIN = "pingball";
+
+    private final String scope;
+    //which part of the program the metrics are from
+    private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+    //the metrics, by name
+    private volatile MBeanServer server = null;
+    //where the metrics are published, or null if they aren't
+
+    /**
+     * make an empty registry
+     *
+     * @param scope which part of the program the metrics are from, a word such
+     *          as "client" or "server"
+     */
+    public MetricsRegistry(String scope){
+        this.scope = scope;
+    }
+
+    /**
+     * @param name the counter's name
+     * @return the counter with that name, made if there isn't one
+     * @throws IllegalArgumentException if the name belongs to another kind of metric
+     */
+    public Counter counter(String name){
+        Object metric = metrics.get(name);
+        if(metric == null){
+            metric = add(name, new Counter());
+        }
+        return cast(name, metric, Counter.class);
+    }
+
+    /**
+     * @param name the histogram's name
+     * @return the histogram with that name, made if there isn't one
+     * @throws IllegalArgumentException if the name belongs to another kind of metric
+     */
+    public Histogram histogram(String name){
+        Object metric = metrics.get(name);
+        if(metric == null){
+            metric = add(name, new Histogram());
+        }
+        return cast(name, metric, Histogram.class);
+    }
+
+    /**
+     * @param name the gauge's name
+     * @param source where its value comes from. if the gauge already exists,
+     *          this replaces its source
+     * @return the gauge with that name, made if there isn't one
+     * @throws IllegalArgumentException if the name belongs to another kind of metric
+     */
+    public Gauge gauge(String name, Gauge.Source source){
+        Object metric = metrics.get(name);
+        if(metric == null){
+            metric = add(name, new Gauge(source));
+        }
+        Gauge gauge = cast(name, metric, Gauge.class);
+        gauge.setSource(source);
+        return gauge;
+    }
+
+    /**
+     * remove a metric, and its MBean if the registry is published. anything
+     * still holding the metric can go on using it
+     *
+     * @param name the metric's name
+     */
+    public void remove(String name){
+        Object metric = metrics.remove(name);
+        MBeanServer published = server;
+        if(metric != null && published != null){
+            try{
+                published.unregisterMBean(objectName(name, metric));
+            }catch(InstanceNotFoundException e){
+                //already gone
+            }catch(JMException e){
+                System.err.println("unable to unregister metric " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param name a metric's name
+     * @return the metric, or null if there is none with that name
+     */
+    public Object get(String name){
+        return metrics.get(name);
+    }
+
+    /**
+     * publish the metrics, now and as they're made, to the platform MBean server
+     */
+    public void publish(){
+        publish(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * publish the metrics, now and as they're made, to an MBean server.
+     * metrics whose MBean names are already taken -- by another registry with
+     * the same scope, say -- are skipped, and ones that can't be registered
+     * for any other reason are reported on stderr
+     *
+     * @param mbeanServer the MBean server
+     */
+    public void publish(MBeanServer mbeanServer){
+        server = mbeanServer;
+        for(Map.Entry<String, Object> metric : metrics.entrySet()){
+            register(metric.getKey(), metric.getValue());
+        }
+    }
+
+    /**
+     * @param name a metric's name
+     * @return the name its MBean is published under
+     */
+    public ObjectName objectName(String name){
+        Object metric = metrics.get(name);
+        return metric == null ? null : objectName(name, metric);
+    }
+
+    //helper method -- add a new metric, or return the one that beat it
+    private Object add(String name, Object metric){
+        Object existing = metrics.putIfAbsent(name, metric);
+        if(existing != null){
+            return existing;
+        }
+        if(server != null){
+            register(name, metric);
+        }
+        return metric;
+    }
+
+    //helper method -- register a metric's MBean with the server
+    private void register(String name, Object metric){
+        ObjectName objectName = objectName(name, metric);
+        try{
+            if(!server.isRegistered(objectName)){
+                server.registerMBean(metric, objectName);
+            }
+        }catch(JMException e){
+            System.err.println("unable to publish metric " + name + ": " + e.getMessage());
+        }
+    }
+
+    //helper method -- the MBean name of a metric
+    private ObjectName objectName(String name, Object metric){
+        try{
+            return new ObjectName(DOMAIN + ":scope=" + scope + ",type="
+                    + metric.getClass().getSimpleName() + ",name=" + ObjectName.quote(name));
+        }catch(MalformedObjectNameException e){
+            //quoted values can hold anything
+            throw new AssertionError(e);
+        }
+    }
+
+    //helper method -- a metric as the kind asked for
+    private static <T> T cast(String name, Object metric, Class<T> kind){
+        if(!kind.isInstance(metric)){
+            throw new IllegalArgumentException("metric " + name + " is a " + metric.getClass().getSimpleName()
+                    + ", not a " + kind.getSimpleName());
+        }
+        return kind.cast(metric);
+    }
+
+    /**
+     * @return every metric and its value, one per line, sorted by name
+     */
+    @Override public String toString(){
+        StringBuilder text = new StringBuilder();
+        for(Map.Entry<String, Object> metric : new TreeMap<String, Object>(metrics).entrySet()){
+            text.append(scope).append('.').append(metric.getKey()).append(' ')
+                    .append(metric.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+}
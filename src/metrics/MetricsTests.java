@@ -0,0 +1,132 @@
+package metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Tests the metrics registry and its metrics.
+ *
+ *  1. counters count from many threads at once, and report their rate over
+ *      a window
+ *  2. histogram buckets cover every value, and percentiles are never under
+ *      the true value and over it by less than one part in SUB_BUCKETS
+ *  3. names are shared by kind, and gauges can change source
+ *  4. published metrics can be read over JMX, including ones made later, and
+ *      removed metrics are unregistered
+ */
+public class MetricsTests {
+
+    //counts from several threads all arrive
+    @Test public void testCounterThreads() throws InterruptedException {
+        final Counter counter = new Counter();
+        Thread[] threads = new Thread[4];
+        for(int ii = 0; ii < threads.length; ii ++){
+            threads[ii] = new Thread(new Runnable(){
+                public void run(){
+                    for(int jj = 0; jj < 10000; jj ++){
+                        counter.increment();
+                    }
+                }
+            });
+            threads[ii].start();
+        }
+        for(Thread thread : threads){
+            thread.join();
+        }
+        assertEquals(40000, counter.count());
+    }
+
+    //the rate holds still within a window, and moves on after it
+    @Test public void testCounterRate(){
+        long start = System.nanoTime();
+        Counter counter = new Counter();
+        counter.add(30);
+        assertEquals(0, counter.rate(start + Counter.MIN_WINDOW_NANOS/2), 0);
+        assertEquals(10, counter.rate(start + 3*Counter.MIN_WINDOW_NANOS), 0.1);
+        counter.add(5);
+        assertEquals(10, counter.rate(start + 3*Counter.MIN_WINDOW_NANOS + 1), 0.1);
+        assertEquals(5, counter.rate(start + 4*Counter.MIN_WINDOW_NANOS + 1000), 0.1);
+    }
+
+    //every value falls in a bucket whose bounds are close around it
+    @Test public void testHistogramBuckets(){
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE/3, Long.MAX_VALUE};
+        for(long value : values){
+            int bucket = Histogram.bucket(value);
+            long highest = Histogram.highestInBucket(bucket);
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value/Histogram.SUB_BUCKETS);
+            if(highest < Long.MAX_VALUE){
+                assertEquals(bucket + 1, Histogram.bucket(highest + 1));
+            }
+        }
+    }
+
+    //percentiles are close, and count, mean and max are exact
+    @Test public void testHistogramPercentiles(){
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.percentile(50));
+        for(int ii = 1; ii <= 100000; ii ++){
+            histogram.record(ii);
+        }
+        histogram.record(-5);
+        assertEquals(100001, histogram.count());
+        assertEquals(100000, histogram.max());
+        assertEquals(5000050000.0/100001, histogram.mean(), 1e-6);
+        long median = histogram.percentile(50);
+        assertTrue(median >= 50000 && median <= 50000 + 50000/Histogram.SUB_BUCKETS);
+        long p99 = histogram.percentile(99);
+        assertTrue(p99 >= 99000 && p99 <= 99000 + 99000/Histogram.SUB_BUCKETS);
+        assertEquals(100000, histogram.percentile(100));
+    }
+
+    //names are shared by metrics of the same kind
+    @Test public void testNames(){
+        MetricsRegistry registry = new MetricsRegistry("test");
+        assertSame(registry.counter("a.count"), registry.counter("a.count"));
+        Gauge gauge = registry.gauge("a.gauge", new Gauge.Source(){
+            public long value(){
+                return 1;
+            }
+        });
+        registry.gauge("a.gauge", new Gauge.Source(){
+            public long value(){
+                return 2;
+            }
+        });
+        assertEquals(2, gauge.value());
+        registry.remove("a.count");
+        assertNull(registry.get("a.count"));
+    }
+
+    //a name can't be used by two kinds of metric
+    @Test(expected=IllegalArgumentException.class) public void testNameTaken(){
+        MetricsRegistry registry = new MetricsRegistry("test");
+        registry.counter("a.count");
+        registry.histogram("a.count");
+    }
+
+    //published metrics are MBeans
+    @Test public void testJmx() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MetricsRegistry registry = new MetricsRegistry("test");
+        registry.counter("messages.sent").add(3);
+        registry.publish(server);
+        ObjectName counterName = registry.objectName("messages.sent");
+        assertEquals(3L, server.getAttribute(counterName, "Count"));
+        Histogram histogram = registry.histogram("step.nanos");
+        histogram.record(100);
+        assertEquals(100L, server.getAttribute(registry.objectName("step.nanos"), "Max"));
+        registry.remove("messages.sent");
+        assertFalse(server.isRegistered(counterName));
+    }
+}
@@ -0,0 +1,152 @@
+package profiling;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import BoardGrammar.OutputProcessor;
+import BoardGrammar.ParserTests;
+import client.Board;
+import message.Messages;
+import metrics.MetricsRegistry;
+import server.ServerMessageReceiver;
+import sim.Ball;
+
+/**
+ * Tests the allocation budgets of the simulation and network loops, so that
+ * an operation that starts allocating more than it used to fails here rather
+ * than as garbage collector pauses in a game.
+ *
+ * each operation is warmed up so the JIT has compiled it, then run many times
+ * on this thread, and the bytes this thread allocated are divided by the number
+ * of runs. budgets are about one and a half times what the operations allocated
+ * when they were set, and can be lowered as the operations get leaner:
+ *
+ *  1. a steady state simulation step of sampleBoard4 allocates nothing, with
+ *      the JIT's escape analysis or without it
+ *  2. a frame of Board.getGraphic() on sampleBoard4
+ *  3. composing and parsing a traced wall teleport message
+ *  4. the server reading a message and forwarding it to another client
+ *
+ * the tests are skipped on JVMs that can't count the bytes a thread allocates.
+ */
+public class AllocationTests {
+
+    private static final long STEP_BUDGET = 16;
+    private static final long GRAPHIC_BUDGET = 3000;
+    private static final long TELEPORT_MESSAGE_BUDGET = 6000;
+    private static final long FORWARD_BUDGET = 600;
+    //the most bytes each operation may allocate, on average
+
+    private static final int WARMUP = 20000;
+    private static final int RUNS = 10000;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before public void setUp(){
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean)bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    //helper method -- the bytes this thread has allocated so far
+    private long allocated(){
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    //helper method -- fail if an operation allocated more than its budget per run
+    private static void assertWithinBudget(String operation, long budget, long bytes, int runs){
+        double perRun = bytes/(double)runs;
+        assertTrue(operation + " allocated " + perRun + " bytes per run, over its budget of " + budget,
+                perRun <= budget);
+    }
+
+    //helper method -- sampleBoard4, as the client loads it
+    private static Board sampleBoard() throws IOException {
+        return OutputProcessor.parse(new File(ParserTests.getResourcePath("client/resources/sampleBoard4.pb")));
+    }
+
+    //a simulation step reuses everything it needs
+    @Test public void testSimulationStep() throws IOException {
+        Board board = sampleBoard();
+        for(int ii = 0; ii < WARMUP; ii ++){
+            board.advanceSimulation(0.05);
+        }
+        long start = allocated();
+        for(int ii = 0; ii < RUNS; ii ++){
+            board.advanceSimulation(0.05);
+        }
+        assertWithinBudget("a simulation step", STEP_BUDGET, allocated() - start, RUNS);
+    }
+
+    //a frame is one graphic per ball, wall and gadget
+    @Test public void testGraphic() throws IOException {
+        Board board = sampleBoard();
+        for(int ii = 0; ii < WARMUP; ii ++){
+            board.getGraphic();
+        }
+        long start = allocated();
+        for(int ii = 0; ii < RUNS; ii ++){
+            board.getGraphic();
+        }
+        assertWithinBudget("a frame", GRAPHIC_BUDGET, allocated() - start, RUNS);
+    }
+
+    //a teleport message round trip
+    @Test public void testTeleportMessage(){
+        Ball ball = new Ball(1.5, 2.5, 3, -4);
+        for(int ii = 0; ii < WARMUP; ii ++){
+            Messages.parseWallTeleportArguments(Messages.composeWallTeleportMessage("Alpha", "Beta", ball, ii));
+        }
+        long start = allocated();
+        for(int ii = 0; ii < RUNS; ii ++){
+            Messages.parseWallTeleportArguments(Messages.composeWallTeleportMessage("Alpha", "Beta", ball, ii));
+        }
+        assertWithinBudget("a teleport message", TELEPORT_MESSAGE_BUDGET, allocated() - start, RUNS);
+    }
+
+    //a forward is measured as the difference between a receiver that forwards
+    //many messages and one that forwards none, so the greeting and the
+    //disconnect notices aren't counted
+    @Test public void testForward(){
+        StringBuilder input = new StringBuilder();
+        String message = Messages.composeWallTeleportMessage("Alpha", "Beta", new Ball(1.5, 2.5, 3, -4), 0);
+        for(int ii = 0; ii < RUNS; ii ++){
+            input.append(message).append('\n');
+        }
+        MetricsRegistry metrics = new MetricsRegistry("test");
+        receive("", metrics);
+        receive(input.toString(), metrics);
+        long idle = receive("", metrics);
+        long busy = receive(input.toString(), metrics);
+        assertWithinBudget("a forward", FORWARD_BUDGET, busy - idle, RUNS);
+    }
+
+    //helper method -- the bytes allocated by a server receiver for client
+    //Alpha reading the input and forwarding it to Beta
+    private long receive(String input, MetricsRegistry metrics){
+        Map<String, BlockingQueue<String>> threadMap = new HashMap<String, BlockingQueue<String>>();
+        threadMap.put("Alpha", new LinkedBlockingQueue<String>());
+        threadMap.put("Beta", new LinkedBlockingQueue<String>());
+        ServerMessageReceiver receiver = new ServerMessageReceiver("Alpha",
+                new BufferedReader(new StringReader(input)), threadMap, null, metrics);
+        long start = allocated();
+        receiver.run();
+        return allocated() - start;
+    }
+}
@@ -0,0 +1,40 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * a Java Flight Recorder event for each collision a simulation resolves.
+ *
+ * like SimulationStepEvent, it is off unless a recording turns it on, with
+ * "pingball.Collision#enabled=true".
+ */
+@Name("pingball.Collision")
+@Label("Collision")
+@Category({"Pingball", "Simulation"})
+@Description("A collision resolved by Simulation.advance()")
+@Enabled(false)
+public class CollisionEvent extends Event {
+
+    @Label("Collidable")
+    @Description("Class of the wall, gadget or ball that was hit")
+    public String collidable;
+
+    @Label("Time of Impact")
+    @Description("Simulated time into the rest of the step at which the collision happened, in seconds")
+    public double timeOfImpact;
+
+    @Label("Depth")
+    @Description("Collisions already resolved during the step")
+    public int depth;
+
+    @Label("X")
+    public double x;
+
+    @Label("Y")
+    public double y;
+}
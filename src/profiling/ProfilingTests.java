@@ -0,0 +1,149 @@
+package profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+import client.Board;
+import message.Messages;
+import metrics.MetricsRegistry;
+import sim.Ball;
+import server.ServerMessageReceiver;
+
+/**
+ * Tests the flight recorder events.
+ *
+ *  1. steps, collisions and teleports are recorded when their events are on,
+ *      and each can be turned off without the others
+ *  2. the server records forwarded and dropped messages, with queue depths
+ */
+public class ProfilingTests {
+
+    //helper method -- a board with a ball that bounces off the floor and goes
+    //through a local portal
+    private static Board board(){
+        Board board = new Board("Profiled", 25, 0, 0);
+        board.addPortal(5, 10, "In", "", "Out");
+        board.addPortal(15, 10, "Out", "", "In");
+        board.add(new Ball(5.5, 8, 0, 10));
+        board.add(new Ball(12, 15, 0, 20));
+        return board;
+    }
+
+    //helper method -- stop a recording and read back its events
+    private static List<RecordedEvent> stop(Recording recording) throws IOException {
+        recording.stop();
+        Path file = Files.createTempFile("profiling", ".jfr");
+        try{
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        }finally{
+            recording.close();
+            Files.delete(file);
+        }
+    }
+
+    //helper method -- the number of events with a name
+    private static int count(List<RecordedEvent> events, String name){
+        int count = 0;
+        for(RecordedEvent event : events){
+            if(event.getEventType().getName().equals(name)){
+                count ++;
+            }
+        }
+        return count;
+    }
+
+    //helper method -- the first event with a name, or null
+    private static RecordedEvent first(List<RecordedEvent> events, String name){
+        for(RecordedEvent event : events){
+            if(event.getEventType().getName().equals(name)){
+                return event;
+            }
+        }
+        return null;
+    }
+
+    //each simulation event can be switched on its own
+    @Test public void testSimulationEvents() throws IOException {
+        Recording recording = new Recording();
+        recording.enable("pingball.SimulationStep");
+        recording.enable("pingball.Collision");
+        recording.disable("pingball.Teleport");
+        recording.start();
+        Board board = board();
+        for(int ii = 0; ii < 20; ii ++){
+            board.advanceSimulation(0.05);
+        }
+        List<RecordedEvent> events = stop(recording);
+        assertEquals(20, count(events, "pingball.SimulationStep"));
+        assertTrue(count(events, "pingball.Collision") > 0);
+        assertEquals(0, count(events, "pingball.Teleport"));
+        assertEquals(2, first(events, "pingball.SimulationStep").getInt("balls"));
+
+        recording = new Recording();
+        recording.enable("pingball.Teleport");
+        recording.start();
+        board = board();
+        for(int ii = 0; ii < 20; ii ++){
+            board.advanceSimulation(0.05);
+        }
+        events = stop(recording);
+        assertEquals(0, count(events, "pingball.SimulationStep"));
+        assertEquals(0, count(events, "pingball.Collision"));
+        assertTrue(count(events, "pingball.Teleport") > 0);
+        RecordedEvent teleport = first(events, "pingball.Teleport");
+        assertEquals("Profiled", teleport.getString("board"));
+        assertEquals("Out", teleport.getString("destinationPortal"));
+    }
+
+    //the server records where each message went
+    @Test public void testRoutingEvents() throws IOException {
+        Map<String, BlockingQueue<String>> threadMap = new HashMap<String, BlockingQueue<String>>();
+        threadMap.put("Alpha", new LinkedBlockingQueue<String>());
+        threadMap.put("Beta", new LinkedBlockingQueue<String>());
+        String input = Messages.composePortalQueryMessage("Alpha", "Beta") + "\n"
+                + Messages.composePortalQueryMessage("Alpha", "Gamma") + "\n";
+        Recording recording = new Recording();
+        recording.enable("pingball.Routing");
+        recording.start();
+        new ServerMessageReceiver("Alpha", new BufferedReader(new StringReader(input)), threadMap,
+                null, new MetricsRegistry("test")).run();
+        List<RecordedEvent> events = stop(recording);
+        int forwarded = 0;
+        int dropped = 0;
+        for(RecordedEvent event : events){
+            if(!event.getEventType().getName().equals("pingball.Routing")){
+                continue;
+            }
+            if(event.getString("recipient").equals("Beta") && event.getString("messageType").equals("PORTAL_QUERY")){
+                assertEquals(RoutingEvent.FORWARDED, event.getString("decision"));
+                assertEquals(1, event.getInt("queueDepth"));
+                forwarded ++;
+            }
+            if(event.getString("recipient").equals("Gamma")){
+                assertEquals(RoutingEvent.DROPPED, event.getString("decision"));
+                assertEquals(-1, event.getInt("queueDepth"));
+                dropped ++;
+            }
+        }
+        assertEquals(1, forwarded);
+        assertEquals(1, dropped);
+    }
+}
@@ -0,0 +1,42 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * a Java Flight Recorder event for each message the server routes. it is on
+ * by default; turn it off with "pingball.Routing#enabled=false".
+ */
+@Name("pingball.Routing")
+@Label("Routing")
+@Category({"Pingball", "Network"})
+@Description("A message routed by the server")
+public class RoutingEvent extends Event {
+
+    public static final String FORWARDED = "forwarded";
+    public static final String DROPPED = "dropped";
+    public static final String ANSWERED = "answered";
+    //the routing decisions
+
+    @Label("Sender")
+    public String sender;
+
+    @Label("Recipient")
+    public String recipient;
+
+    @Label("Message Type")
+    public String messageType;
+
+    @Label("Decision")
+    @Description("forwarded to the recipient's queue, dropped because the recipient isn't connected "
+            + "or its queue is full, or answered by the server for the recipient")
+    public String decision;
+
+    @Label("Queue Depth")
+    @Description("Length of the recipient's send queue once the message was added or dropped, "
+            + "or -1 if the recipient isn't connected")
+    public int queueDepth;
+}
@@ -0,0 +1,43 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * a Java Flight Recorder event for one call of Simulation.advance(), lasting
+ * as long as the call did.
+ *
+ * simulations step thousands of times a second in offline analyses, so it is
+ * off unless a recording turns it on, with "pingball.SimulationStep#enabled=true"
+ * or the same setting in a .jfc file.
+ */
+@Name("pingball.SimulationStep")
+@Label("Simulation Step")
+@Category({"Pingball", "Simulation"})
+@Description("One call of Simulation.advance()")
+@Enabled(false)
+public class SimulationStepEvent extends Event {
+
+    @Label("Time Step")
+    @Description("Simulated time covered by the step, in seconds")
+    public double timeStep;
+
+    @Label("Collisions")
+    @Description("Collisions resolved during the step")
+    public int collisions;
+
+    @Label("Depth")
+    @Description("Recursion depth the step reached")
+    public int depth;
+
+    @Label("Cut Short")
+    @Description("True if the step hit the recursion limit with collisions left")
+    public boolean cutShort;
+
+    @Label("Balls")
+    public int balls;
+}
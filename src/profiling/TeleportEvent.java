@@ -0,0 +1,41 @@
+package profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * a Java Flight Recorder event for each ball a board teleports, through a
+ * portal or a transparent wall. teleports are rare enough that it is on by
+ * default; turn it off with "pingball.Teleport#enabled=false".
+ */
+@Name("pingball.Teleport")
+@Label("Teleport")
+@Category({"Pingball", "Network"})
+@Description("A ball leaving a board through a portal or a transparent wall")
+public class TeleportEvent extends Event {
+
+    @Label("Board")
+    @Description("Board the ball left")
+    public String board;
+
+    @Label("Destination Board")
+    @Description("Board the ball is sent to, empty for a local portal")
+    public String destinationBoard;
+
+    @Label("Destination Portal")
+    @Description("Portal the ball comes out of, empty for a wall")
+    public String destinationPortal;
+
+    @Label("X Velocity")
+    public double xVelocity;
+
+    @Label("Y Velocity")
+    public double yVelocity;
+
+    @Label("Trace Id")
+    @Description("Id of the teleport message's trace, shared by the balls it carries, -1 for a local portal")
+    public long traceId;
+}
@@ -0,0 +1,25 @@
+package server;
+
+/**
+ * NanoClock
+ *
+ * where the server's time based policies read the time, so that tests can
+ * move it along without waiting
+ */
+interface NanoClock {
+
+    /**
+     * @return the time in nanoseconds, from an arbitrary origin, as
+     *          System.nanoTime() gives it
+     */
+    long nanoTime();
+
+    /**
+     * the clock of System.nanoTime()
+     */
+    NanoClock SYSTEM = new NanoClock(){
+        public long nanoTime(){
+            return System.nanoTime();
+        }
+    };
+}
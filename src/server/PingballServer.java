@@ -9,10 +9,24 @@ import java.util.HashMap;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import message.Messages;
 import message.Messages.MessageType;
+import metrics.Counter;
+import metrics.Gauge;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import BoardGrammar.BoardIndex;
+import client.Board;
 
 /**
  * Class for running a server to route messages and handle network features
@@ -23,27 +37,76 @@ import message.Messages.MessageType;
  *  each client socket is shared between two threads -- of the two, one will
  *  have exclusive responsibility for sending messages, and the other will have
  *  exclusive responsibility for receiving messages.
- *      side note: the main server loop does open an input stream to the client's socket
- *                 before spinning new threads. It drops this reference once the send/
- *                 receive threads are spun
+ *      side note: the main server loop only accepts sockets, and hands each to a
+ *                 thread of the handshake pool. that thread opens an input stream to
+ *                 the client's socket and reads its hello before spinning new threads,
+ *                 and drops its reference once the send/receive threads are spun.
+ *                 the deadline thread may close the socket while the handshake thread
+ *                 reads it, which makes the read fail; sockets can be closed from any
+ *                 thread
  *  
  *  Each ServerMessageSender has an input queue which is accessible to all 
  *  ServerMessageReceivers and the ServerSystemMonitor. these queues use a thread-safe
- *  data type.
+ *  data type, SendQueue, which bounds them and disconnects clients that fall too far
+ *  behind by closing their sockets from whichever thread finds them overloaded.
  *  
  *  The input queues will be kept in a map that is shared between multiple threads
  *  all threads will synchronize on this map before using it.
  *  
  *  The messages themselves will be strings, a thread-safe type
+ *  
+ *  The metrics registry, and the counters and gauges in it, are thread safe. Every
+ *  thread records into it, and JMX reads it from threads of its own.
  */
 public class PingballServer {
     
     private static final int DEFAULT_PORT = 10987;
+    private static final int ACCEPT_BACKLOG = 1024;
+    //connections the operating system holds for the accept loop, so a mass
+    //reconnect after a restart isn't refused
+    private static final int HANDSHAKE_THREADS = 64;
+    private static final int HANDSHAKE_BACKLOG = 4096;
+    //threads reading hellos, and accepted connections waiting for one. a
+    //connection that doesn't fit is closed
+    static final long HANDSHAKE_TIMEOUT_MILLIS = 2000;
+    //how long a connection has to send its whole hello
     
     private final ServerSocket serverSocket;
     private final Map<String, BlockingQueue<String>> threadMap;
     //this Map links a board name to the input queue of the thread
     //that is responsible for sending messages to that client
+    private final Map<String, Integer> boardSizes = new HashMap<String, Integer>();
+    //the side length of each client's board, as announced in its hello. guarded
+    //by threadMap's lock, and kept in step with it
+    private final Map<String, String> boardHashes = new HashMap<String, String>();
+    //the hash of each client's board file, for clients whose hello announced
+    //one. guarded by threadMap's lock, and removed with the client
+    private final BoardIndex boardIndex;
+    //summaries of known boards, used to answer portal queries without asking
+    //the client. null if there is none. never modified once the server starts
+    private final MetricsRegistry metrics = new MetricsRegistry("server");
+    //message counts and rates, and each client's queue depth and traffic,
+    //published over JMX
+    private final int queueCapacity;
+    private final SendQueue.Policy queuePolicy;
+    private final long overloadMillis;
+    //the settings of every client's send queue, see SendQueue
+    private final RateLimits rateLimits;
+    //how many messages of each type every client may send
+    private final ThreadPoolExecutor handshakes = new ThreadPoolExecutor(HANDSHAKE_THREADS, HANDSHAKE_THREADS,
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(HANDSHAKE_BACKLOG), daemons("handshake"));
+    private final ScheduledExecutorService handshakeDeadlines =
+            Executors.newSingleThreadScheduledExecutor(daemons("handshake-deadline"));
+    //the handshake pool, and the thread that closes connections whose hellos
+    //are late
+    private final Counter handshakesRejected = metrics.counter("handshakes.rejected");
+    private final Counter handshakesTimedOut = metrics.counter("handshakes.timedOut");
+    private final Counter handshakesFailed = metrics.counter("handshakes.failed");
+    //connections closed because the handshake pool was full, because their
+    //hello was late, and because it was bad, taken or cut off
+    private final Histogram handshakeNanos = metrics.histogram("handshakes.nanos");
+    //time from a connection being accepted to its client being added, for
+    //successful handshakes
     
     /**
      * construct a new server instance on the specified port
@@ -52,58 +115,248 @@ public class PingballServer {
      * @throws IOException
      */
     public PingballServer(int port) throws IOException{
-        serverSocket = new ServerSocket(port);
+        this(port, null);
+    }
+    
+    /**
+     * construct a new server instance on the specified port, which answers
+     * portal queries about the boards in an index itself, with send queues of
+     * the default capacity that coalesce redundant messages, and the default
+     * rate limits
+     * 
+     * @param port the port number to be used -- 0 <= port <= 65535
+     * @param boardIndex the index, or null to forward every portal query
+     * @throws IOException
+     */
+    public PingballServer(int port, BoardIndex boardIndex) throws IOException{
+        this(port, boardIndex, SendQueue.DEFAULT_CAPACITY, SendQueue.Policy.COALESCE,
+                SendQueue.DEFAULT_OVERLOAD_MILLIS, RateLimits.DEFAULT);
+    }
+    
+    /**
+     * construct a new server instance on the specified port, which answers
+     * portal queries about the boards in an index itself
+     * 
+     * @param port the port number to be used -- 0 <= port <= 65535
+     * @param boardIndex the index, or null to forward every portal query
+     * @param queueCapacity the number of messages each client's send queue
+     *          holds before it's full, > 0
+     * @param queuePolicy what full send queues do with redundant messages
+     * @param overloadMillis how long a client's send queue may stay full
+     *          before the client is disconnected, >= 0
+     * @param rateLimits how many messages of each type every client may send
+     * @throws IOException
+     */
+    public PingballServer(int port, BoardIndex boardIndex, int queueCapacity, SendQueue.Policy queuePolicy,
+            long overloadMillis, RateLimits rateLimits) throws IOException{
+        if(queueCapacity <= 0){
+            throw new IllegalArgumentException("requires positive queueCapacity: received \"" + queueCapacity + "\"");
+        }
+        if(overloadMillis < 0){
+            throw new IllegalArgumentException("requires nonnegative overloadMillis: received \""
+                    + overloadMillis + "\"");
+        }
+        this.boardIndex = boardIndex;
+        this.queueCapacity = queueCapacity;
+        this.queuePolicy = queuePolicy;
+        this.overloadMillis = overloadMillis;
+        this.rateLimits = rateLimits;
+        serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
         threadMap = new HashMap<String, BlockingQueue<String>>();
-        Thread inputMonitor = new Thread(new ServerSystemMonitor(threadMap));
+        metrics.gauge("clients", new Gauge.Source(){
+            public long value(){
+                synchronized(threadMap){
+                    return threadMap.size();
+                }
+            }
+        });
+        metrics.gauge("handshakes.waiting", new Gauge.Source(){
+            public long value(){
+                return handshakes.getQueue().size();
+            }
+        });
+        metrics.publish();
+        Thread inputMonitor = new Thread(new ServerSystemMonitor(threadMap, boardSizes));
         inputMonitor.start();
     }
     
     /**
-     * sits in a loop accepting new connections. Spins new sender/receiver threads 
-     * to handle communication with each accepted client. Accepted connections are 
-     * expected to provide a valid "Hello" message; otherwise they will be ignored. 
+     * sits in a loop accepting new connections, and hands each one to the
+     * handshake pool. never blocks on a client
      * 
-     * @throws IOException if the server socket is broken
+     * @throws IOException if the server socket is broken, or closed by close()
      */
-    private void serve() throws IOException{
+    void serve() throws IOException{
         while(true){
-            Socket clientSocket = serverSocket.accept();
-            clientSocket.setSoTimeout(2000);//enable timeout for main server loop
+            final Socket clientSocket = serverSocket.accept();
+            final long accepted = System.nanoTime();
             try{
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                String clientHello = in.readLine().trim();
-                if(Messages.parseType(clientHello) != MessageType.HELLO){
-                    //if this is not a good hello message, close the stream
-                    //and throw an exception(returning to beginning of while() loop)
-                    clientSocket.close();
-                    throw new IllegalArgumentException();
-                }
-                String clientName = Messages.parseSender(clientHello);
-                synchronized(threadMap){
-                    if(threadMap.containsKey(clientName)){
-                        clientSocket.close();
-                        throw new IllegalArgumentException("a client with that name is already on the server");
+                handshakes.execute(new Runnable(){
+                    public void run(){
+                        handshake(clientSocket, accepted);
                     }
-                }
-                System.out.println("\na client has connected: " + clientName);
-                clientSocket.setSoTimeout(0);//reset timeout value
-                //make an sending queue for this client
-                BlockingQueue<String> senderQueue = new LinkedBlockingQueue<String>();
-                //add queue to shared map
-                synchronized(threadMap){
-                    threadMap.put(clientName, senderQueue);
-                }
-                //spin handler threads
-                Thread sender = new Thread(new ServerMessageSender(clientName, clientSocket, senderQueue));
-                sender.start();
-                Thread receiver = new Thread(new ServerMessageReceiver(clientName, in, threadMap));
-                receiver.start();
-            } catch(SocketTimeoutException e){
+                });
+            }catch(RejectedExecutionException e){
+                //too many handshakes waiting -- the client can reconnect later
+                handshakesRejected.increment();
+                closeQuietly(clientSocket);
+            }
+        }
+    }
+    
+    /**
+     * @return the port the server accepts connections on, which was chosen by
+     *          the operating system if the server was made with port 0
+     */
+    int port(){
+        return serverSocket.getLocalPort();
+    }
+    
+    /**
+     * stop accepting connections, which ends serve(). clients already
+     * connected are left alone
+     * 
+     * @throws IOException if the server socket can't be closed
+     */
+    void close() throws IOException{
+        serverSocket.close();
+    }
+    
+    /**
+     * reads a new connection's "Hello" message, and spins new sender/receiver
+     * threads to handle communication with the client. connections that don't
+     * provide a valid "Hello" message for an unused name within
+     * HANDSHAKE_TIMEOUT_MILLIS of their handshake starting are closed. runs on
+     * the handshake pool
+     * 
+     * @param clientSocket the new connection
+     * @param accepted the nanoTime the connection was accepted
+     */
+    private void handshake(final Socket clientSocket, long accepted){
+        //the deadline covers the whole hello, however slowly it trickles in.
+        //it starts with the handshake rather than when the connection was
+        //accepted, so that good clients waiting behind silent ones for a
+        //handshake thread, whose hellos are already buffered, aren't turned away
+        ScheduledFuture<?> deadline = handshakeDeadlines.schedule(new Runnable(){
+            public void run(){
+                closeQuietly(clientSocket);
+            }
+        }, HANDSHAKE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        final String clientName;
+        final int announcedSize;
+        final String announcedHash;
+        final BufferedReader in;
+        try{
+            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            String clientHello = in.readLine();
+            if(clientHello == null || Messages.parseType(clientHello.trim()) != MessageType.HELLO){
+                throw new IllegalArgumentException("bad hello");
+            }
+            clientName = Messages.parseSender(clientHello.trim());
+            announcedSize = Messages.parseClientHelloSize(clientHello.trim());
+            announcedHash = Messages.parseClientHelloHash(clientHello.trim());
+        }catch(IOException e){
+            deadline.cancel(false);
+            closeQuietly(clientSocket);
+            if(deadline.isDone() && !deadline.isCancelled()){
+                handshakesTimedOut.increment();
                 System.err.println("a client timed out while attempting to connect");
-            } catch(IllegalArgumentException e){
-                e.printStackTrace();
-                System.err.println("bad hello");
+            }else{
+                handshakesFailed.increment();
+            }
+            return;
+        }catch(IllegalArgumentException e){
+            deadline.cancel(false);
+            closeQuietly(clientSocket);
+            handshakesFailed.increment();
+            System.err.println(e.getMessage());
+            return;
+        }
+        if(!deadline.cancel(false)){
+            //the deadline passed just as the hello arrived
+            closeQuietly(clientSocket);
+            handshakesTimedOut.increment();
+            return;
+        }
+        //make an sending queue for this client
+        final SendQueue senderQueue = new SendQueue(clientName, queueCapacity, queuePolicy,
+                overloadMillis, metrics);
+        senderQueue.setOverloadHandler(new Runnable(){
+            public void run(){
+                //unblocks the sender if it's stuck writing, and ends the
+                //receiver, which tells the other clients
+                closeQuietly(clientSocket);
+            }
+        });
+        //add queue to shared map, unless the name is taken. handshakes run
+        //concurrently, so checking and adding have to happen together
+        synchronized(threadMap){
+            if(threadMap.containsKey(clientName)){
+                closeQuietly(clientSocket);
+                handshakesFailed.increment();
+                System.err.println("bad hello: a client named " + clientName + " is already on the server");
+                return;
+            }
+            threadMap.put(clientName, senderQueue);
+            //clients that don't announce a size predate sizes, and all have
+            //boards of the default size
+            boardSizes.put(clientName, announcedSize > 0 ? announcedSize : Board.DEFAULT_SIZE);
+            //nor a hash, so the board index isn't trusted to describe them
+            if(announcedHash != null){
+                boardHashes.put(clientName, announcedHash);
+            }
+        }
+        metrics.gauge("clients." + clientName + ".sendQueue", new Gauge.Source(){
+            public long value(){
+                return senderQueue.size();
+            }
+        });
+        handshakeNanos.record(System.nanoTime() - accepted);
+        System.out.println("\na client has connected: " + clientName);
+        //spin handler threads
+        Thread sender = new Thread(new ServerMessageSender(clientName, clientSocket, senderQueue, metrics));
+        sender.start();
+        Thread receiver = new Thread(new ServerMessageReceiver(clientName, in, threadMap, boardIndex, metrics,
+                rateLimits, boardSizes, boardHashes));
+        receiver.start();
+    }
+    
+    //helper method -- a factory of numbered daemon threads, which don't keep
+    //the server running on their own
+    private static ThreadFactory daemons(final String name){
+        return new ThreadFactory(){
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(Runnable task){
+                Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
             }
+        };
+    }
+    
+    /**
+     * check whether two clients' boards may be linked across a wall. a ball
+     * crossing a wall is sent at its position in the sending board, mirrored to
+     * the far side, which is only inside the wall it enters when the boards are
+     * the same size. the caller must hold the lock on the thread map
+     * 
+     * @param boardSizes the side length of each connected client's board
+     * @param one the name of one client
+     * @param two the name of the other
+     * @return true unless both clients are connected and their boards differ in size
+     */
+    static boolean linkable(Map<String, Integer> boardSizes, String one, String two){
+        Integer size1 = boardSizes.get(one);
+        Integer size2 = boardSizes.get(two);
+        return size1 == null || size2 == null || size1.equals(size2);
+    }
+    
+    //helper method -- close a client's socket, which may already be closed
+    private static void closeQuietly(Socket socket){
+        try{
+            socket.close();
+        }catch(IOException e){
+            System.err.println("unable to close a client socket: " + e.getMessage());
         }
     }
     
@@ -113,11 +366,33 @@ public class PingballServer {
      * to open the server on a specific port, the optional argument
      * [--port PORT] can be used, where 0 <= port <= 65535
      * 
+     * to answer portal queries from a board index written by BoardValidator,
+     * the optional argument [--index FILE] can be used. queries about a board
+     * are only answered from the index while its client runs the indexed file,
+     * as told by the file hash in its hello
+     * 
+     * to bound each client's send queue at N messages, the optional argument
+     * [--queue N] can be used (1024 by default). full queues coalesce redundant
+     * messages by default; [--queue-policy drop] drops them instead. a client
+     * whose queue stays full for [--overload-timeout MILLIS] (5000 by default)
+     * is disconnected
+     * 
+     * to change how many messages of each type a client may send, the optional
+     * argument [--rate-limit TYPE=RATE/BURST,...] can be used, see RateLimits.
+     * TYPE=unlimited lifts a type's limit
+     * 
      * @param args
      */
     public static void main(String[] args){
         Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
         int port = DEFAULT_PORT;//default port
+        BoardIndex boardIndex = null;
+        int queueCapacity = SendQueue.DEFAULT_CAPACITY;
+        SendQueue.Policy queuePolicy = SendQueue.Policy.COALESCE;
+        long overloadMillis = SendQueue.DEFAULT_OVERLOAD_MILLIS;
+        RateLimits rateLimits = RateLimits.DEFAULT;
+        String usage = "usage: PingballServer [--port PORT] [--index FILE] [--queue N] "
+                + "[--queue-policy coalesce|drop] [--overload-timeout MILLIS] [--rate-limit TYPE=RATE/BURST,...]";
         try{
             String flag = "";
             try{
@@ -128,8 +403,38 @@ public class PingballServer {
                         if(port < 0 || port > 65535){
                             throw new IllegalArgumentException("port " + port + " out of range");
                         }
+                    }else if(flag.equals("--index")){
+                        String indexPath = arguments.remove();
+                        try{
+                            boardIndex = BoardIndex.read(new File(indexPath));
+                            System.out.println("loaded " + boardIndex.size() + " boards from " + indexPath);
+                        }catch(IOException e){
+                            System.err.println("unable to load board index: " + e.getMessage());
+                        }
+                    }else if(flag.equals("--queue")){
+                        queueCapacity = Integer.parseInt(arguments.remove());
+                        if(queueCapacity <= 0){
+                            throw new IllegalArgumentException("requires positive queue: received \""
+                                    + queueCapacity + "\"");
+                        }
+                    }else if(flag.equals("--queue-policy")){
+                        String policy = arguments.remove();
+                        try{
+                            queuePolicy = SendQueue.Policy.valueOf(policy.toUpperCase());
+                        }catch(IllegalArgumentException e){
+                            throw new IllegalArgumentException("unknown queue policy \"" + policy + "\"");
+                        }
+                    }else if(flag.equals("--overload-timeout")){
+                        overloadMillis = Long.parseLong(arguments.remove());
+                        if(overloadMillis < 0){
+                            throw new IllegalArgumentException("requires nonnegative overload-timeout: received \""
+                                    + overloadMillis + "\"");
+                        }
+                    }else if(flag.equals("--rate-limit")){
+                        rateLimits = rateLimits.with(arguments.remove());
                     }else{
-                        throw new IllegalArgumentException("--port flag expected");
+                        throw new IllegalArgumentException("--port, --index, --queue, --queue-policy, "
+                                + "--overload-timeout or --rate-limit flag expected");
                     }
                 }
             }catch (NoSuchElementException e) {
@@ -139,10 +444,11 @@ public class PingballServer {
             }
         }catch (IllegalArgumentException e){
             System.err.println(e.getMessage());
-            System.err.println("usage: PingballServer [--port PORT]");
+            System.err.println(usage);
         }
         try{
-            PingballServer server = new PingballServer(port);
+            PingballServer server = new PingballServer(port, boardIndex, queueCapacity, queuePolicy, overloadMillis,
+                    rateLimits);
             server.serve();
         }catch(IOException e){
             e.printStackTrace();
@@ -0,0 +1,170 @@
+package server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import message.Messages;
+import message.Messages.MessageType;
+
+/**
+ * Testing strategy
+ *
+ * each test runs a server on a free loopback port, and connects to it with
+ * plain sockets. a client has registered once the server greets it with a
+ * hello, and has been refused once the server closes its connection
+ *
+ * handshakes:
+ *  1. a connection that sends nothing is closed after the deadline, and a
+ *     good client connecting after it registers before then
+ *  2. a hello that trickles in, finishing after the deadline, is refused
+ *  3. of two clients saying hello at once with the same name, exactly one
+ *     registers
+ */
+public class PingballServerTests {
+
+    private static final int SOCKET_TIMEOUT_MILLIS = 10000;
+    //how long a test waits on the server before failing, rather than hanging
+
+    private PingballServer server;
+
+    @Before public void startServer() throws IOException {
+        server = new PingballServer(0);
+        Thread serving = new Thread(new Runnable(){
+            public void run(){
+                try{
+                    server.serve();
+                }catch(IOException e){
+                    //closed by stopServer()
+                }
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+    }
+
+    @After public void stopServer() throws IOException {
+        server.close();
+    }
+
+    //helper method -- a connection to the server
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port());
+        socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+        return socket;
+    }
+
+    //helper method -- send a line, which may fail once the server has closed
+    //the connection
+    private static void send(Socket socket, String text) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(text.getBytes("UTF-8"));
+        out.flush();
+    }
+
+    //helper method -- the first line the server sends, or null if it closes
+    //the connection without sending one. throws if the server does neither
+    private static String firstLine(Socket socket) throws IOException {
+        try{
+            return new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8")).readLine();
+        }catch(SocketTimeoutException e){
+            throw e;
+        }catch(IOException e){
+            //reset by the server
+            return null;
+        }
+    }
+
+    //helper method -- true iff the line is the server's greeting to a client
+    private static boolean isGreeting(String line, String name){
+        return line != null && Messages.parseType(line) == MessageType.HELLO
+                && Messages.parseReceiver(line).equals(name);
+    }
+
+    @Test public void testSilentConnection() throws IOException {
+        Socket silent = connect();
+        Socket good = connect();
+        try{
+            long start = System.nanoTime();
+            send(good, Messages.composeClientHello("Good", "Server") + "\n");
+            assertTrue(isGreeting(firstLine(good), "Good"));
+            assertTrue((System.nanoTime() - start)/1000000 < PingballServer.HANDSHAKE_TIMEOUT_MILLIS);
+            assertNull(firstLine(silent));
+            assertTrue((System.nanoTime() - start)/1000000 >= PingballServer.HANDSHAKE_TIMEOUT_MILLIS/2);
+        }finally{
+            silent.close();
+            good.close();
+        }
+    }
+
+    @Test public void testTricklingHello() throws IOException, InterruptedException {
+        Socket socket = connect();
+        try{
+            String hello = Messages.composeClientHello("Slow", "Server") + "\n";
+            long pause = 2*PingballServer.HANDSHAKE_TIMEOUT_MILLIS/hello.length() + 1;
+            try{
+                for(int ii = 0; ii < hello.length(); ii ++){
+                    send(socket, hello.substring(ii, ii + 1));
+                    Thread.sleep(pause);
+                }
+            }catch(IOException e){
+                //the server closed the connection partway through
+            }
+            assertNull(firstLine(socket));
+        }finally{
+            socket.close();
+        }
+    }
+
+    @Test public void testSameNameAtOnce() throws IOException, InterruptedException {
+        final Socket[] sockets = { connect(), connect() };
+        final String[] lines = new String[sockets.length];
+        final CountDownLatch ready = new CountDownLatch(sockets.length);
+        Thread[] clients = new Thread[sockets.length];
+        for(int ii = 0; ii < sockets.length; ii ++){
+            final int index = ii;
+            clients[ii] = new Thread(new Runnable(){
+                public void run(){
+                    try{
+                        ready.countDown();
+                        ready.await();
+                        send(sockets[index], Messages.composeClientHello("Twin", "Server") + "\n");
+                        lines[index] = firstLine(sockets[index]);
+                    }catch(IOException e){
+                        lines[index] = null;
+                    }catch(InterruptedException e){
+                        lines[index] = null;
+                    }
+                }
+            });
+            clients[ii].start();
+        }
+        try{
+            for(Thread client : clients){
+                client.join();
+            }
+            int registered = 0;
+            for(String line : lines){
+                registered += isGreeting(line, "Twin") ? 1 : 0;
+            }
+            assertEquals(1, registered);
+        }finally{
+            for(Socket socket : sockets){
+                socket.close();
+            }
+        }
+    }
+}
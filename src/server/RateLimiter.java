@@ -0,0 +1,96 @@
+package server;
+
+import message.Messages;
+import message.Messages.MessageType;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+
+/**
+ * RateLimiter
+ *
+ * a token bucket for each message type, limiting what one client may send the
+ * server to the rates and bursts of a RateLimits. each bucket holds up to its
+ * burst of tokens and refills at its rate; a message takes a token from the
+ * bucket of its type, and is throttled if there's none.
+ *
+ * the type is read with Messages.peekType, so a flood is turned away before the
+ * receiver scans it with Messages.isValidMessage or takes the thread map's
+ * lock. messages without a recognizable type share the INVALID bucket.
+ *
+ * Thread safety argument:
+ *      RateLimiter is not thread safe. it is confined to its client's
+ *      ServerMessageReceiver thread
+ */
+public class RateLimiter {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final RateLimits limits;
+    private final double[] tokens;
+    private final long[] refilled;
+    //each bucket's tokens, and the nanoTime they were counted at, by the
+    //ordinal of the bucket's type
+    private final Counter[] throttledByType;
+    //messages of each type throttled for every client
+    private final Counter throttled;
+    //messages throttled for this client
+    private final NanoClock clock;
+    //where the buckets read the time from
+
+    /**
+     * make a limiter for a client, whose buckets start full
+     *
+     * @param clientName the client
+     * @param limits the client's limits
+     * @param metrics the server's metrics, which the limiter counts the
+     *          messages it throttles into, as "throttled.TYPE" for every client
+     *          and "clients.NAME.throttled" for this one
+     */
+    public RateLimiter(String clientName, RateLimits limits, MetricsRegistry metrics){
+        this(clientName, limits, metrics, NanoClock.SYSTEM);
+    }
+
+    //as above, reading the time from a clock
+    RateLimiter(String clientName, RateLimits limits, MetricsRegistry metrics, NanoClock clock){
+        this.limits = limits;
+        this.clock = clock;
+        MessageType[] types = MessageType.values();
+        this.tokens = new double[types.length];
+        this.refilled = new long[types.length];
+        this.throttledByType = new Counter[types.length];
+        long now = clock.nanoTime();
+        for(MessageType type : types){
+            tokens[type.ordinal()] = limits.burst(type);
+            refilled[type.ordinal()] = now;
+            throttledByType[type.ordinal()] = metrics.counter("throttled." + type);
+        }
+        this.throttled = metrics.counter("clients." + clientName + ".throttled");
+    }
+
+    /**
+     * take a token for a message, if its bucket has one
+     *
+     * @param message a message, which needn't be valid
+     * @return true if the message may be handled, false if it's throttled
+     */
+    public boolean admit(String message){
+        MessageType type = Messages.peekType(message);
+        int bucket = type.ordinal();
+        double rate = limits.rate(type);
+        if(Double.isInfinite(rate)){
+            return true;
+        }
+        long now = clock.nanoTime();
+        double available = Math.min(limits.burst(type),
+                tokens[bucket] + (now - refilled[bucket])*rate/NANOS_PER_SECOND);
+        refilled[bucket] = now;
+        if(available < 1){
+            tokens[bucket] = available;
+            throttledByType[bucket].increment();
+            throttled.increment();
+            return false;
+        }
+        tokens[bucket] = available - 1;
+        return true;
+    }
+}
@@ -0,0 +1,122 @@
+package server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import message.Messages;
+import message.Messages.MessageType;
+import metrics.MetricsRegistry;
+import sim.Ball;
+
+/**
+ * Testing strategy
+ *
+ * each test runs a limiter for client Alpha, with a clock it moves by hand
+ *
+ * admit():
+ *  1. a bucket starts full: a burst is admitted at once, and the message after
+ *     it is throttled and counted, for every client and for Alpha
+ *  2. a bucket refills at its rate, including fractions of a token, which
+ *     throttled messages don't use up
+ *  3. a bucket never holds more than its burst, however long it was idle
+ *  4. a rate of 0 never refills
+ *  5. unlimited types, like teleports by default, are always admitted and
+ *     never counted
+ *  6. each type has its own bucket, and messages without a type share INVALID's
+ */
+public class RateLimiterTests {
+
+    //a clock that only moves when told to
+    private static class TestClock implements NanoClock {
+        private long now = 0;
+
+        public long nanoTime(){
+            return now;
+        }
+
+        void advanceMillis(long millis){
+            now += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    private static final String HELLO = Messages.composeClientHello("Alpha", "Server");
+    private static final String QUERY = Messages.composePortalQueryMessage("Alpha", "Beta");
+    private static final String TELEPORT = Messages.composeWallTeleportMessage("Alpha", "Beta",
+            new Ball(1, 1, 1, 1));
+
+    private final TestClock clock = new TestClock();
+    private final MetricsRegistry metrics = new MetricsRegistry("test");
+
+    private RateLimiter limiter(String spec){
+        return new RateLimiter("Alpha", RateLimits.UNLIMITED.with(spec), metrics, clock);
+    }
+
+    //admit a message some number of times, returning how many were admitted
+    private static int admitted(RateLimiter limiter, String message, int times){
+        int count = 0;
+        for(int ii = 0; ii < times; ii ++){
+            count += limiter.admit(message) ? 1 : 0;
+        }
+        return count;
+    }
+
+    @Test public void testBurst(){
+        RateLimiter limiter = limiter("HELLO=10/5");
+        assertEquals(5, admitted(limiter, HELLO, 5));
+        assertFalse(limiter.admit(HELLO));
+        assertEquals(1, metrics.counter("throttled.HELLO").count());
+        assertEquals(1, metrics.counter("clients.Alpha.throttled").count());
+    }
+
+    @Test public void testRefill(){
+        RateLimiter limiter = limiter("HELLO=10/5");
+        assertEquals(5, admitted(limiter, HELLO, 5));
+        //10 a second is one every 100ms
+        clock.advanceMillis(250);
+        assertEquals(2, admitted(limiter, HELLO, 5));
+        //the half token left over is kept through the throttled tries
+        clock.advanceMillis(50);
+        assertTrue(limiter.admit(HELLO));
+        assertFalse(limiter.admit(HELLO));
+        assertEquals(4, metrics.counter("throttled.HELLO").count());
+    }
+
+    @Test public void testBurstCap(){
+        RateLimiter limiter = limiter("HELLO=10/5");
+        limiter.admit(HELLO);
+        clock.advanceMillis(TimeUnit.HOURS.toMillis(1));
+        assertEquals(5, admitted(limiter, HELLO, 10));
+    }
+
+    @Test public void testZeroRate(){
+        RateLimiter limiter = limiter("HELLO=0/2");
+        assertEquals(2, admitted(limiter, HELLO, 3));
+        clock.advanceMillis(TimeUnit.HOURS.toMillis(1));
+        assertFalse(limiter.admit(HELLO));
+    }
+
+    @Test public void testUnlimited(){
+        RateLimiter limiter = new RateLimiter("Alpha", RateLimits.DEFAULT, metrics, clock);
+        assertEquals(100000, admitted(limiter, TELEPORT, 100000));
+        assertEquals(0, metrics.counter("throttled.WALL_TELEPORT").count());
+        assertEquals(0, metrics.counter("clients.Alpha.throttled").count());
+    }
+
+    @Test public void testSeparateBuckets(){
+        RateLimiter limiter = limiter("HELLO=1/1,PORTAL_QUERY=1/2,INVALID=1/1");
+        assertTrue(limiter.admit(HELLO));
+        assertFalse(limiter.admit(HELLO));
+        assertEquals(2, admitted(limiter, QUERY, 3));
+        assertTrue(limiter.admit("not a message"));
+        assertFalse(limiter.admit("Alpha--->Beta:NO_SUCH_TYPE:"));
+        assertEquals(1, metrics.counter("throttled.HELLO").count());
+        assertEquals(1, metrics.counter("throttled.PORTAL_QUERY").count());
+        assertEquals(1, metrics.counter("throttled." + MessageType.INVALID).count());
+        assertEquals(3, metrics.counter("clients.Alpha.throttled").count());
+    }
+}
@@ -0,0 +1,159 @@
+package server;
+
+import java.util.Arrays;
+
+import message.Messages.MessageType;
+
+/**
+ * RateLimits
+ *
+ * how many messages of each type a client may send the server: a steady rate
+ * per second, and a burst that may arrive at once after the client has been
+ * quiet. see RateLimiter, which enforces them for one client.
+ *
+ * limits are given as a comma separated list of TYPE=RATE/BURST, or
+ * TYPE=unlimited, for example "HELLO=5/10,LINK=1/1". types not listed keep
+ * their default limits, which are far above what a board sends:
+ *
+ *      WALL_TELEPORT, PORTAL_TELEPORT  unlimited
+ *      PORTAL_QUERY, PORTAL_REPLY       200/s, bursts of 1000
+ *      every other type, even INVALID    20/s, bursts of 50
+ *
+ * a client queries and answers every other board when it joins, hence the
+ * large bursts of those. a message over its limit is dropped. a dropped
+ * teleport's ball would be lost, so teleports are never limited by default.
+ *
+ * RateLimits is immutable.
+ */
+public class RateLimits {
+
+    private static final int TYPES = MessageType.values().length;
+
+    /**
+     * no limits at all
+     */
+    public static final RateLimits UNLIMITED;
+
+    /**
+     * the default limits
+     */
+    public static final RateLimits DEFAULT;
+
+    static {
+        double[] rates = new double[TYPES];
+        double[] bursts = new double[TYPES];
+        Arrays.fill(rates, Double.POSITIVE_INFINITY);
+        Arrays.fill(bursts, Double.POSITIVE_INFINITY);
+        UNLIMITED = new RateLimits(rates.clone(), bursts.clone());
+        Arrays.fill(rates, 20);
+        Arrays.fill(bursts, 50);
+        for(MessageType type : new MessageType[] { MessageType.WALL_TELEPORT, MessageType.PORTAL_TELEPORT }){
+            rates[type.ordinal()] = Double.POSITIVE_INFINITY;
+            bursts[type.ordinal()] = Double.POSITIVE_INFINITY;
+        }
+        for(MessageType type : new MessageType[] { MessageType.PORTAL_QUERY, MessageType.PORTAL_REPLY }){
+            rates[type.ordinal()] = 200;
+            bursts[type.ordinal()] = 1000;
+        }
+        DEFAULT = new RateLimits(rates, bursts);
+    }
+
+    private final double[] rates;
+    private final double[] bursts;
+    //messages per second and most messages at once, by the ordinal of their type
+
+    private RateLimits(double[] rates, double[] bursts){
+        this.rates = rates;
+        this.bursts = bursts;
+    }
+
+    /**
+     * @param type a message type
+     * @param rate the messages of that type a client may send per second, >= 0
+     * @param burst the most messages of that type a client may send at once, >= 1
+     * @return these limits, with the limit of one type changed
+     */
+    public RateLimits with(MessageType type, double rate, double burst){
+        if(!(rate >= 0)){
+            throw new IllegalArgumentException("requires nonnegative rate: received \"" + rate + "\"");
+        }
+        if(!(burst >= 1)){
+            throw new IllegalArgumentException("requires burst of at least 1: received \"" + burst + "\"");
+        }
+        double[] newRates = rates.clone();
+        double[] newBursts = bursts.clone();
+        newRates[type.ordinal()] = rate;
+        newBursts[type.ordinal()] = burst;
+        return new RateLimits(newRates, newBursts);
+    }
+
+    /**
+     * @param spec a comma separated list of TYPE=RATE/BURST or TYPE=unlimited
+     * @return these limits, with the limits of the listed types changed
+     * @throws IllegalArgumentException if the list is malformed
+     */
+    public RateLimits with(String spec){
+        RateLimits limits = this;
+        for(String entry : spec.split(",")){
+            String[] sides = entry.trim().split("=");
+            if(sides.length != 2){
+                throw new IllegalArgumentException("rate limit \"" + entry + "\" is not TYPE=RATE/BURST");
+            }
+            MessageType type;
+            try{
+                type = MessageType.valueOf(sides[0].trim().toUpperCase());
+            }catch(IllegalArgumentException e){
+                throw new IllegalArgumentException("unknown message type \"" + sides[0] + "\"");
+            }
+            String limit = sides[1].trim();
+            if(limit.equals("unlimited")){
+                limits = limits.with(type, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+                continue;
+            }
+            String[] numbers = limit.split("/");
+            if(numbers.length != 2){
+                throw new IllegalArgumentException("rate limit \"" + entry + "\" is not TYPE=RATE/BURST");
+            }
+            try{
+                limits = limits.with(type, Double.parseDouble(numbers[0]), Double.parseDouble(numbers[1]));
+            }catch(NumberFormatException e){
+                throw new IllegalArgumentException("unable to parse rate limit \"" + entry + "\"");
+            }
+        }
+        return limits;
+    }
+
+    /**
+     * @param type a message type
+     * @return the messages of that type a client may send per second, which
+     *          may be infinite
+     */
+    public double rate(MessageType type){
+        return rates[type.ordinal()];
+    }
+
+    /**
+     * @param type a message type
+     * @return the most messages of that type a client may send at once, which
+     *          may be infinite
+     */
+    public double burst(MessageType type){
+        return bursts[type.ordinal()];
+    }
+
+    @Override public String toString(){
+        StringBuilder text = new StringBuilder();
+        for(MessageType type : MessageType.values()){
+            if(text.length() > 0){
+                text.append(',');
+            }
+            text.append(type).append('=');
+            if(Double.isInfinite(rate(type))){
+                text.append("unlimited");
+            }else{
+                text.append(rate(type)).append('/').append(burst(type));
+            }
+        }
+        return text.toString();
+    }
+}
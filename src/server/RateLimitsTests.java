@@ -0,0 +1,75 @@
+package server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import message.Messages.MessageType;
+
+/**
+ * Testing strategy
+ *
+ * the defaults:
+ *  1. portal queries and replies, and everything else have the documented
+ *     limits, and teleports have none; UNLIMITED has none at all
+ *
+ * with(spec):
+ *  2. listed types change, in any case and with spaces around entries, and
+ *     the rest keep their limits; "unlimited" lifts a type's limit
+ *  3. toString() reads back as the same limits
+ *  4. malformed specs are rejected: missing or extra '=' or '/', unknown
+ *     types, numbers that don't parse, and rates < 0 or bursts < 1
+ */
+public class RateLimitsTests {
+
+    @Test public void testDefaults(){
+        assertTrue(Double.isInfinite(RateLimits.DEFAULT.rate(MessageType.WALL_TELEPORT)));
+        assertTrue(Double.isInfinite(RateLimits.DEFAULT.burst(MessageType.PORTAL_TELEPORT)));
+        assertEquals(200, RateLimits.DEFAULT.rate(MessageType.PORTAL_QUERY), 0);
+        assertEquals(1000, RateLimits.DEFAULT.burst(MessageType.PORTAL_REPLY), 0);
+        assertEquals(20, RateLimits.DEFAULT.rate(MessageType.HELLO), 0);
+        assertEquals(50, RateLimits.DEFAULT.burst(MessageType.INVALID), 0);
+        for(MessageType type : MessageType.values()){
+            assertTrue(Double.isInfinite(RateLimits.UNLIMITED.rate(type)));
+            assertTrue(Double.isInfinite(RateLimits.UNLIMITED.burst(type)));
+        }
+    }
+
+    @Test public void testWithSpec(){
+        RateLimits limits = RateLimits.DEFAULT.with(" hello=5/10 , PORTAL_QUERY=unlimited,Link=0.5/1");
+        assertEquals(5, limits.rate(MessageType.HELLO), 0);
+        assertEquals(10, limits.burst(MessageType.HELLO), 0);
+        assertTrue(Double.isInfinite(limits.rate(MessageType.PORTAL_QUERY)));
+        assertEquals(0.5, limits.rate(MessageType.LINK), 0);
+        assertEquals(1, limits.burst(MessageType.LINK), 0);
+        assertEquals(200, limits.rate(MessageType.PORTAL_REPLY), 0);
+        //the original is unchanged
+        assertEquals(20, RateLimits.DEFAULT.rate(MessageType.HELLO), 0);
+    }
+
+    @Test public void testToStringReadsBack(){
+        RateLimits limits = RateLimits.DEFAULT.with("HELLO=5/10,PORTAL_QUERY=unlimited");
+        RateLimits read = RateLimits.UNLIMITED.with(limits.toString());
+        for(MessageType type : MessageType.values()){
+            assertEquals(limits.rate(type), read.rate(type), 0);
+            if(!Double.isInfinite(limits.rate(type))){
+                assertEquals(limits.burst(type), read.burst(type), 0);
+            }
+        }
+    }
+
+    @Test public void testMalformed(){
+        String[] specs = { "", "HELLO", "HELLO=5/10=3", "HELLO=5", "HELLO=5/10/15", "NO_SUCH_TYPE=5/10",
+                "HELLO=five/10", "HELLO=5/", "HELLO=-1/10", "HELLO=5/0.5", "HELLO=NaN/10",
+                "HELLO=5/10,,LINK=1/1" };
+        for(String spec : specs){
+            try{
+                RateLimits.DEFAULT.with(spec);
+                assertTrue("accepted \"" + spec + "\"", false);
+            }catch(IllegalArgumentException e){
+                assertTrue(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package server;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import message.LaneQueue;
+import message.Messages;
+import message.Messages.MessageType;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+
+/**
+ * SendQueue
+ *
+ * the queue of messages waiting for a client's ServerMessageSender. teleports
+ * are sent ahead of other messages, see LaneQueue. it holds up to capacity
+ * messages, counting both lanes, without complaint. past that the client is
+ * falling behind, and what happens to a new message depends on its type:
+ *
+ *      HELLO, PORTAL_QUERY and PORTAL_REPLY messages are redundant -- hellos
+ *      and queries are resent, and a newer reply or hello supersedes an older
+ *      one. under the COALESCE policy a queued message with the same routing
+ *      and type is replaced by the new one, which goes to the back of the
+ *      queue, and the new one is dropped if there is none. under the DROP
+ *      policy the new one is dropped
+ *
+ *      every other message is queued anyway, over capacity. teleports carry
+ *      balls, and links, connections and disconnections change the boards, so
+ *      none of them are ever dropped
+ *
+ * a queue that stays at or over capacity for longer than its overload timeout
+ * without its sender taking a message, or grows to HARD_LIMIT times its
+ * capacity, is overloaded: it is cleared and closed, its sender is handed a
+ * disconnect notice for its own client so that it stops, and its overload
+ * handler is run to disconnect the client. a closed queue drops everything
+ * offered to it.
+ *
+ * every way of adding a message goes through offer(String), and none of them
+ * block or throw when the queue is full.
+ *
+ * Thread safety argument:
+ *      every method is synchronized on the queue, as in LaneQueue, so checking
+ *      the size, coalescing and adding happen together
+ */
+public class SendQueue extends LaneQueue {
+
+    /**
+     * what to do with redundant messages when the queue is full
+     */
+    public enum Policy {
+        COALESCE, DROP
+    };
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final long DEFAULT_OVERLOAD_MILLIS = 5000;
+    public static final int HARD_LIMIT = 4;
+    //a queue this many times its capacity is overloaded at once
+
+    private final String clientName;
+    private final int capacity;
+    private final Policy policy;
+    private final long overloadNanos;
+    private final Counter coalesced;
+    private final Counter dropped;
+    private final Counter overCapacity;
+    private final Counter overloads;
+    //counts for every client, of redundant messages coalesced and dropped,
+    //other messages queued over capacity, and queues that were overloaded
+    private Runnable overloadHandler = null;
+    //run when the queue is overloaded, or null
+    private long fullSince = -1;
+    //the nanoTime the queue was last found at capacity, if it has been there
+    //since and its sender hasn't taken a message since, or -1
+    private final NanoClock clock;
+    //where fullSince is read from
+    private volatile boolean closed = false;
+
+    /**
+     * make an empty send queue
+     *
+     * @param clientName the name of the client the queue's messages are sent to
+     * @param capacity the number of messages the queue holds before it's full,
+     *          must be > 0
+     * @param policy what to do with redundant messages when the queue is full
+     * @param overloadMillis how long the queue may stay full before the client
+     *          is disconnected, must be >= 0
+     * @param metrics the server's metrics, which the queue counts the messages
+     *          it coalesces, drops and queues over capacity, and its overloads,
+     *          into, and records how long each lane's messages wait in
+     */
+    public SendQueue(String clientName, int capacity, Policy policy, long overloadMillis, MetricsRegistry metrics){
+        this(clientName, capacity, policy, overloadMillis, metrics, NanoClock.SYSTEM);
+    }
+
+    //as above, reading the time from a clock
+    SendQueue(String clientName, int capacity, Policy policy, long overloadMillis, MetricsRegistry metrics,
+            NanoClock clock){
+        super(metrics.histogram("sendQueues.teleportWaitNanos"), metrics.histogram("sendQueues.controlWaitNanos"));
+        if(capacity <= 0){
+            throw new IllegalArgumentException("requires positive capacity: received \"" + capacity + "\"");
+        }
+        if(overloadMillis < 0){
+            throw new IllegalArgumentException("requires nonnegative overloadMillis: received \""
+                    + overloadMillis + "\"");
+        }
+        this.clientName = clientName;
+        this.clock = clock;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.overloadNanos = TimeUnit.MILLISECONDS.toNanos(overloadMillis);
+        this.coalesced = metrics.counter("sendQueues.coalesced");
+        this.dropped = metrics.counter("sendQueues.dropped");
+        this.overCapacity = metrics.counter("sendQueues.overCapacity");
+        this.overloads = metrics.counter("sendQueues.overloads");
+    }
+
+    /**
+     * @param handler run, on the thread that found the queue overloaded, to
+     *          disconnect its client. it must not block for long
+     */
+    public synchronized void setOverloadHandler(Runnable handler){
+        this.overloadHandler = handler;
+    }
+
+    /**
+     * @return the number of messages the queue holds before it's full
+     */
+    public int capacity(){
+        return capacity;
+    }
+
+    /**
+     * @return true if the queue was overloaded, and drops everything offered to it
+     */
+    public boolean isClosed(){
+        return closed;
+    }
+
+    /**
+     * queue a message, coalesce it with a queued one or drop it, as described
+     * above. never blocks
+     *
+     * @param message the message
+     * @return true if the message was queued, false if it was dropped
+     */
+    @Override public synchronized boolean offer(String message){
+        if(closed){
+            return false;
+        }
+        int size = size();
+        if(size < capacity){
+            fullSince = -1;
+            return super.offer(message);
+        }
+        long now = clock.nanoTime();
+        if(fullSince < 0){
+            fullSince = now;
+        }
+        if(size >= HARD_LIMIT*capacity || now - fullSince > overloadNanos){
+            overload();
+            return false;
+        }
+        if(!isRedundant(message)){
+            overCapacity.increment();
+            return super.offer(message);
+        }
+        if(policy == Policy.COALESCE && removeSuperseded(message)){
+            coalesced.increment();
+            return super.offer(message);
+        }
+        dropped.increment();
+        return false;
+    }
+
+    @Override public boolean add(String message){
+        return offer(message);
+    }
+
+    /**
+     * take the next message, as LaneQueue does. a sender taking messages is
+     * keeping up, however full the queue is, so the overload timeout starts
+     * over
+     */
+    @Override public synchronized String poll(){
+        String message = super.poll();
+        if(message != null){
+            fullSince = -1;
+        }
+        return message;
+    }
+
+    //helper method -- true if a message is one that's resent or superseded
+    private static boolean isRedundant(String message){
+        MessageType type = Messages.parseType(message);
+        return type == MessageType.HELLO || type == MessageType.PORTAL_QUERY
+                || type == MessageType.PORTAL_REPLY;
+    }
+
+    //helper method -- remove the first queued message with the same routing and
+    //type as a new one. returns false if there is none
+    private boolean removeSuperseded(String message){
+        //names can't contain colons, so the routing and type end at the second one
+        String key = message.substring(0, message.indexOf(':', message.indexOf(':') + 1) + 1);
+        for(Iterator<String> it = iterator(); it.hasNext();){
+            if(it.next().startsWith(key)){
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //helper method -- close the queue, stop its sender and disconnect its client
+    private void overload(){
+        closed = true;
+        overloads.increment();
+        System.err.println("client " + clientName + " is overloaded with " + size()
+                + " messages waiting; disconnecting it");
+        clear();
+        //the sender stops when it sees its own client's disconnection
+        super.offer(Messages.composeDisconnectMessage("Server", clientName, clientName));
+        if(overloadHandler != null){
+            overloadHandler.run();
+        }
+    }
+}
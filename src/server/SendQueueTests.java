@@ -0,0 +1,204 @@
+package server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import message.Messages;
+import metrics.MetricsRegistry;
+import sim.Ball;
+import sim.Wall.WallType;
+
+/**
+ * Testing strategy
+ *
+ * each test fills a queue of capacity 2 for client Alpha, with a clock it
+ * moves by hand
+ *
+ * under capacity:
+ *  1. every message is queued, and nothing is counted
+ *
+ * at capacity:
+ *  2. COALESCE replaces a queued hello, query or reply with the same routing
+ *     and type by the new one, at the back, and drops the new one if there's
+ *     none
+ *  3. DROP drops new hellos, queries and replies
+ *  4. teleports and links are queued anyway, over capacity
+ *
+ * overload:
+ *  5. at HARD_LIMIT times capacity, the queue is cleared and closed, holds only
+ *     the disconnect notice for its sender, runs its handler once, and drops
+ *     everything after
+ *  6. staying full for longer than the timeout overloads the queue
+ *  7. the sender taking a message starts the timeout over, however full the
+ *     queue stays
+ *
+ * the constructor:
+ *  8. rejects capacities <= 0 and negative timeouts
+ */
+public class SendQueueTests {
+
+    private static final long TIMEOUT_MILLIS = 100;
+
+    //a clock that only moves when told to
+    private static class TestClock implements NanoClock {
+        private long now = 0;
+
+        public long nanoTime(){
+            return now;
+        }
+
+        void advanceMillis(long millis){
+            now += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    private final TestClock clock = new TestClock();
+    private final MetricsRegistry metrics = new MetricsRegistry("test");
+    private final int[] overloadsHandled = { 0 };
+
+    private SendQueue queue(SendQueue.Policy policy){
+        SendQueue queue = new SendQueue("Alpha", 2, policy, TIMEOUT_MILLIS, metrics, clock);
+        queue.setOverloadHandler(new Runnable(){
+            public void run(){
+                overloadsHandled[0] ++;
+            }
+        });
+        return queue;
+    }
+
+    private static String hello(){
+        return Messages.composeServerHello("Server", "Alpha", new HashSet<String>(Arrays.asList("Alpha", "Beta")));
+    }
+
+    private static String query(String sender){
+        return Messages.composePortalQueryMessage(sender, "Alpha");
+    }
+
+    private static String teleport(){
+        return Messages.composeWallTeleportMessage("Beta", "Alpha", new Ball(1, 1, 1, 1));
+    }
+
+    private static String link(){
+        return Messages.composeLinkMessage("Server", "Alpha", "Beta", WallType.LEFT);
+    }
+
+    //the messages the sender would take, in order
+    private static List<String> drain(SendQueue queue){
+        List<String> messages = new ArrayList<String>();
+        queue.drainTo(messages);
+        return messages;
+    }
+
+    private long count(String name){
+        return metrics.counter(name).count();
+    }
+
+    @Test public void testUnderCapacity(){
+        SendQueue queue = queue(SendQueue.Policy.DROP);
+        assertEquals(2, queue.capacity());
+        assertTrue(queue.offer(hello()));
+        assertTrue(queue.offer(hello()));
+        assertEquals(Arrays.asList(hello(), hello()), drain(queue));
+        assertEquals(0, count("sendQueues.dropped") + count("sendQueues.coalesced")
+                + count("sendQueues.overCapacity"));
+    }
+
+    @Test public void testCoalesce(){
+        SendQueue queue = queue(SendQueue.Policy.COALESCE);
+        queue.offer(query("Beta"));
+        queue.offer(hello());
+        String newer = Messages.composeServerHello("Server", "Alpha", new HashSet<String>(Arrays.asList("Alpha")));
+        assertTrue(queue.offer(newer));
+        assertEquals(1, count("sendQueues.coalesced"));
+        //no query from Gamma is queued to replace
+        assertFalse(queue.offer(query("Gamma")));
+        assertEquals(1, count("sendQueues.dropped"));
+        assertEquals(Arrays.asList(query("Beta"), newer), drain(queue));
+    }
+
+    @Test public void testDrop(){
+        SendQueue queue = queue(SendQueue.Policy.DROP);
+        queue.offer(hello());
+        queue.offer(query("Beta"));
+        assertFalse(queue.offer(hello()));
+        assertFalse(queue.offer(query("Beta")));
+        assertEquals(2, count("sendQueues.dropped"));
+        assertEquals(0, count("sendQueues.coalesced"));
+        assertEquals(Arrays.asList(hello(), query("Beta")), drain(queue));
+    }
+
+    @Test public void testOverCapacity(){
+        SendQueue queue = queue(SendQueue.Policy.DROP);
+        queue.offer(hello());
+        queue.offer(hello());
+        assertTrue(queue.offer(teleport()));
+        assertTrue(queue.offer(link()));
+        assertEquals(4, queue.size());
+        assertEquals(2, count("sendQueues.overCapacity"));
+        //teleports go ahead of the rest
+        assertEquals(Arrays.asList(teleport(), hello(), hello(), link()), drain(queue));
+        assertFalse(queue.isClosed());
+    }
+
+    @Test public void testHardLimit(){
+        SendQueue queue = queue(SendQueue.Policy.COALESCE);
+        for(int ii = 0; ii < SendQueue.HARD_LIMIT*2; ii ++){
+            assertTrue(queue.offer(teleport()));
+        }
+        assertFalse(queue.isClosed());
+        assertFalse(queue.offer(teleport()));
+        assertTrue(queue.isClosed());
+        assertEquals(1, overloadsHandled[0]);
+        assertEquals(1, count("sendQueues.overloads"));
+        assertFalse(queue.offer(link()));
+        assertEquals(Arrays.asList(Messages.composeDisconnectMessage("Server", "Alpha", "Alpha")), drain(queue));
+        assertEquals(1, overloadsHandled[0]);
+    }
+
+    @Test public void testOverloadTimeout(){
+        SendQueue queue = queue(SendQueue.Policy.COALESCE);
+        queue.offer(hello());
+        queue.offer(link());
+        assertTrue(queue.offer(teleport()));
+        clock.advanceMillis(TIMEOUT_MILLIS);
+        assertTrue(queue.offer(teleport()));
+        clock.advanceMillis(1);
+        assertFalse(queue.offer(teleport()));
+        assertTrue(queue.isClosed());
+        assertEquals(1, overloadsHandled[0]);
+    }
+
+    @Test public void testTakingRestartsTimeout(){
+        SendQueue queue = queue(SendQueue.Policy.COALESCE);
+        queue.offer(link());
+        queue.offer(link());
+        for(int ii = 0; ii < 10; ii ++){
+            //the client keeps up, a message at a time, with the queue full
+            assertTrue(queue.offer(teleport()));
+            clock.advanceMillis(TIMEOUT_MILLIS/2);
+            queue.poll();
+        }
+        assertFalse(queue.isClosed());
+        assertTrue(queue.offer(teleport()));
+        clock.advanceMillis(TIMEOUT_MILLIS + 1);
+        assertFalse(queue.offer(teleport()));
+        assertTrue(queue.isClosed());
+    }
+
+    @Test(expected=IllegalArgumentException.class) public void testCapacityMustBePositive(){
+        new SendQueue("Alpha", 0, SendQueue.Policy.DROP, TIMEOUT_MILLIS, metrics);
+    }
+
+    @Test(expected=IllegalArgumentException.class) public void testTimeoutMustBeNonnegative(){
+        new SendQueue("Alpha", 2, SendQueue.Policy.DROP, -1, metrics);
+    }
+}
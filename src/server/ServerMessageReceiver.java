@@ -3,12 +3,19 @@ package server;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import sim.Wall;
 import message.Messages;
 import message.Messages.MessageType;
+import message.TeleportTrace;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+import profiling.RoutingEvent;
+import BoardGrammar.BoardIndex;
 
 /**
  * class for handling of incoming traffic from clients
@@ -19,12 +26,36 @@ import message.Messages.MessageType;
  *                            this message is sent to the severed board
  *          disconnection  -- not really a message, but when the client disconnects,
  *                            that information has to propagate to other users.
+ *          portal query   -- answered by the server if the queried board is in the
+ *                            server's board index, made from the board file its
+ *                            client announced the hash of, and forwarded otherwise
  */
 public class ServerMessageReceiver implements Runnable{
     
+    private static final RoutingEvent ROUTING_EVENTS = new RoutingEvent();
+    //never committed; only asked whether routing events are enabled
+    
     private final String clientName;
     private final Map<String, BlockingQueue<String>> threadMap;
     private final BufferedReader in;
+    private final BoardIndex boardIndex;
+    //null if the server has no board index
+    private final MetricsRegistry metrics;
+    private final Counter messagesReceived;
+    //messages received from every client
+    private final Counter bytesReceived;
+    //bytes received from this client, counting line ends
+    private final Counter portalQueriesAnswered;
+    //portal queries answered from the board index
+    private final RateLimiter limiter;
+    //throttles the client's messages before they're parsed
+    private final Map<String, Integer> boardSizes;
+    //the side length of each connected client's board, guarded by threadMap's lock
+    private final Counter linksRefused;
+    //link requests refused because the boards differ in size
+    private final Map<String, String> boardHashes;
+    //the hash of each connected client's board file, for those that announced
+    //one, guarded by threadMap's lock
  
     /**
      * construct a message receiver for parsing and routing messages received
@@ -34,19 +65,115 @@ public class ServerMessageReceiver implements Runnable{
      * @param inputReader -- the inputStream for this thread's client
      * @param threadMap -- a mapping from client names to sender queues, for 
      *                      routing messages
+     * @param boardIndex -- summaries of known boards for answering portal queries,
+     *                      or null. must not be modified while the server runs
+     * @param metrics -- the server's metrics, which the receiver counts the messages
+     *                      and bytes it receives into, and removes this client's
+     *                      metrics from when it disconnects
+     */
+    public ServerMessageReceiver(String clientName, BufferedReader inputReader, 
+            Map<String, BlockingQueue<String>> map, BoardIndex boardIndex, MetricsRegistry metrics){
+        this(clientName, inputReader, map, boardIndex, metrics, RateLimits.UNLIMITED);
+    }
+    
+    /**
+     * construct a message receiver for parsing and routing messages received
+     * from the client, which throttles the client's messages
+     * 
+     * @param clientName -- the name of this thread's client ('s board)
+     * @param inputReader -- the inputStream for this thread's client
+     * @param threadMap -- a mapping from client names to sender queues, for 
+     *                      routing messages
+     * @param boardIndex -- summaries of known boards for answering portal queries,
+     *                      or null. must not be modified while the server runs
+     * @param metrics -- the server's metrics, which the receiver counts the messages
+     *                      and bytes it receives and throttles into, and removes
+     *                      this client's metrics from when it disconnects
+     * @param limits -- how many messages of each type the client may send
      */
     public ServerMessageReceiver(String clientName, BufferedReader inputReader, 
-            Map<String, BlockingQueue<String>> map){
+            Map<String, BlockingQueue<String>> map, BoardIndex boardIndex, MetricsRegistry metrics,
+            RateLimits limits){
+        this(clientName, inputReader, map, boardIndex, metrics, limits, new HashMap<String, Integer>());
+    }
+    
+    /**
+     * construct a message receiver for parsing and routing messages received
+     * from the client, which throttles the client's messages and refuses to
+     * link boards of different sizes. no board file hashes are known, so every
+     * portal query is forwarded
+     * 
+     * @param clientName -- the name of this thread's client ('s board)
+     * @param inputReader -- the inputStream for this thread's client
+     * @param threadMap -- a mapping from client names to sender queues, for 
+     *                      routing messages
+     * @param boardIndex -- summaries of known boards for answering portal queries,
+     *                      or null. must not be modified while the server runs
+     * @param metrics -- the server's metrics, which the receiver counts the messages
+     *                      and bytes it receives and throttles into, and removes
+     *                      this client's metrics from when it disconnects
+     * @param limits -- how many messages of each type the client may send
+     * @param boardSizes -- the side length of each connected client's board,
+     *                      guarded by threadMap's lock. this client's entry is
+     *                      removed when it disconnects
+     */
+    public ServerMessageReceiver(String clientName, BufferedReader inputReader, 
+            Map<String, BlockingQueue<String>> map, BoardIndex boardIndex, MetricsRegistry metrics,
+            RateLimits limits, Map<String, Integer> boardSizes){
+        this(clientName, inputReader, map, boardIndex, metrics, limits, boardSizes,
+                new HashMap<String, String>());
+    }
+    
+    /**
+     * construct a message receiver for parsing and routing messages received
+     * from the client, which throttles the client's messages and refuses to
+     * link boards of different sizes
+     * 
+     * @param clientName -- the name of this thread's client ('s board)
+     * @param inputReader -- the inputStream for this thread's client
+     * @param threadMap -- a mapping from client names to sender queues, for 
+     *                      routing messages
+     * @param boardIndex -- summaries of known boards for answering portal queries,
+     *                      or null. must not be modified while the server runs
+     * @param metrics -- the server's metrics, which the receiver counts the messages
+     *                      and bytes it receives and throttles into, and removes
+     *                      this client's metrics from when it disconnects
+     * @param limits -- how many messages of each type the client may send
+     * @param boardSizes -- the side length of each connected client's board,
+     *                      guarded by threadMap's lock. this client's entry is
+     *                      updated by its later hellos, and removed when it
+     *                      disconnects
+     * @param boardHashes -- the hash of each connected client's board file, as
+     *                      BoardIndex.contentHash() gives it, guarded by
+     *                      threadMap's lock. a query is only answered from the
+     *                      index for a client with the indexed board's hash.
+     *                      this client's entry is updated and removed like its
+     *                      size
+     */
+    public ServerMessageReceiver(String clientName, BufferedReader inputReader, 
+            Map<String, BlockingQueue<String>> map, BoardIndex boardIndex, MetricsRegistry metrics,
+            RateLimits limits, Map<String, Integer> boardSizes, Map<String, String> boardHashes){
         this.clientName = clientName;
+        this.boardSizes = boardSizes;
+        this.boardHashes = boardHashes;
         this.threadMap = map;
         this.in = inputReader;
+        this.boardIndex = boardIndex;
+        this.metrics = metrics;
+        this.messagesReceived = metrics.counter("messages.received");
+        this.bytesReceived = metrics.counter("clients." + clientName + ".bytesReceived");
+        this.portalQueriesAnswered = metrics.counter("portalQueries.answered");
+        this.limiter = new RateLimiter(clientName, limits, metrics);
+        this.linksRefused = metrics.counter("links.refused");
     }
     
     /**
      * loop while monitoring the input stream - checks that messages conform to
      * messaging grammar and searches for the input queue of each message's 
      * listed recipient. If found, the message will be added to the recipient's sender
-     * queue. Otherwise, the message is discarded.
+     * queue. Otherwise, the message is discarded. messages over the client's
+     * rate limits are discarded before they're checked, and requests to link
+     * boards of different sizes are refused.
      * 
      * if this thread's client disconnects, the thread will compose disconnect
      * notifications and send them to all clients. The sending queue associated with
@@ -58,23 +185,42 @@ public class ServerMessageReceiver implements Runnable{
             greet();
             try{
                 for(String message = in.readLine(); message != null; message = in.readLine()){
+                    messagesReceived.increment();
+                    bytesReceived.add(message.length() + 1);
+                    if(!limiter.admit(message)){
+                        continue;
+                    }
                     message = message.trim();
                     //System.out.println("(message received) " + message); //debug
                     //thread simply forwards all messages to addressed recipient
                     if(Messages.isValidMessage(message)){
                         String recipient = Messages.parseReceiver(message);
+                        //the message is valid, so this is its type
+                        MessageType type = Messages.peekType(message);
                         if(recipient.equals("Server")){
                             
                             //if this is a message for the server, compose and fwd a response
-                            if(Messages.parseType(message) == MessageType.HELLO){
+                            if(type == MessageType.HELLO){
+                                //a client says hello again when it loads another board
+                                announce(message);
                                 greet();
-                            } else if(Messages.parseType(message) == MessageType.LINK){
+                            } else if(type == MessageType.LINK){
                                 String sender = Messages.parseSender(message); //Guy who sent the message
                                 String wallType = Messages.parseArguments(message)[1]; //To whom sender wants to connect
                                 String receiver = Messages.parseArguments(message)[0];
                                 //TODO
                                 //TODO
                                 //TODO CHECK IF RECEIVER, SENDER NAMES ARE VALID!
+                                boolean linkable;
+                                synchronized(threadMap){
+                                    linkable = PingballServer.linkable(boardSizes, sender, receiver);
+                                }
+                                if(!linkable){
+                                    linksRefused.increment();
+                                    System.err.println("refused to link " + sender + " and " + receiver
+                                            + ": their boards are different sizes");
+                                    continue;
+                                }
                                 String forward = Messages.composeLinkMessage(sender, receiver, 
                                         sender, Wall.oppositeType(Wall.stringToWallType(wallType)));
                                 forwardMessage(receiver, forward);
@@ -83,9 +229,13 @@ public class ServerMessageReceiver implements Runnable{
                                         receiver, Wall.stringToWallType(wallType));
                                 forwardMessage(sender, back);                                
                             }                                                        
+                        } else if(type == MessageType.PORTAL_QUERY
+                                && answerPortalQuery(Messages.parseSender(message), recipient)){
+                            //the index answered for the recipient
                         } else {
-                            //otherwise forward the message to the appropriate client
-                            forwardMessage(recipient, message);
+                            //otherwise forward the message to the appropriate client,
+                            //stamping it if it's a traced teleport
+                            forwardMessage(recipient, TeleportTrace.stamp(message));
                         }
                     }
                 }
@@ -97,7 +247,15 @@ public class ServerMessageReceiver implements Runnable{
                         threadMap.get(client).add(
                                 Messages.composeDisconnectMessage("Server", client, this.clientName));
                     }
+                    //this client's metrics go first, so they can't be mistaken
+                    //for those of a new client with the same name
+                    metrics.remove("clients." + clientName + ".sendQueue");
+                    metrics.remove("clients." + clientName + ".bytesSent");
+                    metrics.remove("clients." + clientName + ".bytesReceived");
+                    metrics.remove("clients." + clientName + ".throttled");
                     threadMap.remove(this.clientName);
+                    boardSizes.remove(this.clientName);
+                    boardHashes.remove(this.clientName);
                 }
                 //don't bother closing the input stream; the sender thread will close the socket
                 //in.close();
@@ -107,6 +265,60 @@ public class ServerMessageReceiver implements Runnable{
         }
     }
     
+    //record the board size and board file hash this client announced in a
+    //later hello. a client that announces no hash has none recorded, so the
+    //index no longer answers for it
+    private void announce(String hello){
+        int size = Messages.parseClientHelloSize(hello);
+        String hash = Messages.parseClientHelloHash(hello);
+        synchronized(threadMap){
+            if(size > 0){
+                boardSizes.put(clientName, size);
+            }
+            if(hash != null){
+                boardHashes.put(clientName, hash);
+            }else{
+                boardHashes.remove(clientName);
+            }
+        }
+    }
+    
+    //reply to a portal query on behalf of its recipient, if the recipient is
+    //connected and its board is indexed from the board file it runs. returns
+    //true if the query was dealt with
+    private boolean answerPortalQuery(String sender, String recipient){
+        if(boardIndex == null){
+            return false;
+        }
+        List<String> portals = boardIndex.portalNames(recipient);
+        if(portals == null){
+            return false;
+        }
+        synchronized(threadMap){
+            //a query to a board that isn't connected goes unanswered, as before
+            if(!threadMap.containsKey(recipient)){
+                return true;
+            }
+            //a client running another file than the indexed one, or not saying
+            //which, answers for itself
+            if(!boardIndex.describes(recipient, boardHashes.get(recipient))){
+                return false;
+            }
+        }
+        if(ROUTING_EVENTS.isEnabled()){
+            RoutingEvent event = new RoutingEvent();
+            event.sender = sender;
+            event.recipient = recipient;
+            event.messageType = MessageType.PORTAL_QUERY.toString();
+            event.decision = RoutingEvent.ANSWERED;
+            event.queueDepth = -1;
+            event.commit();
+        }
+        forwardMessage(sender, Messages.composePortalResponseMessage(recipient, sender, portals));
+        portalQueriesAnswered.increment();
+        return true;
+    }
+    
     //compose and forward a Server greeting to this thread's client
     private void greet(){
         forwardMessage(clientName, composeHelloReply());
@@ -122,13 +334,29 @@ public class ServerMessageReceiver implements Runnable{
     
     //forward a message to the sender thread of the specified client
     private void forwardMessage(String clientRecipient, String message){
+        //null unless a recording wants routing events
+        RoutingEvent event = ROUTING_EVENTS.isEnabled() ? new RoutingEvent() : null;
+        int queueDepth = -1;
+        boolean queued = false;
         //forward the message to the appropriate client
         synchronized(threadMap){
         
             if(threadMap.get(clientRecipient) != null){
-                //forward to sender
-                threadMap.get(clientRecipient).add(message);
+                //forward to sender. a full queue may coalesce or drop it
+                queued = threadMap.get(clientRecipient).add(message);
+                if(event != null){
+                    queueDepth = threadMap.get(clientRecipient).size();
+                }
             }
         }
+        if(event != null){
+            event.sender = Messages.parseSender(message);
+            event.recipient = clientRecipient;
+            event.messageType = Messages.parseType(message).toString();
+            event.decision = queued ? RoutingEvent.FORWARDED : RoutingEvent.DROPPED;
+            event.queueDepth = queueDepth;
+            event.commit();
+        }
     }
+
 }
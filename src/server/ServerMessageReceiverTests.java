@@ -0,0 +1,187 @@
+package server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+
+import BoardGrammar.BoardIndex;
+import message.Messages;
+import message.Messages.MessageType;
+import metrics.MetricsRegistry;
+import sim.Wall.WallType;
+
+/**
+ * Testing strategy
+ *
+ * each test runs a receiver for client Alpha over a scripted input, then looks
+ * at what was queued for each client
+ *
+ * link requests:
+ *  1. boards of the same size are linked, each told to connect across
+ *     opposite walls
+ *  2. boards of different sizes are not, and the refusal is counted
+ *  3. a client leaving takes its board size with it
+ *
+ * portal queries, with the queried board in the server's index:
+ *  4. answered from the index when its client announced the indexed file's
+ *     hash, and counted
+ *  5. forwarded when its client announced another hash, or none
+ *  6. a later hello replaces the client's hash, and one without a hash
+ *     forgets it
+ *  7. a client leaving takes its hash with it
+ */
+public class ServerMessageReceiverTests {
+
+    private final Map<String, BlockingQueue<String>> threadMap = new HashMap<String, BlockingQueue<String>>();
+    private final Map<String, Integer> boardSizes = new HashMap<String, Integer>();
+    private final Map<String, String> boardHashes = new HashMap<String, String>();
+    private BoardIndex index = null;
+    //the server's board index, if the test sets one
+    private final Map<String, BlockingQueue<String>> queues = new HashMap<String, BlockingQueue<String>>();
+    //every client's queue, kept after the receiver removes Alpha's on leaving
+    private final MetricsRegistry metrics = new MetricsRegistry("test");
+
+    private void connect(String name, int size){
+        queues.put(name, new LinkedBlockingQueue<String>());
+        threadMap.put(name, queues.get(name));
+        boardSizes.put(name, size);
+    }
+
+    //run Alpha's receiver over some messages, one per line
+    private void receive(String... messages){
+        StringBuilder input = new StringBuilder();
+        for(String message : messages){
+            input.append(message).append('\n');
+        }
+        new ServerMessageReceiver("Alpha", new BufferedReader(new StringReader(input.toString())), threadMap,
+                index, metrics, RateLimits.UNLIMITED, boardSizes, boardHashes).run();
+    }
+
+    //an index of Alpha's and Beta's boards, made from files with the given hash
+    private static BoardIndex index(String contentHash){
+        BoardIndex index = new BoardIndex();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        counts.put("portal", 2);
+        for(String name : new String[] { "Alpha", "Beta" }){
+            index.add(new BoardIndex.Entry(name, name + ".pb", 20, 0, counts,
+                    Arrays.asList("In" + name, "Out" + name), contentHash));
+        }
+        return index;
+    }
+
+    //the messages of one type queued for a client
+    private List<String> queued(String name, MessageType type){
+        List<String> found = new ArrayList<String>();
+        for(String message : queues.get(name)){
+            if(Messages.parseType(message) == type){
+                found.add(message);
+            }
+        }
+        return found;
+    }
+
+    @Test public void testLinkSameSize(){
+        connect("Alpha", 30);
+        connect("Beta", 30);
+        receive(Messages.composeLinkMessage("Alpha", "Server", "Beta", WallType.RIGHT));
+        List<String> alpha = queued("Alpha", MessageType.LINK);
+        List<String> beta = queued("Beta", MessageType.LINK);
+        assertEquals(1, alpha.size());
+        assertEquals(1, beta.size());
+        assertEquals("Beta", Messages.parseArguments(alpha.get(0))[0]);
+        assertEquals("RIGHT", Messages.parseArguments(alpha.get(0))[1]);
+        assertEquals("Alpha", Messages.parseArguments(beta.get(0))[0]);
+        assertEquals("LEFT", Messages.parseArguments(beta.get(0))[1]);
+        assertEquals(0, metrics.counter("links.refused").count());
+    }
+
+    @Test public void testLinkDifferentSizes(){
+        connect("Alpha", 20);
+        connect("Beta", 20);
+        connect("Gamma", 40);
+        receive(Messages.composeLinkMessage("Alpha", "Server", "Gamma", WallType.TOP),
+                Messages.composeLinkMessage("Alpha", "Server", "Beta", WallType.TOP));
+        assertEquals(1, queued("Alpha", MessageType.LINK).size());
+        assertEquals("Beta", Messages.parseArguments(queued("Alpha", MessageType.LINK).get(0))[0]);
+        assertEquals(1, queued("Beta", MessageType.LINK).size());
+        assertTrue(queued("Gamma", MessageType.LINK).isEmpty());
+        assertEquals(1, metrics.counter("links.refused").count());
+    }
+
+    @Test public void testDisconnectForgetsSize(){
+        connect("Alpha", 20);
+        connect("Beta", 40);
+        receive();
+        assertTrue(!boardSizes.containsKey("Alpha"));
+        assertTrue(!threadMap.containsKey("Alpha"));
+        assertEquals(40, (int)boardSizes.get("Beta"));
+        assertTrue(PingballServer.linkable(boardSizes, "Alpha", "Beta"));
+    }
+
+    @Test public void testPortalQueryAnsweredForIndexedFile(){
+        index = index("abc123");
+        connect("Alpha", 20);
+        connect("Beta", 20);
+        boardHashes.put("Beta", "abc123");
+        receive(Messages.composePortalQueryMessage("Alpha", "Beta"));
+        assertTrue(queued("Beta", MessageType.PORTAL_QUERY).isEmpty());
+        List<String> replies = queued("Alpha", MessageType.PORTAL_REPLY);
+        assertEquals(1, replies.size());
+        assertEquals("Beta", Messages.parseSender(replies.get(0)));
+        assertEquals(Arrays.asList("InBeta", "OutBeta"), Arrays.asList(Messages.parseArguments(replies.get(0))));
+        assertEquals(1, metrics.counter("portalQueries.answered").count());
+    }
+
+    @Test public void testPortalQueryForwardedForOtherFile(){
+        index = index("abc123");
+        connect("Alpha", 20);
+        connect("Beta", 20);
+        connect("Gamma", 20);
+        boardHashes.put("Beta", "def456");
+        receive(Messages.composePortalQueryMessage("Alpha", "Beta"),
+                Messages.composePortalQueryMessage("Alpha", "Gamma"));
+        assertEquals(1, queued("Beta", MessageType.PORTAL_QUERY).size());
+        assertEquals(1, queued("Gamma", MessageType.PORTAL_QUERY).size());
+        assertTrue(queued("Alpha", MessageType.PORTAL_REPLY).isEmpty());
+        assertEquals(0, metrics.counter("portalQueries.answered").count());
+    }
+
+    @Test public void testLaterHelloReplacesHash(){
+        index = index("abc123");
+        connect("Alpha", 20);
+        boardHashes.put("Alpha", "abc123");
+        //Alpha asks about itself, since only its own hellos reach its receiver
+        receive(Messages.composePortalQueryMessage("Alpha", "Alpha"),
+                Messages.composeClientHello("Alpha", "Server", 20, "def456"),
+                Messages.composePortalQueryMessage("Alpha", "Alpha"),
+                Messages.composeClientHello("Alpha", "Server", 20, "abc123"),
+                Messages.composePortalQueryMessage("Alpha", "Alpha"),
+                Messages.composeClientHello("Alpha", "Server", 20),
+                Messages.composePortalQueryMessage("Alpha", "Alpha"));
+        assertEquals(2, queued("Alpha", MessageType.PORTAL_REPLY).size());
+        assertEquals(2, queued("Alpha", MessageType.PORTAL_QUERY).size());
+        assertEquals(2, metrics.counter("portalQueries.answered").count());
+        assertTrue(!boardHashes.containsKey("Alpha"));
+    }
+
+    @Test public void testDisconnectForgetsHash(){
+        connect("Alpha", 20);
+        connect("Beta", 20);
+        boardHashes.put("Alpha", "abc123");
+        boardHashes.put("Beta", "def456");
+        receive();
+        assertTrue(!boardHashes.containsKey("Alpha"));
+        assertEquals("def456", boardHashes.get("Beta"));
+    }
+}
@@ -7,6 +7,10 @@ import java.util.concurrent.BlockingQueue;
 
 import message.Messages;
 import message.Messages.MessageType;
+import message.TeleportTrace;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
 
 /**
  * class for handling of outgoing messages to clients
@@ -21,12 +25,23 @@ import message.Messages.MessageType;
  *                            from the server
  *                            when this thread's client disconnects, the thread has to 
  *                            close its output and shut down
+ * 
+ * the server feeds it through a SendQueue, so ball transports are sent ahead of
+ * the other messages waiting for the client
  */
 public class ServerMessageSender implements Runnable{
     
     private final BlockingQueue<String> messagesToSend;
     private final Socket client;
     private final String clientName;
+    private final Counter messagesSent;
+    //messages sent to every client
+    private final Counter bytesSent;
+    //bytes sent to this client, counting line ends. messages are ASCII, so
+    //this is their length in characters
+    private final Histogram serverQueueWait;
+    //how long teleport messages to every client wait between being read from
+    //their sender and being sent on, mostly in this thread's input queue
     
     /**
      * create a new message sender for communicating with the client
@@ -34,11 +49,19 @@ public class ServerMessageSender implements Runnable{
      * @param socket the socket of the client
      * @param input the queue through which other server threads will
      *          feed messages for the client
+     * @param metrics the server's metrics, which the sender counts the
+     *          messages and bytes it sends into, and records how long teleport
+     *          messages waited for it in
      */
-    public ServerMessageSender(String clientName, Socket socket, BlockingQueue<String> input){
+    public ServerMessageSender(String clientName, Socket socket, BlockingQueue<String> input,
+            MetricsRegistry metrics){
         this.clientName = clientName;
         this.client = socket;
         this.messagesToSend = input;
+        this.messagesSent = metrics.counter("messages.sent");
+        this.bytesSent = metrics.counter("clients." + clientName + ".bytesSent");
+        this.serverQueueWait = metrics.histogram(
+                "teleport.hop." + TeleportTrace.hopName(TeleportTrace.SERVER_SENT) + "Nanos");
     }
     
     /**
@@ -58,23 +81,33 @@ public class ServerMessageSender implements Runnable{
     //it finds to its client. if it receives a disconnect notification for this
     //thread's client, the thread will terminate
     private void send(Socket socket) throws IOException{
-        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        //flushed by hand, once the queue runs dry, so a burst of messages goes
+        //out in a few writes rather than one each
+        PrintWriter out = new PrintWriter(socket.getOutputStream());
         
         try{
             while(true){
                 String message = messagesToSend.take().trim();
-                String[] args = Messages.parseArguments(message);
                 if(Messages.parseType(message) == MessageType.DISCONNECT){
+                    String[] args = Messages.parseArguments(message);
                     if(args.length > 0 && args[0].equals(clientName)){
                         System.out.println(clientName + " has disconnected; closing output stream");
                         break;
                     }else {                   
                         //System.out.println("(message sent) " + message);
                         out.println(message);
+                        count(message);
                     }
                 } else {
                     //System.out.println("(message sent) " + message); //debug
+                    message = TeleportTrace.stamp(message, serverQueueWait);
                     out.println(message);
+                    count(message);
+                }
+                //nothing else takes from the queue, so if it isn't empty the
+                //next take won't block
+                if(messagesToSend.isEmpty()){
+                    out.flush();
                 }
             }
         } catch(InterruptedException e){
@@ -85,4 +118,10 @@ public class ServerMessageSender implements Runnable{
         }
         
     }
+    
+    //count a message that has been sent
+    private void count(String message){
+        messagesSent.increment();
+        bytesSent.add(message.length() + 1);
+    }
 }
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
+import java.util.HashMap;
 import java.util.regex.Pattern;
 import java.util.Map;
 
@@ -27,13 +28,28 @@ public class ServerSystemMonitor implements Runnable {
             );
     
     private Map<String, BlockingQueue<String>> threadMap;
+    private Map<String, Integer> boardSizes;
+    //the side length of each connected client's board, guarded by threadMap's lock
     
     /**
      * create a new monitor for the System input stream - used for executing user
      * commands to the server
      */
     public ServerSystemMonitor(Map<String, BlockingQueue<String>> map){
+        this(map, new HashMap<String, Integer>());
+    }
+    
+    /**
+     * create a new monitor for the System input stream - used for executing user
+     * commands to the server - which refuses to link boards of different sizes
+     * 
+     * @param map the sender queue of each connected client
+     * @param boardSizes the side length of each connected client's board,
+     *          guarded by map's lock
+     */
+    public ServerSystemMonitor(Map<String, BlockingQueue<String>> map, Map<String, Integer> boardSizes){
         this.threadMap = map;
+        this.boardSizes = boardSizes;
     }
     
     /**
@@ -74,7 +90,10 @@ public class ServerSystemMonitor implements Runnable {
                             System.err.println("ERROR: no player by name " + name1);
                         } if(threadMap.get(name2) == null){
                             System.err.println("ERROR: no player by name " + name2);
-                        } if(threadMap.get(name1) != null && threadMap.get(name2) != null){
+                        } if(!PingballServer.linkable(boardSizes, name1, name2)){
+                            System.err.println("ERROR: the boards of " + name1 + " and " + name2
+                                    + " are different sizes");
+                        } else if(threadMap.get(name1) != null && threadMap.get(name2) != null){
                             threadMap.get(name1).add(Messages.composeLinkMessage(
                                     "Server", name1, name2, type1));
                             threadMap.get(name2).add(Messages.composeLinkMessage(
@@ -7,7 +7,6 @@ import java.awt.Color;
 import java.util.LinkedList;
 import java.util.Queue;
 
-import physics.Geometry;
 import physics.Vect;
 import physics.LineSegment;
 import sim.Ball;
@@ -95,6 +94,19 @@ public class Absorber extends Triggerable{
         }
     }
     
+    /**
+     * let go of every captured ball where it is, without launching it
+     */
+    public void releaseAll(){
+        while(!capturedBalls.isEmpty()){
+            capturedBalls.remove().becomeReleased();
+        }
+    }
+    
+    @Override public Absorber copy(){
+        return new Absorber(x, y, w, h, name());
+    }
+    
     /**
      * launch a captured ball, if this absorber is holding a ball
      * and the last ball was launched more than 0.05 seconds ago
@@ -112,9 +124,13 @@ public class Absorber extends Triggerable{
     }
 
     @Override public double timeUntilCollision(Ball ball) {
+        return timeUntilCollision(ball, 0, 0);
+    }
+
+    @Override public double timeUntilCollision(Ball ball, double gx, double gy) {
         double lowestTime = Double.POSITIVE_INFINITY;
         for(int ii = 0; ii < edges.length; ii++){
-            double t = Geometry.timeUntilWallCollision(edges[ii], ball.toCircle(), ball.vel());
+            double t = PhysicsKernel.timeUntilWallCollision(edges[ii], ball, gx, gy);
             lowestTime = t < lowestTime ? t : lowestTime;
         }
         return lowestTime;
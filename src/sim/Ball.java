@@ -7,8 +7,6 @@ import java.awt.Color;
 import java.util.Random;
 
 import physics.Circle;
-import physics.Geometry;
-import physics.Geometry.VectPair;
 import physics.Vect;
 
 /**
@@ -27,10 +25,10 @@ public class Ball extends Collidable{
     public static final double TERMINAL_VEL = 200;
     public static final double DEFAULT_RADIUS = 0.25;
     
-    private Circle circle;
-    //rep invariant -- has nonzero radius
-    private Vect vel;
-    //rep invariant -- magnitude is less than or equal to TERMINAL_VEL
+    private double x, y;
+    //the position of the ball's center
+    private double vx, vy;
+    //rep invariant -- magnitude of <vx,vy> is less than or equal to TERMINAL_VEL
     private double mass = 1.0;
     //rep invariant -- mass > 0
     private double r;
@@ -38,6 +36,12 @@ public class Ball extends Collidable{
     private boolean stasis;
     //rep invariant -- if stasis is true, the ball is unaffected by displacements
     private Color color;
+    private final double[] scratch = new double[4];
+    //scratch buffer for PhysicsKernel reflections
+    int id = -1;
+    //the id given to the ball by the first BallRegistry it was added to, or -1
+    int registryIndex = -1;
+    //the ball's position in the BallRegistry holding it, or -1 if it isn't in one
     
     /**
      * create a stationary ball at the specified position, with default
@@ -47,7 +51,7 @@ public class Ball extends Collidable{
      * @param y the y position
      */
     public Ball(double x, double y){
-        this(new Circle(x,y,DEFAULT_RADIUS), new Vect(0,0));
+        this(x, y, 0, 0, DEFAULT_RADIUS);
     }
     
     /**
@@ -60,11 +64,11 @@ public class Ball extends Collidable{
      * @param yVel the y component of the velocity
      */
     public Ball(double x, double y, double xVel, double yVel){
-        this(new Circle(x,y,DEFAULT_RADIUS), new Vect(xVel,yVel));
+        this(x, y, xVel, yVel, DEFAULT_RADIUS);
     }
     
     public Ball(double x, double y, Vect velocity){
-        this(new Circle(x, y, DEFAULT_RADIUS), velocity);
+        this(x, y, velocity.x(), velocity.y(), DEFAULT_RADIUS);
     }
     
     /**
@@ -78,17 +82,14 @@ public class Ball extends Collidable{
      * @param radius the radius of the ball
      */
     public Ball(double x, double y, double xVel, double yVel, double radius){
-        this(new Circle(x, y, radius), new Vect(xVel, yVel));
         if(radius <= 0){
             throw new IllegalArgumentException("positive radius required");
         }
-    }
-    
-    //private constructor using Circle and Vect
-    private Ball(Circle circle, Vect velocity){
-        this.circle = circle;
-        this.vel = velocity;
-        this.r = circle.getRadius();
+        this.x = x;
+        this.y = y;
+        this.vx = xVel;
+        this.vy = yVel;
+        this.r = radius;
         Random gen = new Random();
         float[] colors = {
                 0.05f,0.05f,0.05f
@@ -105,8 +106,7 @@ public class Ball extends Collidable{
     //checkRep
     private boolean checkRep(){
         boolean preserved = r > 0;
-        preserved = preserved && r == circle.getRadius();
-        preserved = preserved && vel.length() <= TERMINAL_VEL;
+        preserved = preserved && Math.sqrt(vx*vx + vy*vy) <= TERMINAL_VEL;
         return preserved && mass > 0;
     }
     
@@ -120,27 +120,40 @@ public class Ball extends Collidable{
         if(stasis){
             return new Vect(0,0);
         }
-        return vel;
+        return new Vect(vx, vy);
+    }
+    /**
+     * @return the x component of the velocity of the ball (0 if in stasis)
+     */
+    public double vx(){
+        return stasis ? 0 : vx;
+    }
+    /**
+     * @return the y component of the velocity of the ball (0 if in stasis)
+     */
+    public double vy(){
+        return stasis ? 0 : vy;
     }
     /**
      * @return the vect representing the center of the ball
      */
     public Vect getCenter(){
-        return circle.getCenter();
+        return new Vect(x, y);
     }
     /**
      * @return the circle representing the geometry of the ball
      */
+    //hot paths should use x(), y() and getRadius() instead; this allocates
     public Circle toCircle(){
-        return circle;
+        return new Circle(x, y, r);
     }
     
     public double x(){
-        return circle.getCenter().x();
+        return x;
     }
     
     public double y(){
-        return circle.getCenter().y();
+        return y;
     }
     /**
      * @return the radius of the ball
@@ -159,6 +172,14 @@ public class Ball extends Collidable{
         return stasis;
     }
     
+    /**
+     * @return the id given to the ball by the first BallRegistry it was added to,
+     *          which it keeps from then on, or -1 if it has never been in one
+     */
+    public int id(){
+        return id;
+    }
+    
     
     //General Mutators
     
@@ -177,8 +198,36 @@ public class Ball extends Collidable{
         }if(stasis){
             return;
         }
-        Vect newPos = circle.getCenter().plus(vel.times(deltaT));
-        circle = new Circle(newPos, this.r);
+        x += vx*deltaT;
+        y += vy*deltaT;
+        assert checkRep();
+    }
+    
+    /**
+     * if the ball is not in stasis, change its position and velocity to reflect
+     * the passage of time deltaT under a uniform acceleration <gx, gy>, assuming
+     * no collisions -- the ball follows the parabola c + v*t + g*t^2/2
+     * 
+     * if the ball is in stasis, it is not changed
+     * 
+     * ball velocity will be scaled to Ball.TERMINAL_VEL
+     * 
+     * @param deltaT the time increment in seconds
+     *          must be > 0
+     * @param gx the x component of the acceleration
+     * @param gy the y component of the acceleration
+     */
+    public void displace(double deltaT, double gx, double gy){
+        if(deltaT <= 0){
+            throw new IllegalArgumentException("delta_t must be positive: " + deltaT);
+        }if(stasis){
+            return;
+        }
+        x += (vx + 0.5*gx*deltaT)*deltaT;
+        y += (vy + 0.5*gy*deltaT)*deltaT;
+        vx += gx*deltaT;
+        vy += gy*deltaT;
+        scaleVelocityToTerminal();
         assert checkRep();
     }
     
@@ -188,7 +237,7 @@ public class Ball extends Collidable{
      * @param position the position to which the ball should be moved
      */
     public void moveTo(Vect position){
-        circle = new Circle(position, this.r);
+        moveTo(position.x(), position.y());
     }
     
     /**
@@ -198,7 +247,8 @@ public class Ball extends Collidable{
      * @param y the y position
      */
     public void moveTo(double x, double y){
-        moveTo(new Vect(x, y));
+        this.x = x;
+        this.y = y;
     }
     
     /**
@@ -223,7 +273,9 @@ public class Ball extends Collidable{
         }if(stasis){
             return;
         }
-        vel = acceleratedVelocity(deltaT, g, mu, mu2);
+        double frictLoss = 1 - mu * deltaT - mu2 * Math.sqrt(vx*vx + vy*vy) * deltaT;
+        vx = vx * frictLoss + g.x() * deltaT;
+        vy = vy * frictLoss + g.y() * deltaT;
         scaleVelocityToTerminal();
         assert checkRep();
     }
@@ -268,23 +320,13 @@ public class Ball extends Collidable{
         applyPhysics(deltaT, Vect.Y_HAT.times(g), mu, mu2);
     }
     
-    //helper method for adjustVelocity methods - applies the physical acceleration
-    //caused by the specified parameters and returns a vector corresponding to the
-    //accelerated velocity of the ball
-    private Vect acceleratedVelocity(double deltaT, Vect g, double mu, double mu2){
-        double frictLoss = 1 - mu * deltaT - mu2 * vel.length() * deltaT;
-        Vect newVel = vel.times(frictLoss).plus(g.times(deltaT));
-        return newVel;
-    }
-    
     /**
      * give the ball a new velocity vector
      * 
      * @param velocity the new velocity vector for the ball
      */
     public void impart(Vect velocity){
-        this.vel = velocity;
-        scaleVelocityToTerminal();
+        setVelocity(velocity.x(), velocity.y());
     }
     
     /**
@@ -300,18 +342,26 @@ public class Ball extends Collidable{
         if(stasis){
             return;
         }
-        this.vel = new Vect(x, y);
+        setVelocity(x, y);
+    }
+    
+    //helper method sets the velocity regardless of stasis, scaled to TERMINAL_VEL
+    private void setVelocity(double x, double y){
+        this.vx = x;
+        this.vy = y;
         scaleVelocityToTerminal();
     }
     
     //this is a helper method which scales the ball's velocity vector (if necessary)
     //to ensure it is less than TERMINAL_VEL
     private void scaleVelocityToTerminal(){
-        if(vel.length() <= TERMINAL_VEL){
+        double length = Math.sqrt(vx*vx + vy*vy);
+        if(length <= TERMINAL_VEL){
             return;
         } else{
-            Vect newVel = vel.times(TERMINAL_VEL/vel.length());
-            vel = newVel;
+            double scale = TERMINAL_VEL/length;
+            vx *= scale;
+            vy *= scale;
         }
     }
     
@@ -343,7 +393,8 @@ public class Ball extends Collidable{
      *          if no collision will occur, returns positive infinity
      */
     @Override public double timeUntilCollision(Ball ball){
-        return Geometry.timeUntilBallBallCollision(ball.circle, ball.vel, this.circle, this.vel);
+        return PhysicsKernel.timeUntilBallBallCollision(
+                ball.x, ball.y, ball.r, ball.vx, ball.vy, this.x, this.y, this.r, this.vx, this.vy);
     }
     
     /**
@@ -357,38 +408,35 @@ public class Ball extends Collidable{
      */
     @Override public void collideWith(Ball ball){
         if(stasis){
-            Vect reflection = 
-                    Geometry.reflectCircle(circle.getCenter(), ball.getCenter(), ball.vel);
-            ball.impart(reflection);
+            PhysicsKernel.reflectCircle(x, y, ball.x, ball.y, ball.vx, ball.vy, scratch, 0);
+            ball.setVelocity(scratch[0], scratch[1]);
             return;
         }
-        VectPair pair = Geometry.reflectBalls(
-                ball.getCenter(), ball.mass, ball.vel, this.getCenter(), this.mass, this.vel);
-        ball.impart(pair.v1);
-        this.impart(pair.v2);
+        PhysicsKernel.reflectBalls(ball.x, ball.y, ball.mass, ball.vx, ball.vy,
+                this.x, this.y, this.mass, this.vx, this.vy, scratch);
+        ball.setVelocity(scratch[0], scratch[1]);
+        this.setVelocity(scratch[2], scratch[3]);
     }
     
     
     //String handling!
     
     @Override public void draw(char[][] grid) {
-        Vect center = circle.getCenter();
-        if((center.x() < 0 || center.y() < 0) || 
-                (center.y()+1 >= grid.length || center.x()+1 >= grid[0].length)){
+        if((x < 0 || y < 0) || 
+                (y+1 >= grid.length || x+1 >= grid[0].length)){
             return;
         }
-        grid[(int)center.y() + 1][(int)center.x() + 1] = '*';
+        grid[(int)y + 1][(int)x + 1] = '*';
     }
     
     /**
      * @return a string containing the ball's position and velocity information
      */
     @Override public String toString(){
-        return "ball(" + getCenter().x() + "," + getCenter().y() + ")" + vel;
+        return "ball(" + x + "," + y + ")" + new Vect(vx, vy);
     }
 
     @Override public CollidableGraphic getGraphic() {
-        Vect center = circle.getCenter();
-        return new BallGraphic(center.x(), center.y(), r, this.color);
+        return new BallGraphic(x, y, r, this.color);
     }
 }
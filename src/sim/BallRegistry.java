@@ -0,0 +1,125 @@
+package sim;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * BallRegistry
+ *
+ * the balls on a board, stored densely in an array so that iterating over them
+ * by index is cheap. each ball records its own position in the array, so
+ * finding and removing a ball take constant time: a removed ball's place is
+ * filled by the last ball. removing therefore changes the order of the balls
+ * after it, unlike other lists.
+ *
+ * the first time a ball is added to a registry it is given an id, unique among
+ * the balls that registry has given ids to, which it keeps from then on.
+ *
+ * a ball can only be in one registry at a time.
+ *
+ * Thread safety argument:
+ *      BallRegistry is not thread safe, and neither are the balls' positions
+ *      in it. a registry and its balls must be confined to one thread
+ */
+public class BallRegistry extends AbstractList<Ball> implements RandomAccess {
+
+    private Ball[] balls = new Ball[16];
+    private int size = 0;
+    //rep invariant -- balls[0..size) are the balls in the registry, and
+    //                 balls[i].registryIndex == i for each of them
+    private int nextId = 0;
+    //the id to give the next ball that doesn't have one
+
+    @Override public Ball get(int index){
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("index " + index + " of " + size);
+        }
+        return balls[index];
+    }
+
+    @Override public int size(){
+        return size;
+    }
+
+    /**
+     * add a ball to the end of the registry, giving it an id if it doesn't
+     * have one
+     *
+     * @param ball the ball to add, which must not be in any registry
+     * @return true
+     */
+    @Override public boolean add(Ball ball){
+        if(ball.registryIndex >= 0){
+            throw new IllegalArgumentException("ball is already in a registry: " + ball);
+        }
+        if(size == balls.length){
+            Ball[] grown = new Ball[2*size];
+            System.arraycopy(balls, 0, grown, 0, size);
+            balls = grown;
+        }
+        if(ball.id < 0){
+            ball.id = nextId ++;
+        }
+        ball.registryIndex = size;
+        balls[size ++] = ball;
+        modCount ++;
+        return true;
+    }
+
+    /**
+     * remove the ball at an index, moving the last ball into its place
+     *
+     * @param index the index of the ball to remove
+     * @return the removed ball
+     */
+    @Override public Ball remove(int index){
+        Ball removed = get(index);
+        Ball last = balls[-- size];
+        balls[index] = last;
+        last.registryIndex = index;
+        balls[size] = null;
+        removed.registryIndex = -1;
+        modCount ++;
+        return removed;
+    }
+
+    /**
+     * remove a ball, moving the last ball into its place
+     *
+     * @param o the ball to remove
+     * @return true if the ball was in this registry
+     */
+    @Override public boolean remove(Object o){
+        int index = indexOf(o);
+        if(index < 0){
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override public int indexOf(Object o){
+        if(!(o instanceof Ball)){
+            return -1;
+        }
+        int index = ((Ball)o).registryIndex;
+        return index >= 0 && index < size && balls[index] == o ? index : -1;
+    }
+
+    @Override public int lastIndexOf(Object o){
+        return indexOf(o);
+    }
+
+    @Override public boolean contains(Object o){
+        return indexOf(o) >= 0;
+    }
+
+    @Override public void clear(){
+        for(int ii = 0; ii < size; ii ++){
+            balls[ii].registryIndex = -1;
+            balls[ii] = null;
+        }
+        size = 0;
+        modCount ++;
+    }
+}
@@ -0,0 +1,124 @@
+package sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+// Testing strategy!
+// ...
+// BallRegistry class:
+//  1. test adding balls
+//      ids are given once and kept, balls can't be in two registries
+//  2. test removing balls
+//      by index, by ball, through an iterator, and clearing
+//      removing the last ball, a middle ball, and a ball not in the registry
+//
+public class BallRegistryTests {
+
+    //tests that balls are added in order and given distinct ids
+    @Test public void testAdd(){
+        BallRegistry registry = new BallRegistry();
+        Ball first = new Ball(1, 1);
+        Ball second = new Ball(2, 2);
+        assertEquals(-1, first.id());
+        registry.add(first);
+        registry.add(second);
+        assertEquals(2, registry.size());
+        assertTrue(registry.get(0) == first);
+        assertTrue(registry.get(1) == second);
+        assertTrue(first.id() >= 0);
+        assertNotEquals(first.id(), second.id());
+    }
+
+    //tests that a ball can't be added twice
+    @Test(expected=IllegalArgumentException.class) public void testAddTwice(){
+        BallRegistry registry = new BallRegistry();
+        Ball ball = new Ball(1, 1);
+        registry.add(ball);
+        new BallRegistry().add(ball);
+    }
+
+    //tests that removing a middle ball moves the last ball into its place
+    @Test public void testRemoveMiddle(){
+        BallRegistry registry = new BallRegistry();
+        Ball[] balls = new Ball[4];
+        for(int ii = 0; ii < balls.length; ii ++){
+            balls[ii] = new Ball(ii, ii);
+            registry.add(balls[ii]);
+        }
+        assertTrue(registry.remove(balls[1]));
+        assertEquals(3, registry.size());
+        assertTrue(registry.get(1) == balls[3]);
+        assertFalse(registry.contains(balls[1]));
+        assertEquals(1, registry.indexOf(balls[3]));
+        assertFalse(registry.remove(balls[1]));
+    }
+
+    //tests removing the last ball, and that removed balls keep their ids
+    @Test public void testRemoveLast(){
+        BallRegistry registry = new BallRegistry();
+        Ball first = new Ball(1, 1);
+        Ball second = new Ball(2, 2);
+        registry.add(first);
+        registry.add(second);
+        int id = second.id();
+        assertTrue(registry.remove(1) == second);
+        assertEquals(1, registry.size());
+        assertTrue(registry.get(0) == first);
+        registry.add(second);
+        assertEquals(id, second.id());
+        assertEquals(1, registry.indexOf(second));
+    }
+
+    //tests that a ball in another registry isn't found by position
+    @Test public void testRemoveFromOtherRegistry(){
+        BallRegistry registry = new BallRegistry();
+        BallRegistry other = new BallRegistry();
+        Ball ball = new Ball(1, 1);
+        Ball elsewhere = new Ball(2, 2);
+        registry.add(ball);
+        other.add(elsewhere);
+        assertFalse(registry.remove(elsewhere));
+        assertEquals(1, registry.size());
+    }
+
+    //tests that removing through an iterator still visits every ball
+    @Test public void testIteratorRemove(){
+        BallRegistry registry = new BallRegistry();
+        for(int ii = 0; ii < 40; ii ++){
+            registry.add(new Ball(ii, ii));
+        }
+        int visited = 0;
+        for(Iterator<Ball> it = registry.iterator(); it.hasNext();){
+            Ball ball = it.next();
+            visited ++;
+            if(((int)ball.x()) % 3 == 0){
+                it.remove();
+            }
+        }
+        assertEquals(40, visited);
+        assertEquals(26, registry.size());
+        for(int ii = 0; ii < registry.size(); ii ++){
+            assertTrue(((int)registry.get(ii).x()) % 3 != 0);
+            assertEquals(ii, registry.indexOf(registry.get(ii)));
+        }
+    }
+
+    //tests that cleared balls can be added to another registry
+    @Test public void testClear(){
+        BallRegistry registry = new BallRegistry();
+        Ball ball = new Ball(1, 1);
+        registry.add(ball);
+        registry.clear();
+        assertTrue(registry.isEmpty());
+        assertFalse(registry.contains(ball));
+        BallRegistry other = new BallRegistry();
+        other.add(ball);
+        assertTrue(other.contains(ball));
+    }
+}
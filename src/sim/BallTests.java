@@ -145,4 +145,15 @@ public class BallTests {
         assertTrue(ball.getCenter().equals(pos));
     }
     
+    //Tests moving a ball along a parabola under uniform acceleration
+    @Test public void testBallDisplaceParabola(){
+        Ball ball = new Ball(0, 0, 1, -10);
+        ball.displace(2, 0, 10);
+        assertTrue(ball.getCenter().equals(new Vect(2, 0)));
+        assertTrue(ball.vel().equals(new Vect(1, 10)));
+        ball.becomeAbsorbed();
+        ball.displace(2, 0, 10);
+        assertTrue(ball.getCenter().equals(new Vect(2, 0)));
+    }
+    
 }
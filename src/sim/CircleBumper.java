@@ -5,7 +5,6 @@ import java.awt.Color;
 import graphics.BallGraphic;
 import graphics.CollidableGraphic;
 import physics.Circle;
-import physics.Geometry;
 
 /**
  * Circle Bumper class
@@ -19,6 +18,8 @@ public class CircleBumper extends Triggerable{
     private final Circle circle;
     //rep invariant -- circle of radius RADIUS
     //                 probably doesn't warrant a checkRep()
+    private final double[] reflection = new double[2];
+    //scratch buffer for PhysicsKernel reflections
     
     @Deprecated
     public CircleBumper(int x, int y){
@@ -37,17 +38,26 @@ public class CircleBumper extends Triggerable{
         circle = new Circle(x + 0.5, y + 0.5, RADIUS);
     }
 
+    @Override public CircleBumper copy(){
+        return new CircleBumper(x, y, name());
+    }
+
     /**
      * Circle Bumpers have no triggerable behavior
      */
     @Override public void triggerAction() {;}
 
     @Override public double timeUntilCollision(Ball ball) {
-        return Geometry.timeUntilCircleCollision(circle, ball.toCircle(), ball.vel());
+        return PhysicsKernel.timeUntilCircleCollision(circle, ball);
+    }
+
+    @Override public double timeUntilCollision(Ball ball, double gx, double gy) {
+        return PhysicsKernel.timeUntilCircleCollision(circle, ball, gx, gy);
     }
 
     @Override public void collideWith(Ball ball) {
-        ball.impart(Geometry.reflectCircle(circle.getCenter(), ball.getCenter(), ball.vel()));
+        PhysicsKernel.reflectCircle(circle, ball, reflection);
+        ball.impart(reflection[0], reflection[1]);
         
         becomeTriggered();
     }
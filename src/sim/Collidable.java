@@ -27,6 +27,23 @@ public abstract class Collidable {
      */
     public abstract double timeUntilCollision(Ball ball);
     
+    /**
+     * determine the time in seconds until a collision will occur between
+     * this object and the specified ball, assuming the ball accelerates
+     * uniformly at <gx, gy> -- that is, that it follows a parabola
+     * 
+     * @param ball the ball whose collision time is to be checked
+     * @param gx the x component of the ball's acceleration
+     * @param gy the y component of the ball's acceleration
+     * @return the number of seconds before a collision will take place
+     *          or positive infinity if no collision will take place
+     */
+    //stationary objects should override this with an exact prediction. the
+    //default falls back on the constant velocity prediction
+    public double timeUntilCollision(Ball ball, double gx, double gy){
+        return timeUntilCollision(ball);
+    }
+    
     /**
      * Change the state of the ball to reflect a collision with
      * this object.
@@ -35,6 +52,21 @@ public abstract class Collidable {
      */
     public abstract void collideWith(Ball ball);
     
+    /**
+     * Change the state of the ball to reflect a collision with this object,
+     * whose time was predicted by timeUntilCollision(ball, gx, gy)
+     * 
+     * @param ball the ball which has collided with this object
+     * @param gx the x component of the ball's acceleration
+     * @param gy the y component of the ball's acceleration
+     */
+    //objects with several surfaces should override this, and tell which one
+    //was hit with the same prediction that found the collision. the default
+    //ignores the acceleration
+    public void collideWith(Ball ball, double gx, double gy){
+        collideWith(ball);
+    }
+    
     /**
      * place characters into the passed array at indices corresponding
      * to this object's position on the board
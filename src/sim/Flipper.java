@@ -33,7 +33,19 @@ public class Flipper extends Triggerable {
     private static final double FLIP_TIME = Math.PI/2/ROTATION_SPEED;
     private static final double R_COEFF = 0.95;
     private static final double RADIUS = 0.25;
-    
+    private static final double LENGTH = 2*(1-RADIUS);
+    //distance from the pivot to the center of the free end
+    private static final double CONTACT_TOLERANCE = 1e-6;
+    //a ball this close to the flipper's surface is treated as touching it. this
+    //also bounds the work the search does on near misses, which it has to
+    //resolve down to this scale
+    private static final int MAX_SEARCH_DEPTH = 40;
+    //bisection depth of the swept collision search -- FLIP_TIME / 2^40 is well
+    //below a nanosecond
+
+    private final FlipperType type;
+    private final int orientation;
+    //the arguments used to construct this flipper
     private final int chirality;
     //rep invariant -- equals +1 if left flipper (ccw)
     //                        -1 if right flipper (cw)
@@ -59,7 +71,25 @@ public class Flipper extends Triggerable {
     private double actionTimer;
     //rep invariant -- 0 <= triggerTimer <= pi/2/ROTATION_SPEED
     //                 used to synchronize with the simulation clock
-    
+    private final Vect upTip, downTip;
+    //centers of the free end in the resting up and down positions
+
+    //the flipper is a capsule -- every point within RADIUS of the segment from
+    //the pivot to the free end. the collision search state below is scratch
+    //space for solveCollision(), kept in fields so that the search does not
+    //allocate
+    private double sweepX, sweepY, sweepVX, sweepVY, sweepGX, sweepGY, sweepArmX, sweepArmY;
+    private double sweepOmega, sweepReach, sweepBound;
+    //ball position/velocity/acceleration, pivot-to-tip vector at time 0,
+    //angular velocity, contact distance and Lipschitz bound of the gap
+    //function for the current search
+    private double closestX, closestY, offsetX, offsetY, offsetLength;
+    //closest point on the flipper's axis (relative to the pivot) and the
+    //vector from it to the ball's center, from the last call to gap()
+    private double contactNX, contactNY, contactQX, contactQY, contactOmega;
+    //outward unit normal, contact point and angular velocity of the flipper
+    //at the collision most recently found by solveCollision()
+
     @Deprecated
     public Flipper(int x, int y, FlipperType type) {
         this(x,y,type,0);
@@ -85,6 +115,8 @@ public class Flipper extends Triggerable {
     //before we start to implement phase 2 specs
     public Flipper(int x, int y, FlipperType type, int orientation, String name) {
         super(x, y, FLIPPER_WIDTH, FLIPPER_HEIGHT, 'X', name);
+        this.type = type;
+        this.orientation = orientation;
         chirality = type == FlipperType.LEFT ? +1 : -1;
         //what follows is highly magical
         switch(orientation){
@@ -108,16 +140,14 @@ public class Flipper extends Triggerable {
         double x1 = x + 1 - orientationVector.dot(new Vect(+1,chirality))*(1-RADIUS);
         double y1 = y + 1 - orientationVector.dot(new Vect(-chirality,+1))*(1-RADIUS);
         pivot = new Vect(x1,y1);
+        fixedPosition(FlipperState.UP);
+        upTip = ends[1].getCenter();
         //initialize flipper geometry to its resting down state
         fixedPosition(FlipperState.DOWN);
+        downTip = ends[1].getCenter();
         state = FlipperState.DOWN;
     }
-    
-    //private constructor using internal representations
-    private Flipper(int x, int y, int facingVector, int orientation) {
-        this(x, y, facingVector == -1 ? FlipperType.LEFT : FlipperType.RIGHT, orientation);
-    }
-    
+
     //checkRep
     private boolean checkRep(){
         if(!isMoving() && getAngularVelocity() != 0){
@@ -287,6 +317,10 @@ public class Flipper extends Triggerable {
         state = FlipperState.DOWN;
     }
     
+    @Override public Flipper copy(){
+        return new Flipper(x, y, type, orientation, name());
+    }
+    
     /**
      * When a flipper becomes triggered, if it is currently at rest, it will 
      * flip, rotating 90 degrees at 1080 degrees per second. Any collisions 
@@ -307,66 +341,208 @@ public class Flipper extends Triggerable {
     }
 
     @Override public double timeUntilCollision(Ball ball) {
-        double timeToCollision = Double.POSITIVE_INFINITY;
-        double t = 0;
-        double angularV = getAngularVelocity();
-        for(Circle end : ends){
-            t = Geometry.timeUntilRotatingCircleCollision(
-                    end, pivot, angularV, ball.toCircle(), ball.vel());
-            timeToCollision = t < timeToCollision ? t : timeToCollision;
-        }for(LineSegment edge : edges){
-            t = Geometry.timeUntilRotatingWallCollision(
-                    edge, pivot, angularV, ball.toCircle(), ball.vel());
-            timeToCollision = t < timeToCollision ? t : timeToCollision;
+        return solveCollision(ball, 0, 0);
+    }
+
+    @Override public double timeUntilCollision(Ball ball, double gx, double gy) {
+        return solveCollision(ball, gx, gy);
+    }
+
+    @Override public void collideWith(Ball ball) {
+        //the search records where and how the ball meets the flipper, so the
+        //reflection only has to be computed once, for that contact
+        if(solveCollision(ball, 0, 0) < Double.POSITIVE_INFINITY){
+            //velocity of the flipper's surface at the contact point
+            double ux = -contactOmega*(contactQY - pivot.y());
+            double uy = contactOmega*(contactQX - pivot.x());
+            //reflect in the flipper's frame, then apply the coefficient of
+            //reflection the same way physics.Geometry does
+            double relX = ball.vx() - ux, relY = ball.vy() - uy;
+            double normal = relX*contactNX + relY*contactNY;
+            double scale = -2*normal*(0.5 + 0.5*R_COEFF);
+            ball.impart(ux + relX + scale*contactNX, uy + relY + scale*contactNY);
         }
-        //if no collision predicted, return right away
-        if(timeToCollision == Double.POSITIVE_INFINITY){
-            return timeToCollision;
+        assert checkRep();
+        becomeTriggered();
+    }
+
+    //helper method for timeUntilCollision() and collideWith() -- returns the
+    //time until the ball, accelerating uniformly at <gx, gy>, collides with
+    //this flipper, accounting for the flipper's rotation and for it coming to
+    //rest partway through. if the time is finite, the contact is recorded in
+    //contactNX, contactNY, contactQX, contactQY and contactOmega
+    private double solveCollision(Ball ball, double gx, double gy){
+        double r = ball.getRadius();
+        Vect tip = ends[1].getCenter();
+        double omega = getAngularVelocity();
+        if(ball.isInStasis()){
+            gx = 0;
+            gy = 0;
+        }
+        if(omega == 0){
+            return solveStationary(tip.x(), tip.y(), ball.x(), ball.y(), ball.vx(), ball.vy(), gx, gy, r);
         }
-        //this next loop attempts to account for the fact that the flipper may
-        //stop moving before colliding with the ball
-        if(isMoving() && actionTimer + timeToCollision >= FLIP_TIME){
-            Flipper hypothetical = new Flipper(x,y,chirality,0);
-            if(state == FlipperState.FLIPPINGUP){
-                hypothetical.fixedPosition(FlipperState.UP);
-                hypothetical.state = FlipperState.UP;
-            }//otherwise the flipper will be created already in the down state
-            timeToCollision = FLIP_TIME + hypothetical.timeUntilCollision(ball);
+        double px = pivot.x(), py = pivot.y();
+        sweepX = ball.x();
+        sweepY = ball.y();
+        sweepVX = ball.vx();
+        sweepVY = ball.vy();
+        sweepGX = gx;
+        sweepGY = gy;
+        sweepArmX = tip.x() - px;
+        sweepArmY = tip.y() - py;
+        sweepOmega = omega;
+        sweepReach = RADIUS + r;
+        double remaining = FLIP_TIME - actionTimer;
+        //neither the ball nor any point of the flipper moves faster than this
+        //during the swing, so the gap between them can shrink no faster either
+        sweepBound = Math.sqrt(sweepVX*sweepVX + sweepVY*sweepVY)
+                + Math.sqrt(gx*gx + gy*gy)*remaining + Math.abs(omega)*(LENGTH + RADIUS);
+        if(gap(0) <= CONTACT_TOLERANCE){
+            recordContact();
+            return approachRate() < 0 ? 0 : Double.POSITIVE_INFINITY;
+        }
+        //nothing can happen until the ball enters the disc swept out by the flipper
+        double sweepRadius = LENGTH + RADIUS;
+        double dx = sweepX - px, dy = sweepY - py;
+        double enter = 0;
+        if(dx*dx + dy*dy > (sweepRadius + r)*(sweepRadius + r)){
+            enter = PhysicsKernel.timeUntilCircleCollision(px, py, sweepRadius,
+                    sweepX, sweepY, r, sweepVX, sweepVY, gx, gy);
+            if(enter == Double.POSITIVE_INFINITY){
+                return enter;
+            }
         }
-        return timeToCollision;
+        if(enter < remaining){
+            double t = firstContact(enter, gap(enter), remaining, gap(remaining), 0);
+            if(t < Double.POSITIVE_INFINITY){
+                gap(t);
+                recordContact();
+                return t;
+            }
+        }
+        //the flipper comes to rest before it reaches the ball
+        Vect rest = state == FlipperState.FLIPPINGUP ? upTip : downTip;
+        return remaining + solveStationary(rest.x(), rest.y(),
+                sweepX + (sweepVX + 0.5*gx*remaining)*remaining,
+                sweepY + (sweepVY + 0.5*gy*remaining)*remaining,
+                sweepVX + gx*remaining, sweepVY + gy*remaining, gx, gy, r);
     }
 
-    @Override public void collideWith(Ball ball) {
-        double timeToCollision = Double.POSITIVE_INFINITY;
-        double t = 0;
-        Vect reflection = null;
-        double angularV = getAngularVelocity();
-        for(Circle end : ends){
-            t = Geometry.timeUntilRotatingCircleCollision(
-                    end, pivot, angularV, ball.toCircle(), ball.vel());
-            if(t < timeToCollision){
-                timeToCollision = t;
-                reflection = Geometry.reflectRotatingCircle(
-                        end, pivot, angularV, ball.toCircle(), ball.vel(), R_COEFF);
-            }
+    //helper method for solveCollision() -- closed form collision time with a
+    //flipper resting with its free end at (tipX, tipY): the ends are circles
+    //and the sides are line segments
+    private double solveStationary(double tipX, double tipY, double bx, double by,
+            double vx, double vy, double gx, double gy, double r){
+        double px = pivot.x(), py = pivot.y();
+        //cheap rejection against the flipper's bounding circle
+        double midX = (px + tipX)/2, midY = (py + tipY)/2;
+        double bound = LENGTH/2 + RADIUS;
+        if((bx-midX)*(bx-midX) + (by-midY)*(by-midY) > (bound + r)*(bound + r)
+                && PhysicsKernel.timeUntilCircleCollision(midX, midY, bound, bx, by, r, vx, vy, gx, gy)
+                    == Double.POSITIVE_INFINITY){
+            return Double.POSITIVE_INFINITY;
         }
-        for(LineSegment edge : edges){
-            t = Geometry.timeUntilRotatingWallCollision(
-                    edge, pivot, angularV, ball.toCircle(), ball.vel());
-            if(t < timeToCollision){
-                timeToCollision = t;
-                reflection = Geometry.reflectRotatingWall(
-                        edge, pivot, angularV, ball.toCircle(), ball.vel(), R_COEFF);
+        double armX = tipX - px, armY = tipY - py;
+        double nx = -armY*RADIUS/LENGTH, ny = armX*RADIUS/LENGTH;
+        double t = Math.min(
+                Math.min(PhysicsKernel.timeUntilCircleCollision(px, py, RADIUS, bx, by, r, vx, vy, gx, gy),
+                         PhysicsKernel.timeUntilCircleCollision(tipX, tipY, RADIUS, bx, by, r, vx, vy, gx, gy)),
+                Math.min(PhysicsKernel.timeUntilWallCollision(px + nx, py + ny, tipX + nx, tipY + ny,
+                                bx, by, r, vx, vy, gx, gy),
+                         PhysicsKernel.timeUntilWallCollision(px - nx, py - ny, tipX - nx, tipY - ny,
+                                bx, by, r, vx, vy, gx, gy)));
+        if(t < Double.POSITIVE_INFINITY){
+            sweepX = bx;
+            sweepY = by;
+            sweepVX = vx;
+            sweepVY = vy;
+            sweepGX = gx;
+            sweepGY = gy;
+            sweepArmX = armX;
+            sweepArmY = armY;
+            sweepOmega = 0;
+            sweepReach = RADIUS + r;
+            gap(t);
+            recordContact();
+            if(t == 0 && approachRate() >= 0){
+                //a ball deep inside the capsule overlaps the far edge too, and
+                //the kernel reports it as approaching that edge. the capsule's
+                //own normal decides -- this ball is already on its way out
+                return Double.POSITIVE_INFINITY;
             }
         }
-        assert checkRep();
-        if(reflection != null){
-            ball.impart(reflection);
+        return t;
+    }
+
+    //helper method for solveCollision() -- the earliest time in [a, b] at which
+    //the gap closes to within half of CONTACT_TOLERANCE, or positive infinity.
+    //intervals are discarded as soon as the Lipschitz bound on the gap shows
+    //that it cannot close inside of them
+    private double firstContact(double a, double gapA, double b, double gapB, int depth){
+        double tolerance = CONTACT_TOLERANCE/2;
+        if(gapA <= tolerance){
+            return a;
         }
-        
-        becomeTriggered();
+        if((gapA + gapB - sweepBound*(b - a))/2 > tolerance){
+            return Double.POSITIVE_INFINITY;
+        }
+        if(depth == MAX_SEARCH_DEPTH){
+            return gapB <= tolerance ? b : Double.POSITIVE_INFINITY;
+        }
+        double mid = (a + b)/2;
+        double gapMid = gap(mid);
+        double t = firstContact(a, gapA, mid, gapMid, depth + 1);
+        if(t < Double.POSITIVE_INFINITY){
+            return t;
+        }
+        return firstContact(mid, gapMid, b, gapB, depth + 1);
     }
-    
+
+    //helper method for the collision search -- the distance between the ball's
+    //surface and the flipper's surface t seconds into the current search.
+    //negative if they overlap. leaves the closest point in the closest and
+    //offset fields
+    private double gap(double t){
+        double cos = Math.cos(sweepOmega*t), sin = Math.sin(sweepOmega*t);
+        double armX = sweepArmX*cos - sweepArmY*sin;
+        double armY = sweepArmX*sin + sweepArmY*cos;
+        double relX = sweepX + (sweepVX + 0.5*sweepGX*t)*t - pivot.x();
+        double relY = sweepY + (sweepVY + 0.5*sweepGY*t)*t - pivot.y();
+        double frac = (relX*armX + relY*armY)/(LENGTH*LENGTH);
+        frac = frac < 0 ? 0 : frac > 1 ? 1 : frac;
+        closestX = frac*armX;
+        closestY = frac*armY;
+        offsetX = relX - closestX;
+        offsetY = relY - closestY;
+        offsetLength = Math.sqrt(offsetX*offsetX + offsetY*offsetY);
+        return offsetLength - sweepReach;
+    }
+
+    //helper method for the collision search -- record the contact at the
+    //closest point found by the last call to gap()
+    private void recordContact(){
+        if(offsetLength == 0){
+            //the ball's center is on the flipper's axis -- there is no normal
+            contactNX = 0;
+            contactNY = 0;
+        }else{
+            contactNX = offsetX/offsetLength;
+            contactNY = offsetY/offsetLength;
+        }
+        contactQX = pivot.x() + closestX + contactNX*RADIUS;
+        contactQY = pivot.y() + closestY + contactNY*RADIUS;
+        contactOmega = sweepOmega;
+    }
+
+    //helper method for the collision search -- the rate at which the ball is
+    //moving away from the flipper's surface at the recorded contact
+    private double approachRate(){
+        double ux = -contactOmega*(contactQY - pivot.y());
+        double uy = contactOmega*(contactQX - pivot.x());
+        return (sweepVX - ux)*contactNX + (sweepVY - uy)*contactNY;
+    }
+
     @Override public void draw(char[][] grid) {
         Angle angle = getAngle();
         for(int jj = 0; jj < grid.length; jj ++){
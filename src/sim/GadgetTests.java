@@ -6,10 +6,15 @@ import static org.junit.Assert.assertTrue;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.Random;
 
 import org.junit.Test;
 
 import client.Board;
+import metrics.MetricsRegistry;
+import physics.Circle;
+import physics.Geometry;
+import physics.LineSegment;
 import physics.Vect;
 import sim.Flipper.FlipperType;
 
@@ -425,7 +430,106 @@ public class GadgetTests {
         assertTrue(flips[6].getPivot().equals(new Vect(0.25,1.75)));
         assertTrue(flips[7].getPivot().equals(new Vect(0.25,0.25)));
     }
-    
+
+    //Tests a resting flipper against physics.Geometry on its ends and sides
+    @Test public void testFlipperStationaryMatchesGeometry(){
+        Flipper flip = new Flipper(5, 5, FlipperType.LEFT);
+        Circle[] ends = {new Circle(5.25, 5.25, 0.25), new Circle(5.25, 6.75, 0.25)};
+        LineSegment[] edges = {new LineSegment(5, 5.25, 5, 6.75), new LineSegment(5.5, 5.25, 5.5, 6.75)};
+        Random gen = new Random(6005);
+        for(int ii = 0; ii < 2000; ii ++){
+            Ball ball = new Ball(gen.nextDouble()*20, gen.nextDouble()*20,
+                    (gen.nextDouble() - 0.5)*100, (gen.nextDouble() - 0.5)*100);
+            double expected = Double.POSITIVE_INFINITY;
+            for(Circle end : ends){
+                expected = Math.min(expected, Geometry.timeUntilCircleCollision(end, ball.toCircle(), ball.vel()));
+            }
+            for(LineSegment edge : edges){
+                expected = Math.min(expected, Geometry.timeUntilWallCollision(edge, ball.toCircle(), ball.vel()));
+            }
+            if(expected == 0){
+                //a ball already touching the flipper is only hit if it moves
+                //against the capsule's normal, from the axis to its center
+                double axisY = Math.max(5.25, Math.min(6.75, ball.y()));
+                if((ball.x() - 5.25)*ball.vx() + (ball.y() - axisY)*ball.vy() >= 0){
+                    expected = Double.POSITIVE_INFINITY;
+                }
+            }
+            double actual = flip.timeUntilCollision(ball);
+            assertTrue(ball + ": " + expected + " != " + actual, expected == actual
+                    || Math.abs(expected - actual) < 1e-9 * Math.max(1, expected));
+        }
+    }
+
+    //Tests balls sliding along the top of a bumper and along a wall in parabolic
+    //mode -- the surface they rest on is the one they hit, so they keep their
+    //horizontal speed, and resting never turns into repeated zero time
+    //collisions that exhaust the simulation's recursion limit
+    @Test public void testParabolicRestingContact(){
+        for(int kind = 0; kind < 3; kind ++){
+            Board board = new Board("rest", 25, 0, 0);
+            MetricsRegistry metrics = new MetricsRegistry("rest");
+            board.setMetrics(metrics);
+            board.setParabolicPrediction(true);
+            Ball ball = new Ball(5.5, 9.75, 0.5, 0);
+            if(kind == 0){
+                board.add(new SquareBumper(5, 10, "square"));
+            }else if(kind == 1){
+                board.add(new TriangleBumper(5, 10, 0, "triangle"));
+            }else{
+                ball = new Ball(5.5, 19.75, 0.5, 0);
+            }
+            board.add(ball);
+            //stop before the ball reaches the end of the bumper's top
+            for(int ii = 0; ii < 15; ii ++){
+                board.advanceSimulation(0.05);
+                assertTrue(ball.toString(), ball.vx() == 0.5);
+                assertTrue(ball.toString(), Math.abs(ball.y() % 10 - 9.75) < 0.05);
+            }
+            assertTrue(metrics.counter("simulation.recursionLimitHits").count() == 0);
+        }
+    }
+
+    //Tests a ball whose center is inside the flipper, moving out through the
+    //far edge -- it must not be bounced back in off of that edge, which would
+    //repeat at t=0 until the simulation's recursion limit ran out
+    @Test public void testFlipperBallInsideLeaving(){
+        Flipper flip = new Flipper(5, 5, FlipperType.LEFT);
+        Ball ball = new Ball(5.3, 6, 10, 0);
+        assertTrue(flip.timeUntilCollision(ball) == Double.POSITIVE_INFINITY);
+        ball = new Ball(5.3, 6, -10, 0);
+        assertTrue(flip.timeUntilCollision(ball) < Double.POSITIVE_INFINITY);
+    }
+
+    //Tests a ball that the flipper only reaches partway through its swing --
+    //the flipper's side sweeps 15 degrees before it is 0.5 away from the ball
+    @Test public void testFlipperSweptCollision(){
+        Flipper flip = new Flipper(0, 0, FlipperType.LEFT);
+        double offset = Math.sqrt(0.5);
+        Ball ball = new Ball(0.25 + offset, 0.25 + offset, 0, 0);
+        flip.triggerAction();
+        double t = flip.timeUntilCollision(ball);
+        assertTrue(Math.abs(t - 1.0/72) < 1e-6);
+        flip.collideWith(ball);
+        //the ball leaves along the side's normal, pushed by the flipper
+        double speed = (1 + 0.95) * Math.toRadians(1080) * Math.cos(Math.PI/6);
+        assertTrue(ball.vel().x() > 0 && ball.vel().y() < 0);
+        assertTrue(Math.abs(ball.vel().length() - speed) < 1e-3 * speed);
+    }
+
+    //Tests a ball that only reaches the flipper after it has come to rest up
+    @Test public void testFlipperCollisionAfterFlipperStops(){
+        Flipper flip = new Flipper(0, 0, FlipperType.LEFT);
+        Ball ball = new Ball(1, 5, 0, -10);
+        flip.triggerAction();
+        double t = flip.timeUntilCollision(ball);
+        assertTrue(Math.abs(t - 0.425) < 1e-9);
+        flip.displace(t);
+        ball.displace(t);
+        assertTrue(flip.isUp());
+        assertTrue(flip.timeUntilCollision(ball) < Double.POSITIVE_INFINITY);
+    }
+
     //Tests drawing a right and left flipper
     @Test public void testFlipperDraw(){
         Flipper flip1 = new Flipper(2, 5, FlipperType.LEFT);
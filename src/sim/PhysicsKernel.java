@@ -0,0 +1,601 @@
+package sim;
+
+import physics.Circle;
+import physics.LineSegment;
+import physics.Vect;
+
+/**
+ * PhysicsKernel class
+ *
+ * allocation-free versions of the physics.Geometry routines that the simulation
+ * calls for every ball on every step. physics.Geometry takes immutable Circle,
+ * LineSegment and Vect objects and returns new ones; the methods here take
+ * primitive coordinates instead, and reflections are written into a
+ * caller-provided scratch buffer rather than returned as a new Vect.
+ *
+ * the results agree with physics.Geometry's default implementation to within
+ * floating point rounding (see PhysicsKernelTests)
+ */
+public final class PhysicsKernel {
+
+    /**
+     * don't use this constructor
+     */
+    private PhysicsKernel(){
+        throw new IllegalArgumentException("no one should be making instances");
+    }
+
+    //helper method -- the lesser root of a*t^2 + b*t + c = 0, or NaN if there
+    //are no real roots. mirrors Geometry.minQuadraticSolution
+    private static double minQuadraticSolution(double a, double b, double c){
+        if(a == 0.0){
+            if(b == 0.0){
+                return Double.NaN;
+            }
+            return -c/b;
+        }
+        double discriminant = b*b - 4.0*a*c;
+        if(discriminant < 0.0){
+            return Double.NaN;
+        }
+        double sqrt = Math.sqrt(discriminant);
+        if(a > 0){
+            return (-b - sqrt)/(2.0*a);
+        }else{
+            return (-b + sqrt)/(2.0*a);
+        }
+    }
+
+
+    //Collision times!
+
+    /**
+     * compute the time until a moving ball collides with a stationary line segment
+     *
+     * @param x1 the x position of the first end point of the segment
+     * @param y1 the y position of the first end point of the segment
+     * @param x2 the x position of the second end point of the segment
+     * @param y2 the y position of the second end point of the segment
+     * @param cx the x position of the ball's center
+     * @param cy the y position of the ball's center
+     * @param r the radius of the ball
+     * @param vx the x component of the ball's velocity
+     * @param vy the y component of the ball's velocity
+     * @return the time in seconds until the collision, 0 if the ball is overlapping
+     *          the segment and moving towards it, or positive infinity if no
+     *          collision will take place
+     */
+    public static double timeUntilWallCollision(double x1, double y1, double x2, double y2,
+            double cx, double cy, double r, double vx, double vy){
+        double width = x2 - x1;
+        double height = y2 - y1;
+        double f = vx*height - vy*width;
+        double g = cx*height - cy*width + (x2*y1 - x1*y2);
+        double lengthSquared = width*width + height*height;
+        double t = minQuadraticSolution(f*f, 2.0*f*g, g*g - r*r*lengthSquared);
+        if(Double.isNaN(t)){
+            return Double.POSITIVE_INFINITY;
+        }
+        //the contact point has to lie within the segment
+        double s = (width*(cx + t*vx - x1) + height*(cy + t*vy - y1))/lengthSquared;
+        if(s < 0.0 || s >= 1.0){
+            return Double.POSITIVE_INFINITY;
+        }
+        if(t > 0){
+            return t;
+        }
+        //overlapping -- only a collision if the ball is moving towards the segment
+        double impactX = x1 + s*width;
+        double impactY = y1 + s*height;
+        if(vx*(cx - impactX) + vy*(cy - impactY) >= 0){
+            return Double.POSITIVE_INFINITY;
+        }
+        return 0;
+    }
+
+    /**
+     * compute the time until a moving ball collides with a stationary circle
+     *
+     * @param x the x position of the circle's center
+     * @param y the y position of the circle's center
+     * @param radius the radius of the circle
+     * @param cx the x position of the ball's center
+     * @param cy the y position of the ball's center
+     * @param r the radius of the ball
+     * @param vx the x component of the ball's velocity
+     * @param vy the y component of the ball's velocity
+     * @return the time in seconds until the collision, 0 if the ball is overlapping
+     *          the circle and moving towards it, or positive infinity if no
+     *          collision will take place
+     */
+    public static double timeUntilCircleCollision(double x, double y, double radius,
+            double cx, double cy, double r, double vx, double vy){
+        double distance = radius + r;
+        double width = cx - x;
+        double height = cy - y;
+        double t = minQuadraticSolution(vx*vx + vy*vy, 2.0*(vx*width + vy*height),
+                width*width + height*height - distance*distance);
+        if(Double.isNaN(t)){
+            return Double.POSITIVE_INFINITY;
+        }else if(t <= 0){
+            return width*vx + height*vy >= 0 ? Double.POSITIVE_INFINITY : 0;
+        }
+        return t;
+    }
+
+    /**
+     * compute the time until two moving balls collide
+     *
+     * @param x1 the x position of the first ball
+     * @param y1 the y position of the first ball
+     * @param r1 the radius of the first ball
+     * @param vx1 the x component of the first ball's velocity
+     * @param vy1 the y component of the first ball's velocity
+     * @param x2 the x position of the second ball
+     * @param y2 the y position of the second ball
+     * @param r2 the radius of the second ball
+     * @param vx2 the x component of the second ball's velocity
+     * @param vy2 the y component of the second ball's velocity
+     * @return the time in seconds until the collision, or positive infinity if
+     *          no collision will take place
+     */
+    public static double timeUntilBallBallCollision(
+            double x1, double y1, double r1, double vx1, double vy1,
+            double x2, double y2, double r2, double vx2, double vy2){
+        double sizes = r1 + r2;
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        double dvx = vx1 - vx2;
+        double dvy = vy1 - vy2;
+        double gap = dx*dx + dy*dy - sizes*sizes;
+        if(gap <= 0.0){
+            //overlapping or touching -- collide iff the balls are approaching
+            return dvx*dx + dvy*dy < 0.0 ? 0.0 : Double.POSITIVE_INFINITY;
+        }
+        double t = minQuadraticSolution(dvx*dvx + dvy*dvy, 2*dx*dvx + 2*dy*dvy, gap);
+        return t > 0 ? t : Double.POSITIVE_INFINITY;
+    }
+
+
+    /**
+     * compute the distance from a point to a line segment
+     *
+     * @param x1 the x position of the first end point of the segment
+     * @param y1 the y position of the first end point of the segment
+     * @param x2 the x position of the second end point of the segment
+     * @param y2 the y position of the second end point of the segment
+     * @param px the x position of the point
+     * @param py the y position of the point
+     * @return the distance from (px, py) to the nearest point of the segment
+     */
+    public static double distanceToSegment(double x1, double y1, double x2, double y2,
+            double px, double py){
+        double width = x2 - x1;
+        double height = y2 - y1;
+        double lengthSquared = width*width + height*height;
+        double s = lengthSquared == 0 ? 0 : ((px - x1)*width + (py - y1)*height)/lengthSquared;
+        s = s < 0 ? 0 : s > 1 ? 1 : s;
+        double dx = px - (x1 + s*width);
+        double dy = py - (y1 + s*height);
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+
+
+    //Parabolic collision times!
+    //under a uniform acceleration <gx, gy> the ball's center follows
+    //c + v*t + g*t^2/2 rather than a straight line. with no acceleration these
+    //give exactly the constant velocity results above
+
+    /**
+     * compute the time until a uniformly accelerating ball collides with a
+     * stationary line segment
+     *
+     * @param x1 the x position of the first end point of the segment
+     * @param y1 the y position of the first end point of the segment
+     * @param x2 the x position of the second end point of the segment
+     * @param y2 the y position of the second end point of the segment
+     * @param cx the x position of the ball's center
+     * @param cy the y position of the ball's center
+     * @param r the radius of the ball
+     * @param vx the x component of the ball's velocity
+     * @param vy the y component of the ball's velocity
+     * @param gx the x component of the ball's acceleration
+     * @param gy the y component of the ball's acceleration
+     * @return the time in seconds until the collision, 0 if the ball is overlapping
+     *          the segment and moving towards it, or positive infinity if no
+     *          collision will take place. unlike the constant velocity version,
+     *          a ball overlapping the segment and moving away from it, or resting
+     *          on it, may still collide with it later
+     */
+    public static double timeUntilWallCollision(double x1, double y1, double x2, double y2,
+            double cx, double cy, double r, double vx, double vy, double gx, double gy){
+        if(gx == 0 && gy == 0){
+            return timeUntilWallCollision(x1, y1, x2, y2, cx, cy, r, vx, vy);
+        }
+        double width = x2 - x1;
+        double height = y2 - y1;
+        double lengthSquared = width*width + height*height;
+        if(lengthSquared == 0){
+            return Double.POSITIVE_INFINITY;
+        }
+        double length = Math.sqrt(lengthSquared);
+        double nx = -height/length;
+        double ny = width/length;
+        //signed distance of the ball's center from the segment's line is
+        //s0 + s1*t + s2*t^2
+        double s0 = (cx - x1)*nx + (cy - y1)*ny;
+        double s1 = vx*nx + vy*ny;
+        double s2 = 0.5*(gx*nx + gy*ny);
+        if(Math.abs(s0) <= r && withinSegment(0, x1, y1, width, height, lengthSquared,
+                cx, cy, vx, vy, gx, gy)){
+            //overlapping and heading into the segment. a ball that is only
+            //accelerating into it isn't colliding yet -- reflecting its
+            //velocity wouldn't change it, so it would collide again at once
+            if(s0*s1 < 0){
+                return 0;
+            }
+            //otherwise it is leaving or resting, but the acceleration may bring it back
+        }
+        //the ball can touch either face, since it may come back around an end
+        double front = firstWallContact(+r, s0, s1, s2, x1, y1, width, height, lengthSquared,
+                cx, cy, vx, vy, gx, gy);
+        double back = firstWallContact(-r, s0, s1, s2, x1, y1, width, height, lengthSquared,
+                cx, cy, vx, vy, gx, gy);
+        return Math.min(front, back);
+    }
+
+    //helper method for the parabolic wall collision -- the earliest positive
+    //root of s0 + s1*t + s2*t^2 = side at which the ball is moving towards the
+    //line and is alongside the segment, or positive infinity
+    private static double firstWallContact(double side, double s0, double s1, double s2,
+            double x1, double y1, double width, double height, double lengthSquared,
+            double cx, double cy, double vx, double vy, double gx, double gy){
+        double c = s0 - side;
+        double first, second;
+        if(s2 == 0){
+            if(s1 == 0){
+                return Double.POSITIVE_INFINITY;
+            }
+            first = -c/s1;
+            second = Double.NaN;
+        }else{
+            double discriminant = s1*s1 - 4*s2*c;
+            if(discriminant < 0){
+                return Double.POSITIVE_INFINITY;
+            }
+            //numerically stable form of the quadratic formula
+            double q = -0.5*(s1 + Math.copySign(Math.sqrt(discriminant), s1));
+            first = q/s2;
+            second = q == 0 ? first : c/q;
+            if(second < first){
+                double swap = first;
+                first = second;
+                second = swap;
+            }
+        }
+        if(isWallContact(first, side, s1, s2, x1, y1, width, height, lengthSquared,
+                cx, cy, vx, vy, gx, gy)){
+            return first;
+        }
+        if(isWallContact(second, side, s1, s2, x1, y1, width, height, lengthSquared,
+                cx, cy, vx, vy, gx, gy)){
+            return second;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    //helper method for the parabolic wall collision -- true iff t is a positive
+    //time at which the ball is heading into the given face of the segment
+    private static boolean isWallContact(double t, double side, double s1, double s2,
+            double x1, double y1, double width, double height, double lengthSquared,
+            double cx, double cy, double vx, double vy, double gx, double gy){
+        if(!(t > 0)){
+            return false;
+        }
+        double rate = s1 + 2*s2*t;
+        if(side > 0 ? rate >= 0 : rate <= 0){
+            return false;
+        }
+        return withinSegment(t, x1, y1, width, height, lengthSquared, cx, cy, vx, vy, gx, gy);
+    }
+
+    //helper method for the parabolic wall collision -- true iff the ball's
+    //center at time t projects onto the segment
+    private static boolean withinSegment(double t, double x1, double y1, double width,
+            double height, double lengthSquared, double cx, double cy, double vx, double vy,
+            double gx, double gy){
+        double px = cx + vx*t + 0.5*gx*t*t - x1;
+        double py = cy + vy*t + 0.5*gy*t*t - y1;
+        double s = (width*px + height*py)/lengthSquared;
+        return s >= 0.0 && s < 1.0;
+    }
+
+    /**
+     * compute the time until a uniformly accelerating ball collides with a
+     * stationary circle
+     *
+     * @param x the x position of the circle's center
+     * @param y the y position of the circle's center
+     * @param radius the radius of the circle
+     * @param cx the x position of the ball's center
+     * @param cy the y position of the ball's center
+     * @param r the radius of the ball
+     * @param vx the x component of the ball's velocity
+     * @param vy the y component of the ball's velocity
+     * @param gx the x component of the ball's acceleration
+     * @param gy the y component of the ball's acceleration
+     * @return the time in seconds until the collision, 0 if the ball is overlapping
+     *          the circle and moving towards it, or positive infinity if no
+     *          collision will take place. unlike the constant velocity version,
+     *          a ball overlapping the circle and moving away from it, or resting
+     *          on it, may still collide with it later
+     */
+    public static double timeUntilCircleCollision(double x, double y, double radius,
+            double cx, double cy, double r, double vx, double vy, double gx, double gy){
+        if(gx == 0 && gy == 0){
+            return timeUntilCircleCollision(x, y, radius, cx, cy, r, vx, vy);
+        }
+        double distance = radius + r;
+        double dx = cx - x;
+        double dy = cy - y;
+        //squared distance between the centers less distance^2 is the quartic
+        //a4*t^4 + a3*t^3 + a2*t^2 + a1*t + a0
+        double a4 = 0.25*(gx*gx + gy*gy);
+        double a3 = vx*gx + vy*gy;
+        double a2 = vx*vx + vy*vy + dx*gx + dy*gy;
+        double a1 = 2.0*(dx*vx + dy*vy);
+        double a0 = dx*dx + dy*dy - distance*distance;
+        if(a0 <= 0 && a1 < 0){
+            //overlapping and heading into the circle. as with walls, a ball that
+            //is only accelerating into it isn't colliding yet
+            return 0;
+        }
+        //the quartic is monotone between its critical points, the roots of the
+        //cubic 4*a4*t^3 + 3*a3*t^2 + 2*a2*t + a1. walk them in order and take the
+        //first one at which the ball reaches the circle from outside of it
+        double b = 0.75*a3/a4, c = 0.5*a2/a4, d = 0.25*a1/a4;
+        double shift = b/3;
+        double p = c - b*shift;
+        double q = 2*shift*shift*shift - shift*c + d;
+        double discriminant = q*q/4 + p*p*p/27;
+        double low, middle, high;
+        if(discriminant > 0){
+            double sqrt = Math.sqrt(discriminant);
+            low = Math.cbrt(-q/2 + sqrt) + Math.cbrt(-q/2 - sqrt) - shift;
+            middle = low;
+            high = low;
+        }else if(p == 0){
+            low = -shift;
+            middle = low;
+            high = low;
+        }else{
+            double m = 2*Math.sqrt(-p/3);
+            double theta = Math.acos(Math.max(-1, Math.min(1, 3*q/(p*m))))/3;
+            high = m*Math.cos(theta) - shift;
+            middle = m*Math.cos(theta - 2*Math.PI/3) - shift;
+            low = m*Math.cos(theta - 4*Math.PI/3) - shift;
+        }
+        double previous = 0, atPrevious = a0;
+        for(int ii = 0; ii < 3; ii ++){
+            double critical = ii == 0 ? low : ii == 1 ? middle : high;
+            if(critical <= previous){
+                continue;
+            }
+            double atCritical = quartic(critical, a4, a3, a2, a1, a0);
+            if(atPrevious > 0 && atCritical <= 0){
+                return bisectQuartic(previous, critical, a4, a3, a2, a1, a0);
+            }
+            previous = critical;
+            atPrevious = atCritical;
+        }
+        //past the last critical point the distance only grows
+        return Double.POSITIVE_INFINITY;
+    }
+
+    //helper method -- evaluate a4*t^4 + a3*t^3 + a2*t^2 + a1*t + a0
+    private static double quartic(double t, double a4, double a3, double a2, double a1, double a0){
+        return (((a4*t + a3)*t + a2)*t + a1)*t + a0;
+    }
+
+    //helper method -- the root of the quartic between lo (where it is positive)
+    //and hi (where it is not), over which it is monotone. returns a time at
+    //which the quartic is not positive, so the ball is touching the circle
+    private static double bisectQuartic(double lo, double hi,
+            double a4, double a3, double a2, double a1, double a0){
+        for(int ii = 0; ii < 200; ii ++){
+            double mid = 0.5*(lo + hi);
+            if(mid <= lo || mid >= hi){
+                break;
+            }
+            if(quartic(mid, a4, a3, a2, a1, a0) > 0){
+                lo = mid;
+            }else{
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+
+    //Reflections!
+
+    /**
+     * reflect a velocity off of a stationary line segment. the result is written
+     * into out[offset] (x component) and out[offset+1] (y component)
+     *
+     * @param x1 the x position of the first end point of the segment
+     * @param y1 the y position of the first end point of the segment
+     * @param x2 the x position of the second end point of the segment
+     * @param y2 the y position of the second end point of the segment
+     * @param vx the x component of the incoming velocity
+     * @param vy the y component of the incoming velocity
+     * @param out the scratch buffer for the result
+     * @param offset the index in out at which the result is written
+     */
+    public static void reflectWall(double x1, double y1, double x2, double y2,
+            double vx, double vy, double[] out, int offset){
+        double width = x2 - x1;
+        double height = y2 - y1;
+        double lengthSquared = width*width + height*height;
+        if((vx == 0 && vy == 0) || lengthSquared == 0){
+            out[offset] = vx;
+            out[offset+1] = vy;
+            return;
+        }
+        //mirror the velocity about the segment's direction: v' = 2(v.d)d - v
+        double scale = 2*(vx*width + vy*height)/lengthSquared;
+        out[offset] = scale*width - vx;
+        out[offset+1] = scale*height - vy;
+    }
+
+    /**
+     * reflect the velocity of a ball off of a stationary circle. the result is
+     * written into out[offset] (x component) and out[offset+1] (y component).
+     * if the two centers coincide, the velocity is left unchanged
+     *
+     * @param x the x position of the circle's center
+     * @param y the y position of the circle's center
+     * @param cx the x position of the ball's center
+     * @param cy the y position of the ball's center
+     * @param vx the x component of the incoming velocity
+     * @param vy the y component of the incoming velocity
+     * @param out the scratch buffer for the result
+     * @param offset the index in out at which the result is written
+     */
+    public static void reflectCircle(double x, double y, double cx, double cy,
+            double vx, double vy, double[] out, int offset){
+        double nx = cx - x;
+        double ny = cy - y;
+        double lengthSquared = nx*nx + ny*ny;
+        if((vx == 0 && vy == 0) || lengthSquared == 0){
+            out[offset] = vx;
+            out[offset+1] = vy;
+            return;
+        }
+        //it is as if the ball hits a wall perpendicular to the line of centers:
+        //v' = v - 2(v.n)n
+        double scale = 2*(vx*nx + vy*ny)/lengthSquared;
+        out[offset] = vx - scale*nx;
+        out[offset+1] = vy - scale*ny;
+    }
+
+    /**
+     * compute the velocities of two balls after an elastic collision. the first
+     * ball's velocity is written into out[0], out[1] and the second ball's into
+     * out[2], out[3]. if the two centers coincide, the velocities are left
+     * unchanged
+     *
+     * @param x1 the x position of the first ball
+     * @param y1 the y position of the first ball
+     * @param m1 the mass of the first ball
+     * @param vx1 the x component of the first ball's velocity
+     * @param vy1 the y component of the first ball's velocity
+     * @param x2 the x position of the second ball
+     * @param y2 the y position of the second ball
+     * @param m2 the mass of the second ball
+     * @param vx2 the x component of the second ball's velocity
+     * @param vy2 the y component of the second ball's velocity
+     * @param out the scratch buffer for the result -- length >= 4
+     */
+    public static void reflectBalls(
+            double x1, double y1, double m1, double vx1, double vy1,
+            double x2, double y2, double m2, double vx2, double vy2, double[] out){
+        double tx = x1 - x2;
+        double ty = y1 - y2;
+        double length = Math.sqrt(tx*tx + ty*ty);
+        if(length == 0){
+            out[0] = vx1; out[1] = vy1;
+            out[2] = vx2; out[3] = vy2;
+            return;
+        }
+        tx /= length;
+        ty /= length;
+        double m = m1/m2;
+        double gamma = (-2*(vx1*tx*m1 + vy1*ty*m1 - vx2*tx*m*m2 - vy2*ty*m*m2))/
+                (tx*tx*m1 + ty*ty*m1 + m*m*tx*tx*m2 + m*m*ty*ty*m2);
+        out[0] = vx1 + tx*gamma;
+        out[1] = vy1 + ty*gamma;
+        out[2] = vx2 - tx*gamma*m;
+        out[3] = vy2 - ty*gamma*m;
+    }
+
+
+    //Convenience overloads for the immutable physics types!
+    //these only read fields, so they do not allocate either
+
+    /**
+     * @see #timeUntilWallCollision(double, double, double, double, double, double, double, double, double)
+     */
+    public static double timeUntilWallCollision(LineSegment line, Ball ball){
+        Vect p1 = line.p1(), p2 = line.p2();
+        return timeUntilWallCollision(p1.x(), p1.y(), p2.x(), p2.y(),
+                ball.x(), ball.y(), ball.getRadius(), ball.vx(), ball.vy());
+    }
+
+    /**
+     * @see #timeUntilCircleCollision(double, double, double, double, double, double, double, double)
+     */
+    public static double timeUntilCircleCollision(Circle circle, Ball ball){
+        Vect center = circle.getCenter();
+        return timeUntilCircleCollision(center.x(), center.y(), circle.getRadius(),
+                ball.x(), ball.y(), ball.getRadius(), ball.vx(), ball.vy());
+    }
+
+    /**
+     * the ball's acceleration is ignored while it is in stasis, since it
+     * does not move
+     *
+     * @see #timeUntilWallCollision(double, double, double, double, double, double, double, double, double, double, double)
+     */
+    public static double timeUntilWallCollision(LineSegment line, Ball ball, double gx, double gy){
+        Vect p1 = line.p1(), p2 = line.p2();
+        if(ball.isInStasis()){
+            return timeUntilWallCollision(line, ball);
+        }
+        return timeUntilWallCollision(p1.x(), p1.y(), p2.x(), p2.y(),
+                ball.x(), ball.y(), ball.getRadius(), ball.vx(), ball.vy(), gx, gy);
+    }
+
+    /**
+     * the ball's acceleration is ignored while it is in stasis, since it
+     * does not move
+     *
+     * @see #timeUntilCircleCollision(double, double, double, double, double, double, double, double, double, double)
+     */
+    public static double timeUntilCircleCollision(Circle circle, Ball ball, double gx, double gy){
+        Vect center = circle.getCenter();
+        if(ball.isInStasis()){
+            return timeUntilCircleCollision(circle, ball);
+        }
+        return timeUntilCircleCollision(center.x(), center.y(), circle.getRadius(),
+                ball.x(), ball.y(), ball.getRadius(), ball.vx(), ball.vy(), gx, gy);
+    }
+
+    /**
+     * @see #distanceToSegment(double, double, double, double, double, double)
+     */
+    public static double distanceToSegment(LineSegment line, double px, double py){
+        Vect p1 = line.p1(), p2 = line.p2();
+        return distanceToSegment(p1.x(), p1.y(), p2.x(), p2.y(), px, py);
+    }
+
+    /**
+     * reflect the ball's velocity off of a line segment into out[0], out[1]
+     *
+     * @see #reflectWall(double, double, double, double, double, double, double[], int)
+     */
+    public static void reflectWall(LineSegment line, Ball ball, double[] out){
+        Vect p1 = line.p1(), p2 = line.p2();
+        reflectWall(p1.x(), p1.y(), p2.x(), p2.y(), ball.vx(), ball.vy(), out, 0);
+    }
+
+    /**
+     * reflect the ball's velocity off of a circle into out[0], out[1]
+     *
+     * @see #reflectCircle(double, double, double, double, double, double, double[], int)
+     */
+    public static void reflectCircle(Circle circle, Ball ball, double[] out){
+        Vect center = circle.getCenter();
+        reflectCircle(center.x(), center.y(), ball.x(), ball.y(), ball.vx(), ball.vy(), out, 0);
+    }
+}
@@ -0,0 +1,308 @@
+package sim;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import physics.Circle;
+import physics.Geometry;
+import physics.Geometry.VectPair;
+import physics.LineSegment;
+import physics.Vect;
+
+// Testing strategy!
+// ...
+// PhysicsKernel class:
+//  differential testing against physics.Geometry (GeometryImpl) -- both
+//  implementations are fed the same randomly generated (but seeded) shapes,
+//  positions and velocities, and must agree to within rounding error
+//  1. collision times -- wall, circle, ball-ball; hits, misses and overlaps
+//  2. reflections -- wall, circle, ball-ball
+//  3. the kernel does not allocate results, so repeated use of one scratch
+//     buffer must give the same answers as fresh buffers
+//  4. parabolic collision times -- no acceleration must match the constant
+//     velocity results exactly; otherwise check against known trajectories and
+//     against a finely sampled trajectory
+public class PhysicsKernelTests {
+
+    private static final int TRIALS = 5000;
+    private static final double EPSILON = 1e-9;
+
+    //true iff a and b are equal (both infinite) or within a relative epsilon
+    private static boolean close(double a, double b){
+        if(Double.isInfinite(a) || Double.isInfinite(b)){
+            return a == b;
+        }
+        return Math.abs(a - b) <= EPSILON * Math.max(1, Math.max(Math.abs(a), Math.abs(b)));
+    }
+
+    private static double coordinate(Random gen){
+        return gen.nextDouble() * 20;
+    }
+
+    private static double velocity(Random gen){
+        return (gen.nextDouble() - 0.5) * 100;
+    }
+
+    //Collision times!
+    @Test public void testWallCollisionTimeMatchesGeometry(){
+        Random gen = new Random(6005);
+        for(int ii = 0; ii < TRIALS; ii ++){
+            LineSegment line = new LineSegment(
+                    coordinate(gen), coordinate(gen), coordinate(gen), coordinate(gen));
+            Ball ball = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            double expected = Geometry.timeUntilWallCollision(line, ball.toCircle(), ball.vel());
+            double actual = PhysicsKernel.timeUntilWallCollision(line, ball);
+            assertTrue(line + " " + ball + ": " + expected + " != " + actual, close(expected, actual));
+        }
+    }
+
+    //axis aligned walls are the common case on real boards
+    @Test public void testAxisAlignedWallCollisionTimeMatchesGeometry(){
+        Random gen = new Random(6006);
+        for(int ii = 0; ii < TRIALS; ii ++){
+            int x = gen.nextInt(20), y = gen.nextInt(20);
+            LineSegment line = gen.nextBoolean() ?
+                    new LineSegment(x, y, x + 1, y) : new LineSegment(x, y, x, y + 1);
+            Ball ball = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            double expected = Geometry.timeUntilWallCollision(line, ball.toCircle(), ball.vel());
+            double actual = PhysicsKernel.timeUntilWallCollision(line, ball);
+            assertTrue(line + " " + ball + ": " + expected + " != " + actual, close(expected, actual));
+        }
+    }
+
+    @Test public void testCircleCollisionTimeMatchesGeometry(){
+        Random gen = new Random(6007);
+        for(int ii = 0; ii < TRIALS; ii ++){
+            Circle circle = new Circle(coordinate(gen), coordinate(gen), gen.nextDouble());
+            Ball ball = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            double expected = Geometry.timeUntilCircleCollision(circle, ball.toCircle(), ball.vel());
+            double actual = PhysicsKernel.timeUntilCircleCollision(circle, ball);
+            assertTrue(circle + " " + ball + ": " + expected + " != " + actual, close(expected, actual));
+        }
+    }
+
+    //overlapping balls moving apart or together, and a stationary ball
+    @Test public void testCircleCollisionTimeOverlapping(){
+        Circle circle = new Circle(5, 5, 0.5);
+        Ball approaching = new Ball(5.5, 5, -1, 0);
+        Ball leaving = new Ball(5.5, 5, 1, 0);
+        Ball still = new Ball(5.5, 5);
+        assertTrue(PhysicsKernel.timeUntilCircleCollision(circle, approaching) == 0);
+        assertTrue(PhysicsKernel.timeUntilCircleCollision(circle, leaving) == Double.POSITIVE_INFINITY);
+        assertTrue(PhysicsKernel.timeUntilCircleCollision(circle, still) == Double.POSITIVE_INFINITY);
+    }
+
+    @Test public void testBallBallCollisionTimeMatchesGeometry(){
+        Random gen = new Random(6008);
+        for(int ii = 0; ii < TRIALS; ii ++){
+            Ball one = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            Ball two = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            double expected = Geometry.timeUntilBallBallCollision(
+                    one.toCircle(), one.vel(), two.toCircle(), two.vel());
+            double actual = PhysicsKernel.timeUntilBallBallCollision(
+                    one.x(), one.y(), one.getRadius(), one.vx(), one.vy(),
+                    two.x(), two.y(), two.getRadius(), two.vx(), two.vy());
+            assertTrue(one + " " + two + ": " + expected + " != " + actual, close(expected, actual));
+        }
+    }
+
+    //Reflections!
+    @Test public void testReflectWallMatchesGeometry(){
+        Random gen = new Random(6009);
+        double[] out = new double[2];
+        for(int ii = 0; ii < TRIALS; ii ++){
+            LineSegment line = new LineSegment(
+                    coordinate(gen), coordinate(gen), coordinate(gen), coordinate(gen));
+            Ball ball = new Ball(0, 0, velocity(gen), velocity(gen));
+            Vect expected = Geometry.reflectWall(line, ball.vel());
+            PhysicsKernel.reflectWall(line, ball, out);
+            assertTrue(expected + " != " + out[0] + "," + out[1],
+                    close(expected.x(), out[0]) && close(expected.y(), out[1]));
+        }
+    }
+
+    @Test public void testReflectCircleMatchesGeometry(){
+        Random gen = new Random(6010);
+        double[] out = new double[2];
+        for(int ii = 0; ii < TRIALS; ii ++){
+            Circle circle = new Circle(coordinate(gen), coordinate(gen), 0.5);
+            Ball ball = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            Vect expected = Geometry.reflectCircle(circle.getCenter(), ball.getCenter(), ball.vel());
+            PhysicsKernel.reflectCircle(circle, ball, out);
+            assertTrue(expected + " != " + out[0] + "," + out[1],
+                    close(expected.x(), out[0]) && close(expected.y(), out[1]));
+        }
+    }
+
+    @Test public void testReflectBallsMatchesGeometry(){
+        Random gen = new Random(6011);
+        double[] out = new double[4];
+        for(int ii = 0; ii < TRIALS; ii ++){
+            Ball one = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            Ball two = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            double m1 = 0.5 + gen.nextDouble(), m2 = 0.5 + gen.nextDouble();
+            VectPair expected = Geometry.reflectBalls(
+                    one.getCenter(), m1, one.vel(), two.getCenter(), m2, two.vel());
+            PhysicsKernel.reflectBalls(one.x(), one.y(), m1, one.vx(), one.vy(),
+                    two.x(), two.y(), m2, two.vx(), two.vy(), out);
+            assertTrue(close(expected.v1.x(), out[0]) && close(expected.v1.y(), out[1]));
+            assertTrue(close(expected.v2.x(), out[2]) && close(expected.v2.y(), out[3]));
+        }
+    }
+
+    //zero velocities pass through unchanged, exactly as Geometry does
+    @Test public void testReflectZeroVelocity(){
+        double[] out = {-1, -1};
+        PhysicsKernel.reflectWall(0, 0, 1, 1, 0, 0, out, 0);
+        assertTrue(out[0] == 0 && out[1] == 0);
+        out[0] = -1; out[1] = -1;
+        PhysicsKernel.reflectCircle(0, 0, 1, 1, 0, 0, out, 0);
+        assertTrue(out[0] == 0 && out[1] == 0);
+    }
+
+    //results are written at the requested offset without touching the rest
+    //of the buffer
+    @Test public void testReflectWritesAtOffset(){
+        double[] out = {7, 7, 7, 7};
+        PhysicsKernel.reflectWall(0, 0, 1, 0, 3, 4, out, 2);
+        assertTrue(out[0] == 7 && out[1] == 7);
+        assertTrue(close(out[2], 3) && close(out[3], -4));
+    }
+
+    //one scratch buffer, reused by every reflection and left holding the
+    //previous answers, gives the same results as a fresh buffer each time
+    @Test public void testReusedScratchBufferMatchesFreshBuffers(){
+        Random gen = new Random(6016);
+        double[] scratch = {Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+        for(int ii = 0; ii < TRIALS; ii ++){
+            LineSegment line = new LineSegment(
+                    coordinate(gen), coordinate(gen), coordinate(gen), coordinate(gen));
+            Circle circle = new Circle(coordinate(gen), coordinate(gen), 0.5);
+            Ball one = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            Ball two = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+
+            double[] fresh = new double[2];
+            PhysicsKernel.reflectWall(line, one, fresh);
+            PhysicsKernel.reflectWall(line, one, scratch);
+            assertTrue(fresh[0] == scratch[0] && fresh[1] == scratch[1]);
+
+            fresh = new double[2];
+            PhysicsKernel.reflectCircle(circle, one, fresh);
+            PhysicsKernel.reflectCircle(circle, one, scratch);
+            assertTrue(fresh[0] == scratch[0] && fresh[1] == scratch[1]);
+
+            fresh = new double[4];
+            PhysicsKernel.reflectBalls(one.x(), one.y(), 1, one.vx(), one.vy(),
+                    two.x(), two.y(), 1, two.vx(), two.vy(), fresh);
+            PhysicsKernel.reflectBalls(one.x(), one.y(), 1, one.vx(), one.vy(),
+                    two.x(), two.y(), 1, two.vx(), two.vy(), scratch);
+            for(int jj = 0; jj < 4; jj ++){
+                assertTrue(fresh[jj] == scratch[jj]);
+            }
+        }
+    }
+
+    //Parabolic collision times!
+    @Test public void testParabolicWithoutAccelerationMatchesLinear(){
+        Random gen = new Random(6012);
+        for(int ii = 0; ii < TRIALS; ii ++){
+            LineSegment line = new LineSegment(
+                    coordinate(gen), coordinate(gen), coordinate(gen), coordinate(gen));
+            Circle circle = new Circle(coordinate(gen), coordinate(gen), gen.nextDouble());
+            Ball ball = new Ball(coordinate(gen), coordinate(gen), velocity(gen), velocity(gen));
+            assertTrue(PhysicsKernel.timeUntilWallCollision(line, ball, 0, 0)
+                    == PhysicsKernel.timeUntilWallCollision(line, ball));
+            assertTrue(PhysicsKernel.timeUntilCircleCollision(circle, ball, 0, 0)
+                    == PhysicsKernel.timeUntilCircleCollision(circle, ball));
+        }
+    }
+
+    //a ball dropped from rest onto a horizontal wall
+    @Test public void testParabolicWallDrop(){
+        Ball ball = new Ball(5, 2);
+        double t = PhysicsKernel.timeUntilWallCollision(new LineSegment(0, 5, 10, 5), ball, 0, 25);
+        assertTrue(close(t, Math.sqrt(2*2.75/25)));
+    }
+
+    //a ball thrown up and away from a wall falls back down onto it -- a straight
+    //line prediction would miss this entirely
+    @Test public void testParabolicWallFallsBackOntoSegment(){
+        LineSegment line = new LineSegment(0, 5, 2, 5);
+        Ball ball = new Ball(3, 4, -2, -10);
+        assertTrue(PhysicsKernel.timeUntilWallCollision(line, ball) == Double.POSITIVE_INFINITY);
+        double t = PhysicsKernel.timeUntilWallCollision(line, ball, 0, 25);
+        assertTrue(close(t, (10 + Math.sqrt(137.5))/25));
+    }
+
+    //a ball resting on a surface with gravity pulling it in isn't colliding
+    //yet -- reflecting its zero normal velocity wouldn't change it -- but one
+    //overlapping the surface and moving into it is colliding now
+    @Test public void testParabolicRestingIsNotColliding(){
+        LineSegment line = new LineSegment(0, 5, 10, 5);
+        Ball ball = new Ball(5, 4.75);
+        assertTrue(PhysicsKernel.timeUntilWallCollision(line, ball, 0, 25) > 0);
+        assertTrue(PhysicsKernel.timeUntilWallCollision(line, ball, 0, -25) == Double.POSITIVE_INFINITY);
+        Ball overlapping = new Ball(5, 4.8);
+        assertTrue(PhysicsKernel.timeUntilWallCollision(line, overlapping, 0, 25) > 0);
+        Ball sinking = new Ball(5, 4.8, 0.5, 0.1);
+        assertTrue(PhysicsKernel.timeUntilWallCollision(line, sinking, 0, 25) == 0);
+        Circle circle = new Circle(5, 5.25, 0.25);
+        assertTrue(PhysicsKernel.timeUntilCircleCollision(circle, ball, 0, 25) > 0);
+        assertTrue(PhysicsKernel.timeUntilCircleCollision(circle, sinking, 0, 25) == 0);
+    }
+
+    //a ball that has just bounced off of a surface is still touching it, but
+    //gravity brings it back down for the next bounce
+    @Test public void testParabolicLeavingComesBack(){
+        LineSegment line = new LineSegment(0, 5, 10, 5);
+        Ball ball = new Ball(5, 4.8, 0, -5);
+        assertTrue(PhysicsKernel.timeUntilWallCollision(line, ball) == Double.POSITIVE_INFINITY);
+        double t = PhysicsKernel.timeUntilWallCollision(line, ball, 0, 25);
+        assertTrue(close(t, (5 + Math.sqrt(25 - 2*25*0.05))/25));
+        Circle circle = new Circle(5, 5.3, 0.25);
+        t = PhysicsKernel.timeUntilCircleCollision(circle, ball, 0, 25);
+        assertTrue(close(t, (5 + Math.sqrt(25 - 2*25*0.0))/25));
+    }
+
+    //a ball dropped onto the top of a circle
+    @Test public void testParabolicCircleDrop(){
+        Circle circle = new Circle(5, 5, 0.5);
+        Ball ball = new Ball(5, 1);
+        double t = PhysicsKernel.timeUntilCircleCollision(circle, ball, 0, 25);
+        assertTrue(close(t, Math.sqrt(2*3.25/25)));
+    }
+
+    //the predicted time must be a contact, and a finely sampled trajectory must
+    //not find any earlier one
+    @Test public void testParabolicCircleMatchesSampledTrajectory(){
+        Random gen = new Random(6013);
+        double dt = 1e-3;
+        for(int ii = 0; ii < 500; ii ++){
+            Circle circle = new Circle(coordinate(gen), coordinate(gen), gen.nextDouble());
+            Ball ball = new Ball(coordinate(gen), coordinate(gen), velocity(gen)/5, velocity(gen)/5);
+            double gx = velocity(gen)/2, gy = velocity(gen)/2;
+            double reach = circle.getRadius() + ball.getRadius();
+            if(distance(circle, ball, gx, gy, 0) <= reach){
+                continue;
+            }
+            double t = PhysicsKernel.timeUntilCircleCollision(circle, ball, gx, gy);
+            if(t < Double.POSITIVE_INFINITY){
+                assertTrue(Math.abs(distance(circle, ball, gx, gy, t) - reach) < 1e-6);
+            }
+            for(double s = 0; s < Math.min(t, 2); s += dt){
+                assertTrue(circle + " " + ball + " at " + s + " before " + t,
+                        distance(circle, ball, gx, gy, s) > reach - 1e-9);
+            }
+        }
+    }
+
+    //distance between the circle's center and the ball's center at time t
+    private static double distance(Circle circle, Ball ball, double gx, double gy, double t){
+        double x = ball.x() + ball.vx()*t + 0.5*gx*t*t - circle.getCenter().x();
+        double y = ball.y() + ball.vy()*t + 0.5*gy*t*t - circle.getCenter().y();
+        return Math.sqrt(x*x + y*y);
+    }
+}
@@ -97,6 +97,14 @@ public class Portal extends CircleBumper {
         return otherPortal;
     }
     
+    /**
+     * the copy is closed, and shares this portal's transport queue. boards
+     * should make their own portals through Board.addPortal() instead
+     */
+    @Override public Portal copy(){
+        return new Portal(x, y, name(), board, otherPortal, transportQueue);
+    }
+    
     /**
      * create and return a new ball given the specified velocity. the resultant 
      * velocity may differ if a zero length velocity is provided
@@ -144,6 +152,14 @@ public class Portal extends CircleBumper {
         }
     }
     
+    @Override public double timeUntilCollision(Ball ball, double gx, double gy){
+        if(open){
+            return super.timeUntilCollision(ball, gx, gy);
+        }else{
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+    
     /**
      * if the portal is open, teleport it
      */
@@ -5,14 +5,13 @@ import java.awt.Color;
 import graphics.CollidableGraphic;
 import graphics.RectangleGraphic;
 import physics.Circle;
-import physics.Geometry;
 import physics.LineSegment;
-import physics.Vect;
 
 public class SquareBumper extends Triggerable {
     
     private final LineSegment[] sides = new LineSegment[4]; //The 4 sides of the square 
     private final Circle[] corners = new Circle[4]; //The 4 corners of the square
+    private final double[] reflection = new double[2]; //scratch buffer for PhysicsKernel
    
     //Rep invariant: square bumper has 4 sides, 4 corners, and side length L
     //TODO: implement checkRep()
@@ -50,16 +49,24 @@ public class SquareBumper extends Triggerable {
         corners[3] = downLeft;
     }
     
+    @Override public SquareBumper copy(){
+        return new SquareBumper(x, y, name());
+    }
+    
     /**
      * square bumpers have no triggerable behavior
      */
     @Override public void triggerAction() {;}
 
     @Override public double timeUntilCollision(Ball ball) {
+        return timeUntilCollision(ball, 0, 0);
+    }
+
+    @Override public double timeUntilCollision(Ball ball, double gx, double gy) {
         double minTime = Double.POSITIVE_INFINITY;
         for(int i = 0; i < 4; i++){
-            double wallCollisionTime = Geometry.timeUntilWallCollision(sides[i], ball.toCircle(), ball.vel());
-            double cornerCollisionTime = Geometry.timeUntilCircleCollision(corners[i], ball.toCircle(), ball.vel());
+            double wallCollisionTime = PhysicsKernel.timeUntilWallCollision(sides[i], ball, gx, gy);
+            double cornerCollisionTime = PhysicsKernel.timeUntilCircleCollision(corners[i], ball, gx, gy);
             if(wallCollisionTime < minTime){
                 minTime = wallCollisionTime;
             }
@@ -71,23 +78,30 @@ public class SquareBumper extends Triggerable {
     }
 
     @Override public void collideWith(Ball ball) {
-        Vect newVelocity = null;
+        collideWith(ball, 0, 0);
+    }
+
+    @Override public void collideWith(Ball ball, double gx, double gy) {
+        boolean collided = false;
         double minTime = Double.POSITIVE_INFINITY;
-        //Loop again to find the exact side or corner that the ball collides with
+        //Loop again to find the exact side or corner that the ball collides with,
+        //predicted the same way timeUntilCollision() found the collision
         for(int i = 0; i < 4; i++){
-            double wallCollisionTime = Geometry.timeUntilWallCollision(sides[i], ball.toCircle(), ball.vel());
-            double cornerCollisionTime = Geometry.timeUntilCircleCollision(corners[i], ball.toCircle(), ball.vel());
+            double wallCollisionTime = PhysicsKernel.timeUntilWallCollision(sides[i], ball, gx, gy);
+            double cornerCollisionTime = PhysicsKernel.timeUntilCircleCollision(corners[i], ball, gx, gy);
             if(wallCollisionTime < minTime){
                 minTime = wallCollisionTime;
-                newVelocity = Geometry.reflectWall(sides[i], ball.vel());
+                PhysicsKernel.reflectWall(sides[i], ball, reflection);
+                collided = true;
             }
             if(cornerCollisionTime < minTime){
                 minTime = cornerCollisionTime;
-                newVelocity = Geometry.reflectCircle(corners[i].getCenter(), ball.toCircle().getCenter(), ball.vel());
+                PhysicsKernel.reflectCircle(corners[i], ball, reflection);
+                collided = true;
             }
         }
-        if(newVelocity != null){
-            ball.impart(newVelocity);
+        if(collided){
+            ball.impart(reflection[0], reflection[1]);
         }
         
         becomeTriggered();
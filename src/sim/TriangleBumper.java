@@ -14,6 +14,10 @@ public class TriangleBumper extends Triggerable {
     
     private final LineSegment[] sides = new LineSegment[3];
     private final Circle[] corners = new Circle[3];
+    private final double[] reflection = new double[2];
+    //scratch buffer for PhysicsKernel reflections
+    private final int orientation;
+    //the orientation argument used to construct this bumper
     
     @Deprecated
     public TriangleBumper(int x, int y, int orientation) {
@@ -25,6 +29,7 @@ public class TriangleBumper extends Triggerable {
         if(orientation % 90 != 0){
             throw new IllegalArgumentException("Orientation input must be one of {0, 90, 180, 270}");
         }
+        this.orientation = orientation;
         //Init for orientation 0
         LineSegment diagonal = new LineSegment(x,y+1,x+1,y); // Diagonal up as /
         LineSegment base1 = new LineSegment(x,y, x+1,y); //Top base in 0 orientation --
@@ -52,16 +57,24 @@ public class TriangleBumper extends Triggerable {
                 
     }
     
+    @Override public TriangleBumper copy(){
+        return new TriangleBumper(x, y, orientation, name());
+    }
+    
     /**
      * triangle bumpers have no triggerable action
      */
     @Override public void triggerAction() {;}
 
     @Override public double timeUntilCollision(Ball ball) {
+        return timeUntilCollision(ball, 0, 0);
+    }
+
+    @Override public double timeUntilCollision(Ball ball, double gx, double gy) {
         double minTime = Double.POSITIVE_INFINITY;
         for(int i = 0; i < 3; i++){
-            double wallCollisionTime = Geometry.timeUntilWallCollision(sides[i], ball.toCircle(), ball.vel());
-            double cornerCollisionTime = Geometry.timeUntilCircleCollision(corners[i], ball.toCircle(), ball.vel());
+            double wallCollisionTime = PhysicsKernel.timeUntilWallCollision(sides[i], ball, gx, gy);
+            double cornerCollisionTime = PhysicsKernel.timeUntilCircleCollision(corners[i], ball, gx, gy);
             if(wallCollisionTime < minTime){
                 minTime = wallCollisionTime;
             }
@@ -73,23 +86,30 @@ public class TriangleBumper extends Triggerable {
     }
 
     @Override public void collideWith(Ball ball) {
-        Vect newVelocity = null;
+        collideWith(ball, 0, 0);
+    }
+
+    @Override public void collideWith(Ball ball, double gx, double gy) {
+        boolean collided = false;
         double minTime = Double.POSITIVE_INFINITY;
-        //Loop again to find the exact side or corner that the ball collides with
+        //Loop again to find the exact side or corner that the ball collides with,
+        //predicted the same way timeUntilCollision() found the collision
         for(int i = 0; i < 3; i++){
-            double wallCollisionTime = Geometry.timeUntilWallCollision(sides[i], ball.toCircle(), ball.vel());
-            double cornerCollisionTime = Geometry.timeUntilCircleCollision(corners[i], ball.toCircle(), ball.vel());
+            double wallCollisionTime = PhysicsKernel.timeUntilWallCollision(sides[i], ball, gx, gy);
+            double cornerCollisionTime = PhysicsKernel.timeUntilCircleCollision(corners[i], ball, gx, gy);
             if(wallCollisionTime < minTime){
                 minTime = wallCollisionTime;
-                newVelocity = Geometry.reflectWall(sides[i], ball.vel());
+                PhysicsKernel.reflectWall(sides[i], ball, reflection);
+                collided = true;
             }
             if(cornerCollisionTime < minTime){
                 minTime = cornerCollisionTime;
-                newVelocity = Geometry.reflectCircle(corners[i].getCenter(), ball.toCircle().getCenter(), ball.vel());
+                PhysicsKernel.reflectCircle(corners[i], ball, reflection);
+                collided = true;
             }
         }
-        if(newVelocity != null){
-            ball.impart(newVelocity);
+        if(collided){
+            ball.impart(reflection[0], reflection[1]);
         }
         
         becomeTriggered();
@@ -0,0 +1,266 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TriggerGraph
+ *
+ * the trigger links between the gadgets on a board, compiled into adjacency
+ * arrays, and a dispatcher that runs the actions they call for.
+ *
+ * a gadget in a graph doesn't run the actions on its trigger when it becomes
+ * triggered. instead it raises the trigger with the graph, and the actions are
+ * run in one batch when dispatch() is next called -- the simulation does this
+ * after each collision, so actions never run in the middle of a collision
+ * callback. the targets of each raised trigger run in the order the gadget's
+ * trigger set lists them, which is the order they ran in before.
+ *
+ * dispatch is cycle safe. a trigger raised again by an action in the same
+ * batch (through a loop of links) is ignored, and each batch runs at most
+ * MAX_ACTIONS_PER_BATCH actions. both are counted, along with the triggers
+ * raised and actions run, for profiling.
+ *
+ * the graph is recompiled lazily whenever a gadget is added or removed, or a
+ * gadget's trigger links change.
+ *
+ * Thread safety argument:
+ *      TriggerGraph is not thread safe. it must be confined to the thread
+ *      simulating its gadgets
+ */
+public class TriggerGraph {
+
+    public static final int MAX_ACTIONS_PER_BATCH = 256;
+    //the most actions a single batch can run
+
+    private final List<Triggerable> gadgets = new ArrayList<Triggerable>();
+    //the gadgets in the graph
+    //rep invariant -- gadgets.get(i).graph == this and gadgets.get(i).graphIndex == i
+    private int[] firstTarget = {0};
+    private int[] targets = new int[0];
+    //the compiled links -- the gadgets on gadget i's trigger are at indices
+    //targets[firstTarget[i]..firstTarget[i + 1])
+    private boolean stale = false;
+    //true if the links have changed since they were compiled
+    private int[] raised = new int[8];
+    private int raisedCount = 0;
+    //the gadgets whose triggers have been raised in the current batch, in order
+    private int[] raisedStamps = new int[8];
+    //raisedStamps[i] == batch iff gadget i has been raised in the current batch
+    private int batch = 1;
+    //the number of the current batch
+    //rep invariant -- every entry of raisedStamps is <= batch
+
+    private long[] actionsReceived = new long[8];
+    //number of actions run on each gadget through the graph
+    private long triggersRaised = 0;
+    private long actionsRun = 0;
+    private long cyclesBroken = 0;
+    private long actionsDropped = 0;
+    private long batches = 0;
+    //profiling counters, since the graph was made
+
+    /**
+     * add a gadget to the graph. its trigger links, and links to it from gadgets
+     * in the graph, are included from the next dispatch on
+     *
+     * @param gadget the gadget, which must not be in any graph
+     */
+    public void add(Triggerable gadget){
+        if(gadget.graph != null){
+            throw new IllegalArgumentException("gadget is already in a trigger graph: " + gadget.name());
+        }
+        int index = gadgets.size();
+        gadget.graph = this;
+        gadget.graphIndex = index;
+        gadgets.add(gadget);
+        if(index == raisedStamps.length){
+            raisedStamps = grow(raisedStamps);
+            long[] grown = new long[2*index];
+            System.arraycopy(actionsReceived, 0, grown, 0, index);
+            actionsReceived = grown;
+        }
+        stale = true;
+    }
+
+    /**
+     * remove a gadget from the graph. links to it are left out from the next
+     * dispatch on. the last gadget in the graph takes its place
+     *
+     * @param gadget a gadget in this graph
+     * @throws IllegalArgumentException if the gadget isn't in this graph
+     * @throws IllegalStateException if triggers are waiting to be dispatched
+     */
+    public void remove(Triggerable gadget){
+        if(gadget.graph != this){
+            throw new IllegalArgumentException("gadget is not in this trigger graph: " + gadget.name());
+        }
+        if(raisedCount > 0){
+            throw new IllegalStateException("can't remove a gadget while triggers are waiting to be dispatched");
+        }
+        int index = gadget.graphIndex;
+        int last = gadgets.size() - 1;
+        Triggerable moved = gadgets.get(last);
+        gadgets.set(index, moved);
+        moved.graphIndex = index;
+        actionsReceived[index] = actionsReceived[last];
+        actionsReceived[last] = 0;
+        raisedStamps[index] = raisedStamps[last];
+        raisedStamps[last] = 0;
+        gadgets.remove(last);
+        gadget.graph = null;
+        gadget.graphIndex = -1;
+        stale = true;
+    }
+
+    //called by a gadget in this graph when its trigger links change
+    void invalidate(){
+        stale = true;
+    }
+
+    //called by a gadget in this graph when it becomes triggered
+    void raise(Triggerable source){
+        triggersRaised ++;
+        int index = source.graphIndex;
+        if(raisedStamps[index] == batch){
+            cyclesBroken ++;
+            return;
+        }
+        raisedStamps[index] = batch;
+        if(raisedCount == raised.length){
+            raised = grow(raised);
+        }
+        raised[raisedCount ++] = index;
+    }
+
+    /**
+     * run the actions on the triggers raised since the last dispatch, including
+     * any raised by those actions, as one batch
+     */
+    public void dispatch(){
+        if(raisedCount == 0){
+            return;
+        }
+        if(stale){
+            compile();
+        }
+        int budget = MAX_ACTIONS_PER_BATCH;
+        //raisedCount grows if an action raises another trigger
+        for(int ii = 0; ii < raisedCount; ii ++){
+            int source = raised[ii];
+            for(int kk = firstTarget[source]; kk < firstTarget[source + 1]; kk ++){
+                if(budget == 0){
+                    actionsDropped ++;
+                    continue;
+                }
+                budget --;
+                actionsRun ++;
+                actionsReceived[targets[kk]] ++;
+                gadgets.get(targets[kk]).triggerAction();
+            }
+        }
+        raisedCount = 0;
+        batches ++;
+        if(batch == Integer.MAX_VALUE){
+            Arrays.fill(raisedStamps, 0);
+            batch = 0;
+        }
+        batch ++;
+    }
+
+    //helper method -- rebuild the adjacency arrays from the gadgets' trigger sets.
+    //links to gadgets outside of the graph are left out
+    private void compile(){
+        int[] first = new int[gadgets.size() + 1];
+        int[] flat = new int[8];
+        int count = 0;
+        for(int ii = 0; ii < gadgets.size(); ii ++){
+            first[ii] = count;
+            for(Triggerable target : gadgets.get(ii).triggers()){
+                if(target.graph != this){
+                    continue;
+                }
+                if(count == flat.length){
+                    flat = grow(flat);
+                }
+                flat[count ++] = target.graphIndex;
+            }
+        }
+        first[gadgets.size()] = count;
+        firstTarget = first;
+        targets = flat;
+        stale = false;
+    }
+
+    //helper method -- an array twice the length with the same contents
+    private static int[] grow(int[] array){
+        int[] grown = new int[2*array.length];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    /**
+     * @return the number of trigger links, compiling them if needed
+     */
+    public int numberOfLinks(){
+        if(stale){
+            compile();
+        }
+        return firstTarget[gadgets.size()];
+    }
+
+    /**
+     * @param gadget a gadget in this graph
+     * @return the number of actions the graph has run on the gadget
+     */
+    public long actionsReceived(Triggerable gadget){
+        if(gadget.graph != this){
+            throw new IllegalArgumentException("gadget is not in this trigger graph: " + gadget.name());
+        }
+        return actionsReceived[gadget.graphIndex];
+    }
+
+    /**
+     * @return the number of times a gadget in the graph has become triggered
+     */
+    public long triggersRaised(){
+        return triggersRaised;
+    }
+
+    /**
+     * @return the number of actions run
+     */
+    public long actionsRun(){
+        return actionsRun;
+    }
+
+    /**
+     * @return the number of triggers ignored because their gadget had already
+     *          been raised in the same batch
+     */
+    public long cyclesBroken(){
+        return cyclesBroken;
+    }
+
+    /**
+     * @return the number of actions not run because their batch had already run
+     *          MAX_ACTIONS_PER_BATCH actions
+     */
+    public long actionsDropped(){
+        return actionsDropped;
+    }
+
+    /**
+     * @return the number of batches that ran at least one raised trigger
+     */
+    public long batches(){
+        return batches;
+    }
+
+    @Override public String toString(){
+        return "triggers raised: " + triggersRaised + ", actions run: " + actionsRun
+                + ", batches: " + batches + ", cycles broken: " + cyclesBroken
+                + ", actions dropped: " + actionsDropped;
+    }
+}
@@ -0,0 +1,150 @@
+package sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import sim.Flipper.FlipperType;
+
+// Testing strategy!
+// ...
+// TriggerGraph class:
+//  1. test dispatching
+//      actions wait for dispatch, links added before and after gadgets join
+//      self triggering gadgets, links to gadgets outside of the graph,
+//      gadgets removed from the graph
+//  2. test the safety limits
+//      cycles of links whose actions raise triggers, fan-out past the cap
+//
+public class TriggerGraphTests {
+
+    //a bumper whose action triggers it, so that links between them can loop
+    private static class Relay extends SquareBumper {
+        private int actions = 0;
+
+        private Relay(int x, int y, String name){
+            super(x, y, name);
+        }
+
+        @Override public void triggerAction(){
+            actions ++;
+            becomeTriggered();
+        }
+    }
+
+    //tests that a collision's actions wait for dispatch
+    @Test public void testDeferredUntilDispatch(){
+        TriggerGraph graph = new TriggerGraph();
+        SquareBumper bumper = new SquareBumper(5, 5, "bumper");
+        Flipper flip = new Flipper(0, 0, FlipperType.LEFT, 0, "flip");
+        graph.add(bumper);
+        graph.add(flip);
+        bumper.addTrigger(flip);
+        bumper.collideWith(new Ball(10, 10));
+        assertFalse(flip.isMoving());
+        graph.dispatch();
+        assertTrue(flip.isMoving());
+        assertEquals(1, graph.numberOfLinks());
+        assertEquals(1, graph.actionsReceived(flip));
+        assertEquals(1, graph.triggersRaised());
+        assertEquals(1, graph.batches());
+    }
+
+    //tests a self triggering absorber, which launches the ball it just caught
+    @Test public void testSelfTrigger(){
+        TriggerGraph graph = new TriggerGraph();
+        Absorber absorber = new Absorber(0, 18, 20, 2, "abs");
+        absorber.addTrigger(absorber);
+        graph.add(absorber);
+        Ball ball = new Ball(10, 17, 0, 5);
+        absorber.displace(1);
+        absorber.collideWith(ball);
+        assertTrue(ball.isInStasis());
+        graph.dispatch();
+        assertFalse(ball.isInStasis());
+        assertEquals(0, graph.cyclesBroken());
+    }
+
+    //tests that links to gadgets outside of the graph are ignored
+    @Test public void testOutsideTarget(){
+        TriggerGraph graph = new TriggerGraph();
+        SquareBumper bumper = new SquareBumper(5, 5, "bumper");
+        Flipper flip = new Flipper(0, 0, FlipperType.LEFT, 0, "flip");
+        graph.add(bumper);
+        bumper.addTrigger(flip);
+        bumper.collideWith(new Ball(10, 10));
+        graph.dispatch();
+        assertFalse(flip.isMoving());
+        assertEquals(0, graph.numberOfLinks());
+    }
+
+    //tests that a loop of links runs each action once per batch
+    @Test public void testCycle(){
+        TriggerGraph graph = new TriggerGraph();
+        Relay first = new Relay(0, 0, "first");
+        Relay second = new Relay(1, 0, "second");
+        graph.add(first);
+        graph.add(second);
+        first.addTrigger(second);
+        second.addTrigger(first);
+        first.collideWith(new Ball(10, 10));
+        graph.dispatch();
+        assertEquals(1, first.actions);
+        assertEquals(1, second.actions);
+        assertEquals(1, graph.cyclesBroken());
+        //the next batch starts fresh
+        first.collideWith(new Ball(10, 10));
+        graph.dispatch();
+        assertEquals(2, first.actions);
+        assertEquals(2, second.actions);
+    }
+
+    //tests that a batch stops running actions at the cap
+    @Test public void testFanOutCap(){
+        TriggerGraph graph = new TriggerGraph();
+        SquareBumper source = new SquareBumper(0, 0, "source");
+        graph.add(source);
+        int targets = TriggerGraph.MAX_ACTIONS_PER_BATCH + 10;
+        for(int ii = 0; ii < targets; ii ++){
+            Flipper flip = new Flipper(0, 0, FlipperType.LEFT, 0, "flip" + ii);
+            graph.add(flip);
+            source.addTrigger(flip);
+        }
+        source.collideWith(new Ball(10, 10));
+        graph.dispatch();
+        assertEquals(TriggerGraph.MAX_ACTIONS_PER_BATCH, graph.actionsRun());
+        assertEquals(10, graph.actionsDropped());
+    }
+
+    //tests that links to a removed gadget are dropped, and the others still run
+    @Test public void testRemove(){
+        TriggerGraph graph = new TriggerGraph();
+        SquareBumper bumper = new SquareBumper(5, 5, "bumper");
+        Flipper removed = new Flipper(0, 0, FlipperType.LEFT, 0, "removed");
+        Flipper kept = new Flipper(2, 0, FlipperType.LEFT, 0, "kept");
+        graph.add(bumper);
+        graph.add(removed);
+        graph.add(kept);
+        bumper.addTrigger(removed);
+        bumper.addTrigger(kept);
+        bumper.collideWith(new Ball(10, 10));
+        graph.dispatch();
+        graph.remove(removed);
+        assertEquals(1, graph.numberOfLinks());
+        assertEquals(1, graph.actionsReceived(kept));
+        bumper.collideWith(new Ball(10, 10));
+        graph.dispatch();
+        assertEquals(2, graph.actionsReceived(kept));
+        //the removed gadget can join another graph
+        new TriggerGraph().add(removed);
+    }
+
+    //tests that a gadget can only be in one graph
+    @Test(expected=IllegalArgumentException.class) public void testAddTwice(){
+        SquareBumper bumper = new SquareBumper(0, 0, "bumper");
+        new TriggerGraph().add(bumper);
+        new TriggerGraph().add(bumper);
+    }
+}
@@ -1,6 +1,8 @@
 package sim;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -21,6 +23,11 @@ public abstract class Triggerable extends Collidable {
     //animation
     private final String name;
     //this is the identifying name of the gadget
+    private long timesTriggered = 0;
+    //number of calls of becomeTriggered() since construction
+    TriggerGraph graph = null;
+    int graphIndex = -1;
+    //the trigger graph this gadget is in and its index there, or null and -1
     
     /**
      * create a triggerable object without specifying its name or character
@@ -83,6 +90,15 @@ public abstract class Triggerable extends Collidable {
     //override this
     public abstract void triggerAction();
     
+    /**
+     * make a new gadget with the same position, shape and name as this one, in
+     * its initial state and with no trigger links
+     * 
+     * @return the copy
+     */
+    //override this
+    public abstract Triggerable copy();
+    
     //common trigger-related functions
     /**
      * connect another gadget on this gadget's trigger. any time
@@ -94,6 +110,9 @@ public abstract class Triggerable extends Collidable {
     //if triangle triggers absorber, do triangle.addTrigger(absorber)
     public void addTrigger(Triggerable toAdd){
         triggers.add(toAdd);
+        if(graph != null){
+            graph.invalidate();
+        }
     }
     
     /**
@@ -105,6 +124,14 @@ public abstract class Triggerable extends Collidable {
      */
     public void removeTrigger(Triggerable toRemove){
         triggers.remove(toRemove);
+        if(graph != null){
+            graph.invalidate();
+        }
+    }
+    
+    //the gadgets tied to this gadget's trigger, for TriggerGraph to compile
+    Set<Triggerable> triggers(){
+        return triggers;
     }
     
     /**
@@ -115,10 +142,17 @@ public abstract class Triggerable extends Collidable {
     }
     
     /**
-     * trigger the actions of any objects tied to this object's trigger
+     * trigger the actions of any objects tied to this object's trigger. if this
+     * gadget is in a TriggerGraph, the actions are run at the graph's next
+     * dispatch, otherwise they are run immediately
      */
     public void becomeTriggered(){
         triggerTimer = 0;
+        timesTriggered ++;
+        if(graph != null){
+            graph.raise(this);
+            return;
+        }
         for(Triggerable gadget : triggers){
             gadget.triggerAction();
         }
@@ -127,6 +161,14 @@ public abstract class Triggerable extends Collidable {
     public double triggerTimer(){
         return triggerTimer;
     }
+    
+    /**
+     * @return the number of times this gadget has been triggered since it was
+     *          made. reset() does not clear this count
+     */
+    public long timesTriggered(){
+        return timesTriggered;
+    }
 
     /**
      * determine whether a particular point on the board is occupied by this
@@ -164,5 +206,16 @@ public abstract class Triggerable extends Collidable {
     public String triggerListString(){
         return triggers.toString();
     }
+    
+    /**
+     * @return the names of the gadgets tied to this gadget's trigger
+     */
+    public List<String> triggerNames(){
+        List<String> names = new ArrayList<String>();
+        for(Triggerable gadget : triggers){
+            names.add(gadget.name());
+        }
+        return names;
+    }
 
 }
@@ -37,8 +37,12 @@ public class Wall extends Collidable{
     //these are perpendicular caps to prevent gaps in invisible walls
     private Circle[] ends;
     //these help to resolve the joints between wall corners
+    private final double[] reflection = new double[2];
+    //scratch buffer for PhysicsKernel reflections
+    private final int dimension;
+    //the side length of the board this wall belongs to
     //rep invariant -- when solid, the wall is one of the boundary edges of the
-    //                 (0,20)x(0,20) playing space
+    //                 (0,dimension)x(0,dimension) playing space
     //                 when permeable, the wall edge is 0.5L outside of the board
     //                 boundary (to prevent clipping issues after transport)
     
@@ -61,8 +65,18 @@ public class Wall extends Collidable{
         this(type, Board.DEFAULT_SIZE);
     }
     
+    /**
+     * construct a new wall of the specified type, to fit on a square board
+     * 
+     * @param type the type of wall, as one of left, top, right, bottom
+     * @param dimension the side length of the board, must be > 0
+     */
     public Wall(WallType type, int dimension){
+        if(dimension <= 0){
+            throw new IllegalArgumentException("requires positive dimension: received \"" + dimension + "\"");
+        }
         this.type = type;
+        this.dimension = dimension;
         switch(this.type){
         case LEFT: 
             facing = new Vect(-1,0);
@@ -82,7 +96,7 @@ public class Wall extends Collidable{
         resetImage();
         //what follows is a little bit magical..
         //you can think about it as a transformation of a coordinate system 
-        //spanning (-1,1)x(-1,1) to (0,20)x(0,20)
+        //spanning (-1,1)x(-1,1) to (0,dimension)x(0,dimension)
         double factor = dimension/2.;
         double x1 = factor*(1 + facing.dot(new Vect(+1,+1)));
         double x2 = factor*(1 + facing.dot(new Vect(+1,-1)));
@@ -113,7 +127,7 @@ public class Wall extends Collidable{
     
     //reset this wall's image to a series of '.' characters
     private void resetImage(){
-        selfImage = new char[22];
+        selfImage = new char[dimension + 2];
         for(int ii = 0; ii < selfImage.length; ii ++){
             selfImage[ii] = '.';
         }
@@ -158,12 +172,12 @@ public class Wall extends Collidable{
                 );
         //this is where we adjust the wall's visual appearance
         resetImage();
-        if(linkName.length() >= 20){
-            for(int ii = 0; ii < 20; ii ++){
+        if(linkName.length() >= dimension){
+            for(int ii = 0; ii < dimension; ii ++){
                 selfImage[ii+1] = linkName.charAt(ii);
             }
         }else{
-            int d = 1 + (20 - linkName.length())/2;
+            int d = 1 + (dimension - linkName.length())/2;
             for(int ii = 0; ii < linkName.length(); ii ++){
                 selfImage[ii+d] = linkName.charAt(ii);
             }
@@ -193,7 +207,7 @@ public class Wall extends Collidable{
         if(opacity){
             return false;
         }
-        return Geometry.timeUntilWallCollision(edge, ball.toCircle(), ball.vel()) == 0;
+        return PhysicsKernel.timeUntilWallCollision(edge, ball) == 0;
     }
     
     /**
@@ -209,8 +223,32 @@ public class Wall extends Collidable{
         boolean overlap = 
                 Geometry.distanceSquared(perpendicularPoint, ball.getCenter()) 
                 < ball.getRadius()*ball.getRadius();
-        boolean outOfBounds = edge.p1().dot(facing) <= ball.getCenter().dot(facing);
-        return overlap || outOfBounds;
+        return overlap || isOutOfBounds(ball);
+    }
+    
+    /**
+     * @param ball the ball to be checked
+     * @return true iff the ball's center lies outside of the board boundary
+     *          defined by this wall
+     */
+    public boolean isOutOfBounds(Ball ball){
+        return edge.p1().dot(facing) <= ball.x()*facing.x() + ball.y()*facing.y();
+    }
+    
+    /**
+     * @param x the x position of a point
+     * @param y the y position of a point
+     * @return the distance from (x, y) to the nearest part of this wall that
+     *          a ball can collide with
+     */
+    public double distanceTo(double x, double y){
+        double distance = PhysicsKernel.distanceToSegment(edge, x, y);
+        if(!opacity){
+            for(LineSegment corner : corners){
+                distance = Math.min(distance, PhysicsKernel.distanceToSegment(corner, x, y));
+            }
+        }
+        return distance;
     }
     
     /**
@@ -222,13 +260,28 @@ public class Wall extends Collidable{
      *          or positive infinity if no collision will take place
      */
     @Override public double timeUntilCollision(Ball ball){
-        double timeToCollision = Geometry.timeUntilWallCollision(edge, ball.toCircle(), ball.vel());
+        return timeUntilCollision(ball, 0, 0);
+    }
+    
+    /**
+     * determine the time in seconds until a collision will occur between
+     * this wall and the specified ball, assuming the ball accelerates
+     * uniformly at <gx, gy>
+     * 
+     * @param ball the ball whose collision time is to be checked
+     * @param gx the x component of the ball's acceleration
+     * @param gy the y component of the ball's acceleration
+     * @return the number of seconds before a collision will take place
+     *          or positive infinity if no collision will take place
+     */
+    @Override public double timeUntilCollision(Ball ball, double gx, double gy){
+        double timeToCollision = PhysicsKernel.timeUntilWallCollision(edge, ball, gx, gy);
         if(!opacity){
             for(LineSegment edge : corners){
-                double t = Geometry.timeUntilWallCollision(edge, ball.toCircle(), ball.vel());
+                double t = PhysicsKernel.timeUntilWallCollision(edge, ball, gx, gy);
                 timeToCollision = t < timeToCollision ? t : timeToCollision;
             } for(Circle end : ends){
-                double t = Geometry.timeUntilCircleCollision(end, ball.toCircle(), ball.vel());
+                double t = PhysicsKernel.timeUntilCircleCollision(end, ball, gx, gy);
                 timeToCollision = t < timeToCollision ? t : timeToCollision;
             }
         }
@@ -245,27 +298,41 @@ public class Wall extends Collidable{
      * @param ball the ball to be reflected
      */
     @Override public void collideWith(Ball ball) {
-        double timeToCollision = Geometry.timeUntilWallCollision(edge, ball.toCircle(), ball.vel());
-        Vect reflection = ball.vel();
+        collideWith(ball, 0, 0);
+    }
+    
+    /**
+     * as collideWith(ball), for a ball accelerating uniformly at <gx, gy>. the
+     * corner or end that was hit is the one timeUntilCollision(ball, gx, gy)
+     * found
+     * 
+     * @param ball the ball to be reflected
+     * @param gx the x component of the ball's acceleration
+     * @param gy the y component of the ball's acceleration
+     */
+    @Override public void collideWith(Ball ball, double gx, double gy) {
+        double timeToCollision = PhysicsKernel.timeUntilWallCollision(edge, ball, gx, gy);
+        reflection[0] = ball.vx();
+        reflection[1] = ball.vy();
         if(opacity){
-            reflection = Geometry.reflectWall(edge,ball.vel());
+            PhysicsKernel.reflectWall(edge, ball, reflection);
         }
         else{
             for(LineSegment corner : corners){
-                double t = Geometry.timeUntilWallCollision(corner, ball.toCircle(), ball.vel());
+                double t = PhysicsKernel.timeUntilWallCollision(corner, ball, gx, gy);
                 if(t <= timeToCollision){
                     timeToCollision = t;
-                    reflection = Geometry.reflectWall(corner,ball.vel());
+                    PhysicsKernel.reflectWall(corner, ball, reflection);
                 }
             }for(Circle end : ends){
-                double t = Geometry.timeUntilCircleCollision(end, ball.toCircle(), ball.vel());
+                double t = PhysicsKernel.timeUntilCircleCollision(end, ball, gx, gy);
                 if(t <= timeToCollision){
                     timeToCollision = t;
-                    reflection = Geometry.reflectCircle(end.getCenter(),ball.getCenter(),ball.vel());
+                    PhysicsKernel.reflectCircle(end, ball, reflection);
                 }
             }
         }
-        ball.impart(reflection);
+        ball.impart(reflection[0], reflection[1]);
         
         if(shouldTeleport(ball)){
             reflectAcross(ball);
@@ -274,9 +341,11 @@ public class Wall extends Collidable{
         }
     }
     
-    //private helper method reflects the ball across the board from this wall
+    //private helper method reflects the ball across the board from this wall.
+    //the server only links boards of the same size, so the board on the other
+    //side is this one's size
     private void reflectAcross(Ball ball){
-        ball.moveTo(ball.getCenter().plus(facing.times(-20.5)));
+        ball.moveTo(ball.getCenter().plus(facing.times(-(dimension + 0.5))));
     }
     
     /**